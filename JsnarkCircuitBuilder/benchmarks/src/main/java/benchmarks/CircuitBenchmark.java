@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.FieldElementStore;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * Measures the generation, the evaluation and the circuit and input files of
+ * the circuits in Circuits. Run from the JsnarkCircuitBuilder directory (the
+ * generators read config.properties from the working directory), e.g.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff results.json
+ * java -jar benchmarks/target/benchmarks.jar CircuitBenchmark.evaluate -p circuit=SHA256,RSA2048_SIG_VERIFY
+ * </pre>
+ *
+ * The gc profiler adds the allocation rate (gc.alloc.rate.norm is the number
+ * of bytes allocated per operation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class CircuitBenchmark {
+
+	@Param({ Circuits.SHA256, Circuits.AES128_LINEAR_SCAN, Circuits.AES128_COMPUTE, Circuits.AES128_OPTIMIZED1,
+			Circuits.AES128_OPTIMIZED2, Circuits.SPECK128, Circuits.CHASKEY128, Circuits.RSA2048_ENCRYPTION,
+			Circuits.RSA2048_OAEP_ENCRYPTION, Circuits.RSA2048_SIG_VERIFY, Circuits.ECDH,
+			Circuits.LONG_INTEGER_MOD })
+	public String circuit;
+
+	private PrintStream out;
+	private Path directory;
+	private String name;
+	private CircuitGenerator generator;
+	private CircuitEvaluator evaluator;
+
+	// the values of the input and nizkinput wires, as assigned by the sample
+	// input of the generator
+	private int[] inputIds;
+	private BigInteger[] inputValues;
+
+	/**
+	 * A new evaluator for every call of evaluate(), with the inputs already
+	 * set.
+	 */
+	@State(Scope.Thread)
+	public static class EvaluatorState {
+
+		private CircuitEvaluator evaluator;
+
+		@Setup(Level.Invocation)
+		public void setUp(CircuitBenchmark benchmark) {
+			evaluator = new CircuitEvaluator(benchmark.generator);
+			FieldElementStore values = evaluator.getValueStore();
+			for (int k = 0; k < benchmark.inputIds.length; k++) {
+				values.set(benchmark.inputIds[k], benchmark.inputValues[k]);
+			}
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		// the generators and evaluators print a few lines per call
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		directory = Files.createTempDirectory("jsnark-benchmarks");
+		name = directory.resolve(circuit.toLowerCase()).toString();
+		generator = Circuits.create(circuit, name);
+		generator.generateCircuit();
+		// the sample inputs of some generators are expensive (e.g. the RSA
+		// generators create a key pair), so they are only computed once
+		generator.evalCircuit();
+		evaluator = generator.getCircuitEvaluator();
+
+		InstructionStore store = generator.getEvaluationQueue();
+		FieldElementStore values = evaluator.getValueStore();
+		int n = 0;
+		inputIds = new int[store.size()];
+		for (int i = 0; i < store.size(); i++) {
+			byte opcode = store.getOpcode(i);
+			if (opcode == InstructionStore.OP_INPUT || opcode == InstructionStore.OP_NIZKINPUT) {
+				inputIds[n++] = store.getInputId(i, 0);
+			}
+		}
+		inputIds = Arrays.copyOf(inputIds, n);
+		inputValues = new BigInteger[n];
+		for (int k = 0; k < n; k++) {
+			inputValues[k] = values.get(inputIds[k]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		System.setOut(out);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Builds the circuit: buildCircuit() and the bookkeeping of
+	 * generateCircuit().
+	 */
+	@Benchmark
+	public CircuitGenerator generate() {
+		CircuitGenerator generator = Circuits.create(circuit, name);
+		generator.generateCircuit();
+		return generator;
+	}
+
+	/**
+	 * Evaluates the circuit, including the prover computations, for the sample
+	 * input of the generator.
+	 */
+	@Benchmark
+	public CircuitEvaluator evaluate(EvaluatorState state) {
+		state.evaluator.evaluate();
+		return state.evaluator;
+	}
+
+	@Benchmark
+	public void writeCircuitFile() {
+		generator.writeCircuitFile();
+	}
+
+	@Benchmark
+	public void writeInputFile() {
+		evaluator.writeInputFile(name + ".in");
+	}
+
+	/**
+	 * Writes both files at the same time with AsyncFileWriter.
+	 */
+	@Benchmark
+	public void writeFilesAsync() {
+		generator.prepFilesAsync().join();
+	}
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import circuit.auxiliary.LongElement;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.blockciphers.AES128CipherGadget;
+import examples.gadgets.blockciphers.AES128CipherGadget.SBoxOption;
+import examples.gadgets.blockciphers.ChaskeyLTS128CipherGadget;
+import examples.gadgets.blockciphers.Speck128CipherGadget;
+import examples.gadgets.diffieHellmanKeyExchange.ECDHKeyExchangeGadget;
+import examples.gadgets.math.LongIntegerModGadget;
+import examples.generators.blockciphers.AES128CipherCircuitGenerator;
+import examples.generators.hash.SHA2CircuitGenerator;
+import examples.generators.rsa.RSAEncryptionCircuitGenerator;
+import examples.generators.rsa.RSAEncryptionOAEPCircuitGenerator;
+import examples.generators.rsa.RSASigVerCircuitGenerator;
+
+/**
+ * The circuits of the benchmarks, at the sizes they are used in practice. The
+ * example generators are used where they exist, and the other gadgets are
+ * wrapped in the same way as in their tests.
+ */
+public class Circuits {
+
+	// the values of the @Param annotations in CircuitBenchmark
+	public static final String SHA256 = "SHA256";
+	public static final String AES128_LINEAR_SCAN = "AES128_LINEAR_SCAN";
+	public static final String AES128_COMPUTE = "AES128_COMPUTE";
+	public static final String AES128_OPTIMIZED1 = "AES128_OPTIMIZED1";
+	public static final String AES128_OPTIMIZED2 = "AES128_OPTIMIZED2";
+	public static final String SPECK128 = "SPECK128";
+	public static final String CHASKEY128 = "CHASKEY128";
+	public static final String RSA2048_ENCRYPTION = "RSA2048_ENCRYPTION";
+	public static final String RSA2048_OAEP_ENCRYPTION = "RSA2048_OAEP_ENCRYPTION";
+	public static final String RSA2048_SIG_VERIFY = "RSA2048_SIG_VERIFY";
+	public static final String ECDH = "ECDH";
+	public static final String LONG_INTEGER_MOD = "LONG_INTEGER_MOD";
+
+	/**
+	 * @param circuit
+	 *            one of the constants above
+	 * @param name
+	 *            the name of the generator, i.e. the path of its files without
+	 *            the extension
+	 */
+	public static CircuitGenerator create(String circuit, String name) {
+		if (circuit.startsWith("AES128_")) {
+			// the gadget reads the option when the circuit is built
+			AES128CipherGadget.sBoxOption = SBoxOption.valueOf(circuit.substring("AES128_".length()));
+			return new AES128CipherCircuitGenerator(name);
+		}
+		switch (circuit) {
+		case SHA256:
+			return new SHA2CircuitGenerator(name);
+		case SPECK128:
+			return new Speck128CircuitGenerator(name);
+		case CHASKEY128:
+			return new ChaskeyCircuitGenerator(name);
+		case RSA2048_ENCRYPTION:
+			return new RSAEncryptionCircuitGenerator(name, 2048, 3);
+		case RSA2048_OAEP_ENCRYPTION:
+			return new RSAEncryptionOAEPCircuitGenerator(name, 2048, 3);
+		case RSA2048_SIG_VERIFY:
+			return new RSASigVerCircuitGenerator(name, 2048);
+		case ECDH:
+			return new ECDHCircuitGenerator(name);
+		case LONG_INTEGER_MOD:
+			return new LongIntegerModCircuitGenerator(name, 4096, 2048);
+		default:
+			throw new IllegalArgumentException("Unknown circuit: " + circuit);
+		}
+	}
+
+	private static class Speck128CircuitGenerator extends CircuitGenerator {
+
+		private Wire[] plaintext;
+		private Wire[] key;
+
+		public Speck128CircuitGenerator(String circuitName) {
+			super(circuitName);
+		}
+
+		@Override
+		protected void buildCircuit() {
+			plaintext = createInputWireArray(2);
+			key = createInputWireArray(2);
+			Wire[] expandedKey = Speck128CipherGadget.expandKey(key);
+			makeOutputArray(new Speck128CipherGadget(plaintext, expandedKey).getOutputWires());
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			evaluator.setWireValue(key[0], new BigInteger("0706050403020100", 16));
+			evaluator.setWireValue(key[1], new BigInteger("0f0e0d0c0b0a0908", 16));
+			evaluator.setWireValue(plaintext[0], new BigInteger("7469206564616d20", 16));
+			evaluator.setWireValue(plaintext[1], new BigInteger("6c61766975716520", 16));
+		}
+	}
+
+	private static class ChaskeyCircuitGenerator extends CircuitGenerator {
+
+		private Wire[] plaintext;
+		private Wire[] key;
+
+		public ChaskeyCircuitGenerator(String circuitName) {
+			super(circuitName);
+		}
+
+		@Override
+		protected void buildCircuit() {
+			plaintext = createInputWireArray(4);
+			key = createInputWireArray(4);
+			makeOutputArray(new ChaskeyLTS128CipherGadget(plaintext, key).getOutputWires());
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			long[] keyV = { 0x68e90956L, 0x29e3585fL, 0x98ecec40L, 0x2f9822c5L };
+			long[] msgV = { 0x262823b8L, 0x5e405efdL, 0xa901a369L, 0xd87aea78L };
+			for (int i = 0; i < 4; i++) {
+				evaluator.setWireValue(plaintext[i], msgV[i]);
+				evaluator.setWireValue(key[i], keyV[i]);
+			}
+		}
+	}
+
+	private static class ECDHCircuitGenerator extends CircuitGenerator {
+
+		private Wire[] secretBits;
+		private Wire baseX;
+		private Wire hX;
+
+		public ECDHCircuitGenerator(String circuitName) {
+			super(circuitName);
+		}
+
+		@Override
+		protected void buildCircuit() {
+			secretBits = createInputWireArray(ECDHKeyExchangeGadget.SECRET_BITWIDTH, "exponent");
+			baseX = createInputWire();
+			hX = createInputWire();
+			ECDHKeyExchangeGadget keyExchangeGadget = new ECDHKeyExchangeGadget(baseX, hX, secretBits);
+			makeOutput(keyExchangeGadget.getOutputPublicValue());
+			makeOutput(keyExchangeGadget.getSharedSecret());
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			evaluator.setWireValue(baseX, new BigInteger("4"));
+			evaluator.setWireValue(hX, new BigInteger(
+					"21766081959050939664800904742925354518084319102596785077490863571049214729748"));
+			BigInteger exponent = new BigInteger(
+					"13867691842196510828352345865165018381161315605899394650350519162543016860992");
+			for (int i = 0; i < secretBits.length; i++) {
+				evaluator.setWireValue(secretBits[i], exponent.testBit(i) ? 1 : 0);
+			}
+		}
+	}
+
+	// the reduction of a product of two RSA-sized integers
+	private static class LongIntegerModCircuitGenerator extends CircuitGenerator {
+
+		private int aBitwidth;
+		private int bBitwidth;
+		private LongElement a;
+		private LongElement b;
+
+		public LongIntegerModCircuitGenerator(String circuitName, int aBitwidth, int bBitwidth) {
+			super(circuitName);
+			this.aBitwidth = aBitwidth;
+			this.bBitwidth = bBitwidth;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			a = createLongElementInput(aBitwidth);
+			b = createLongElementInput(bBitwidth);
+			LongElement r = new LongIntegerModGadget(a, b, bBitwidth, true).getRemainder();
+			makeOutputArray(r.getArray());
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			Random random = new Random(1);
+			evaluator.setWireValue(a, new BigInteger(aBitwidth, random), LongElement.CHUNK_BITWIDTH);
+			evaluator.setWireValue(b, new BigInteger(bBitwidth, random).setBit(bBitwidth - 1),
+					LongElement.CHUNK_BITWIDTH);
+		}
+	}
+}
@@ -151,7 +151,7 @@ public class LongElement {
 					: BigInteger.ZERO;
 			BigInteger max2 = i < o.array.length ? o.currentMaxValues[i]
 					: BigInteger.ZERO;
-			if (max1.add(max2).compareTo(Config.FIELD_PRIME) >= 0) {
+			if (max1.add(max2).compareTo(generator.getConfig().getFieldPrime()) >= 0) {
 				overflow = true;
 				break;
 			}
@@ -172,7 +172,7 @@ public class LongElement {
 			}
 		}
 		for (int i = 0; i < length; i++) {
-			if (newMaxValues[i].compareTo(Config.FIELD_PRIME) >= 0) {
+			if (newMaxValues[i].compareTo(generator.getConfig().getFieldPrime()) >= 0) {
 				overflow = true;
 				break;
 			}
@@ -200,9 +200,22 @@ public class LongElement {
 
 			newMaxValues[i] = max1.add(max2);
 		}
+		tightenConstantBounds(result, newMaxValues);
 		return new LongElement(result, newMaxValues);
 	}
 
+	/**
+	 * The value of a constant chunk is its exact bound, which can save
+	 * splits in later alignments and comparisons.
+	 */
+	private static void tightenConstantBounds(Wire[] chunks, BigInteger[] maxValues) {
+		for (int i = 0; i < chunks.length; i++) {
+			if (chunks[i] instanceof ConstantWire) {
+				maxValues[i] = ((ConstantWire) chunks[i]).getConstant();
+			}
+		}
+	}
+
 	/**
 	 * Implements the improved long integer multiplication from xjsnark
 	 * 
@@ -248,6 +261,16 @@ public class LongElement {
 					BigInteger[] resultVals = multiplyPolys(a, b);
 					evaluator.setWireValue(result, resultVals);
 				}
+
+				@Override
+				public Wire[] getReadWires() {
+					return Util.concat(array1, array2);
+				}
+
+				@Override
+				public Wire[] getWrittenWires() {
+					return result;
+				}
 			});
 
 			Wire zeroWire = generator.getZeroWire();
@@ -269,7 +292,7 @@ public class LongElement {
 						vector2[i] = o.array[i].mul(coeff);
 					}
 					vector3[i] = result[i].mul(coeff);
-					coeff = coeff.multiply(constant).mod(Config.FIELD_PRIME);
+					coeff = coeff.multiply(constant).mod(generator.getConfig().getFieldPrime());
 				}
 
 				// for(int i = array.length-1; i>=0; i--){
@@ -298,6 +321,7 @@ public class LongElement {
 								.multiply(o.currentMaxValues[j]));
 			}
 		}
+		tightenConstantBounds(result, newMaxValues);
 		return new LongElement(result, newMaxValues);
 	}
 
@@ -445,7 +469,7 @@ public class LongElement {
 		for (int i = 0; i < aiVals.length; i++) {
 			for (int j = 0; j < biVals.length; j++) {
 				solution[i + j] = solution[i + j].add(
-						aiVals[i].multiply(biVals[j])).mod(Config.FIELD_PRIME);
+						aiVals[i].multiply(biVals[j])).mod(generator.getConfig().getFieldPrime());
 			}
 		}
 		return solution;
@@ -622,9 +646,9 @@ public class LongElement {
 			BigInteger b2 = bounds2[i];
 			while (i + step <= limit - 1) {
 				BigInteger delta = shift.pow(step);
-				if (b1.add(bounds1[i + step].multiply(delta)).bitLength() < Config.LOG2_FIELD_PRIME - 2
+				if (b1.add(bounds1[i + step].multiply(delta)).bitLength() < generator.getConfig().getLog2FieldPrime() - 2
 						&& b2.add(bounds2[i + step].multiply(delta))
-								.bitLength() < Config.LOG2_FIELD_PRIME - 2) {
+								.bitLength() < generator.getConfig().getLog2FieldPrime() - 2) {
 					w1 = w1.add(a1[i + step].mul(delta));
 					w2 = w2.add(a2[i + step].mul(delta));
 					b1 = b1.add(bounds1[i + step].multiply(delta));
@@ -771,7 +795,7 @@ public class LongElement {
 
 			// overflow check for safety
 			if (auxConstantChunks[j].add(group1_bounds.get(j)).add(prevBound)
-					.compareTo(Config.FIELD_PRIME) >= 0) {
+					.compareTo(generator.getConfig().getFieldPrime()) >= 0) {
 				System.err.println("Overflow possibility @ ForceEqual()");
 			}
 
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import circuit.io.BinaryFormat;
+
+/**
+ * The configuration of a circuit generator: the field of the circuit, the
+ * output of the evaluator, and the libsnark executable. Configurations are
+ * immutable, so that generators with different configurations can run at the
+ * same time, e.g.
+ *
+ * <pre>
+ * CircuitConfig config = CircuitConfig.getDefault().withFieldPrime(prime).withOutputVerbose(false);
+ * </pre>
+ *
+ * and passed to the constructor of a generator. The generators created
+ * without a configuration use the one of Config, i.e. the default
+ * configuration read from config.properties.
+ *
+ * The field prime can have at most 8 * BinaryFormat.FIELD_ELEMENT_SIZE bits,
+ * so that the field elements fit in the binary files.
+ */
+public final class CircuitConfig {
+
+	// the values used for the properties that are missing in config.properties
+	private static final BigInteger DEFAULT_FIELD_PRIME = new BigInteger(
+			"21888242871839275222246405745257275088548364400416034343698204186575808495617");
+	private static final String DEFAULT_LIBSNARK_EXEC = "../libsnark/build/libsnark/jsnark_interface/run_ppzksnark";
+
+	private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+	private final BigInteger fieldPrime;
+	private final String libsnarkExec;
+	private final boolean outputVerbose;
+	private final boolean debugVerbose;
+	private final boolean hexOutputEnabled;
+
+	// computed from the prime
+	private final int log2FieldPrime;
+	private final long montgomeryInverse;
+	private final BigInteger montgomeryR2;
+	private final BigInteger montgomeryOne;
+
+	public CircuitConfig(BigInteger fieldPrime, String libsnarkExec, boolean outputVerbose, boolean debugVerbose,
+			boolean hexOutputEnabled) {
+		if (fieldPrime.compareTo(BigInteger.TWO) < 0) {
+			throw new IllegalArgumentException("The field prime must be at least 2");
+		}
+		if (fieldPrime.bitLength() > 8 * BinaryFormat.FIELD_ELEMENT_SIZE) {
+			throw new IllegalArgumentException("The field prime must fit in the " + BinaryFormat.FIELD_ELEMENT_SIZE
+					+ " bytes of a field element of the binary files");
+		}
+		this.fieldPrime = fieldPrime;
+		this.libsnarkExec = libsnarkExec;
+		this.outputVerbose = outputVerbose;
+		this.debugVerbose = debugVerbose;
+		this.hexOutputEnabled = hexOutputEnabled;
+
+		log2FieldPrime = fieldPrime.bitLength();
+		if (fieldPrime.testBit(0)) {
+			montgomeryInverse = fieldPrime.modInverse(TWO_TO_64).negate().mod(TWO_TO_64).longValue();
+			montgomeryR2 = BigInteger.ONE.shiftLeft(512).mod(fieldPrime);
+			montgomeryOne = BigInteger.ONE.shiftLeft(256).mod(fieldPrime);
+		} else {
+			montgomeryInverse = 0;
+			montgomeryR2 = null;
+			montgomeryOne = null;
+		}
+	}
+
+	/**
+	 * @return the configuration read from config.properties in the working
+	 *         directory. If the file or some of its properties are missing,
+	 *         the values of the config.properties file of the repository are
+	 *         used instead.
+	 */
+	public static CircuitConfig getDefault() {
+		return DefaultHolder.CONFIG;
+	}
+
+	/**
+	 * Reads a configuration in the format of config.properties.
+	 */
+	public static CircuitConfig load(Path path) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			properties.load(in);
+		}
+		return fromProperties(properties);
+	}
+
+	/**
+	 * Creates a configuration from the properties of config.properties. The
+	 * missing properties get the default values of the repository, and the
+	 * other properties are ignored.
+	 */
+	public static CircuitConfig fromProperties(Properties properties) {
+		String fieldPrime = properties.getProperty("FIELD_PRIME");
+		return new CircuitConfig(fieldPrime == null ? DEFAULT_FIELD_PRIME : new BigInteger(fieldPrime.trim()),
+				properties.getProperty("PATH_TO_LIBSNARK_EXEC", DEFAULT_LIBSNARK_EXEC).trim(),
+				getFlag(properties, "OUTPUT_VERBOSE", true), getFlag(properties, "DEBUG_VERBOSE", true),
+				getFlag(properties, "PRINT_HEX", false));
+	}
+
+	static boolean getFlag(Properties properties, String key, boolean defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : value.trim().equals("1");
+	}
+
+	// loaded on first use, so that nothing is read when only explicit
+	// configurations are used
+	static class DefaultHolder {
+
+		static final Properties PROPERTIES = loadProperties();
+		static final CircuitConfig CONFIG = fromProperties(PROPERTIES);
+
+		private static Properties loadProperties() {
+			Properties properties = new Properties();
+			Path path = Paths.get("config.properties");
+			if (!Files.exists(path)) {
+				System.err.println("config.properties file not found, using the default configuration.");
+				return properties;
+			}
+			try (InputStream in = Files.newInputStream(path)) {
+				properties.load(in);
+			} catch (IOException e) {
+				System.err.println("config.properties not loaded properly.");
+				e.printStackTrace();
+			}
+			return properties;
+		}
+	}
+
+	public CircuitConfig withFieldPrime(BigInteger fieldPrime) {
+		return new CircuitConfig(fieldPrime, libsnarkExec, outputVerbose, debugVerbose, hexOutputEnabled);
+	}
+
+	public CircuitConfig withLibsnarkExec(String libsnarkExec) {
+		return new CircuitConfig(fieldPrime, libsnarkExec, outputVerbose, debugVerbose, hexOutputEnabled);
+	}
+
+	public CircuitConfig withOutputVerbose(boolean outputVerbose) {
+		return outputVerbose == this.outputVerbose ? this
+				: new CircuitConfig(fieldPrime, libsnarkExec, outputVerbose, debugVerbose, hexOutputEnabled);
+	}
+
+	public CircuitConfig withDebugVerbose(boolean debugVerbose) {
+		return debugVerbose == this.debugVerbose ? this
+				: new CircuitConfig(fieldPrime, libsnarkExec, outputVerbose, debugVerbose, hexOutputEnabled);
+	}
+
+	public CircuitConfig withHexOutputEnabled(boolean hexOutputEnabled) {
+		return hexOutputEnabled == this.hexOutputEnabled ? this
+				: new CircuitConfig(fieldPrime, libsnarkExec, outputVerbose, debugVerbose, hexOutputEnabled);
+	}
+
+	public BigInteger getFieldPrime() {
+		return fieldPrime;
+	}
+
+	/**
+	 * @return the number of bits of the field prime
+	 */
+	public int getLog2FieldPrime() {
+		return log2FieldPrime;
+	}
+
+	public String getLibsnarkExec() {
+		return libsnarkExec;
+	}
+
+	/**
+	 * @return whether the evaluator prints the values of the output wires
+	 */
+	public boolean isOutputVerbose() {
+		return outputVerbose;
+	}
+
+	/**
+	 * @return whether the evaluator prints the values of the debug wires (see
+	 *         CircuitGenerator.addDebugInstruction())
+	 */
+	public boolean isDebugVerbose() {
+		return debugVerbose;
+	}
+
+	/**
+	 * @return whether the evaluator prints values in hexadecimal
+	 */
+	public boolean isHexOutputEnabled() {
+		return hexOutputEnabled;
+	}
+
+	/**
+	 * @return -p^(-1) mod 2^64 for the Montgomery reduction modulo the prime
+	 *         p, or 0 if the prime is 2
+	 */
+	public long getMontgomeryInverse() {
+		return montgomeryInverse;
+	}
+
+	/**
+	 * @return 2^512 mod p, used to convert values into the Montgomery form, or
+	 *         null if the prime is 2
+	 */
+	public BigInteger getMontgomeryR2() {
+		return montgomeryR2;
+	}
+
+	/**
+	 * @return 2^256 mod p, i.e. the Montgomery form of 1, or null if the
+	 *         prime is 2
+	 */
+	public BigInteger getMontgomeryOne() {
+		return montgomeryOne;
+	}
+}
@@ -3,39 +3,34 @@
  *******************************************************************************/
 package circuit.config;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigInteger;
-import java.util.Properties;
 
+/**
+ * The JVM-wide settings, and the configuration of the generators that are
+ * created without a CircuitConfig. The values are read from config.properties
+ * in the working directory (see CircuitConfig.getDefault()).
+ */
 public class Config {
 
-	static Properties properties = new Properties();
-
-	static{
-		try {
-			InputStream inStream = new FileInputStream("config.properties");
-			properties.load(inStream);
-		} catch (FileNotFoundException e) {
-			System.err.println("config.properties file not found.");
-			e.printStackTrace();
-			System.exit(0);
-		} catch (IOException e) {
-			System.err.println("config.properties not loaded properly.");
-			e.printStackTrace();
-		}
-	}
-	
-	public static final BigInteger FIELD_PRIME = new BigInteger(properties.getProperty("FIELD_PRIME"));
-	public static final int LOG2_FIELD_PRIME = FIELD_PRIME.toString(2).length();
-	public static final String LIBSNARK_EXEC = properties.getProperty("PATH_TO_LIBSNARK_EXEC");
+	public static final BigInteger FIELD_PRIME = CircuitConfig.getDefault().getFieldPrime();
+	public static final int LOG2_FIELD_PRIME = CircuitConfig.getDefault().getLog2FieldPrime();
+	public static final String LIBSNARK_EXEC = CircuitConfig.getDefault().getLibsnarkExec();
 	
-	public static boolean runningMultiGenerators = properties.getProperty("RUNNING_GENERATORS_IN_PARALLEL").equals("1");	
-	public static boolean hexOutputEnabled = properties.getProperty("PRINT_HEX").equals("1");
-	public static boolean outputVerbose = properties.getProperty("OUTPUT_VERBOSE").equals("1");
-	public static boolean debugVerbose = properties.getProperty("DEBUG_VERBOSE").equals("1");
+	public static boolean runningMultiGenerators = CircuitConfig.getFlag(CircuitConfig.DefaultHolder.PROPERTIES,
+			"RUNNING_GENERATORS_IN_PARALLEL", false);
+	public static boolean hexOutputEnabled = CircuitConfig.getDefault().isHexOutputEnabled();
+	public static boolean outputVerbose = CircuitConfig.getDefault().isOutputVerbose();
+	public static boolean debugVerbose = CircuitConfig.getDefault().isDebugVerbose();
 
 	public static boolean printStackTraceAtWarnings = false;
+
+	/**
+	 * @return the configuration of the generators that are created without
+	 *         one, i.e. the default configuration with the current values of
+	 *         the flags above
+	 */
+	public static CircuitConfig getCircuitConfig() {
+		return CircuitConfig.getDefault().withHexOutputEnabled(hexOutputEnabled).withOutputVerbose(outputVerbose)
+				.withDebugVerbose(debugVerbose);
+	}
 }
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import circuit.io.BinaryFormat;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * Evaluates one circuit for several input assignments (lanes) at once. Each
+ * lane is a CircuitEvaluator with its own values, and the inputs of lane k are
+ * set through getLane(k) before calling evaluate(), e.g.
+ *
+ * <pre>
+ * BatchCircuitEvaluator batch = new BatchCircuitEvaluator(generator, n);
+ * for (int k = 0; k &lt; n; k++) {
+ * 	batch.getLane(k).setWireValue(inputWires, inputs[k]);
+ * }
+ * batch.evaluate();
+ * batch.writeInputFiles();
+ * </pre>
+ *
+ * The evaluation queue is traversed only once: every instruction is decoded
+ * once, and then evaluated for all the lanes before moving to the next one.
+ */
+public class BatchCircuitEvaluator {
+
+	private CircuitGenerator circuitGenerator;
+	private CircuitEvaluator[] lanes;
+
+	public BatchCircuitEvaluator(CircuitGenerator circuitGenerator, int numLanes) {
+		if (numLanes <= 0) {
+			throw new IllegalArgumentException("The number of lanes must be positive.");
+		}
+		this.circuitGenerator = circuitGenerator;
+		lanes = new CircuitEvaluator[numLanes];
+		for (int k = 0; k < numLanes; k++) {
+			lanes[k] = new CircuitEvaluator(circuitGenerator);
+		}
+	}
+
+	public int getNumLanes() {
+		return lanes.length;
+	}
+
+	public CircuitEvaluator getLane(int k) {
+		return lanes[k];
+	}
+
+	public void evaluate() {
+
+		System.out.println("Running Circuit Evaluator for < "
+				+ circuitGenerator.getName() + " > on " + lanes.length + " inputs");
+		InstructionStore evalSequence = circuitGenerator.getEvaluationQueue();
+
+		circuitGenerator.runInContext(() -> {
+			for (Instruction e : evalSequence) {
+				for (CircuitEvaluator lane : lanes) {
+					e.evaluate(lane);
+					e.emit(lane);
+				}
+			}
+		});
+		for (CircuitEvaluator lane : lanes) {
+			lane.checkAssignment();
+		}
+		System.out.println("Circuit Evaluation Done for < "
+				+ circuitGenerator.getName() + " >\n\n");
+	}
+
+	public String getInputFileName(int k) {
+		return circuitGenerator.getName() + "_" + k + ".in";
+	}
+
+	/**
+	 * Writes the input file of lane k to getInputFileName(k).
+	 */
+	public void writeInputFiles() {
+		for (int k = 0; k < lanes.length; k++) {
+			lanes[k].writeInputFile(getInputFileName(k));
+		}
+	}
+
+	/**
+	 * Same as writeInputFiles(), but in the binary format.
+	 */
+	public void writeBinaryInputFiles() {
+		for (int k = 0; k < lanes.length; k++) {
+			lanes[k].writeBinaryInputFile(circuitGenerator.getName() + "_" + k + BinaryFormat.WITNESS_FILE_EXTENSION);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+/**
+ * The generic store, used for primes that do not fit the fixed-width limb
+ * representation.
+ */
+public class BigIntegerFieldElementStore extends FieldElementStore {
+
+	private BigInteger[] values;
+
+	public BigIntegerFieldElementStore(BigInteger prime, int size) {
+		super(prime, size);
+		values = new BigInteger[size];
+	}
+
+	@Override
+	public boolean isAssigned(int id) {
+		return values[id] != null;
+	}
+
+	@Override
+	public BigInteger get(int id) {
+		return values[id];
+	}
+
+	@Override
+	public void set(int id, BigInteger v) {
+		values[id] = v;
+	}
+
+	@Override
+	public void setBit(int id, boolean bit) {
+		values[id] = bit ? BigInteger.ONE : BigInteger.ZERO;
+	}
+
+	@Override
+	public void copy(int from, int to) {
+		values[to] = values[from];
+	}
+
+	@Override
+	public boolean isZero(int id) {
+		return values[id].signum() == 0;
+	}
+
+	@Override
+	public boolean isBinary(int id) {
+		return values[id].signum() == 0 || values[id].equals(BigInteger.ONE);
+	}
+
+	@Override
+	public boolean valueEquals(int id1, int id2) {
+		return values[id1].equals(values[id2]);
+	}
+
+	@Override
+	public void add(int in1, int in2, int out) {
+		BigInteger result = values[in1].add(values[in2]);
+		if (result.compareTo(prime) >= 0) {
+			result = result.subtract(prime);
+		}
+		values[out] = result;
+	}
+
+	@Override
+	public void mul(int in1, int in2, int out) {
+		values[out] = values[in1].multiply(values[in2]).mod(prime);
+	}
+
+	@Override
+	public void mulConstant(int in, BigInteger c, int out) {
+		values[out] = values[in].multiply(c).mod(prime);
+	}
+
+	@Override
+	public boolean isProduct(int in1, int in2, int in3) {
+		return values[in1].multiply(values[in2]).mod(prime).equals(values[in3]);
+	}
+
+	@Override
+	public BigInteger[] toArray() {
+		return values;
+	}
+}
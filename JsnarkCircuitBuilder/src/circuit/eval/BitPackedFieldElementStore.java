@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.util.BitSet;
+
+import circuit.config.CircuitConfig;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+
+/**
+ * A store that keeps the values of bit wires in a bitset, one bit per wire,
+ * and the values of the other wires in a general store that only has slots for
+ * them. The bit wires are the outputs of xor, or and split operations, which
+ * are always binary (see findBitWires()).
+ *
+ * The general store has two extra slots that hold zero and one, so operations
+ * that mix bit wires and general wires read the slot of the bit value instead
+ * of converting it. Splits into (and packs of) bit wires with consecutive ids
+ * copy 64 bits at a time.
+ *
+ * Neighboring bit wires share a word of the bitset, so if different wires can
+ * be written at the same time, e.g. by the ParallelCircuitEvaluator, the store
+ * must be created with concurrentWrites set, which updates the words
+ * atomically.
+ */
+public class BitPackedFieldElementStore extends FieldElementStore {
+
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	// the slots of the general store that hold zero and one
+	private static final int ZERO_SLOT = 0;
+	private static final int ONE_SLOT = 1;
+
+	private final FieldElementStore general;
+	// the slot of a general wire in the general store, or ~k for the k-th bit
+	// wire
+	private final int[] slots;
+	private final long[] bits;
+	private final long[] assignedBits;
+	private final boolean concurrentWrites;
+
+	public BitPackedFieldElementStore(CircuitConfig config, int size, BitSet bitWires, boolean concurrentWrites) {
+		this(FieldElementStore.create(config, numGeneralSlots(size, bitWires)), size, bitWires, concurrentWrites);
+	}
+
+	public BitPackedFieldElementStore(BigInteger prime, int size, BitSet bitWires, boolean concurrentWrites) {
+		this(FieldElementStore.create(prime, numGeneralSlots(size, bitWires)), size, bitWires, concurrentWrites);
+	}
+
+	private BitPackedFieldElementStore(FieldElementStore general, int size, BitSet bitWires,
+			boolean concurrentWrites) {
+		super(general.getPrime(), size);
+		this.general = general;
+		this.concurrentWrites = concurrentWrites;
+		slots = new int[size];
+		int numBits = 0;
+		int numGeneral = 2;
+		for (int id = 0; id < size; id++) {
+			slots[id] = bitWires.get(id) ? ~numBits++ : numGeneral++;
+		}
+		bits = new long[numWords(numBits)];
+		assignedBits = new long[numWords(numBits)];
+		general.setBit(ZERO_SLOT, false);
+		general.setBit(ONE_SLOT, true);
+	}
+
+	private static int numGeneralSlots(int size, BitSet bitWires) {
+		return 2 + size - bitWires.get(0, size).cardinality();
+	}
+
+	/**
+	 * @return the ids of the outputs of the xor, or and split operations of
+	 *         an evaluation queue
+	 */
+	public static BitSet findBitWires(InstructionStore store) {
+		BitSet bitWires = new BitSet();
+		for (int i = 0; i < store.size(); i++) {
+			byte opcode = store.getOpcode(i);
+			if (opcode == InstructionStore.OP_XOR || opcode == InstructionStore.OP_OR
+					|| opcode == InstructionStore.OP_SPLIT) {
+				for (int k = 0; k < store.getNumOutputs(i); k++) {
+					bitWires.set(store.getOutputId(i, k));
+				}
+			}
+		}
+		return bitWires;
+	}
+
+	public boolean isBitWire(int id) {
+		return slots[id] < 0;
+	}
+
+	/**
+	 * @return the slot of a wire in the general store, where bit wires map to
+	 *         the slot of their value
+	 */
+	private int slot(int id) {
+		int k = slots[id];
+		if (k >= 0) {
+			return k;
+		}
+		return testBit(bits, ~k) ? ONE_SLOT : ZERO_SLOT;
+	}
+
+	private static boolean testBit(long[] words, int k) {
+		return (words[k >>> 6] >>> k & 1) != 0;
+	}
+
+	/**
+	 * Sets the bits of a word that are in the mask to the bits of value.
+	 */
+	private void update(long[] words, int w, long mask, long value) {
+		if (concurrentWrites) {
+			long old;
+			do {
+				old = (long) WORDS.getVolatile(words, w);
+			} while (!WORDS.compareAndSet(words, w, old, (old & ~mask) | value));
+		} else {
+			words[w] = (words[w] & ~mask) | value;
+		}
+	}
+
+	private void writeBit(int k, boolean bit) {
+		long mask = 1L << k;
+		update(bits, k >>> 6, mask, bit ? mask : 0);
+		update(assignedBits, k >>> 6, mask, mask);
+	}
+
+	/**
+	 * Writes the first length bits of words to the bit wires start ..
+	 * start+length-1.
+	 */
+	private void writeBits(int start, long[] words, int length) {
+		for (int i = 0; i < length;) {
+			int k = start + i;
+			int n = Math.min(64 - (k & 63), length - i);
+			long mask = lowMask(n) << k;
+			update(bits, k >>> 6, mask, extract(words, i, n) << k);
+			update(assignedBits, k >>> 6, mask, mask);
+			i += n;
+		}
+	}
+
+	/**
+	 * @return n <= 64 bits of words, starting at bit i
+	 */
+	private static long extract(long[] words, int i, int n) {
+		int w = i >>> 6;
+		long v = words[w] >>> i;
+		if ((i & 63) != 0 && w + 1 < words.length) {
+			v |= words[w + 1] << -i;
+		}
+		return v & lowMask(n);
+	}
+
+	private static long lowMask(int n) {
+		return n == 64 ? -1L : (1L << n) - 1;
+	}
+
+	/**
+	 * @return the index of the first bit wire if ids[offset .. offset+length-1]
+	 *         are consecutive bit wires, and -1 otherwise
+	 */
+	private int findBitRange(int[] ids, int offset, int length) {
+		int first = slots[ids[offset]];
+		if (first >= 0) {
+			return -1;
+		}
+		for (int i = 1; i < length; i++) {
+			if (slots[ids[offset + i]] != first - i) {
+				return -1;
+			}
+		}
+		return ~first;
+	}
+
+	private void setBitValue(int id, BigInteger v) {
+		if (v.signum() == 0) {
+			writeBit(~slots[id], false);
+		} else if (v.equals(BigInteger.ONE)) {
+			writeBit(~slots[id], true);
+		} else {
+			throw new IllegalArgumentException("Wire#" + id + " is a bit wire and cannot be assigned " + v);
+		}
+	}
+
+	@Override
+	public boolean isAssigned(int id) {
+		int k = slots[id];
+		return k >= 0 ? general.isAssigned(k) : testBit(assignedBits, ~k);
+	}
+
+	@Override
+	public BigInteger get(int id) {
+		int k = slots[id];
+		if (k >= 0) {
+			return general.get(k);
+		} else if (!testBit(assignedBits, ~k)) {
+			return null;
+		}
+		return testBit(bits, ~k) ? BigInteger.ONE : BigInteger.ZERO;
+	}
+
+	@Override
+	public void set(int id, BigInteger v) {
+		int k = slots[id];
+		if (k >= 0) {
+			general.set(k, v);
+		} else {
+			setBitValue(id, v);
+		}
+	}
+
+	@Override
+	public void setBit(int id, boolean bit) {
+		int k = slots[id];
+		if (k >= 0) {
+			general.setBit(k, bit);
+		} else {
+			writeBit(~k, bit);
+		}
+	}
+
+	@Override
+	public void copy(int from, int to) {
+		int k = slots[to];
+		if (k >= 0) {
+			general.copy(slot(from), k);
+		} else if (slots[from] < 0) {
+			writeBit(~k, testBit(bits, ~slots[from]));
+		} else {
+			setBitValue(to, get(from));
+		}
+	}
+
+	@Override
+	public boolean isZero(int id) {
+		int k = slots[id];
+		return k >= 0 ? general.isZero(k) : !testBit(bits, ~k);
+	}
+
+	@Override
+	public boolean isBinary(int id) {
+		int k = slots[id];
+		return k < 0 || general.isBinary(k);
+	}
+
+	@Override
+	public boolean valueEquals(int id1, int id2) {
+		int k1 = slots[id1];
+		int k2 = slots[id2];
+		if (k1 < 0 && k2 < 0) {
+			return testBit(bits, ~k1) == testBit(bits, ~k2);
+		}
+		return general.valueEquals(slot(id1), slot(id2));
+	}
+
+	@Override
+	public void add(int in1, int in2, int out) {
+		int k = slots[out];
+		if (k >= 0) {
+			general.add(slot(in1), slot(in2), k);
+		} else {
+			setBitValue(out, get(in1).add(get(in2)).mod(prime));
+		}
+	}
+
+	@Override
+	public void mul(int in1, int in2, int out) {
+		int k = slots[out];
+		if (k >= 0) {
+			general.mul(slot(in1), slot(in2), k);
+		} else {
+			setBitValue(out, get(in1).multiply(get(in2)).mod(prime));
+		}
+	}
+
+	@Override
+	public void mulConstant(int in, BigInteger c, int out) {
+		int k = slots[out];
+		if (k >= 0) {
+			general.mulConstant(slot(in), c, k);
+		} else {
+			setBitValue(out, get(in).multiply(c).mod(prime));
+		}
+	}
+
+	@Override
+	public boolean isProduct(int in1, int in2, int in3) {
+		return general.isProduct(slot(in1), slot(in2), slot(in3));
+	}
+
+	@Override
+	public int bitLength(int id) {
+		int k = slots[id];
+		if (k >= 0) {
+			return general.bitLength(k);
+		}
+		return testBit(bits, ~k) ? 1 : 0;
+	}
+
+	@Override
+	public void getWords(int id, long[] words) {
+		general.getWords(slot(id), words);
+	}
+
+	@Override
+	public void setWords(int id, long[] words) {
+		int k = slots[id];
+		if (k >= 0) {
+			general.setWords(k, words);
+		} else {
+			setBitValue(id, fromWords(words).mod(prime));
+		}
+	}
+
+	@Override
+	public void split(int in, Wire[] outs) {
+		split(in, toIds(outs), 0, outs.length);
+	}
+
+	@Override
+	public void pack(Wire[] bits, int out) {
+		pack(toIds(bits), 0, bits.length, out);
+	}
+
+	@Override
+	public void split(int in, int[] ids, int offset, int length) {
+		int start = length == 0 ? -1 : findBitRange(ids, offset, length);
+		if (start < 0) {
+			super.split(in, ids, offset, length);
+			return;
+		}
+		long[] words = new long[numWords(length)];
+		getWords(in, words);
+		writeBits(start, words, length);
+	}
+
+	@Override
+	public void pack(int[] ids, int offset, int length, int out) {
+		int start = length == 0 ? -1 : findBitRange(ids, offset, length);
+		if (start < 0) {
+			super.pack(ids, offset, length, out);
+			return;
+		}
+		long[] words = new long[numWords(length)];
+		for (int i = 0; i < length; i += 64) {
+			int n = Math.min(64, length - i);
+			words[i >>> 6] = extract(bits, start + i, n);
+		}
+		setWords(out, words);
+	}
+
+	private static int[] toIds(Wire[] wires) {
+		int[] ids = new int[wires.length];
+		for (int i = 0; i < wires.length; i++) {
+			ids[i] = wires[i].getWireId();
+		}
+		return ids;
+	}
+}
@@ -4,53 +4,78 @@
 package circuit.eval;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.math.BigInteger;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import util.Util;
 import circuit.auxiliary.LongElement;
-import circuit.config.Config;
-import circuit.operations.WireLabelInstruction;
-import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.io.AsyncFileWriter;
+import circuit.io.BinaryFormat;
+import circuit.io.BinaryWitnessWriter;
+import circuit.profiling.CircuitProfiler;
 import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
 import circuit.structure.Wire;
 import circuit.structure.WireArray;
 
 public class CircuitEvaluator {
 
 	private CircuitGenerator circuitGenerator;
-	private BigInteger[] valueAssignment;
+	private FieldElementStore values;
 
 	public CircuitEvaluator(CircuitGenerator circuitGenerator) {
+		this(circuitGenerator, false);
+	}
+
+	/**
+	 * @param concurrentWrites
+	 *            true if different wires may be written at the same time (see
+	 *            BitPackedFieldElementStore)
+	 */
+	protected CircuitEvaluator(CircuitGenerator circuitGenerator, boolean concurrentWrites) {
 		this.circuitGenerator = circuitGenerator;
-		valueAssignment = new BigInteger[circuitGenerator.getNumWires()];
-		valueAssignment[circuitGenerator.getOneWire().getWireId()] = BigInteger.ONE;
+		BitSet bitWires = BitPackedFieldElementStore.findBitWires(circuitGenerator.getEvaluationQueue());
+		if (bitWires.isEmpty()) {
+			values = FieldElementStore.create(circuitGenerator.getConfig(), circuitGenerator.getNumWires());
+		} else {
+			values = new BitPackedFieldElementStore(circuitGenerator.getConfig(), circuitGenerator.getNumWires(),
+					bitWires, concurrentWrites);
+		}
+		values.setBit(circuitGenerator.getOneWire().getWireId(), true);
 	}
 
 	public void setWireValue(Wire w, BigInteger v) {
-		if(v.signum() < 0 || v.compareTo(Config.FIELD_PRIME) >=0){
+		if(v.signum() < 0 || v.compareTo(values.getPrime()) >=0){
 			throw new IllegalArgumentException("Only positive values that are less than the modulus are allowed for this method.");
 		}
-		valueAssignment[w.getWireId()] = v;
+		values.set(w.getWireId(), v);
 	}
 
 	public BigInteger getWireValue(Wire w) {
-		BigInteger v = valueAssignment[w.getWireId()];
+		BigInteger v = w.getWireId() >= 0 ? values.get(w.getWireId()) : null;
 		if (v == null) {
 			WireArray bits = w.getBitWiresIfExistAlready();
 			if (bits != null) {
-				BigInteger sum = BigInteger.ZERO;
+				long[] words = new long[FieldElementStore.numWords(bits.size())];
 				for (int i = 0; i < bits.size(); i++) {
-					sum = sum.add(valueAssignment[bits.get(i).getWireId()]
-							.shiftLeft(i));
+					if (!values.isZero(bits.get(i).getWireId())) {
+						words[i >>> 6] |= 1L << i;
+					}
 				}
-				v = sum;
+				v = FieldElementStore.fromWords(words);
 			}
 		}
 		return v;
@@ -65,7 +90,15 @@ public class CircuitEvaluator {
 	}
 
 	public BigInteger getWireValue(LongElement e, int bitwidthPerChunk) {
-		return Util.combine(valueAssignment, e.getArray(), bitwidthPerChunk);
+		Wire[] array = e.getArray();
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < array.length; i++) {
+			BigInteger v = values.get(array[i].getWireId());
+			if (v != null) {
+				sum = sum.add(v.shiftLeft(bitwidthPerChunk * i));
+			}
+		}
+		return sum;
 	}
 
 	public void setWireValue(LongElement e, BigInteger value,
@@ -94,47 +127,117 @@ public class CircuitEvaluator {
 
 		System.out.println("Running Circuit Evaluator for < "
 				+ circuitGenerator.getName() + " >");
-		LinkedHashMap<Instruction, Instruction> evalSequence = circuitGenerator
-				.getEvaluationQueue();
+		circuitGenerator.runInContext(() -> evaluate(circuitGenerator.getEvaluationQueue()));
+		checkAssignment();
+		System.out.println("Circuit Evaluation Done for < "
+				+ circuitGenerator.getName() + " >\n\n");
+		CircuitProfiler profiler = circuitGenerator.getProfiler();
+		if (profiler != null && profiler.coversEvaluation(circuitGenerator.getEvaluationQueue().size())) {
+			System.out.println(profiler);
+		}
+	}
 
-		for (Instruction e : evalSequence.keySet()) {
+	protected void evaluate(InstructionStore evalSequence) {
+		CircuitProfiler profiler = circuitGenerator.getProfiler();
+		if (profiler != null && profiler.coversEvaluation(evalSequence.size())) {
+			evaluate(evalSequence, profiler);
+			return;
+		}
+		for (Instruction e : evalSequence) {
 			e.evaluate(this);
 			e.emit(this);
 		}
-		// check that each wire has been assigned a value
-		for (int i = 0; i < valueAssignment.length; i++) {
-			if (valueAssignment[i] == null) {
-				throw new RuntimeException("Wire#" + i + "is without value");
+	}
+
+	/**
+	 * Adds the time of the instructions of every gadget to the profiler.
+	 */
+	private void evaluate(InstructionStore evalSequence, CircuitProfiler profiler) {
+		profiler.resetEvaluationTimes();
+		int numSegments = profiler.getNumSegments();
+		for (int k = 0; k < numSegments; k++) {
+			int end = k + 1 < numSegments ? profiler.getSegmentStart(k + 1) : evalSequence.size();
+			long start = System.nanoTime();
+			for (int i = profiler.getSegmentStart(k); i < end; i++) {
+				Instruction e = evalSequence.get(i);
+				e.evaluate(this);
+				e.emit(this);
 			}
+			profiler.addEvaluationTime(k, System.nanoTime() - start);
 		}
-		System.out.println("Circuit Evaluation Done for < "
-				+ circuitGenerator.getName() + " >\n\n");
+	}
 
+	/**
+	 * Checks that each wire has been assigned a value.
+	 */
+	void checkAssignment() {
+		for (int i = 0; i < values.size(); i++) {
+			if (!values.isAssigned(i)) {
+				throw new RuntimeException("Wire#" + i + "is without value");
+			}
+		}
 	}
 
 	public void writeInputFile() {
-		try {
-			LinkedHashMap<Instruction, Instruction> evalSequence = circuitGenerator
-					.getEvaluationQueue();
-
-			PrintWriter printWriter = new PrintWriter(
-					circuitGenerator.getName() + ".in");
-			for (Instruction e : evalSequence.keySet()) {
-				if (e instanceof WireLabelInstruction
-						&& (((WireLabelInstruction) e).getType() == LabelType.input || ((WireLabelInstruction) e)
-								.getType() == LabelType.nizkinput)) {
-					int id = ((WireLabelInstruction) e).getWire().getWireId();
-					printWriter.println(id + " "
-							+ valueAssignment[id].toString(16));
-				}
-			}
-			printWriter.close();
+		writeInputFile(circuitGenerator.getName() + ".in");
+	}
 
+	public void writeInputFile(String fileName) {
+		try (OutputStream out = new FileOutputStream(fileName)) {
+			writeInput(out);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Writes the content of the input file to a stream, e.g. to a named pipe
+	 * read by a prover process. The stream is flushed but not closed.
+	 */
+	public void writeInput(OutputStream out) throws IOException {
+		InstructionStore evalSequence = circuitGenerator.getEvaluationQueue();
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
+		for (int i = 0; i < evalSequence.size(); i++) {
+			byte opcode = evalSequence.getOpcode(i);
+			if (opcode == InstructionStore.OP_INPUT
+					|| opcode == InstructionStore.OP_NIZKINPUT) {
+				int id = evalSequence.getInputId(i, 0);
+				writer.write(id + " " + values.get(id).toString(16));
+				writer.newLine();
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Writes the input file in the background (see AsyncFileWriter). The
+	 * values must not be changed until the returned future completes.
+	 */
+	public CompletableFuture<AsyncFileWriter.Result> writeInputFileAsync(AsyncFileWriter writer) {
+		return writer.writeInputFile(circuitGenerator.getEvaluationQueue(), values,
+				Paths.get(circuitGenerator.getName() + ".in"));
+	}
+
+	public void writeBinaryInputFile() {
+		writeBinaryInputFile(circuitGenerator.getName() + BinaryFormat.WITNESS_FILE_EXTENSION);
+	}
+
+	public void writeBinaryInputFile(String fileName) {
+		InstructionStore evalSequence = circuitGenerator.getEvaluationQueue();
+		try (BinaryWitnessWriter writer = new BinaryWitnessWriter(Paths.get(fileName))) {
+			for (int i = 0; i < evalSequence.size(); i++) {
+				byte opcode = evalSequence.getOpcode(i);
+				if (opcode == InstructionStore.OP_INPUT
+						|| opcode == InstructionStore.OP_NIZKINPUT) {
+					int id = evalSequence.getInputId(i, 0);
+					writer.write(id, values.get(id));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * An independent old method for testing.
 	 * 
@@ -317,8 +420,21 @@ public class CircuitEvaluator {
 		return ins;
 	}
 
+	/**
+	 * @return the wire values as BigIntegers. Depending on the field, this
+	 *         could be a copy of the internal state, so use getValueStore()
+	 *         for direct access.
+	 */
 	public BigInteger[] getAssignment() {
-		return valueAssignment;
+		return values.toArray();
+	}
+
+	public CircuitGenerator getCircuitGenerator() {
+		return circuitGenerator;
+	}
+
+	public FieldElementStore getValueStore() {
+		return values;
 	}
 
 }
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A minimal class file writer for the classes generated by CompiledCircuit.
+ * It only supports public static methods with straight-line code (no branches
+ * and no exception handlers), which do not need stack map frames.
+ */
+class ClassFileBuilder {
+
+	static final int ALOAD_0 = 0x2a;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int RETURN = 0xb1;
+
+	private static final int CLASS_VERSION = 52;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final HashMap<Object, Integer> poolIndices = new HashMap<Object, Integer>();
+	private int poolCount = 1;
+
+	private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+	private final DataOutputStream methodsOut = new DataOutputStream(methods);
+	private int methodCount;
+
+	private final int thisClass;
+	private final int superClass;
+	private final int codeAttribute;
+
+	// the code of the current method
+	private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+	ClassFileBuilder(String className) {
+		thisClass = classConstant(className);
+		superClass = classConstant("java/lang/Object");
+		codeAttribute = utf8Constant("Code");
+	}
+
+	int getConstantPoolSize() {
+		return poolCount;
+	}
+
+	int getMethodCount() {
+		return methodCount;
+	}
+
+	int getCodeLength() {
+		return code.size();
+	}
+
+	private int utf8Constant(String s) {
+		Integer index = poolIndices.get(s);
+		if (index == null) {
+			try {
+				poolOut.writeByte(CONSTANT_UTF8);
+				poolOut.writeUTF(s);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			index = poolCount++;
+			poolIndices.put(s, index);
+		}
+		return index;
+	}
+
+	private int constant(String key, int tag, int a, int b) {
+		Integer index = poolIndices.get(key);
+		if (index == null) {
+			try {
+				poolOut.writeByte(tag);
+				poolOut.writeShort(a);
+				if (b >= 0) {
+					poolOut.writeShort(b);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			index = poolCount++;
+			poolIndices.put(key, index);
+		}
+		return index;
+	}
+
+	private int classConstant(String name) {
+		return constant("class " + name, CONSTANT_CLASS, utf8Constant(name), -1);
+	}
+
+	private int integerConstant(int v) {
+		Integer index = poolIndices.get(v);
+		if (index == null) {
+			try {
+				poolOut.writeByte(CONSTANT_INTEGER);
+				poolOut.writeInt(v);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			index = poolCount++;
+			poolIndices.put(v, index);
+		}
+		return index;
+	}
+
+	private int methodConstant(String owner, String name, String descriptor, boolean isInterface) {
+		int nameAndType = constant("nat " + name + descriptor, CONSTANT_NAME_AND_TYPE, utf8Constant(name),
+				utf8Constant(descriptor));
+		return constant((isInterface ? "imethod " : "method ") + owner + "." + name + descriptor,
+				isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, classConstant(owner),
+				nameAndType);
+	}
+
+	void op(int opcode) {
+		code.write(opcode);
+	}
+
+	void aload(int local) {
+		if (local <= 3) {
+			code.write(ALOAD_0 + local);
+		} else {
+			code.write(ALOAD);
+			code.write(local);
+		}
+	}
+
+	void pushInt(int v) {
+		if (v >= -1 && v <= 5) {
+			// iconst_<v>
+			code.write(0x03 + v);
+		} else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+			// bipush
+			code.write(0x10);
+			code.write(v);
+		} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+			// sipush
+			code.write(0x11);
+			writeShort(v);
+		} else {
+			// ldc_w
+			code.write(0x13);
+			writeShort(integerConstant(v));
+		}
+	}
+
+	void invokeVirtual(String owner, String name, String descriptor) {
+		code.write(0xb6);
+		writeShort(methodConstant(owner, name, descriptor, false));
+	}
+
+	void invokeStatic(String owner, String name, String descriptor) {
+		code.write(0xb8);
+		writeShort(methodConstant(owner, name, descriptor, false));
+	}
+
+	void invokeInterface(String owner, String name, String descriptor, int numArgSlots) {
+		code.write(0xb9);
+		writeShort(methodConstant(owner, name, descriptor, true));
+		code.write(numArgSlots + 1);
+		code.write(0);
+	}
+
+	private void writeShort(int v) {
+		code.write(v >>> 8);
+		code.write(v);
+	}
+
+	/**
+	 * Adds a public static method whose body is the code written since the
+	 * last call. The code must end with a return instruction.
+	 */
+	void endMethod(String name, String descriptor, int maxStack, int maxLocals) {
+		try {
+			methodsOut.writeShort(ACC_PUBLIC | ACC_STATIC);
+			methodsOut.writeShort(utf8Constant(name));
+			methodsOut.writeShort(utf8Constant(descriptor));
+			methodsOut.writeShort(1);
+			methodsOut.writeShort(codeAttribute);
+			methodsOut.writeInt(12 + code.size());
+			methodsOut.writeShort(maxStack);
+			methodsOut.writeShort(maxLocals);
+			methodsOut.writeInt(code.size());
+			code.writeTo(methodsOut);
+			// no exception handlers, no attributes
+			methodsOut.writeShort(0);
+			methodsOut.writeShort(0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		code.reset();
+		methodCount++;
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			// no interfaces, no fields
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(methodCount);
+			methods.writeTo(out);
+			// no attributes
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * A circuit whose evaluation queue was translated into JVM bytecode. The
+ * generated code is straight-line: every basic operation becomes a direct call
+ * on the FieldElementStore, and prover witness computations are called through
+ * the Instruction interface. The code is split into methods and hidden classes
+ * that stay within the class file limits.
+ *
+ * Compiling takes some time, so this is useful when the same circuit is
+ * evaluated many times, e.g.
+ *
+ * <pre>
+ * CompiledCircuit compiled = CompiledCircuit.compile(generator);
+ * ...
+ * CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+ * evaluator.setWireValue(inputWires, inputs);
+ * compiled.evaluate(evaluator);
+ * evaluator.writeInputFile();
+ * </pre>
+ *
+ * Unlike BasicOp.evaluate(), the generated code does not check whether every
+ * input wire was assigned before being used; instead, the assignment of all
+ * wires is checked once at the end. The checks on the values (e.g. that the
+ * inputs of xor are binary, and the assertions) are kept.
+ */
+public class CompiledCircuit {
+
+	// a method is closed when its code exceeds this size (the limit is 64KB)
+	private static final int MAX_CODE_LENGTH = 60000;
+	// a class is closed when its constant pool exceeds this size before an
+	// instruction is translated (the limit is 64K entries, and an instruction
+	// adds at most a few)
+	private static final int MAX_CONSTANT_POOL_SIZE = 60000;
+	private static final int MAX_METHODS_PER_CLASS = 1000;
+	// additions with more terms are evaluated through FieldElementStore.sum()
+	private static final int MAX_INLINED_ADD_TERMS = 16;
+
+	private static final String CLASS_NAME = "circuit/eval/CompiledCircuitCode";
+	private static final String STORE = "circuit/eval/FieldElementStore";
+	private static final String THIS = "circuit/eval/CompiledCircuit";
+	private static final String METHOD_DESCRIPTOR = "(Lcircuit/eval/FieldElementStore;[Ljava/math/BigInteger;"
+			+ "[Lcircuit/eval/Instruction;Lcircuit/eval/CircuitEvaluator;[I)V";
+	private static final MethodType METHOD_TYPE = MethodType.methodType(void.class, FieldElementStore.class,
+			BigInteger[].class, Instruction[].class, CircuitEvaluator.class, int[].class);
+
+	// the local variables of the generated methods
+	private static final int VALUES = 0;
+	private static final int CONSTANTS = 1;
+	private static final int CUSTOM_INSTRUCTIONS = 2;
+	private static final int EVALUATOR = 3;
+	private static final int WIRE_IDS = 4;
+
+	private final CircuitGenerator circuitGenerator;
+	private final BigInteger[] constants;
+	private final Instruction[] customInstructions;
+	private final int[] wireIds;
+	private final MethodHandle[] methods;
+
+	private CompiledCircuit(CircuitGenerator circuitGenerator, BigInteger[] constants,
+			Instruction[] customInstructions, int[] wireIds, MethodHandle[] methods) {
+		this.circuitGenerator = circuitGenerator;
+		this.constants = constants;
+		this.customInstructions = customInstructions;
+		this.wireIds = wireIds;
+		this.methods = methods;
+	}
+
+	/**
+	 * Compiles the evaluation queue of a generator. The circuit must not be
+	 * changed afterwards.
+	 */
+	public static CompiledCircuit compile(CircuitGenerator circuitGenerator) {
+		InstructionStore evalSequence = circuitGenerator.getEvaluationQueue();
+		int[] arena = evalSequence.getWireIdArena();
+		int[] wireIds = Arrays.copyOf(arena, evalSequence.getArenaStart(evalSequence.size()));
+		ArrayList<BigInteger> constants = new ArrayList<BigInteger>();
+		HashMap<BigInteger, Integer> constantIndices = new HashMap<BigInteger, Integer>();
+		ArrayList<Instruction> customInstructions = new ArrayList<Instruction>();
+		ArrayList<MethodHandle> methods = new ArrayList<MethodHandle>();
+
+		ClassFileBuilder cf = new ClassFileBuilder(CLASS_NAME);
+		for (int i = 0; i < evalSequence.size(); i++) {
+			// every distinct wire id is a constant, so the pool can fill up
+			// before the method does
+			if (cf.getConstantPoolSize() > MAX_CONSTANT_POOL_SIZE) {
+				if (cf.getCodeLength() > 0) {
+					endMethod(cf, methods.size() + cf.getMethodCount());
+				}
+				defineClass(cf, methods);
+				cf = new ClassFileBuilder(CLASS_NAME);
+			}
+			int s = evalSequence.getArenaStart(i);
+			int numInputs = evalSequence.getNumInputs(i);
+			int out = s + numInputs;
+			switch (evalSequence.getOpcode(i)) {
+			case InstructionStore.OP_ADD:
+				if (numInputs == 0) {
+					cf.aload(VALUES);
+					cf.pushInt(wireIds[out]);
+					cf.pushInt(0);
+					cf.invokeVirtual(STORE, "setBit", "(IZ)V");
+				} else if (numInputs <= MAX_INLINED_ADD_TERMS) {
+					cf.aload(VALUES);
+					cf.pushInt(wireIds[s]);
+					cf.pushInt(wireIds[out]);
+					cf.invokeVirtual(STORE, "copy", "(II)V");
+					for (int k = 1; k < numInputs; k++) {
+						cf.aload(VALUES);
+						cf.pushInt(wireIds[out]);
+						cf.pushInt(wireIds[s + k]);
+						cf.pushInt(wireIds[out]);
+						cf.invokeVirtual(STORE, "add", "(III)V");
+					}
+				} else {
+					cf.aload(VALUES);
+					cf.aload(WIRE_IDS);
+					cf.pushInt(s);
+					cf.pushInt(numInputs);
+					cf.pushInt(wireIds[out]);
+					cf.invokeVirtual(STORE, "sum", "([IIII)V");
+				}
+				break;
+			case InstructionStore.OP_MUL:
+				pushIds(cf, wireIds, s, 3);
+				cf.invokeVirtual(STORE, "mul", "(III)V");
+				break;
+			case InstructionStore.OP_CONST_MUL:
+				BigInteger c = evalSequence.getConstant(i);
+				Integer constantIndex = constantIndices.get(c);
+				if (constantIndex == null) {
+					constantIndex = constants.size();
+					constants.add(c);
+					constantIndices.put(c, constantIndex);
+				}
+				cf.aload(VALUES);
+				cf.pushInt(wireIds[s]);
+				cf.aload(CONSTANTS);
+				cf.pushInt(constantIndex);
+				cf.op(ClassFileBuilder.AALOAD);
+				cf.pushInt(wireIds[out]);
+				cf.invokeVirtual(STORE, "mulConstant", "(ILjava/math/BigInteger;I)V");
+				break;
+			case InstructionStore.OP_XOR:
+				pushIds(cf, wireIds, s, 3);
+				cf.invokeStatic(THIS, "xor", "(L" + STORE + ";III)V");
+				break;
+			case InstructionStore.OP_OR:
+				pushIds(cf, wireIds, s, 3);
+				cf.invokeStatic(THIS, "or", "(L" + STORE + ";III)V");
+				break;
+			case InstructionStore.OP_SPLIT:
+				cf.aload(VALUES);
+				cf.pushInt(wireIds[s]);
+				cf.aload(WIRE_IDS);
+				cf.pushInt(out);
+				cf.pushInt(evalSequence.getNumOutputs(i));
+				cf.invokeStatic(THIS, "split", "(L" + STORE + ";I[III)V");
+				break;
+			case InstructionStore.OP_PACK:
+				cf.aload(VALUES);
+				cf.aload(WIRE_IDS);
+				cf.pushInt(s);
+				cf.pushInt(numInputs);
+				cf.pushInt(wireIds[out]);
+				cf.invokeStatic(THIS, "pack", "(L" + STORE + ";[IIII)V");
+				break;
+			case InstructionStore.OP_ZEROP:
+				pushIds(cf, wireIds, s, 3);
+				cf.invokeStatic(THIS, "zerop", "(L" + STORE + ";III)V");
+				break;
+			case InstructionStore.OP_ASSERT:
+				pushIds(cf, wireIds, s, 3);
+				cf.invokeStatic(THIS, "assertProduct", "(L" + STORE + ";III)V");
+				break;
+			case InstructionStore.OP_CUSTOM:
+				cf.aload(CUSTOM_INSTRUCTIONS);
+				cf.pushInt(customInstructions.size());
+				cf.op(ClassFileBuilder.AALOAD);
+				cf.aload(EVALUATOR);
+				cf.invokeInterface("circuit/eval/Instruction", "evaluate", "(Lcircuit/eval/CircuitEvaluator;)V", 1);
+				customInstructions.add(evalSequence.getCustomInstruction(i));
+				break;
+			default:
+				// labels are not evaluated
+				break;
+			}
+
+			if (cf.getCodeLength() > MAX_CODE_LENGTH) {
+				endMethod(cf, methods.size() + cf.getMethodCount());
+				if (cf.getMethodCount() >= MAX_METHODS_PER_CLASS) {
+					defineClass(cf, methods);
+					cf = new ClassFileBuilder(CLASS_NAME);
+				}
+			}
+		}
+		if (cf.getCodeLength() > 0) {
+			endMethod(cf, methods.size() + cf.getMethodCount());
+		}
+		if (cf.getMethodCount() > 0) {
+			defineClass(cf, methods);
+		}
+
+		return new CompiledCircuit(circuitGenerator, constants.toArray(new BigInteger[0]),
+				customInstructions.toArray(new Instruction[0]), wireIds, methods.toArray(new MethodHandle[0]));
+	}
+
+	private static void pushIds(ClassFileBuilder cf, int[] wireIds, int from, int count) {
+		cf.aload(VALUES);
+		for (int k = 0; k < count; k++) {
+			cf.pushInt(wireIds[from + k]);
+		}
+	}
+
+	private static void endMethod(ClassFileBuilder cf, int methodIndex) {
+		cf.op(ClassFileBuilder.RETURN);
+		// at most 6 stack slots are used by the calls above
+		cf.endMethod("m" + methodIndex, METHOD_DESCRIPTOR, 6, WIRE_IDS + 1);
+	}
+
+	private static void defineClass(ClassFileBuilder cf, ArrayList<MethodHandle> methods) {
+		try {
+			int firstMethod = methods.size();
+			Class<?> c = MethodHandles.lookup().defineHiddenClass(cf.toByteArray(), true).lookupClass();
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+			for (int k = 0; k < cf.getMethodCount(); k++) {
+				methods.add(lookup.findStatic(c, "m" + (firstMethod + k), METHOD_TYPE));
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Could not define the compiled circuit code", e);
+		}
+	}
+
+	/**
+	 * Evaluates the circuit, given an evaluator whose input wires are already
+	 * assigned.
+	 */
+	public void evaluate(CircuitEvaluator evaluator) {
+		System.out.println("Running Compiled Circuit Evaluator for < " + circuitGenerator.getName() + " >");
+		FieldElementStore values = evaluator.getValueStore();
+		for (MethodHandle m : methods) {
+			try {
+				m.invokeExact(values, constants, customInstructions, evaluator, wireIds);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		// output and debug values are printed after the evaluation
+		InstructionStore evalSequence = circuitGenerator.getEvaluationQueue();
+		for (int i = 0; i < evalSequence.size(); i++) {
+			byte opcode = evalSequence.getOpcode(i);
+			if (opcode == InstructionStore.OP_OUTPUT || opcode == InstructionStore.OP_DEBUG
+					|| opcode == InstructionStore.OP_CUSTOM) {
+				evalSequence.get(i).emit(evaluator);
+			}
+		}
+		evaluator.checkAssignment();
+		System.out.println("Circuit Evaluation Done for < " + circuitGenerator.getName() + " >\n\n");
+	}
+
+	public int getNumMethods() {
+		return methods.length;
+	}
+
+	// The operations below are called by the generated code. They follow the
+	// compute() and checkInputs() methods of the corresponding BasicOp classes.
+
+	static void xor(FieldElementStore values, int in1, int in2, int out) {
+		if (!values.isBinary(in1) || !values.isBinary(in2)) {
+			throw new RuntimeException("Error During Evaluation - Input(s) to XOR are not binary: wires " + in1
+					+ ", " + in2);
+		}
+		values.setBit(out, !values.valueEquals(in1, in2));
+	}
+
+	static void or(FieldElementStore values, int in1, int in2, int out) {
+		if (!values.isBinary(in1) || !values.isBinary(in2)) {
+			throw new RuntimeException("Error During Evaluation - Input(s) to OR are not binary: wires " + in1
+					+ ", " + in2);
+		}
+		values.setBit(out, !values.isZero(in1) || !values.isZero(in2));
+	}
+
+	static void split(FieldElementStore values, int in, int[] ids, int offset, int length) {
+		if (length < values.bitLength(in)) {
+			throw new RuntimeException("Error During Evaluation - The number of bits does not fit in split: wire " + in
+					+ " = " + values.get(in).toString(16));
+		}
+		values.split(in, ids, offset, length);
+	}
+
+	static void pack(FieldElementStore values, int[] ids, int offset, int length, int out) {
+		for (int i = 0; i < length; i++) {
+			if (!values.isBinary(ids[offset + i])) {
+				throw new RuntimeException("Error During Evaluation - Input(s) to Pack are not binary: wire "
+						+ ids[offset + i]);
+			}
+		}
+		values.pack(ids, offset, length, out);
+	}
+
+	static void zerop(FieldElementStore values, int in, int out1, int out2) {
+		values.setBit(out2, !values.isZero(in));
+		values.setBit(out1, false);
+	}
+
+	static void assertProduct(FieldElementStore values, int in1, int in2, int in3) {
+		if (!values.isProduct(in1, in2, in3)) {
+			System.out.println(values.get(in1) + "*" + values.get(in2) + "!=" + values.get(in3));
+			throw new RuntimeException("Error During Evaluation - Assertion Failed: wires " + in1 + " * " + in2
+					+ " != " + in3);
+		}
+	}
+}
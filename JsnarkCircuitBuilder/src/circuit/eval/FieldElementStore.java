@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import circuit.config.CircuitConfig;
+import circuit.structure.Wire;
+
+/**
+ * Holds the values of all wires during circuit evaluation. Values are indexed
+ * by wire id, and the primitive operations compute directly on the store
+ * instead of allocating intermediate BigIntegers.
+ *
+ * All values are kept reduced modulo the field prime. The conversion to and
+ * from BigInteger only happens at the boundaries, i.e. when inputs are set
+ * or when values are read back (e.g. by prover witness computations).
+ */
+public abstract class FieldElementStore {
+
+	protected final BigInteger prime;
+	protected final int size;
+
+	protected FieldElementStore(BigInteger prime, int size) {
+		this.prime = prime;
+		this.size = size;
+	}
+
+	/**
+	 * Creates a store for the given prime. A fixed-width limb representation is
+	 * used when the prime allows it, otherwise a generic BigInteger store is
+	 * returned.
+	 */
+	public static FieldElementStore create(BigInteger prime, int size) {
+		if (MontgomeryFieldElementStore.supports(prime)) {
+			return new MontgomeryFieldElementStore(prime, size);
+		} else {
+			return new BigIntegerFieldElementStore(prime, size);
+		}
+	}
+
+	/**
+	 * Same as create(BigInteger, int), for the prime of the configuration,
+	 * using the reduction constants computed by the configuration.
+	 */
+	public static FieldElementStore create(CircuitConfig config, int size) {
+		if (MontgomeryFieldElementStore.supports(config.getFieldPrime())) {
+			return new MontgomeryFieldElementStore(config, size);
+		} else {
+			return new BigIntegerFieldElementStore(config.getFieldPrime(), size);
+		}
+	}
+
+	public BigInteger getPrime() {
+		return prime;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public abstract boolean isAssigned(int id);
+
+	/**
+	 * @return the value of the wire, or null if it has not been assigned.
+	 */
+	public abstract BigInteger get(int id);
+
+	/**
+	 * Assigns a value in the range [0, prime) to a wire.
+	 */
+	public abstract void set(int id, BigInteger v);
+
+	public abstract void setBit(int id, boolean bit);
+
+	public abstract void copy(int from, int to);
+
+	public abstract boolean isZero(int id);
+
+	public abstract boolean isBinary(int id);
+
+	public abstract boolean valueEquals(int id1, int id2);
+
+	/**
+	 * out = in1 + in2 (out may be the same as any of the inputs)
+	 */
+	public abstract void add(int in1, int in2, int out);
+
+	/**
+	 * out = in1 * in2
+	 */
+	public abstract void mul(int in1, int in2, int out);
+
+	/**
+	 * out = in * c, where c is in the range [0, prime)
+	 */
+	public abstract void mulConstant(int in, BigInteger c, int out);
+
+	/**
+	 * @return true if in1 * in2 = in3
+	 */
+	public abstract boolean isProduct(int in1, int in2, int in3);
+
+	public int bitLength(int id) {
+		return get(id).bitLength();
+	}
+
+	/**
+	 * Writes the value of a wire to words, least significant word first. The
+	 * value is truncated to words.length words, and the words above it are set
+	 * to zero.
+	 */
+	public void getWords(int id, long[] words) {
+		toWords(get(id), words);
+	}
+
+	/**
+	 * Assigns the value of words (least significant word first) modulo the
+	 * prime to a wire.
+	 */
+	public void setWords(int id, long[] words) {
+		set(id, fromWords(words).mod(prime));
+	}
+
+	public void sum(Wire[] ins, int out) {
+		if (ins.length == 0) {
+			setBit(out, false);
+			return;
+		}
+		copy(ins[0].getWireId(), out);
+		for (int i = 1; i < ins.length; i++) {
+			add(out, ins[i].getWireId(), out);
+		}
+	}
+
+	public void split(int in, Wire[] outs) {
+		long[] words = new long[numWords(outs.length)];
+		getWords(in, words);
+		for (int i = 0; i < outs.length; i++) {
+			setBit(outs[i].getWireId(), (words[i >>> 6] >>> i & 1) != 0);
+		}
+	}
+
+	public void pack(Wire[] bits, int out) {
+		long[] words = new long[numWords(bits.length)];
+		for (int i = 0; i < bits.length; i++) {
+			if (!isZero(bits[i].getWireId())) {
+				words[i >>> 6] |= 1L << i;
+			}
+		}
+		setWords(out, words);
+	}
+
+	/**
+	 * Same as sum(Wire[], int), where the input ids are ids[offset ..
+	 * offset+length-1].
+	 */
+	public void sum(int[] ids, int offset, int length, int out) {
+		if (length == 0) {
+			setBit(out, false);
+			return;
+		}
+		copy(ids[offset], out);
+		for (int i = 1; i < length; i++) {
+			add(out, ids[offset + i], out);
+		}
+	}
+
+	/**
+	 * Same as split(int, Wire[]), where the output ids are ids[offset ..
+	 * offset+length-1].
+	 */
+	public void split(int in, int[] ids, int offset, int length) {
+		long[] words = new long[numWords(length)];
+		getWords(in, words);
+		for (int i = 0; i < length; i++) {
+			setBit(ids[offset + i], (words[i >>> 6] >>> i & 1) != 0);
+		}
+	}
+
+	/**
+	 * Same as pack(Wire[], int), where the bit ids are ids[offset ..
+	 * offset+length-1].
+	 */
+	public void pack(int[] ids, int offset, int length, int out) {
+		long[] words = new long[numWords(length)];
+		for (int i = 0; i < length; i++) {
+			if (!isZero(ids[offset + i])) {
+				words[i >>> 6] |= 1L << i;
+			}
+		}
+		setWords(out, words);
+	}
+
+	static int numWords(int numBits) {
+		return (numBits + 63) >>> 6;
+	}
+
+	static void toWords(BigInteger v, long[] words) {
+		Arrays.fill(words, 0);
+		// big-endian, with a sign bit
+		byte[] bytes = v.toByteArray();
+		int n = Math.min(bytes.length, 8 * words.length);
+		for (int k = 0; k < n; k++) {
+			words[k >>> 3] |= (bytes[bytes.length - 1 - k] & 0xFFL) << (8 * (k & 7));
+		}
+	}
+
+	static BigInteger fromWords(long[] words) {
+		byte[] bytes = new byte[8 * words.length + 1];
+		for (int j = 0; j < words.length; j++) {
+			long v = words[words.length - 1 - j];
+			for (int k = 0; k < 8; k++) {
+				bytes[1 + 8 * j + k] = (byte) (v >>> (56 - 8 * k));
+			}
+		}
+		return new BigInteger(bytes);
+	}
+
+	/**
+	 * @return all values as BigIntegers (null for unassigned wires). Stores
+	 *         that keep BigIntegers internally may return their backing array.
+	 */
+	public BigInteger[] toArray() {
+		BigInteger[] values = new BigInteger[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = get(i);
+		}
+		return values;
+	}
+}
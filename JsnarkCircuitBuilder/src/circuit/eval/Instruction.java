@@ -3,6 +3,8 @@
  *******************************************************************************/
 package circuit.eval;
 
+import circuit.structure.Wire;
+
 public interface Instruction {
 
 	public void evaluate(CircuitEvaluator evaluator);
@@ -13,4 +15,22 @@ public interface Instruction {
 	public default boolean doneWithinCircuit() {
 		return false;
 	}
+
+	/**
+	 * Prover witness computations can override this method and
+	 * getWrittenWires() to declare the wires they depend on. Otherwise, they
+	 * are treated as barriers by the ParallelCircuitEvaluator.
+	 * 
+	 * @return the wires read by evaluate(), or null if unknown.
+	 */
+	public default Wire[] getReadWires() {
+		return null;
+	}
+
+	/**
+	 * @return the wires assigned by evaluate(), or null if unknown.
+	 */
+	public default Wire[] getWrittenWires() {
+		return null;
+	}
 }
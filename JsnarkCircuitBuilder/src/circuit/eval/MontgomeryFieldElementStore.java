@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import circuit.config.CircuitConfig;
+
+/**
+ * A store that keeps every value as four 64-bit limbs in Montgomery form
+ * (x * 2^256 mod p), which avoids BigInteger allocation in the primitive
+ * operations. This is used for odd primes of up to 255 bits, e.g. the default
+ * 254-bit prime in config.properties.
+ *
+ * Values of wire i occupy limbs[4*i .. 4*i+3], least significant limb first.
+ * Different wires can be written concurrently, e.g. by the
+ * ParallelCircuitEvaluator, since no state is shared between them.
+ */
+public class MontgomeryFieldElementStore extends FieldElementStore {
+
+	private static final int NUM_LIMBS = 4;
+	private static final long[] PLAIN_ONE = new long[] { 1, 0, 0, 0 };
+
+	private final long p0, p1, p2, p3;
+	// -p^(-1) mod 2^64
+	private final long inv;
+	// 2^512 mod p, used to convert into the Montgomery form
+	private final long[] r2;
+	// 2^256 mod p, i.e. the Montgomery form of 1
+	private final long[] one;
+
+	private final long[] limbs;
+	// one byte per wire rather than a bitset, so that concurrent writes to
+	// neighboring wires do not race
+	private final byte[] assigned;
+	private final ConcurrentHashMap<BigInteger, long[]> encodedConstants;
+
+	public MontgomeryFieldElementStore(BigInteger prime, int size) {
+		this(new CircuitConfig(prime, null, false, false, false), size);
+	}
+
+	/**
+	 * Creates a store for the prime of the configuration, using the constants
+	 * it computed.
+	 */
+	public MontgomeryFieldElementStore(CircuitConfig config, int size) {
+		super(config.getFieldPrime(), size);
+		if (!supports(prime)) {
+			throw new IllegalArgumentException("The prime must be odd and of at most 255 bits.");
+		}
+		long[] p = toLimbs(prime);
+		p0 = p[0];
+		p1 = p[1];
+		p2 = p[2];
+		p3 = p[3];
+		inv = config.getMontgomeryInverse();
+		r2 = toLimbs(config.getMontgomeryR2());
+		one = toLimbs(config.getMontgomeryOne());
+
+		limbs = new long[NUM_LIMBS * size];
+		assigned = new byte[size];
+		encodedConstants = new ConcurrentHashMap<BigInteger, long[]>();
+	}
+
+	public static boolean supports(BigInteger prime) {
+		return prime.testBit(0) && prime.bitLength() > 1 && prime.bitLength() <= 255;
+	}
+
+	@Override
+	public boolean isAssigned(int id) {
+		return assigned[id] != 0;
+	}
+
+	private void markAssigned(int id) {
+		assigned[id] = 1;
+	}
+
+	@Override
+	public BigInteger get(int id) {
+		if (!isAssigned(id)) {
+			return null;
+		}
+		long[] t = new long[NUM_LIMBS];
+		montMul(limbs, NUM_LIMBS * id, PLAIN_ONE, 0, t, 0);
+		return toBigInteger(t);
+	}
+
+	@Override
+	public void set(int id, BigInteger v) {
+		montMul(toLimbs(v), 0, r2, 0, limbs, NUM_LIMBS * id);
+		markAssigned(id);
+	}
+
+	@Override
+	public void setBit(int id, boolean bit) {
+		int o = NUM_LIMBS * id;
+		if (bit) {
+			limbs[o] = one[0];
+			limbs[o + 1] = one[1];
+			limbs[o + 2] = one[2];
+			limbs[o + 3] = one[3];
+		} else {
+			limbs[o] = 0;
+			limbs[o + 1] = 0;
+			limbs[o + 2] = 0;
+			limbs[o + 3] = 0;
+		}
+		markAssigned(id);
+	}
+
+	@Override
+	public void copy(int from, int to) {
+		System.arraycopy(limbs, NUM_LIMBS * from, limbs, NUM_LIMBS * to, NUM_LIMBS);
+		markAssigned(to);
+	}
+
+	@Override
+	public boolean isZero(int id) {
+		int o = NUM_LIMBS * id;
+		return (limbs[o] | limbs[o + 1] | limbs[o + 2] | limbs[o + 3]) == 0;
+	}
+
+	@Override
+	public boolean isBinary(int id) {
+		int o = NUM_LIMBS * id;
+		return isZero(id) || (limbs[o] == one[0] && limbs[o + 1] == one[1] && limbs[o + 2] == one[2]
+				&& limbs[o + 3] == one[3]);
+	}
+
+	@Override
+	public int bitLength(int id) {
+		long[] t = new long[NUM_LIMBS];
+		montMul(limbs, NUM_LIMBS * id, PLAIN_ONE, 0, t, 0);
+		for (int i = NUM_LIMBS - 1; i >= 0; i--) {
+			if (t[i] != 0) {
+				return 64 * (i + 1) - Long.numberOfLeadingZeros(t[i]);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Converts out of the Montgomery form directly into the words, without a
+	 * BigInteger.
+	 */
+	@Override
+	public void getWords(int id, long[] words) {
+		if (words.length >= NUM_LIMBS) {
+			montMul(limbs, NUM_LIMBS * id, PLAIN_ONE, 0, words, 0);
+			Arrays.fill(words, NUM_LIMBS, words.length, 0);
+		} else {
+			long[] t = new long[NUM_LIMBS];
+			montMul(limbs, NUM_LIMBS * id, PLAIN_ONE, 0, t, 0);
+			System.arraycopy(t, 0, words, 0, words.length);
+		}
+	}
+
+	@Override
+	public void setWords(int id, long[] words) {
+		if (words.length > NUM_LIMBS) {
+			super.setWords(id, words);
+			return;
+		}
+		// montMul reduces any value below 2^256 when multiplying by r2 < p
+		long[] t = words.length == NUM_LIMBS ? words : Arrays.copyOf(words, NUM_LIMBS);
+		montMul(t, 0, r2, 0, limbs, NUM_LIMBS * id);
+		markAssigned(id);
+	}
+
+	@Override
+	public boolean valueEquals(int id1, int id2) {
+		int o1 = NUM_LIMBS * id1;
+		int o2 = NUM_LIMBS * id2;
+		return limbs[o1] == limbs[o2] && limbs[o1 + 1] == limbs[o2 + 1] && limbs[o1 + 2] == limbs[o2 + 2]
+				&& limbs[o1 + 3] == limbs[o2 + 3];
+	}
+
+	@Override
+	public void add(int in1, int in2, int out) {
+		int o1 = NUM_LIMBS * in1;
+		int o2 = NUM_LIMBS * in2;
+		long a, s0, s1, s2, s3, c;
+
+		// no carry can go beyond the 4th limb, as the prime has at most 255 bits
+		a = limbs[o1];
+		s0 = a + limbs[o2];
+		c = carry(s0, a);
+
+		a = limbs[o1 + 1];
+		s1 = a + limbs[o2 + 1];
+		long c1 = carry(s1, a);
+		s1 += c;
+		c = c1 + carry(s1, c);
+
+		a = limbs[o1 + 2];
+		s2 = a + limbs[o2 + 2];
+		c1 = carry(s2, a);
+		s2 += c;
+		c = c1 + carry(s2, c);
+
+		s3 = limbs[o1 + 3] + limbs[o2 + 3] + c;
+
+		reduceOnce(s0, s1, s2, s3, limbs, NUM_LIMBS * out);
+		markAssigned(out);
+	}
+
+	@Override
+	public void mul(int in1, int in2, int out) {
+		montMul(limbs, NUM_LIMBS * in1, limbs, NUM_LIMBS * in2, limbs, NUM_LIMBS * out);
+		markAssigned(out);
+	}
+
+	@Override
+	public void mulConstant(int in, BigInteger c, int out) {
+		long[] encoded = encodedConstants.get(c);
+		if (encoded == null) {
+			encoded = new long[NUM_LIMBS];
+			montMul(toLimbs(c), 0, r2, 0, encoded, 0);
+			encodedConstants.put(c, encoded);
+		}
+		montMul(limbs, NUM_LIMBS * in, encoded, 0, limbs, NUM_LIMBS * out);
+		markAssigned(out);
+	}
+
+	@Override
+	public boolean isProduct(int in1, int in2, int in3) {
+		long[] t = new long[NUM_LIMBS];
+		montMul(limbs, NUM_LIMBS * in1, limbs, NUM_LIMBS * in2, t, 0);
+		int o = NUM_LIMBS * in3;
+		return t[0] == limbs[o] && t[1] == limbs[o + 1] && t[2] == limbs[o + 2] && t[3] == limbs[o + 3];
+	}
+
+	/**
+	 * Montgomery multiplication (CIOS): r = x * y * 2^(-256) mod p.
+	 */
+	private void montMul(long[] x, int xo, long[] y, int yo, long[] r, int ro) {
+		long a0 = x[xo], a1 = x[xo + 1], a2 = x[xo + 2], a3 = x[xo + 3];
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0;
+
+		// r is only written at the end, so it can overlap with x or y
+		for (int i = 0; i < NUM_LIMBS; i++) {
+			long b = y[yo + i];
+			long lo, hi, c;
+
+			// t = t + a * b
+			lo = a0 * b;
+			hi = Math.unsignedMultiplyHigh(a0, b);
+			lo += t0;
+			hi += carry(lo, t0);
+			t0 = lo;
+			c = hi;
+
+			lo = a1 * b;
+			hi = Math.unsignedMultiplyHigh(a1, b);
+			lo += t1;
+			hi += carry(lo, t1);
+			lo += c;
+			hi += carry(lo, c);
+			t1 = lo;
+			c = hi;
+
+			lo = a2 * b;
+			hi = Math.unsignedMultiplyHigh(a2, b);
+			lo += t2;
+			hi += carry(lo, t2);
+			lo += c;
+			hi += carry(lo, c);
+			t2 = lo;
+			c = hi;
+
+			lo = a3 * b;
+			hi = Math.unsignedMultiplyHigh(a3, b);
+			lo += t3;
+			hi += carry(lo, t3);
+			lo += c;
+			hi += carry(lo, c);
+			t3 = lo;
+			c = hi;
+
+			t4 += c;
+			long t5 = carry(t4, c);
+
+			// t = (t + m * p) / 2^64
+			long m = t0 * inv;
+			lo = m * p0;
+			hi = Math.unsignedMultiplyHigh(m, p0);
+			lo += t0;
+			hi += carry(lo, t0);
+			c = hi;
+
+			lo = m * p1;
+			hi = Math.unsignedMultiplyHigh(m, p1);
+			lo += t1;
+			hi += carry(lo, t1);
+			lo += c;
+			hi += carry(lo, c);
+			t0 = lo;
+			c = hi;
+
+			lo = m * p2;
+			hi = Math.unsignedMultiplyHigh(m, p2);
+			lo += t2;
+			hi += carry(lo, t2);
+			lo += c;
+			hi += carry(lo, c);
+			t1 = lo;
+			c = hi;
+
+			lo = m * p3;
+			hi = Math.unsignedMultiplyHigh(m, p3);
+			lo += t3;
+			hi += carry(lo, t3);
+			lo += c;
+			hi += carry(lo, c);
+			t2 = lo;
+			c = hi;
+
+			t3 = t4 + c;
+			t4 = t5 + carry(t3, c);
+		}
+
+		if (t4 != 0) {
+			subtractPrime(t0, t1, t2, t3, r, ro);
+		} else {
+			reduceOnce(t0, t1, t2, t3, r, ro);
+		}
+	}
+
+	/**
+	 * Writes s - p if s >= p, and s otherwise.
+	 */
+	private void reduceOnce(long s0, long s1, long s2, long s3, long[] r, int ro) {
+		boolean geq;
+		if (s3 != p3) {
+			geq = Long.compareUnsigned(s3, p3) > 0;
+		} else if (s2 != p2) {
+			geq = Long.compareUnsigned(s2, p2) > 0;
+		} else if (s1 != p1) {
+			geq = Long.compareUnsigned(s1, p1) > 0;
+		} else {
+			geq = Long.compareUnsigned(s0, p0) >= 0;
+		}
+		if (geq) {
+			subtractPrime(s0, s1, s2, s3, r, ro);
+		} else {
+			r[ro] = s0;
+			r[ro + 1] = s1;
+			r[ro + 2] = s2;
+			r[ro + 3] = s3;
+		}
+	}
+
+	private void subtractPrime(long s0, long s1, long s2, long s3, long[] r, int ro) {
+		long d, b, nextBorrow;
+		r[ro] = s0 - p0;
+		b = borrow(s0, p0);
+
+		d = s1 - p1;
+		nextBorrow = borrow(s1, p1) | borrow(d, b);
+		r[ro + 1] = d - b;
+		b = nextBorrow;
+
+		d = s2 - p2;
+		nextBorrow = borrow(s2, p2) | borrow(d, b);
+		r[ro + 2] = d - b;
+		b = nextBorrow;
+
+		r[ro + 3] = s3 - p3 - b;
+	}
+
+	private static long carry(long sum, long addend) {
+		return Long.compareUnsigned(sum, addend) < 0 ? 1 : 0;
+	}
+
+	private static long borrow(long minuend, long subtrahend) {
+		return Long.compareUnsigned(minuend, subtrahend) < 0 ? 1 : 0;
+	}
+
+	private static long[] toLimbs(BigInteger v) {
+		long[] t = new long[NUM_LIMBS];
+		for (int i = 0; i < NUM_LIMBS; i++) {
+			t[i] = v.shiftRight(64 * i).longValue();
+		}
+		return t;
+	}
+
+	private static BigInteger toBigInteger(long[] t) {
+		byte[] bytes = new byte[8 * NUM_LIMBS + 1];
+		for (int i = 0; i < NUM_LIMBS; i++) {
+			long v = t[NUM_LIMBS - 1 - i];
+			for (int j = 0; j < 8; j++) {
+				bytes[1 + 8 * i + j] = (byte) (v >>> (56 - 8 * j));
+			}
+		}
+		return new BigInteger(bytes);
+	}
+}
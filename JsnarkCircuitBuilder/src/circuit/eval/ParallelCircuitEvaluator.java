@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * Evaluates the circuit on multiple threads. The instructions are grouped into
+ * levels, such that every instruction only reads wires computed in earlier
+ * levels, and the instructions of each level are evaluated in parallel on a
+ * ForkJoinPool.
+ *
+ * Prover witness computations that do not declare the wires they read and
+ * write (see Instruction.getReadWires()) are barriers: they are evaluated
+ * alone, after all the instructions that precede them in the evaluation
+ * queue, and before all the instructions that follow them.
+ *
+ * Output and debug values are printed after the evaluation, in the same order
+ * as in the sequential evaluator.
+ */
+public class ParallelCircuitEvaluator extends CircuitEvaluator {
+
+	// levels with fewer instructions are evaluated on the calling thread
+	private static final int MIN_PARALLEL_LEVEL_SIZE = 256;
+	private static final int MIN_CHUNK_SIZE = 64;
+
+	private final ForkJoinPool pool;
+
+	public ParallelCircuitEvaluator(CircuitGenerator circuitGenerator) {
+		this(circuitGenerator, ForkJoinPool.commonPool());
+	}
+
+	public ParallelCircuitEvaluator(CircuitGenerator circuitGenerator, ForkJoinPool pool) {
+		super(circuitGenerator, true);
+		this.pool = pool;
+	}
+
+	@Override
+	protected void evaluate(InstructionStore evalSequence) {
+		int n = evalSequence.size();
+		int[] levels = computeLevels(evalSequence);
+
+		// group the instructions by level (labels have level 0 and are not
+		// evaluated)
+		int numLevels = 0;
+		for (int i = 0; i < n; i++) {
+			numLevels = Math.max(numLevels, levels[i]);
+		}
+		int[] levelStart = new int[numLevels + 2];
+		for (int i = 0; i < n; i++) {
+			levelStart[levels[i] + 1]++;
+		}
+		for (int l = 1; l < levelStart.length; l++) {
+			levelStart[l] += levelStart[l - 1];
+		}
+		int[] order = new int[n];
+		int[] next = levelStart.clone();
+		for (int i = 0; i < n; i++) {
+			order[next[levels[i]]++] = i;
+		}
+
+		for (int l = 1; l <= numLevels; l++) {
+			int from = levelStart[l];
+			int to = levelStart[l + 1];
+			if (to - from < MIN_PARALLEL_LEVEL_SIZE) {
+				for (int k = from; k < to; k++) {
+					evalSequence.get(order[k]).evaluate(this);
+				}
+			} else {
+				int chunkSize = Math.max(MIN_CHUNK_SIZE, (to - from) / (4 * pool.getParallelism()));
+				pool.invoke(new LevelTask(evalSequence, order, from, to, chunkSize));
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			byte opcode = evalSequence.getOpcode(i);
+			if (opcode == InstructionStore.OP_OUTPUT || opcode == InstructionStore.OP_DEBUG
+					|| opcode == InstructionStore.OP_CUSTOM) {
+				evalSequence.get(i).emit(this);
+			}
+		}
+	}
+
+	/**
+	 * @return the level of every instruction, starting from 1. Labels get the
+	 *         level 0.
+	 */
+	private int[] computeLevels(InstructionStore evalSequence) {
+		int n = evalSequence.size();
+		int[] levels = new int[n];
+		// the level that computes each wire, or 0 if the wire is assigned
+		// before the evaluation
+		int[] wireLevels = new int[getValueStore().size()];
+		int[] arena = evalSequence.getWireIdArena();
+		// the level of the last barrier
+		int floor = 0;
+		int maxLevel = 0;
+
+		for (int i = 0; i < n; i++) {
+			int level = floor;
+			if (evalSequence.isLabel(i)) {
+				continue;
+			} else if (evalSequence.isBasicOp(i)) {
+				int start = evalSequence.getArenaStart(i);
+				int end = evalSequence.getArenaStart(i + 1);
+				int outStart = start + evalSequence.getNumInputs(i);
+				if (evalSequence.getOpcode(i) == InstructionStore.OP_ASSERT) {
+					// the output of an assertion is checked, not assigned
+					outStart = end;
+				}
+				for (int k = start; k < outStart; k++) {
+					level = Math.max(level, wireLevels[arena[k]]);
+				}
+				level++;
+				for (int k = outStart; k < end; k++) {
+					wireLevels[arena[k]] = level;
+				}
+			} else {
+				Instruction e = evalSequence.getCustomInstruction(i);
+				int[] readIds = getWireIds(e.getReadWires());
+				int[] writtenIds = getWireIds(e.getWrittenWires());
+				if (readIds == null || writtenIds == null) {
+					level = maxLevel + 1;
+					floor = level;
+				} else {
+					for (int id : readIds) {
+						level = Math.max(level, wireLevels[id]);
+					}
+					level++;
+					for (int id : writtenIds) {
+						wireLevels[id] = level;
+					}
+				}
+			}
+			levels[i] = level;
+			maxLevel = Math.max(maxLevel, level);
+		}
+		return levels;
+	}
+
+	/**
+	 * @return the ids of the given wires, or null if they are not known.
+	 *         Wires without ids are replaced by their bits.
+	 */
+	private static int[] getWireIds(Wire[] wires) {
+		if (wires == null) {
+			return null;
+		}
+		int[] ids = new int[wires.length];
+		int count = 0;
+		for (Wire w : wires) {
+			if (w.getWireId() >= 0) {
+				ids = ensureCapacity(ids, count + 1);
+				ids[count++] = w.getWireId();
+			} else {
+				WireArray bits = w.getBitWiresIfExistAlready();
+				if (bits == null) {
+					return null;
+				}
+				ids = ensureCapacity(ids, count + bits.size());
+				for (int k = 0; k < bits.size(); k++) {
+					ids[count++] = bits.get(k).getWireId();
+				}
+			}
+		}
+		return count == ids.length ? ids : Arrays.copyOf(ids, count);
+	}
+
+	private static int[] ensureCapacity(int[] ids, int capacity) {
+		return capacity <= ids.length ? ids : Arrays.copyOf(ids, Math.max(capacity, 2 * ids.length));
+	}
+
+	private class LevelTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient InstructionStore evalSequence;
+		private final int[] order;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		LevelTask(InstructionStore evalSequence, int[] order, int from, int to, int chunkSize) {
+			this.evalSequence = evalSequence;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				// the workers of the pool do not share the context of the
+				// calling thread
+				getCircuitGenerator().runInContext(() -> {
+					for (int k = from; k < to; k++) {
+						evalSequence.get(order[k]).evaluate(ParallelCircuitEvaluator.this);
+					}
+				});
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LevelTask(evalSequence, order, from, mid, chunkSize),
+						new LevelTask(evalSequence, order, mid, to, chunkSize));
+			}
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import circuit.eval.FieldElementStore;
+import circuit.structure.InstructionStore;
+
+/**
+ * Writes circuit (.arith) and input (.in) files in the background, with the
+ * same content as CircuitGenerator.writeCircuitFile() and
+ * CircuitEvaluator.writeInputFile(). The instructions are split into chunks
+ * that are rendered to text in parallel on an executor, and the rendered
+ * chunks are written in order through a direct buffer. Only a bounded number
+ * of chunks is rendered ahead of the one being written.
+ *
+ * The returned futures complete when the file is written and closed, so that
+ * the caller can continue, e.g. with the evaluation of the circuit or the
+ * generation of the next one, in the meantime. The instruction store (and the
+ * values of the input file) must not change until then.
+ */
+public class AsyncFileWriter {
+
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+	private static final int BUFFER_SIZE = 4 << 20;
+
+	private final Executor executor;
+	private final int chunkSize;
+	// the number of chunks that can be rendered but not written yet
+	private final int window;
+
+	/**
+	 * Creates a writer that renders on the common ForkJoinPool.
+	 */
+	public AsyncFileWriter() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, 2 * ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * @param chunkSize
+	 *            the number of instructions rendered by one task
+	 * @param window
+	 *            the maximum number of chunks that are rendered ahead of the
+	 *            one being written, which bounds the memory used by a file
+	 */
+	public AsyncFileWriter(Executor executor, int chunkSize, int window) {
+		if (chunkSize < 1 || window < 1) {
+			throw new IllegalArgumentException("The chunk size and the window must be positive");
+		}
+		this.executor = executor;
+		this.chunkSize = chunkSize;
+		this.window = window;
+	}
+
+	/**
+	 * The size and the writing time of a file.
+	 */
+	public static class Result {
+
+		private final Path path;
+		private final long numBytes;
+		private final long nanos;
+
+		Result(Path path, long numBytes, long nanos) {
+			this.path = path;
+			this.numBytes = numBytes;
+			this.nanos = nanos;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		public long getNumBytes() {
+			return numBytes;
+		}
+
+		/**
+		 * @return the time from the call that started the writing to the
+		 *         closing of the file, in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the throughput, in megabytes (10^6 bytes) per second
+		 */
+		public double getMegabytesPerSecond() {
+			return nanos == 0 ? 0 : numBytes * 1e3 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %.1f MB in %.1f ms (%.1f MB/s)", path, numBytes / 1e6, nanos / 1e6,
+					getMegabytesPerSecond());
+		}
+	}
+
+	/**
+	 * Renders a range of instructions.
+	 */
+	private interface ChunkRenderer {
+		void render(int from, int to, StringBuilder s);
+	}
+
+	/**
+	 * Writes the instructions of the store that belong to the circuit file,
+	 * in the same format as CircuitGenerator.writeCircuitFile().
+	 */
+	public CompletableFuture<Result> writeCircuitFile(InstructionStore store, int totalWires, Path path) {
+		return write(path, "total " + totalWires + "\n", store.size(), (from, to, s) -> {
+			CircuitRecord record = new CircuitRecord();
+			for (int i = from; i < to; i++) {
+				if (store.doneWithinCircuit(i)) {
+					record.set(store, i);
+					record.appendTo(s);
+					s.append('\n');
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the values of the input and prover witness wires of the store,
+	 * in the same format as CircuitEvaluator.writeInputFile().
+	 */
+	public CompletableFuture<Result> writeInputFile(InstructionStore store, FieldElementStore values, Path path) {
+		return write(path, "", store.size(), (from, to, s) -> {
+			for (int i = from; i < to; i++) {
+				byte opcode = store.getOpcode(i);
+				if (opcode == InstructionStore.OP_INPUT || opcode == InstructionStore.OP_NIZKINPUT) {
+					int id = store.getInputId(i, 0);
+					s.append(id).append(' ').append(values.get(id).toString(16)).append('\n');
+				}
+			}
+		});
+	}
+
+	private CompletableFuture<Result> write(Path path, String header, int n, ChunkRenderer renderer) {
+		long startTime = System.nanoTime();
+		int numChunks = (n + chunkSize - 1) / chunkSize;
+
+		CompletableFuture<Output> opened = CompletableFuture.supplyAsync(() -> {
+			Output out = new Output(path);
+			out.write(header.getBytes(StandardCharsets.UTF_8));
+			return out;
+		}, executor);
+
+		// written[k] completes when chunk k was written. Chunk k is only
+		// rendered after chunk k - window was written.
+		CompletableFuture<?>[] written = new CompletableFuture<?>[numChunks];
+		CompletableFuture<Output> last = opened;
+		for (int k = 0; k < numChunks; k++) {
+			int from = k * chunkSize;
+			int to = Math.min(n, from + chunkSize);
+			CompletableFuture<?> start = k < window ? opened : written[k - window];
+			CompletableFuture<byte[]> rendered = start.thenApplyAsync(x -> {
+				StringBuilder s = new StringBuilder();
+				renderer.render(from, to, s);
+				return s.toString().getBytes(StandardCharsets.UTF_8);
+			}, executor);
+			last = last.thenCombine(rendered, (out, bytes) -> {
+				out.write(bytes);
+				return out;
+			});
+			written[k] = last;
+		}
+
+		CompletableFuture<Result> result = last.thenApply(out -> {
+			out.close();
+			return new Result(path, out.numBytes, System.nanoTime() - startTime);
+		});
+		// close the file if anything failed
+		opened.thenAcceptBoth(result.handle((r, e) -> e), (out, e) -> {
+			if (e != null) {
+				out.closeQuietly();
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * A file channel with a direct buffer. Only one thread uses it at a time,
+	 * since the writes of a file are chained.
+	 */
+	private static class Output {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private long numBytes;
+
+		Output(Path path) {
+			try {
+				channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		void write(byte[] bytes) {
+			try {
+				int offset = 0;
+				while (offset < bytes.length) {
+					if (!buffer.hasRemaining()) {
+						flush();
+					}
+					int length = Math.min(buffer.remaining(), bytes.length - offset);
+					buffer.put(bytes, offset, length);
+					offset += length;
+				}
+				numBytes += bytes.length;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		void close() {
+			try {
+				flush();
+				channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		void closeQuietly() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the original exception is reported
+			}
+		}
+	}
+}
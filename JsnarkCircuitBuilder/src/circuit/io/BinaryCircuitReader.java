@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads circuits in the binary format described in BinaryFormat.
+ */
+public class BinaryCircuitReader implements Closeable {
+
+	private final MappedFileReader reader;
+	private final int totalWires;
+
+	public BinaryCircuitReader(Path path) throws IOException {
+		reader = new MappedFileReader(path);
+		BinaryFormat.readHeader(reader, BinaryFormat.TYPE_CIRCUIT);
+		totalWires = reader.getVarintAsInt();
+	}
+
+	public int getTotalWires() {
+		return totalWires;
+	}
+
+	/**
+	 * Reads the next record into r.
+	 *
+	 * @return false if the end of the file was reached.
+	 */
+	public boolean next(CircuitRecord r) throws IOException {
+		if (!reader.hasRemaining()) {
+			return false;
+		}
+		int tag = reader.getByte();
+		if (tag > CircuitRecord.TAG_CONST_MUL_NEG) {
+			throw new IOException("Unknown record tag " + tag + " at position " + (reader.position() - 1));
+		}
+		r.tag = tag;
+		if (r.isLabel()) {
+			r.numInputs = 1;
+			r.inputs[0] = reader.getVarintAsInt();
+			r.numOutputs = 0;
+			r.constant = null;
+		} else {
+			r.constant = r.isConstMul() ? reader.getFieldElement() : null;
+			r.numInputs = reader.getVarintAsInt();
+			r.inputs = CircuitRecord.fit(r.inputs, r.numInputs);
+			for (int k = 0; k < r.numInputs; k++) {
+				r.inputs[k] = reader.getVarintAsInt();
+			}
+			r.numOutputs = reader.getVarintAsInt();
+			r.outputs = CircuitRecord.fit(r.outputs, r.numOutputs);
+			for (int k = 0; k < r.numOutputs; k++) {
+				r.outputs[k] = reader.getVarintAsInt();
+			}
+		}
+		r.desc = reader.getString();
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
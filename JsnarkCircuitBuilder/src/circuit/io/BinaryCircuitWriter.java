@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Writes circuits in the binary format described in BinaryFormat.
+ */
+public class BinaryCircuitWriter implements CircuitSink, Closeable {
+
+	private static final int PADDED_TOTAL_SIZE = 5;
+
+	private final MappedFileWriter writer;
+	private long totalWiresPosition = -1;
+
+	public BinaryCircuitWriter(Path path, int totalWires) throws IOException {
+		writer = new MappedFileWriter(path);
+		BinaryFormat.writeHeader(writer, BinaryFormat.TYPE_CIRCUIT);
+		writer.putVarint(totalWires);
+	}
+
+	/**
+	 * Creates a writer for which the total number of wires is only known at
+	 * the end, and must be provided by finish().
+	 */
+	public BinaryCircuitWriter(Path path) throws IOException {
+		writer = new MappedFileWriter(path);
+		BinaryFormat.writeHeader(writer, BinaryFormat.TYPE_CIRCUIT);
+		totalWiresPosition = writer.putPaddedVarint(0, PADDED_TOTAL_SIZE);
+	}
+
+	/**
+	 * Writes all instructions of the store that appear in the circuit file,
+	 * in the same order as CircuitGenerator.writeCircuitFile().
+	 */
+	public static void write(InstructionStore store, int totalWires, Path path) throws IOException {
+		try (BinaryCircuitWriter writer = new BinaryCircuitWriter(path, totalWires)) {
+			for (int i = 0; i < store.size(); i++) {
+				if (store.doneWithinCircuit(i)) {
+					writer.write(store, i);
+				}
+			}
+		}
+	}
+
+	public void write(CircuitRecord r) throws IOException {
+		writer.putByte(r.tag);
+		if (r.isLabel()) {
+			writer.putVarint(r.inputs[0]);
+		} else {
+			if (r.isConstMul()) {
+				writer.putFieldElement(r.constant);
+			}
+			writeIds(r.inputs, 0, r.numInputs);
+			writeIds(r.outputs, 0, r.numOutputs);
+		}
+		writer.putString(r.desc);
+	}
+
+	@Override
+	public void write(InstructionStore store, int i) throws IOException {
+		byte opcode = store.getOpcode(i);
+		int[] arena = store.getWireIdArena();
+		int start = store.getArenaStart(i);
+		int numInputs = store.getNumInputs(i);
+		switch (opcode) {
+		case InstructionStore.OP_INPUT:
+			writeLabel(CircuitRecord.TAG_INPUT, arena[start], store.getDesc(i));
+			return;
+		case InstructionStore.OP_NIZKINPUT:
+			writeLabel(CircuitRecord.TAG_NIZKINPUT, arena[start], store.getDesc(i));
+			return;
+		case InstructionStore.OP_OUTPUT:
+			writeLabel(CircuitRecord.TAG_OUTPUT, arena[start], store.getDesc(i));
+			return;
+		case InstructionStore.OP_CONST_MUL:
+			if (store.isNegativeConstant(i)) {
+				writer.putByte(CircuitRecord.TAG_CONST_MUL_NEG);
+				writer.putFieldElement(store.getPrime().subtract(store.getConstant(i)));
+			} else {
+				writer.putByte(CircuitRecord.TAG_CONST_MUL);
+				writer.putFieldElement(store.getConstant(i));
+			}
+			break;
+		default:
+			if (!store.isBasicOp(i)) {
+				throw new IllegalArgumentException("Instruction " + i + " does not belong to the circuit file");
+			}
+			// the other opcodes of basic operations have the same values as
+			// the record tags
+			writer.putByte(opcode);
+		}
+		writeIds(arena, start, numInputs);
+		writeIds(arena, start + numInputs, store.getNumOutputs(i));
+		writer.putString(store.getDesc(i));
+	}
+
+	private void writeLabel(int tag, int wire, String desc) throws IOException {
+		writer.putByte(tag);
+		writer.putVarint(wire);
+		writer.putString(desc);
+	}
+
+	private void writeIds(int[] ids, int from, int n) throws IOException {
+		writer.putVarint(n);
+		for (int k = 0; k < n; k++) {
+			writer.putVarint(ids[from + k]);
+		}
+	}
+
+	@Override
+	public void finish(int totalWires) throws IOException {
+		if (totalWiresPosition == -1) {
+			throw new IllegalStateException("The total number of wires was already written");
+		}
+		writer.patchVarint(totalWiresPosition, totalWires, PADDED_TOTAL_SIZE);
+		close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The binary counterpart of the .arith and .in text files.
+ *
+ * Every file starts with a header: the magic bytes "JSNK", a version byte, a
+ * file type byte and the size in bytes of field elements (32). Circuit files
+ * then have the total number of wires as a varint, followed by one record per
+ * line of the text format (see CircuitRecord). Witness files have one record
+ * per assigned wire: the wire id as a varint and its value as a field
+ * element. Circuit snapshots (see CircuitCache) and exported constraint
+ * systems (see R1CSExporter) use the same header.
+ *
+ * Wire ids and counts are unsigned LEB128 varints, field elements are
+ * big-endian numbers of fixed size, and strings are a varint length followed
+ * by UTF-8 bytes.
+ */
+public class BinaryFormat {
+
+	public static final byte[] MAGIC = { 'J', 'S', 'N', 'K' };
+	public static final int VERSION = 1;
+
+	public static final int TYPE_CIRCUIT = 0;
+	public static final int TYPE_WITNESS = 1;
+	public static final int TYPE_SNAPSHOT = 2;
+	public static final int TYPE_R1CS = 3;
+
+	public static final int FIELD_ELEMENT_SIZE = 32;
+
+	public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	public static final String CIRCUIT_FILE_EXTENSION = ".arith.bin";
+	public static final String WITNESS_FILE_EXTENSION = ".in.bin";
+	public static final String SNAPSHOT_FILE_EXTENSION = ".snapshot.bin";
+	public static final String R1CS_FILE_EXTENSION = ".r1cs.bin";
+
+	public static void writeHeader(MappedFileWriter writer, int type) throws IOException {
+		writer.putBytes(MAGIC);
+		writer.putByte(VERSION);
+		writer.putByte(type);
+		writer.putByte(FIELD_ELEMENT_SIZE);
+	}
+
+	public static void readHeader(MappedFileReader reader, int expectedType) throws IOException {
+		byte[] magic = reader.getBytes(MAGIC.length);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not a binary circuit or witness file");
+		}
+		int version = reader.getByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported format version: " + version);
+		}
+		int type = reader.getByte();
+		if (type != expectedType) {
+			throw new IOException("Unexpected file type: " + type);
+		}
+		int elementSize = reader.getByte();
+		if (elementSize != FIELD_ELEMENT_SIZE) {
+			throw new IOException("Unsupported field element size: " + elementSize);
+		}
+	}
+
+	/**
+	 * @return the file type if the file starts with the binary header, or -1
+	 *         otherwise (e.g. for text files).
+	 */
+	public static int getFileType(Path path) throws IOException {
+		byte[] header = new byte[MAGIC.length + 2];
+		int n;
+		try (InputStream in = Files.newInputStream(path)) {
+			n = in.readNBytes(header, 0, header.length);
+		}
+		if (n < header.length || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+			return -1;
+		}
+		return header[MAGIC.length + 1];
+	}
+}
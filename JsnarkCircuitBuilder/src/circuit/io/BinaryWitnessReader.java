@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+
+/**
+ * Reads witness files in the binary format described in BinaryFormat.
+ */
+public class BinaryWitnessReader implements Closeable {
+
+	private final MappedFileReader reader;
+	private int wireId;
+	private BigInteger value;
+
+	public BinaryWitnessReader(Path path) throws IOException {
+		reader = new MappedFileReader(path);
+		BinaryFormat.readHeader(reader, BinaryFormat.TYPE_WITNESS);
+	}
+
+	/**
+	 * Moves to the next wire assignment.
+	 *
+	 * @return false if the end of the file was reached.
+	 */
+	public boolean next() throws IOException {
+		if (!reader.hasRemaining()) {
+			return false;
+		}
+		wireId = reader.getVarintAsInt();
+		value = reader.getFieldElement();
+		return true;
+	}
+
+	public int getWireId() {
+		return wireId;
+	}
+
+	public BigInteger getValue() {
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+
+/**
+ * Writes the values of the input and prover witness wires (the content of the
+ * .in file) in the binary format described in BinaryFormat.
+ */
+public class BinaryWitnessWriter implements Closeable {
+
+	private final MappedFileWriter writer;
+
+	public BinaryWitnessWriter(Path path) throws IOException {
+		writer = new MappedFileWriter(path);
+		BinaryFormat.writeHeader(writer, BinaryFormat.TYPE_WITNESS);
+	}
+
+	public void write(int wireId, BigInteger value) throws IOException {
+		writer.putVarint(wireId);
+		writer.putFieldElement(value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import circuit.config.CircuitConfig;
+import circuit.config.Config;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * A directory of circuit snapshots (see CircuitGenerator.saveCircuit()), used
+ * by CircuitGenerator.generateCircuit(CircuitCache, Object...) to skip
+ * buildCircuit() in later runs.
+ *
+ * Snapshots are addressed by a SHA-256 hash of the generator class (its name
+ * and bytecode), the parameters that identify the circuit and the field
+ * prime. Changing the generator class invalidates its snapshots, but changing
+ * the gadgets it uses does not, so the cache directory should be cleared
+ * after such changes.
+ */
+public class CircuitCache {
+
+	private final Path directory;
+
+	public CircuitCache(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * @param parameters
+	 *            the values that identify the circuit, e.g. the arguments of
+	 *            the generator constructor. They are compared through their
+	 *            string representation (arrays are expanded).
+	 */
+	public static String computeKey(Class<?> generatorClass, Object... parameters) {
+		return computeKey(Config.getCircuitConfig(), generatorClass, parameters);
+	}
+
+	/**
+	 * Same as computeKey(Class, Object...), for a generator with the given
+	 * configuration. Only the field prime is part of the key.
+	 */
+	public static String computeKey(CircuitConfig config, Class<?> generatorClass, Object... parameters) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update((generatorClass.getName() + "\n").getBytes(BinaryFormat.CHARSET));
+		String classFile = generatorClass.getName().substring(generatorClass.getName().lastIndexOf('.') + 1)
+				+ ".class";
+		try (InputStream in = generatorClass.getResourceAsStream(classFile)) {
+			if (in != null) {
+				digest.update(in.readAllBytes());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		digest.update(("\n" + Arrays.deepToString(parameters) + "\n" + config.getFieldPrime() + "\n"
+				+ BinaryFormat.VERSION).getBytes(BinaryFormat.CHARSET));
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	public Path getPath(String key) {
+		return directory.resolve(key + BinaryFormat.SNAPSHOT_FILE_EXTENSION);
+	}
+
+	public boolean contains(String key) {
+		return Files.exists(getPath(key));
+	}
+
+	/**
+	 * Loads the snapshot with the given key into a generator that has not
+	 * generated its circuit yet.
+	 */
+	public void load(String key, CircuitGenerator generator) throws IOException {
+		generator.loadCircuit(getPath(key));
+	}
+
+	/**
+	 * Saves the circuit of a generator under the given key. The snapshot is
+	 * written to a temporary file first, so that concurrent runs never see a
+	 * partial snapshot.
+	 */
+	public void store(String key, CircuitGenerator generator) throws IOException {
+		Path tmp = Files.createTempFile(directory, key, ".tmp");
+		try {
+			generator.saveCircuit(tmp);
+			Files.move(tmp, getPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts circuit (.arith) and witness (.in) files between the text and the
+ * binary formats. The conversion is lossless: converting a text file to
+ * binary and back results in the same text.
+ */
+public class CircuitFileConverter {
+
+	public static void circuitTextToBinary(Path in, Path out) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(in, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith("total ")) {
+				throw new IOException("The circuit file must start with the total number of wires");
+			}
+			int totalWires = Integer.parseInt(header.substring("total ".length()).trim());
+			try (BinaryCircuitWriter writer = new BinaryCircuitWriter(out, totalWires)) {
+				CircuitRecord r = new CircuitRecord();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					r.parse(line);
+					writer.write(r);
+				}
+			}
+		}
+	}
+
+	public static void circuitBinaryToText(Path in, Path out) throws IOException {
+		try (BinaryCircuitReader reader = new BinaryCircuitReader(in);
+				BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+			writer.write("total " + reader.getTotalWires() + "\n");
+			CircuitRecord r = new CircuitRecord();
+			StringBuilder line = new StringBuilder();
+			while (reader.next(r)) {
+				line.setLength(0);
+				r.appendTo(line);
+				line.append('\n');
+				writer.append(line);
+			}
+		}
+	}
+
+	public static void witnessTextToBinary(Path in, Path out) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(in, StandardCharsets.UTF_8);
+				BinaryWitnessWriter writer = new BinaryWitnessWriter(out)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				int space = line.indexOf(' ');
+				writer.write(Integer.parseInt(line.substring(0, space)), new BigInteger(line.substring(space + 1), 16));
+			}
+		}
+	}
+
+	public static void witnessBinaryToText(Path in, Path out) throws IOException {
+		try (BinaryWitnessReader reader = new BinaryWitnessReader(in);
+				BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+			while (reader.next()) {
+				writer.write(reader.getWireId() + " " + reader.getValue().toString(16) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Converts a file to the other format. The direction and the kind of file
+	 * are detected from its content.
+	 */
+	public static void convert(Path in, Path out) throws IOException {
+		int type = BinaryFormat.getFileType(in);
+		if (type == BinaryFormat.TYPE_CIRCUIT) {
+			circuitBinaryToText(in, out);
+		} else if (type == BinaryFormat.TYPE_WITNESS) {
+			witnessBinaryToText(in, out);
+		} else {
+			String firstLine;
+			try (BufferedReader reader = Files.newBufferedReader(in, StandardCharsets.UTF_8)) {
+				firstLine = reader.readLine();
+			}
+			if (firstLine != null && firstLine.startsWith("total ")) {
+				circuitTextToBinary(in, out);
+			} else {
+				witnessTextToBinary(in, out);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: CircuitFileConverter <input file> <output file>");
+			System.exit(1);
+		}
+		convert(Paths.get(args[0]), Paths.get(args[1]));
+	}
+}
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.math.BigInteger;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * One line of a circuit file. Records are mutable so that readers can reuse a
+ * single instance for all lines.
+ *
+ * In the binary format, a record is its tag byte, followed by the constant
+ * (for const-mul tags only), the wire ids (a single varint for labels, or the
+ * number of inputs, the inputs, the number of outputs and the outputs for
+ * operations) and the description string.
+ */
+public class CircuitRecord {
+
+	public static final int TAG_ADD = 0;
+	public static final int TAG_MUL = 1;
+	public static final int TAG_CONST_MUL = 2;
+	public static final int TAG_XOR = 3;
+	public static final int TAG_OR = 4;
+	public static final int TAG_SPLIT = 5;
+	public static final int TAG_PACK = 6;
+	public static final int TAG_ZEROP = 7;
+	public static final int TAG_ASSERT = 8;
+	public static final int TAG_INPUT = 9;
+	public static final int TAG_NIZKINPUT = 10;
+	public static final int TAG_OUTPUT = 11;
+	// the constant of const-mul-neg is stored as it appears in the text, i.e.
+	// as the magnitude of the negative constant
+	public static final int TAG_CONST_MUL_NEG = 12;
+
+	private static final String[] NAMES = { "add", "mul", "const-mul-", "xor", "or", "split", "pack", "zerop",
+			"assert", "input", "nizkinput", "output", "const-mul-neg-" };
+
+	private static final String OP_DESC_SEPARATOR = " \t\t# ";
+	private static final String LABEL_DESC_SEPARATOR = "\t\t\t # ";
+
+	int tag;
+	int numInputs;
+	int[] inputs = new int[2];
+	int numOutputs;
+	int[] outputs = new int[2];
+	BigInteger constant;
+	String desc = "";
+
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return the opcode as in the text format, without the constant of
+	 *         const-mul operations
+	 */
+	public String getName() {
+		return isConstMul() ? NAMES[tag].substring(0, NAMES[tag].length() - 1) : NAMES[tag];
+	}
+
+	public boolean isLabel() {
+		return tag >= TAG_INPUT && tag <= TAG_OUTPUT;
+	}
+
+	public boolean isConstMul() {
+		return tag == TAG_CONST_MUL || tag == TAG_CONST_MUL_NEG;
+	}
+
+	public int getNumInputs() {
+		return numInputs;
+	}
+
+	public int getInput(int k) {
+		return inputs[k];
+	}
+
+	public int getNumOutputs() {
+		return numOutputs;
+	}
+
+	public int getOutput(int k) {
+		return outputs[k];
+	}
+
+	/**
+	 * @return the wire of a label record.
+	 */
+	public int getWire() {
+		return inputs[0];
+	}
+
+	public BigInteger getConstant() {
+		return constant;
+	}
+
+	public String getDesc() {
+		return desc;
+	}
+
+	public void setOperation(int tag, int[] ins, int numIns, int[] outs, int numOuts, BigInteger constant,
+			String desc) {
+		this.tag = tag;
+		this.numInputs = numIns;
+		this.inputs = fit(inputs, numIns);
+		System.arraycopy(ins, 0, inputs, 0, numIns);
+		this.numOutputs = numOuts;
+		this.outputs = fit(outputs, numOuts);
+		System.arraycopy(outs, 0, outputs, 0, numOuts);
+		this.constant = constant;
+		this.desc = desc;
+	}
+
+	public void setLabel(int tag, int wire, String desc) {
+		this.tag = tag;
+		this.numInputs = 1;
+		this.inputs[0] = wire;
+		this.numOutputs = 0;
+		this.constant = null;
+		this.desc = desc;
+	}
+
+	/**
+	 * Sets this record to instruction i of the store, which must belong to
+	 * the circuit file.
+	 */
+	public void set(InstructionStore store, int i) {
+		desc = store.getDesc(i);
+		constant = null;
+		switch (store.getOpcode(i)) {
+		case InstructionStore.OP_INPUT:
+			setLabel(TAG_INPUT, store.getInputId(i, 0), desc);
+			return;
+		case InstructionStore.OP_NIZKINPUT:
+			setLabel(TAG_NIZKINPUT, store.getInputId(i, 0), desc);
+			return;
+		case InstructionStore.OP_OUTPUT:
+			setLabel(TAG_OUTPUT, store.getInputId(i, 0), desc);
+			return;
+		case InstructionStore.OP_CONST_MUL:
+			if (store.isNegativeConstant(i)) {
+				tag = TAG_CONST_MUL_NEG;
+				constant = store.getPrime().subtract(store.getConstant(i));
+			} else {
+				tag = TAG_CONST_MUL;
+				constant = store.getConstant(i);
+			}
+			break;
+		default:
+			if (!store.isBasicOp(i)) {
+				throw new IllegalArgumentException("Instruction " + i + " does not belong to the circuit file");
+			}
+			tag = store.getOpcode(i);
+		}
+		int[] arena = store.getWireIdArena();
+		int start = store.getArenaStart(i);
+		numInputs = store.getNumInputs(i);
+		inputs = fit(inputs, numInputs);
+		System.arraycopy(arena, start, inputs, 0, numInputs);
+		numOutputs = store.getNumOutputs(i);
+		outputs = fit(outputs, numOutputs);
+		System.arraycopy(arena, start + numInputs, outputs, 0, numOutputs);
+	}
+
+	static int[] fit(int[] array, int n) {
+		return array.length >= n ? array : new int[Math.max(n, 2 * array.length)];
+	}
+
+	/**
+	 * Renders the record exactly as in the .arith text format.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		appendTo(s);
+		return s.toString();
+	}
+
+	public void appendTo(StringBuilder s) {
+		s.append(NAMES[tag]);
+		if (isLabel()) {
+			s.append(' ').append(inputs[0]);
+			if (desc.length() > 0) {
+				s.append(LABEL_DESC_SEPARATOR).append(desc);
+			}
+			return;
+		}
+		if (isConstMul()) {
+			s.append(constant.toString(16));
+		}
+		s.append(" in ").append(numInputs).append(" <");
+		appendIds(s, inputs, numInputs);
+		s.append("> out ").append(numOutputs).append(" <");
+		appendIds(s, outputs, numOutputs);
+		s.append('>');
+		if (desc.length() > 0) {
+			s.append(OP_DESC_SEPARATOR).append(desc);
+		}
+	}
+
+	private static void appendIds(StringBuilder s, int[] ids, int n) {
+		for (int k = 0; k < n; k++) {
+			if (k > 0) {
+				s.append(' ');
+			}
+			s.append(ids[k]);
+		}
+	}
+
+	/**
+	 * Parses a line of the .arith text format (other than the first "total"
+	 * line) into this record.
+	 */
+	public void parse(String line) {
+		int space = line.indexOf(' ');
+		if (space < 0) {
+			throw new IllegalArgumentException("Malformed circuit line: " + line);
+		}
+		String opcode = line.substring(0, space);
+		constant = null;
+		switch (opcode) {
+		case "input":
+		case "nizkinput":
+		case "output":
+			tag = opcode.equals("input") ? TAG_INPUT : opcode.equals("nizkinput") ? TAG_NIZKINPUT : TAG_OUTPUT;
+			int descStart = line.indexOf(LABEL_DESC_SEPARATOR, space);
+			int end = descStart < 0 ? line.length() : descStart;
+			setLabel(tag, Integer.parseInt(line.substring(space + 1, end)),
+					descStart < 0 ? "" : line.substring(descStart + LABEL_DESC_SEPARATOR.length()));
+			return;
+		case "add":
+			tag = TAG_ADD;
+			break;
+		case "mul":
+			tag = TAG_MUL;
+			break;
+		case "xor":
+			tag = TAG_XOR;
+			break;
+		case "or":
+			tag = TAG_OR;
+			break;
+		case "split":
+			tag = TAG_SPLIT;
+			break;
+		case "pack":
+			tag = TAG_PACK;
+			break;
+		case "zerop":
+			tag = TAG_ZEROP;
+			break;
+		case "assert":
+			tag = TAG_ASSERT;
+			break;
+		default:
+			if (opcode.startsWith(NAMES[TAG_CONST_MUL_NEG])) {
+				tag = TAG_CONST_MUL_NEG;
+			} else if (opcode.startsWith(NAMES[TAG_CONST_MUL])) {
+				tag = TAG_CONST_MUL;
+			} else {
+				throw new IllegalArgumentException("Unknown circuit statement: " + line);
+			}
+			constant = new BigInteger(opcode.substring(NAMES[tag].length()), 16);
+		}
+		int inStart = line.indexOf('<', space);
+		int inEnd = line.indexOf('>', inStart);
+		int outStart = line.indexOf('<', inEnd);
+		int outEnd = line.indexOf('>', outStart);
+		if (inStart < 0 || inEnd < 0 || outStart < 0 || outEnd < 0) {
+			throw new IllegalArgumentException("Malformed circuit line: " + line);
+		}
+		numInputs = readIds(line, inStart + 1, inEnd, null);
+		inputs = fit(inputs, numInputs);
+		readIds(line, inStart + 1, inEnd, inputs);
+		numOutputs = readIds(line, outStart + 1, outEnd, null);
+		outputs = fit(outputs, numOutputs);
+		readIds(line, outStart + 1, outEnd, outputs);
+		if (line.startsWith(OP_DESC_SEPARATOR, outEnd + 1)) {
+			desc = line.substring(outEnd + 1 + OP_DESC_SEPARATOR.length());
+		} else {
+			desc = "";
+		}
+	}
+
+	/**
+	 * Reads the space-separated ids in line[from, to) into ids (if not null).
+	 * 
+	 * @return the number of ids
+	 */
+	private static int readIds(String line, int from, int to, int[] ids) {
+		int n = 0;
+		int v = -1;
+		for (int i = from; i <= to; i++) {
+			char c = i < to ? line.charAt(i) : ' ';
+			if (c == ' ') {
+				if (v >= 0) {
+					if (ids != null) {
+						ids[n] = v;
+					}
+					n++;
+					v = -1;
+				}
+			} else if (c >= '0' && c <= '9') {
+				v = (v < 0 ? 0 : 10 * v) + (c - '0');
+			} else {
+				throw new IllegalArgumentException("Malformed wire id in: " + line);
+			}
+		}
+		return n;
+	}
+}
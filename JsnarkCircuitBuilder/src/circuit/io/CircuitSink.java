@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.IOException;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Receives the instructions of a circuit while it is being generated (see
+ * CircuitGenerator.generateCircuit(CircuitSink, int)).
+ */
+public interface CircuitSink {
+
+	/**
+	 * Writes instruction i of the store. Only instructions that belong to the
+	 * circuit file are passed.
+	 */
+	public void write(InstructionStore store, int i) throws IOException;
+
+	/**
+	 * Called once after the last instruction, when the total number of wires
+	 * is known. The sink should be closed afterwards.
+	 */
+	public void finish(int totalWires) throws IOException;
+}
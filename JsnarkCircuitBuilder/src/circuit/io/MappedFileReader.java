@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through read-only memory-mapped windows, so that files larger
+ * than 2GB can be read sequentially.
+ */
+public class MappedFileReader implements Closeable {
+
+	private static final int WINDOW_SIZE = 64 << 20;
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private MappedByteBuffer buffer;
+	private long windowStart;
+
+	public MappedFileReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		fileSize = channel.size();
+		map(0, (int) Math.min(WINDOW_SIZE, fileSize));
+	}
+
+	private void map(long position, int size) throws IOException {
+		windowStart = position;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	private void ensure(int n) throws IOException {
+		if (buffer.remaining() < n) {
+			long position = position();
+			if (fileSize - position < n) {
+				throw new EOFException("Unexpected end of file at position " + position);
+			}
+			map(position, (int) Math.min(Math.max(WINDOW_SIZE, n), fileSize - position));
+		}
+	}
+
+	public long position() {
+		return windowStart + buffer.position();
+	}
+
+	public boolean hasRemaining() {
+		return position() < fileSize;
+	}
+
+	public int getByte() throws IOException {
+		ensure(1);
+		return buffer.get() & 0xFF;
+	}
+
+	public byte[] getBytes(int n) throws IOException {
+		ensure(n);
+		byte[] bytes = new byte[n];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	public long getVarint() throws IOException {
+		long v = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 63) {
+				throw new IOException("Malformed varint at position " + position());
+			}
+			b = getByte();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+
+	public int getVarintAsInt() throws IOException {
+		long v = getVarint();
+		if (v > Integer.MAX_VALUE) {
+			throw new IOException("Value out of range at position " + position());
+		}
+		return (int) v;
+	}
+
+	public BigInteger getFieldElement() throws IOException {
+		return new BigInteger(1, getBytes(BinaryFormat.FIELD_ELEMENT_SIZE));
+	}
+
+	public String getString() throws IOException {
+		int length = getVarintAsInt();
+		if (length == 0) {
+			return "";
+		}
+		return new String(getBytes(length), BinaryFormat.CHARSET);
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		channel.close();
+	}
+}
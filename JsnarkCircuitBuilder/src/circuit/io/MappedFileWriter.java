@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file through memory-mapped windows of a FileChannel. The file is
+ * extended one window at a time, and truncated to the written size on
+ * close().
+ */
+public class MappedFileWriter implements Closeable {
+
+	private static final int WINDOW_SIZE = 64 << 20;
+
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long windowStart;
+
+	public MappedFileWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		map(0, WINDOW_SIZE);
+	}
+
+	private void map(long position, int size) throws IOException {
+		if (buffer != null) {
+			buffer.force();
+		}
+		windowStart = position;
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+	}
+
+	private void ensure(int n) throws IOException {
+		if (buffer.remaining() < n) {
+			map(position(), Math.max(WINDOW_SIZE, n));
+		}
+	}
+
+	public long position() {
+		return windowStart + buffer.position();
+	}
+
+	public void putByte(int b) throws IOException {
+		ensure(1);
+		buffer.put((byte) b);
+	}
+
+	public void putBytes(byte[] bytes) throws IOException {
+		ensure(bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes an unsigned LEB128 varint.
+	 */
+	public void putVarint(long v) throws IOException {
+		ensure(10);
+		while ((v & ~0x7FL) != 0) {
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	/**
+	 * Writes a non-negative value as a fixed-size big-endian number.
+	 */
+	public void putFieldElement(BigInteger v) throws IOException {
+		ensure(BinaryFormat.FIELD_ELEMENT_SIZE);
+		byte[] bytes = v.toByteArray();
+		int offset = bytes[0] == 0 ? 1 : 0;
+		int length = bytes.length - offset;
+		if (v.signum() < 0 || length > BinaryFormat.FIELD_ELEMENT_SIZE) {
+			throw new IllegalArgumentException("The value does not fit in " + BinaryFormat.FIELD_ELEMENT_SIZE
+					+ " bytes: " + v.toString(16));
+		}
+		for (int i = length; i < BinaryFormat.FIELD_ELEMENT_SIZE; i++) {
+			buffer.put((byte) 0);
+		}
+		buffer.put(bytes, offset, length);
+	}
+
+	/**
+	 * Writes a varint that always takes numBytes bytes, so that it can be
+	 * overwritten later by patchVarint().
+	 * 
+	 * @return the position of the varint
+	 */
+	public long putPaddedVarint(long v, int numBytes) throws IOException {
+		long position = position();
+		ensure(numBytes);
+		buffer.put(paddedVarint(v, numBytes));
+		return position;
+	}
+
+	public void patchVarint(long position, long v, int numBytes) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(paddedVarint(v, numBytes));
+		while (bytes.hasRemaining()) {
+			channel.write(bytes, position + bytes.position());
+		}
+	}
+
+	private static byte[] paddedVarint(long v, int numBytes) {
+		if (numBytes < 10 && (v >>> (7 * numBytes)) != 0) {
+			throw new IllegalArgumentException("The value does not fit in " + numBytes + " varint bytes");
+		}
+		byte[] bytes = new byte[numBytes];
+		for (int i = 0; i < numBytes; i++) {
+			bytes[i] = (byte) ((v & 0x7F) | (i < numBytes - 1 ? 0x80 : 0));
+			v >>>= 7;
+		}
+		return bytes;
+	}
+
+	public void putString(String s) throws IOException {
+		byte[] bytes = s.getBytes(BinaryFormat.CHARSET);
+		putVarint(bytes.length);
+		putBytes(bytes);
+	}
+
+	@Override
+	public void close() throws IOException {
+		long size = position();
+		buffer.force();
+		buffer = null;
+		channel.truncate(size);
+		channel.close();
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Writes circuits in the .arith text format, when the total number of wires
+ * is only known at the end. The first line is reserved with a placeholder,
+ * and finish() writes the total number of wires padded with leading zeros,
+ * e.g. "total 0000012345".
+ */
+public class TextCircuitWriter implements CircuitSink, Closeable {
+
+	private static final int TOTAL_DIGITS = 10;
+
+	private final Path path;
+	private final BufferedWriter writer;
+	private final CircuitRecord record = new CircuitRecord();
+	private final StringBuilder line = new StringBuilder();
+
+	public TextCircuitWriter(Path path) throws IOException {
+		this.path = path;
+		writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		writer.write(totalLine(0));
+	}
+
+	private static String totalLine(int totalWires) {
+		String digits = Integer.toString(totalWires);
+		StringBuilder s = new StringBuilder("total ");
+		for (int i = digits.length(); i < TOTAL_DIGITS; i++) {
+			s.append('0');
+		}
+		return s.append(digits).append('\n').toString();
+	}
+
+	@Override
+	public void write(InstructionStore store, int i) throws IOException {
+		record.set(store, i);
+		line.setLength(0);
+		record.appendTo(line);
+		line.append('\n');
+		writer.append(line);
+	}
+
+	@Override
+	public void finish(int totalWires) throws IOException {
+		writer.close();
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.write(totalLine(totalWires).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
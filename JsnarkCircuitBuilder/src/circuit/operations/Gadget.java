@@ -3,6 +3,8 @@
  *******************************************************************************/
 package circuit.operations;
 
+import circuit.config.Config;
+import circuit.profiling.CircuitProfiler;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 
@@ -17,6 +19,20 @@ public abstract class Gadget {
 			this.description = desc[0];
 		else
 			this.description = "";
+		CircuitProfiler profiler = generator.getProfiler();
+		if (profiler != null) {
+			profiler.enterGadget(this);
+		}
+	}
+
+	// for the gadgets whose precomputed tables or constants only hold in the
+	// default field
+	protected void checkDefaultFieldPrime() {
+		if (!generator.getConfig().getFieldPrime().equals(Config.FIELD_PRIME)) {
+			throw new IllegalStateException(getClass().getSimpleName()
+					+ " only supports the default field prime, but the generator uses "
+					+ generator.getConfig().getFieldPrime());
+		}
 	}
 
 	public abstract Wire[] getOutputWires();
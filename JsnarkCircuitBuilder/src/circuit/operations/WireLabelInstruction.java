@@ -3,7 +3,7 @@
  *******************************************************************************/
 package circuit.operations;
 
-import circuit.config.Config;
+import circuit.config.CircuitConfig;
 import circuit.eval.CircuitEvaluator;
 import circuit.eval.Instruction;
 import circuit.structure.Wire;
@@ -42,9 +42,10 @@ public class WireLabelInstruction implements Instruction {
 
 	@Override
 	public void emit(CircuitEvaluator evaluator) {
-		if (type == LabelType.output && Config.outputVerbose || type == LabelType.debug && Config.debugVerbose) {
+		CircuitConfig config = evaluator.getCircuitGenerator().getConfig();
+		if (type == LabelType.output && config.isOutputVerbose() || type == LabelType.debug && config.isDebugVerbose()) {
 			System.out.println("\t[" + type + "] Value of Wire # " + w + (desc.length() > 0 ? " (" + desc + ")" : "") + " :: "
-					+ evaluator.getWireValue(w).toString(Config.hexOutputEnabled ? 16 : 10));
+					+ evaluator.getWireValue(w).toString(config.isHexOutputEnabled() ? 16 : 10));
 		}
 	}
 
@@ -52,6 +53,10 @@ public class WireLabelInstruction implements Instruction {
 		return type;
 	}
 
+	public String getDesc() {
+		return desc;
+	}
+
 	public boolean doneWithinCircuit() {
 		return type != LabelType.debug;
 	}
@@ -3,9 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class AddBasicOp extends BasicOp {
@@ -19,12 +17,8 @@ public class AddBasicOp extends BasicOp {
 	}
 	
 	@Override
-	public void compute(BigInteger[] assignment) {
-		BigInteger s = BigInteger.ZERO;
-		for (Wire w : inputs) {
-			s = s.add(assignment[w.getWireId()]);
-		}
-		assignment[outputs[0].getWireId()] = s.mod(Config.FIELD_PRIME);
+	public void compute(FieldElementStore values) {
+		values.sum(inputs, outputs[0].getWireId());
 	}
 	
 	@Override
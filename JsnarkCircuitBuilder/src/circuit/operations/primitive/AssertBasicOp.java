@@ -3,9 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class AssertBasicOp extends BasicOp {
@@ -15,23 +13,20 @@ public class AssertBasicOp extends BasicOp {
 	}
 	
 	@Override
-	protected void compute(BigInteger[] assignment) {
-		BigInteger leftSide = assignment[inputs[0].getWireId()].multiply(
-				assignment[inputs[1].getWireId()]).mod(
-						Config.FIELD_PRIME);
-		BigInteger rightSide = assignment[outputs[0].getWireId()];
-		boolean check = leftSide.equals(rightSide);
+	protected void compute(FieldElementStore values) {
+		boolean check = values.isProduct(inputs[0].getWireId(),
+				inputs[1].getWireId(), outputs[0].getWireId());
 		if (!check) {
 			System.err.println("Error - Assertion Failed " + this);
-			System.out.println(assignment[inputs[0].getWireId()] + "*"
-					+ assignment[inputs[1].getWireId()] + "!="
-					+ assignment[outputs[0].getWireId()]);
+			System.out.println(values.get(inputs[0].getWireId()) + "*"
+					+ values.get(inputs[1].getWireId()) + "!="
+					+ values.get(outputs[0].getWireId()));
 			throw new RuntimeException("Error During Evaluation");
 		}
 	}
 
 	@Override
-	protected void checkOutputs(BigInteger[] assignment) {
+	protected void checkOutputs(FieldElementStore values) {
 		// do nothing
 	}
 	
@@ -3,11 +3,11 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
 import util.Util;
 import circuit.eval.CircuitEvaluator;
+import circuit.eval.FieldElementStore;
 import circuit.eval.Instruction;
+import circuit.structure.InstructionIndex;
 import circuit.structure.Wire;
 
 public abstract class BasicOp implements Instruction {
@@ -49,26 +49,26 @@ public abstract class BasicOp implements Instruction {
 	}
 
 	public void evaluate(CircuitEvaluator evaluator) {
-		BigInteger[] assignment = evaluator.getAssignment();
-		checkInputs(assignment);
-		checkOutputs(assignment);
-		compute(assignment);
+		FieldElementStore values = evaluator.getValueStore();
+		checkInputs(values);
+		checkOutputs(values);
+		compute(values);
 	}
 
-	protected void checkInputs(BigInteger[] assignment) {
+	protected void checkInputs(FieldElementStore values) {
 		for (Wire w : inputs) {
-			if (assignment[w.getWireId()] == null) {
+			if (!values.isAssigned(w.getWireId())) {
 				System.err.println("Error - The inWire " + w + " has not been assigned\n" + this);
 				throw new RuntimeException("Error During Evaluation");
 			}
 		}
 	}
 
-	protected abstract void compute(BigInteger[] assignment);
+	protected abstract void compute(FieldElementStore values);
 
-	protected void checkOutputs(BigInteger[] assignment) {
+	protected void checkOutputs(FieldElementStore values) {
 		for (Wire w : outputs) {
-			if (assignment[w.getWireId()] != null) {
+			if (values.isAssigned(w.getWireId())) {
 				System.err.println("Error - The outWire " + w + " has already been assigned\n" + this);
 				throw new RuntimeException("Error During Evaluation");
 			}
@@ -91,18 +91,20 @@ public abstract class BasicOp implements Instruction {
 		return outputs;
 	}
 
+	public String getDesc() {
+		return desc;
+	}
+
 	public boolean doneWithinCircuit() {
 		return true;
 	}
 	
 	@Override
 	public int hashCode() {
-		// this method should be overriden when a subclass can have more than one opcode, or have other arguments
-		int h = getOpcode().hashCode();
-		for(Wire in:inputs){
-			h+=in.hashCode();
-		}
-		return h;
+		// a structural hash that is consistent with the equals() methods of the
+		// subclasses, see InstructionIndex.hash()
+		long h = InstructionIndex.hash(this);
+		return (int) (h ^ (h >>> 32));
 	}
 	
 	
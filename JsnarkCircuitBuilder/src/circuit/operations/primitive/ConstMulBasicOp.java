@@ -5,43 +5,63 @@ package circuit.operations.primitive;
 
 import java.math.BigInteger;
 
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
+import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 
 public class ConstMulBasicOp extends BasicOp {
 
 	private BigInteger constInteger;
 	private boolean inSign;
+	// the field prime of the generator
+	private BigInteger prime;
 	
 	public ConstMulBasicOp(Wire w, Wire out, BigInteger constInteger,
 			String...desc) {
 		super(new Wire[] { w }, new Wire[] { out }, desc);
+		prime = CircuitGenerator.getActiveCircuitGenerator().getConfig().getFieldPrime();
 		inSign = constInteger.signum() == -1;
 		if (!inSign) {
-			constInteger = constInteger.mod(Config.FIELD_PRIME);
+			constInteger = constInteger.mod(prime);
 			this.constInteger =constInteger;
 		} else {
 			constInteger = constInteger.negate();
-			constInteger = constInteger.mod(Config.FIELD_PRIME);
-			this.constInteger = Config.FIELD_PRIME.subtract(constInteger);
+			constInteger = constInteger.mod(prime);
+			this.constInteger = prime.subtract(constInteger);
 		}
 	}
 
+	/**
+	 * Recreates an operation from the values returned by getConstInteger() and
+	 * isNegative() of another operation, for the field with the given prime.
+	 */
+	public ConstMulBasicOp(Wire w, Wire out, BigInteger constInteger, boolean inSign, BigInteger prime,
+			String... desc) {
+		super(new Wire[] { w }, new Wire[] { out }, desc);
+		this.constInteger = constInteger;
+		this.inSign = inSign;
+		this.prime = prime;
+	}
+
+	public BigInteger getConstInteger() {
+		return constInteger;
+	}
+
+	public boolean isNegative() {
+		return inSign;
+	}
+
 	public String getOpcode(){
 		if (!inSign) {
 			return "const-mul-" + constInteger.toString(16);
 		} else{
-			return "const-mul-neg-" + Config.FIELD_PRIME.subtract(constInteger).toString(16);
+			return "const-mul-neg-" + prime.subtract(constInteger).toString(16);
 		}
 	}
 	
 	@Override
-	public void compute(BigInteger[] assignment) {
-		BigInteger result = assignment[inputs[0].getWireId()].multiply(constInteger);
-		if (result.bitLength() >= Config.LOG2_FIELD_PRIME) {
-			result = result.mod(Config.FIELD_PRIME);
-		}
-		assignment[outputs[0].getWireId()] = result;
+	public void compute(FieldElementStore values) {
+		values.mulConstant(inputs[0].getWireId(), constInteger, outputs[0].getWireId());
 	}
 	
 	@Override
@@ -61,15 +81,6 @@ public class ConstMulBasicOp extends BasicOp {
 		return 0;
 	}
 
-
-	@Override
-	public int hashCode() {
-		int h = constInteger.hashCode();
-		for(Wire in:inputs){
-			h+=in.hashCode();
-		}
-		return h;
-	}
 	
 	
 }
\ No newline at end of file
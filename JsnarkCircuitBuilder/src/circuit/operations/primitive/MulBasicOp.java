@@ -3,9 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class MulBasicOp extends BasicOp {
@@ -19,13 +17,9 @@ public class MulBasicOp extends BasicOp {
 	}
 	
 	@Override
-	public void compute(BigInteger[] assignment) {
-		BigInteger result = assignment[inputs[0].getWireId()]
-				.multiply(assignment[inputs[1].getWireId()]);
-		if (result.compareTo(Config.FIELD_PRIME) > 0) {
-			result = result.mod(Config.FIELD_PRIME);
-		}
-		assignment[outputs[0].getWireId()] = result;
+	public void compute(FieldElementStore values) {
+		values.mul(inputs[0].getWireId(), inputs[1].getWireId(),
+				outputs[0].getWireId());
 	}
 
 	@Override
@@ -3,8 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class NonZeroCheckBasicOp extends BasicOp {
@@ -17,14 +16,9 @@ public class NonZeroCheckBasicOp extends BasicOp {
 		return "zerop";
 	}
 	@Override
-	public void compute(BigInteger[] assignment) {
-
-		if (assignment[inputs[0].getWireId()].signum() == 0) {
-			assignment[outputs[1].getWireId()] = BigInteger.ZERO;
-		} else {
-			assignment[outputs[1].getWireId()] = BigInteger.ONE;
-		}
-		assignment[outputs[0].getWireId()] = BigInteger.ZERO; // a dummy value
+	public void compute(FieldElementStore values) {
+		values.setBit(outputs[1].getWireId(), !values.isZero(inputs[0].getWireId()));
+		values.setBit(outputs[0].getWireId(), false); // a dummy value
 	}
 	
 	@Override
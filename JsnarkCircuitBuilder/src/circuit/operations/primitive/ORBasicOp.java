@@ -3,9 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import util.Util;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class ORBasicOp extends BasicOp {
@@ -18,10 +16,10 @@ public class ORBasicOp extends BasicOp {
 		return "or";
 	}
 	
-	public void checkInputs(BigInteger[] assignment) {
-		super.checkInputs(assignment);
-		boolean check = Util.isBinary(assignment[inputs[0].getWireId()])
-				&& Util.isBinary(assignment[inputs[1].getWireId()]);
+	public void checkInputs(FieldElementStore values) {
+		super.checkInputs(values);
+		boolean check = values.isBinary(inputs[0].getWireId())
+				&& values.isBinary(inputs[1].getWireId());
 		if (!check){			
 			System.err.println("Error - Input(s) to OR are not binary. "
 					+ this);
@@ -31,9 +29,9 @@ public class ORBasicOp extends BasicOp {
 	}
 
 	@Override
-	public void compute(BigInteger[] assignment) {
-		assignment[outputs[0].getWireId()] = assignment[inputs[0].getWireId()].or(
-				assignment[inputs[1].getWireId()]);
+	public void compute(FieldElementStore values) {
+		values.setBit(outputs[0].getWireId(), !values.isZero(inputs[0].getWireId())
+				|| !values.isZero(inputs[1].getWireId()));
 	}
 
 	@Override
@@ -3,10 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import util.Util;
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class PackBasicOp extends BasicOp {
@@ -20,11 +17,11 @@ public class PackBasicOp extends BasicOp {
 	}
 	
 	@Override
-	public void checkInputs(BigInteger[] assignment) {
-		super.checkInputs(assignment);
+	public void checkInputs(FieldElementStore values) {
+		super.checkInputs(values);
 		boolean check = true;
 		for (int i = 0; i < inputs.length; i++) {
-			check &= Util.isBinary(assignment[inputs[i].getWireId()]);
+			check &= values.isBinary(inputs[i].getWireId());
 		}
 		if (!check) {
 			System.err.println("Error - Input(s) to Pack are not binary. "
@@ -35,13 +32,8 @@ public class PackBasicOp extends BasicOp {
 	}
 
 	@Override
-	public void compute(BigInteger[] assignment) {
-		BigInteger sum = BigInteger.ZERO;
-		for (int i = 0; i < inputs.length; i++) {
-			sum = sum.add(assignment[inputs[i].getWireId()]
-					.multiply(new BigInteger("2").pow(i)));
-		}
-		assignment[outputs[0].getWireId()] = sum.mod(Config.FIELD_PRIME);
+	public void compute(FieldElementStore values) {
+		values.pack(inputs, outputs[0].getWireId());
 	}
 
 	@Override
@@ -3,9 +3,7 @@
  *******************************************************************************/
 package circuit.operations.primitive;
 
-import java.math.BigInteger;
-
-import circuit.config.Config;
+import circuit.eval.FieldElementStore;
 import circuit.structure.Wire;
 
 public class SplitBasicOp extends BasicOp {
@@ -18,28 +16,20 @@ public class SplitBasicOp extends BasicOp {
 		return "split";
 	}
 	
-	protected void checkInputs(BigInteger[] assignment) {
-		super.checkInputs(assignment);
-		if (outputs.length < assignment[inputs[0].getWireId()].bitLength()) {
+	protected void checkInputs(FieldElementStore values) {
+		super.checkInputs(values);
+		if (outputs.length < values.bitLength(inputs[0].getWireId())) {
 			System.err
 					.println("Error in Split --- The number of bits does not fit -- Input: "
-							+ assignment[inputs[0].getWireId()].toString(16) + "\n\t" + this);
+							+ values.get(inputs[0].getWireId()).toString(16) + "\n\t" + this);
 
 			throw new RuntimeException("Error During Evaluation -- " + this);
 		}
 	}
 
 	@Override
-	protected void compute(BigInteger[] assignment) {
-
-		BigInteger inVal = assignment[inputs[0].getWireId()];
-		if (inVal.compareTo(Config.FIELD_PRIME) > 0) {
-			inVal = inVal.mod(Config.FIELD_PRIME);
-		}
-		for (int i = 0; i < outputs.length; i++) {
-			assignment[outputs[i].getWireId()] = inVal.testBit(i) ? BigInteger.ONE
-					: BigInteger.ZERO;
-		}
+	protected void compute(FieldElementStore values) {
+		values.split(inputs[0].getWireId(), outputs);
 	}
 
 	@Override
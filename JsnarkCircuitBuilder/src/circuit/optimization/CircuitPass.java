@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * A rewrite of the instructions of a circuit into a new store, in which the
+ * wires are numbered in the order they are defined. Only the instructions
+ * that belong to the circuit file are kept, i.e. debug labels and prover
+ * computations are dropped.
+ */
+abstract class CircuitPass {
+
+	protected final InstructionStore in;
+	protected final InstructionStore out;
+
+	// the new id of every wire of the input, or -1 if the wire was removed
+	protected final int[] newIds;
+	protected int numWires;
+
+	private int[] ids = new int[16];
+
+	CircuitPass(InstructionStore in, int numWires) {
+		this.in = in;
+		out = new InstructionStore(in.getPrime());
+		newIds = new int[numWires];
+		Arrays.fill(newIds, -1);
+	}
+
+	abstract void run();
+
+	/**
+	 * @return a new wire id that does not correspond to a wire of the input
+	 */
+	protected int newWire() {
+		return numWires++;
+	}
+
+	protected int newWire(int originalId) {
+		newIds[originalId] = numWires;
+		return numWires++;
+	}
+
+	/**
+	 * Appends instruction i of the input with renumbered wires. The inputs of
+	 * the instruction must have been assigned new ids before.
+	 */
+	protected void copy(int i) {
+		byte opcode = in.getOpcode(i);
+		if (in.isLabel(i)) {
+			int id = in.getInputId(i, 0);
+			if (opcode == InstructionStore.OP_INPUT || opcode == InstructionStore.OP_NIZKINPUT) {
+				newWire(id);
+			}
+			out.addLabel(opcode, newIds[id], in.getDesc(i));
+			return;
+		}
+		int numInputs = in.getNumInputs(i);
+		int numOutputs = in.getNumOutputs(i);
+		ensureCapacity(numInputs + numOutputs);
+		for (int k = 0; k < numInputs; k++) {
+			ids[k] = newIds[in.getInputId(i, k)];
+		}
+		for (int k = 0; k < numOutputs; k++) {
+			// the output of an assertion is defined before, and a pass can
+			// also assign the ids of some wires in advance
+			int id = in.getOutputId(i, k);
+			ids[numInputs + k] = newIds[id] != -1 ? newIds[id] : newWire(id);
+		}
+		boolean isConstMul = opcode == InstructionStore.OP_CONST_MUL;
+		out.addOperation(opcode, ids, 0, numInputs, numOutputs, isConstMul ? in.getConstant(i) : null,
+				isConstMul && in.isNegativeConstant(i), in.getDesc(i));
+	}
+
+	/**
+	 * Appends an operation on new wire ids, e.g. one that is not in the input.
+	 */
+	protected void add(byte opcode, int[] inputs, int numInputs, int output, BigInteger constant, String desc) {
+		ensureCapacity(numInputs + 1);
+		System.arraycopy(inputs, 0, ids, 0, numInputs);
+		ids[numInputs] = output;
+		// constants in the upper half of the field are written as negative
+		// constants, which are shorter
+		boolean negative = constant != null && constant.shiftLeft(1).compareTo(in.getPrime()) > 0;
+		out.addOperation(opcode, ids, 0, numInputs, 1, constant, negative, desc);
+	}
+
+	private void ensureCapacity(int n) {
+		if (ids.length < n) {
+			ids = new int[Math.max(n, ids.length * 2)];
+		}
+	}
+}
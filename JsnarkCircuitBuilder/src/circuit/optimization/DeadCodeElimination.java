@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Removes the operations whose outputs do not reach an output or an
+ * assertion, e.g. the unused wires of a gadget, and then the operations that
+ * only they use.
+ *
+ * Split operations are always kept, since they constrain their input to the
+ * given bitwidth, even if no bit is used afterwards. Every other operation
+ * can be satisfied for any value of its inputs, so removing it together with
+ * its outputs does not change which inputs satisfy the circuit. Input and
+ * nizkinput wires are always kept, so that the input file stays the same.
+ */
+class DeadCodeElimination extends CircuitPass {
+
+	private final boolean[] live;
+	private final boolean[] kept;
+
+	DeadCodeElimination(InstructionStore in, int numWires) {
+		super(in, numWires);
+		live = new boolean[numWires];
+		kept = new boolean[in.size()];
+	}
+
+	@Override
+	void run() {
+		for (int i = in.size() - 1; i >= 0; i--) {
+			if (!in.doneWithinCircuit(i)) {
+				continue;
+			}
+			byte opcode = in.getOpcode(i);
+			if (in.isLabel(i)) {
+				kept[i] = true;
+				if (opcode == InstructionStore.OP_OUTPUT) {
+					live[in.getInputId(i, 0)] = true;
+				}
+				continue;
+			}
+			boolean isLive = opcode == InstructionStore.OP_ASSERT || opcode == InstructionStore.OP_SPLIT;
+			for (int k = 0; k < in.getNumOutputs(i) && !isLive; k++) {
+				isLive = live[in.getOutputId(i, k)];
+			}
+			if (isLive) {
+				kept[i] = true;
+				for (int k = 0; k < in.getNumInputs(i); k++) {
+					live[in.getInputId(i, k)] = true;
+				}
+				if (opcode == InstructionStore.OP_ASSERT) {
+					live[in.getOutputId(i, 0)] = true;
+				}
+			}
+		}
+
+		for (int i = 0; i < in.size(); i++) {
+			if (kept[i]) {
+				copy(i);
+			}
+		}
+	}
+}
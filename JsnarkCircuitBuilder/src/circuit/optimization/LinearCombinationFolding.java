@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Folds trees of add and const-mul operations into a single linear
+ * combination. A linear wire is folded into the operation that uses it if it
+ * is used exactly once, by another add or const-mul operation, and is not an
+ * output. The remaining linear wires (the roots) are then computed from the
+ * other wires by one const-mul per coefficient other than one and one add,
+ * e.g. a.sub(b).mul(3).add(c) becomes const-mul-3 a, const-mul-neg-3 b and a
+ * single add.
+ *
+ * A tree is only replaced if that needs fewer operations, which is not the
+ * case for e.g. 5 * (a + b + c). A root that is equal to another wire is
+ * replaced by that wire.
+ */
+class LinearCombinationFolding extends CircuitPass {
+
+	// the instruction that defines each wire (-1 for input wires), and the
+	// last instruction that uses it
+	private final int[] definitions;
+	private final int[] users;
+	private final int[] numUses;
+
+	private final LinkedHashMap<Integer, BigInteger> terms = new LinkedHashMap<Integer, BigInteger>();
+	private final ArrayList<Integer> treeOps = new ArrayList<Integer>();
+	private final ArrayList<Integer> stack = new ArrayList<Integer>();
+	private final ArrayList<BigInteger> factors = new ArrayList<BigInteger>();
+	private int[] termIds = new int[16];
+	private final int[] singleId = new int[1];
+
+	LinearCombinationFolding(InstructionStore in, int numWires) {
+		super(in, numWires);
+		definitions = new int[numWires];
+		users = new int[numWires];
+		numUses = new int[numWires];
+		Arrays.fill(definitions, -1);
+	}
+
+	private boolean isLinear(int i) {
+		byte opcode = in.getOpcode(i);
+		return opcode == InstructionStore.OP_ADD || opcode == InstructionStore.OP_CONST_MUL;
+	}
+
+	/**
+	 * @return whether wire id is folded into the operation that uses it
+	 */
+	private boolean isFolded(int id) {
+		return definitions[id] != -1 && isLinear(definitions[id]) && numUses[id] == 1 && isLinear(users[id]);
+	}
+
+	@Override
+	void run() {
+		for (int i = 0; i < in.size(); i++) {
+			if (!in.doneWithinCircuit(i)) {
+				continue;
+			}
+			byte opcode = in.getOpcode(i);
+			if (opcode == InstructionStore.OP_OUTPUT) {
+				// outputs are never folded
+				numUses[in.getInputId(i, 0)] += 2;
+			} else if (in.isBasicOp(i)) {
+				for (int k = 0; k < in.getNumInputs(i); k++) {
+					numUses[in.getInputId(i, k)]++;
+					users[in.getInputId(i, k)] = i;
+				}
+				for (int k = 0; k < in.getNumOutputs(i); k++) {
+					if (opcode == InstructionStore.OP_ASSERT) {
+						numUses[in.getOutputId(i, k)]++;
+						users[in.getOutputId(i, k)] = i;
+					} else {
+						definitions[in.getOutputId(i, k)] = i;
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < in.size(); i++) {
+			if (!in.doneWithinCircuit(i)) {
+				continue;
+			}
+			if (!isLinear(i)) {
+				copy(i);
+			} else if (!isFolded(in.getOutputId(i, 0))) {
+				fold(i);
+			}
+		}
+	}
+
+	/**
+	 * Emits the linear combination computed by the tree of folded operations
+	 * that ends at operation root.
+	 */
+	private void fold(int root) {
+		terms.clear();
+		treeOps.clear();
+		stack.clear();
+		factors.clear();
+		stack.add(root);
+		factors.add(BigInteger.ONE);
+		while (!stack.isEmpty()) {
+			int i = stack.remove(stack.size() - 1);
+			BigInteger factor = factors.remove(factors.size() - 1);
+			treeOps.add(i);
+			if (in.getOpcode(i) == InstructionStore.OP_CONST_MUL) {
+				factor = factor.multiply(in.getConstant(i)).mod(in.getPrime());
+			}
+			for (int k = 0; k < in.getNumInputs(i); k++) {
+				int id = in.getInputId(i, k);
+				if (isFolded(id)) {
+					stack.add(definitions[id]);
+					factors.add(factor);
+				} else {
+					BigInteger c = terms.get(id);
+					terms.put(id, c == null ? factor : c.add(factor).mod(in.getPrime()));
+				}
+			}
+		}
+
+		int numTerms = 0;
+		int numCoefficients = 0;
+		for (BigInteger c : terms.values()) {
+			if (c.signum() != 0) {
+				numTerms++;
+				if (!c.equals(BigInteger.ONE)) {
+					numCoefficients++;
+				}
+			}
+		}
+		int numFoldedOps = numTerms == 0 ? 1 : numCoefficients + (numTerms > 1 ? 1 : 0);
+		int rootId = in.getOutputId(root, 0);
+		if (numFoldedOps >= treeOps.size()) {
+			// the operations of the tree are kept, in the order of the input
+			treeOps.sort(null);
+			for (int i : treeOps) {
+				copy(i);
+			}
+		} else if (numTerms == 0) {
+			// wire 0 is the one-wire
+			singleId[0] = newIds[0];
+			add(InstructionStore.OP_CONST_MUL, singleId, 1, newWire(rootId), BigInteger.ZERO, in.getDesc(root));
+		} else if (numFoldedOps == 0) {
+			for (Map.Entry<Integer, BigInteger> term : terms.entrySet()) {
+				if (term.getValue().signum() != 0) {
+					newIds[rootId] = newIds[term.getKey()];
+				}
+			}
+		} else {
+			if (termIds.length < numTerms) {
+				termIds = new int[Math.max(numTerms, termIds.length * 2)];
+			}
+			int n = 0;
+			for (Map.Entry<Integer, BigInteger> term : terms.entrySet()) {
+				BigInteger c = term.getValue();
+				int id = newIds[term.getKey()];
+				if (c.signum() == 0) {
+					continue;
+				} else if (c.equals(BigInteger.ONE)) {
+					termIds[n++] = id;
+				} else {
+					int product = numTerms == 1 ? newWire(rootId) : newWire();
+					singleId[0] = id;
+					add(InstructionStore.OP_CONST_MUL, singleId, 1, product, c,
+							numTerms == 1 ? in.getDesc(root) : "");
+					termIds[n++] = product;
+				}
+			}
+			if (numTerms > 1) {
+				add(InstructionStore.OP_ADD, termIds, n, newWire(rootId), null, in.getDesc(root));
+			}
+		}
+	}
+}
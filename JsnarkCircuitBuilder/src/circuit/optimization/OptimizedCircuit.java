@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.FieldElementStore;
+import circuit.io.BinaryCircuitWriter;
+import circuit.io.BinaryWitnessWriter;
+import circuit.io.CircuitRecord;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * An optimized copy of the circuit of a generator, to be written to the
+ * circuit and input files instead of the original one. The generator itself
+ * is not changed, i.e. the circuit is still evaluated as generated (including
+ * the prover computations), and writeInputFile() maps the values of the
+ * original wires to the optimized circuit.
+ *
+ * <pre>
+ * generator.generateCircuit();
+ * generator.evalCircuit();
+ * OptimizedCircuit circuit = new OptimizedCircuit(generator);
+ * circuit.eliminateDeadCode();
+ * circuit.foldLinearCombinations();
+ * circuit.renumberWires();
+ * circuit.writeCircuitFile(generator.getName() + ".arith");
+ * circuit.writeInputFile(generator.getCircuitEvaluator(), generator.getName() + ".in");
+ * </pre>
+ */
+public class OptimizedCircuit {
+
+	private final String name;
+	private final InstructionStore original;
+	private final int numOriginalWires;
+
+	private InstructionStore instructions;
+	private int numWires;
+	private int numOfConstraints;
+	// the id of every original wire in the optimized circuit (-1 if it was
+	// removed), or null if no pass has run yet
+	private int[] newIds;
+
+	public OptimizedCircuit(CircuitGenerator generator) {
+		name = generator.getName();
+		original = generator.getEvaluationQueue();
+		numOriginalWires = generator.getNumWires();
+		instructions = original;
+		numWires = numOriginalWires;
+		numOfConstraints = countConstraints(original);
+	}
+
+	/**
+	 * Removes the operations that do not contribute to an output or an
+	 * assertion, see DeadCodeElimination.
+	 */
+	public void eliminateDeadCode() {
+		run(new DeadCodeElimination(instructions, numWires), "Dead code elimination");
+	}
+
+	/**
+	 * Folds trees of add and const-mul operations into one linear combination
+	 * each, e.g. sumAllElements() of n wires multiplied by constants becomes
+	 * n const-mul operations and one add, instead of n const-mul and n-1 add
+	 * operations. Linear operations do not add constraints, but every
+	 * operation adds a wire to the circuit file.
+	 */
+	public void foldLinearCombinations() {
+		run(new LinearCombinationFolding(instructions, numWires), "Linear combination folding");
+	}
+
+	/**
+	 * Renumbers the wires in the order they are computed, after the input
+	 * and output wires, see WireRenumbering. This is best done after the
+	 * other passes.
+	 */
+	public void renumberWires() {
+		run(new WireRenumbering(instructions, numWires), "Wire renumbering");
+	}
+
+	private void run(CircuitPass pass, String passName) {
+		pass.run();
+		if (newIds == null) {
+			newIds = pass.newIds;
+		} else {
+			for (int i = 0; i < numOriginalWires; i++) {
+				if (newIds[i] != -1) {
+					newIds[i] = pass.newIds[newIds[i]];
+				}
+			}
+		}
+		int numRemovedWires = numWires - pass.numWires;
+		int numRemovedConstraints = numOfConstraints - countConstraints(pass.out);
+		instructions = pass.out;
+		numWires = pass.numWires;
+		numOfConstraints -= numRemovedConstraints;
+		System.out.println(passName + " for < " + name + " > removed " + numRemovedWires + " wires and "
+				+ numRemovedConstraints + " constraints");
+	}
+
+	private static int countConstraints(InstructionStore store) {
+		int n = 0;
+		for (int i = 0; i < store.size(); i++) {
+			if (store.isBasicOp(i)) {
+				n += InstructionStore.getNumMulGates(store.getOpcode(i), store.getNumOutputs(i));
+			}
+		}
+		return n;
+	}
+
+	public InstructionStore getInstructions() {
+		return instructions;
+	}
+
+	public int getNumWires() {
+		return numWires;
+	}
+
+	public int getNumOfConstraints() {
+		return numOfConstraints;
+	}
+
+	/**
+	 * @return the number of lines of the circuit file, excluding the total
+	 *         line
+	 */
+	public int getNumLines() {
+		int n = 0;
+		for (int i = 0; i < instructions.size(); i++) {
+			if (instructions.doneWithinCircuit(i)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the id of an original wire in the optimized circuit, or -1 if
+	 *         the wire was removed
+	 */
+	public int getNewWireId(int originalId) {
+		return newIds == null ? originalId : newIds[originalId];
+	}
+
+	public void writeCircuitFile(String fileName) {
+		CircuitRecord record = new CircuitRecord();
+		StringBuilder line = new StringBuilder();
+		try (PrintWriter printWriter = new PrintWriter(
+				Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8))) {
+			printWriter.println("total " + numWires);
+			for (int i = 0; i < instructions.size(); i++) {
+				if (instructions.doneWithinCircuit(i)) {
+					record.set(instructions, i);
+					line.setLength(0);
+					record.appendTo(line);
+					line.append('\n');
+					printWriter.append(line);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void writeBinaryCircuitFile(String fileName) {
+		try {
+			BinaryCircuitWriter.write(instructions, numWires, Paths.get(fileName));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the values of the input and nizkinput wires, as assigned by an
+	 * evaluator of the original circuit.
+	 */
+	public void writeInputFile(CircuitEvaluator evaluator, String fileName) {
+		FieldElementStore values = evaluator.getValueStore();
+		try (PrintWriter printWriter = new PrintWriter(
+				Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8))) {
+			for (int i = 0; i < original.size(); i++) {
+				if (isInput(i)) {
+					int id = original.getInputId(i, 0);
+					printWriter.println(getNewWireId(id) + " " + values.get(id).toString(16));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void writeBinaryInputFile(CircuitEvaluator evaluator, String fileName) {
+		FieldElementStore values = evaluator.getValueStore();
+		try (BinaryWitnessWriter writer = new BinaryWitnessWriter(Paths.get(fileName))) {
+			for (int i = 0; i < original.size(); i++) {
+				if (isInput(i)) {
+					int id = original.getInputId(i, 0);
+					writer.write(getNewWireId(id), values.get(id));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean isInput(int i) {
+		byte opcode = original.getOpcode(i);
+		return opcode == InstructionStore.OP_INPUT || opcode == InstructionStore.OP_NIZKINPUT;
+	}
+}
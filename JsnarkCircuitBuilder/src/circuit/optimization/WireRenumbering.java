@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import circuit.structure.InstructionStore;
+
+/**
+ * Renumbers the wires in the layout of an R1CS assignment: the one-wire and
+ * the input wires first, then the output wires, and then the nizkinput and
+ * all other wires in the order they are computed. The input labels are moved
+ * to the beginning of the circuit and the output labels to the end, while
+ * the nizkinput labels stay next to the operations that use them.
+ *
+ * The public wires can then be found at the beginning of the assignment, and
+ * the other wires are numbered consecutively in evaluation order, without the
+ * gaps that removed operations leave in the numbering.
+ */
+class WireRenumbering extends CircuitPass {
+
+	WireRenumbering(InstructionStore in, int numWires) {
+		super(in, numWires);
+	}
+
+	@Override
+	void run() {
+		copyLabels(InstructionStore.OP_INPUT);
+		for (int i = 0; i < in.size(); i++) {
+			// an output can also be an input wire, or appear more than once
+			if (in.getOpcode(i) == InstructionStore.OP_OUTPUT && newIds[in.getInputId(i, 0)] == -1) {
+				newWire(in.getInputId(i, 0));
+			}
+		}
+		for (int i = 0; i < in.size(); i++) {
+			if (in.getOpcode(i) == InstructionStore.OP_NIZKINPUT || (in.doneWithinCircuit(i) && in.isBasicOp(i))) {
+				copy(i);
+			}
+		}
+		copyLabels(InstructionStore.OP_OUTPUT);
+	}
+
+	private void copyLabels(byte opcode) {
+		for (int i = 0; i < in.size(); i++) {
+			if (in.getOpcode(i) == opcode) {
+				copy(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.profiling;
+
+import java.io.IOException;
+import java.lang.StackWalker.StackFrame;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import circuit.operations.Gadget;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Records the constraints, wires, deduplicated operations, time and allocated
+ * bytes of every gadget while a circuit is generated, and the time of its
+ * instructions while it is evaluated by a CircuitEvaluator. The gadgets are
+ * reported as a tree, where the instances of a gadget class under the same
+ * parent are added up, e.g.
+ *
+ * <pre>
+ * CircuitProfiler profiler = new CircuitProfiler();
+ * generator.setProfiler(profiler);
+ * generator.generateCircuit();
+ * generator.evalCircuit();
+ * System.out.println(profiler);
+ * profiler.writeJson(Paths.get(generator.getName() + "_profile.json"));
+ * </pre>
+ *
+ * A gadget is entered by the constructor of Gadget, and left when its
+ * constructor has returned, which is detected from the call stack before the
+ * next operation is added. The time and the allocations of the profiler are
+ * not counted, but walking the call stack makes generation several times
+ * slower (about ten times for RSA-2048). Operations repeated by a
+ * template (see CircuitGenerator.buildFromTemplate()) are counted for the
+ * gadget that instantiates the template.
+ */
+public class CircuitProfiler {
+
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+
+	static {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		THREAD_BEAN = bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+						? (com.sun.management.ThreadMXBean) bean : null;
+	}
+
+	private static class Scope {
+
+		final ProfileNode node;
+		// null for the root
+		final Class<?> gadgetClass;
+		// the outermost constructor frame of the gadget, counted from the
+		// bottom of the stack, and its position when the gadget was entered
+		final int frameDepth;
+		final int byteCodeIndex;
+		final long numOfConstraints;
+		final long numWires;
+		final long numDeduplicated;
+		final long nanos;
+		final long allocatedBytes;
+
+		Scope(ProfileNode node, Class<?> gadgetClass, int frameDepth, int byteCodeIndex, long numOfConstraints,
+				long numWires, long numDeduplicated, long nanos, long allocatedBytes) {
+			this.node = node;
+			this.gadgetClass = gadgetClass;
+			this.frameDepth = frameDepth;
+			this.byteCodeIndex = byteCodeIndex;
+			this.numOfConstraints = numOfConstraints;
+			this.numWires = numWires;
+			this.numDeduplicated = numDeduplicated;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	private CircuitGenerator generator;
+	private ProfileNode root;
+	// the root and the gadgets whose constructors have not returned
+	private ArrayList<Scope> scopes;
+	private long numDeduplicated;
+	// the time and the allocations of the profiler itself
+	private long overheadNanos;
+	private long overheadBytes;
+
+	// the instructions from segmentStarts[k] to segmentStarts[k + 1] were
+	// added by segmentNodes[k]
+	private int[] segmentStarts;
+	private ProfileNode[] segmentNodes;
+	private int numSegments;
+	private int numInstructions;
+
+	/**
+	 * Called by the generator before the circuit is generated.
+	 */
+	public void start(CircuitGenerator generator) {
+		this.generator = generator;
+		root = new ProfileNode(generator.getName());
+		root.numCalls = 1;
+		scopes = new ArrayList<Scope>();
+		numDeduplicated = 0;
+		overheadNanos = 0;
+		overheadBytes = 0;
+		segmentStarts = new int[64];
+		segmentNodes = new ProfileNode[64];
+		numSegments = 0;
+		numInstructions = -1;
+		scopes.add(openScope(root, null, -1, -1));
+	}
+
+	/**
+	 * Called by the constructor of Gadget.
+	 */
+	public void enterGadget(Gadget gadget) {
+		if (!isActive()) {
+			return;
+		}
+		long nanos = System.nanoTime();
+		long bytes = getAllocatedBytes();
+		Class<?> gadgetClass = gadget.getClass();
+		List<StackFrame> stack = getStack();
+		int n = stack.size();
+		// the constructors of the new gadget are called before the one of
+		// Gadget, and the outermost one can be recognized when a gadget that
+		// returned already was at the same frame
+		int i = 0;
+		while (stack.get(i).getDeclaringClass() != Gadget.class) {
+			i++;
+		}
+		int outermost = i + 1;
+		for (int k = i + 2; k < n && isConstructor(stack.get(k), gadgetClass); k++) {
+			Scope scope = findScope(n - 1 - k);
+			if (scope != null && scope.byteCodeIndex != stack.get(k).getByteCodeIndex()) {
+				// the gadget that creates the new one in its constructor
+				break;
+			}
+			outermost = k;
+		}
+		int frameDepth = n - 1 - outermost;
+		while (scopes.size() > 1 && (scopes.get(scopes.size() - 1).frameDepth >= frameDepth
+				|| !isOnStack(scopes.get(scopes.size() - 1), stack))) {
+			leaveScope();
+		}
+		ProfileNode node = scopes.get(scopes.size() - 1).node.getChild(
+				gadgetClass.getSimpleName().isEmpty() ? gadgetClass.getName() : gadgetClass.getSimpleName());
+		node.numCalls++;
+		addOverhead(nanos, bytes);
+		scopes.add(openScope(node, gadgetClass, frameDepth, stack.get(outermost).getByteCodeIndex()));
+	}
+
+	/**
+	 * Called by the generator before an operation or a label is added as the
+	 * instruction i.
+	 */
+	public void beforeInstruction(int i) {
+		if (!isActive()) {
+			return;
+		}
+		long nanos = System.nanoTime();
+		long bytes = getAllocatedBytes();
+		if (!isInnermostGadgetOnStack()) {
+			List<StackFrame> stack = getStack();
+			while (scopes.size() > 1 && !isOnStack(scopes.get(scopes.size() - 1), stack)) {
+				leaveScope();
+			}
+		}
+		ProfileNode node = scopes.get(scopes.size() - 1).node;
+		if (numSegments == 0 || segmentNodes[numSegments - 1] != node) {
+			if (numSegments > 0 && segmentStarts[numSegments - 1] == i) {
+				// no instruction was added since the last segment started
+				numSegments--;
+			}
+			if (numSegments == segmentStarts.length) {
+				segmentStarts = Arrays.copyOf(segmentStarts, 2 * numSegments);
+				segmentNodes = Arrays.copyOf(segmentNodes, 2 * numSegments);
+			}
+			segmentStarts[numSegments] = i;
+			segmentNodes[numSegments] = node;
+			numSegments++;
+		}
+		addOverhead(nanos, bytes);
+	}
+
+	/**
+	 * Called by the generator when an operation is found in the evaluation
+	 * queue already.
+	 */
+	public void countDeduplicated() {
+		numDeduplicated++;
+	}
+
+	/**
+	 * Called by the generator when the circuit is generated.
+	 */
+	public void finish(int numInstructions) {
+		while (!scopes.isEmpty()) {
+			leaveScope();
+		}
+		this.numInstructions = numInstructions;
+	}
+
+	private boolean isActive() {
+		return scopes != null && !scopes.isEmpty();
+	}
+
+	private Scope openScope(ProfileNode node, Class<?> gadgetClass, int frameDepth, int byteCodeIndex) {
+		return new Scope(node, gadgetClass, frameDepth, byteCodeIndex, generator.getNumOfConstraints(),
+				generator.getNumWires(), numDeduplicated, System.nanoTime() - overheadNanos,
+				getAllocatedBytes() - overheadBytes);
+	}
+
+	private Scope findScope(int frameDepth) {
+		for (int k = 1; k < scopes.size(); k++) {
+			if (scopes.get(k).frameDepth == frameDepth) {
+				return scopes.get(k);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the constructor of the gadget has not returned, given
+	 *         that no other gadget was entered since then at the same frame
+	 */
+	private static boolean isOnStack(Scope scope, List<StackFrame> stack) {
+		int k = stack.size() - 1 - scope.frameDepth;
+		return k >= 0 && isConstructor(stack.get(k), scope.gadgetClass);
+	}
+
+	/**
+	 * A cheaper check than isOnStack() for the common case: the nearest
+	 * gadget constructor on the stack belongs to the innermost gadget, unless
+	 * another open gadget could have the same constructor.
+	 */
+	private boolean isInnermostGadgetOnStack() {
+		if (scopes.size() == 1) {
+			return false;
+		}
+		Class<?> innermostClass = scopes.get(scopes.size() - 1).gadgetClass;
+		Class<?> c = STACK_WALKER.walk(frames -> frames.filter(CircuitProfiler::isGadgetConstructor).findFirst()
+				.map(StackFrame::getDeclaringClass).orElse(null));
+		if (c == null || !c.isAssignableFrom(innermostClass)) {
+			return false;
+		}
+		for (int k = 1; k < scopes.size() - 1; k++) {
+			if (c.isAssignableFrom(scopes.get(k).gadgetClass)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void leaveScope() {
+		Scope scope = scopes.remove(scopes.size() - 1);
+		ProfileNode node = scope.node;
+		node.numOfConstraints += generator.getNumOfConstraints() - scope.numOfConstraints;
+		node.numWires += generator.getNumWires() - scope.numWires;
+		node.numDeduplicated += numDeduplicated - scope.numDeduplicated;
+		node.nanos += System.nanoTime() - overheadNanos - scope.nanos;
+		node.allocatedBytes = THREAD_BEAN == null ? -1
+				: node.allocatedBytes + getAllocatedBytes() - overheadBytes - scope.allocatedBytes;
+	}
+
+	private void addOverhead(long nanos, long bytes) {
+		overheadNanos += System.nanoTime() - nanos;
+		overheadBytes += getAllocatedBytes() - bytes;
+	}
+
+	private static long getAllocatedBytes() {
+		return THREAD_BEAN == null ? 0 : THREAD_BEAN.getCurrentThreadAllocatedBytes();
+	}
+
+	private static List<StackFrame> getStack() {
+		return STACK_WALKER.walk(frames -> frames.collect(Collectors.toList()));
+	}
+
+	/**
+	 * @return true if the frame is a constructor of the given gadget class,
+	 *         or of one of its superclasses other than Gadget
+	 */
+	private static boolean isConstructor(StackFrame frame, Class<?> gadgetClass) {
+		Class<?> c = frame.getDeclaringClass();
+		return c != Gadget.class && c.isAssignableFrom(gadgetClass) && frame.getMethodName().equals("<init>");
+	}
+
+	private static boolean isGadgetConstructor(StackFrame frame) {
+		Class<?> c = frame.getDeclaringClass();
+		return c != Gadget.class && Gadget.class.isAssignableFrom(c) && frame.getMethodName().equals("<init>");
+	}
+
+	/**
+	 * @return true if the instructions of the evaluation queue can be
+	 *         attributed to the gadgets, i.e. the circuit was generated with
+	 *         this profiler
+	 */
+	public boolean coversEvaluation(int numInstructions) {
+		return numSegments > 0 && numInstructions == this.numInstructions;
+	}
+
+	public int getNumSegments() {
+		return numSegments;
+	}
+
+	/**
+	 * @return the first instruction of segment k. Evaluators call
+	 *         addEvaluationTime(k, ..) with the time of the instructions until
+	 *         the start of the next segment.
+	 */
+	public int getSegmentStart(int k) {
+		return segmentStarts[k];
+	}
+
+	public void addEvaluationTime(int k, long nanos) {
+		segmentNodes[k].selfEvaluationNanos += nanos;
+	}
+
+	/**
+	 * Called by evaluators before the circuit is evaluated again.
+	 */
+	public void resetEvaluationTimes() {
+		for (int k = 0; k < numSegments; k++) {
+			segmentNodes[k].selfEvaluationNanos = 0;
+		}
+	}
+
+	/**
+	 * @return the root of the tree, i.e. the whole circuit, or null if no
+	 *         circuit was generated
+	 */
+	public ProfileNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return the tree as a table, one line per node
+	 */
+	@Override
+	public String toString() {
+		if (root == null) {
+			return "No circuit was profiled";
+		}
+		int nameWidth = Math.max(root.getNameWidth(0), 8);
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-" + nameWidth + "s %8s %12s %12s %12s %10s %12s %10s%n", "Gadget", "Calls",
+				"Constraints", "Wires", "Dedup", "Time (ms)", "Alloc (KB)", "Eval (ms)"));
+		root.appendText(sb, 0, nameWidth);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the tree as a JSON object with the fields name, calls,
+	 *         constraints, wires, deduplicated, nanos, allocatedBytes,
+	 *         evaluationNanos and children
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		if (root != null) {
+			root.appendJson(sb);
+		}
+		return sb.toString();
+	}
+
+	public void writeJson(Path path) throws IOException {
+		Files.write(path, toJson().getBytes(StandardCharsets.UTF_8));
+	}
+}
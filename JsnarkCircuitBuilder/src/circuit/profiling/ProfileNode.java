@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.profiling;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The costs of one gadget class at one position of the gadget tree, added up
+ * over all its instances at that position. All the costs include the ones of
+ * the nested gadgets.
+ */
+public class ProfileNode {
+
+	private final String name;
+	private final LinkedHashMap<String, ProfileNode> children = new LinkedHashMap<String, ProfileNode>();
+
+	int numCalls;
+	long numOfConstraints;
+	long numWires;
+	long numDeduplicated;
+	long nanos;
+	long allocatedBytes;
+	// the time of the instructions added directly by this node
+	long selfEvaluationNanos;
+
+	ProfileNode(String name) {
+		this.name = name;
+	}
+
+	ProfileNode getChild(String name) {
+		ProfileNode child = children.get(name);
+		if (child == null) {
+			child = new ProfileNode(name);
+			children.put(name, child);
+		}
+		return child;
+	}
+
+	/**
+	 * @return the name of the gadget class, or the name of the circuit for the
+	 *         root
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of gadget instances
+	 */
+	public int getNumCalls() {
+		return numCalls;
+	}
+
+	public long getNumOfConstraints() {
+		return numOfConstraints;
+	}
+
+	public long getNumWires() {
+		return numWires;
+	}
+
+	/**
+	 * @return the number of operations that were found in the evaluation queue
+	 *         already, and were not added again
+	 */
+	public long getNumDeduplicated() {
+		return numDeduplicated;
+	}
+
+	/**
+	 * @return the generation time, in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return the number of bytes allocated during generation, or -1 if the
+	 *         JVM does not measure allocations
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the evaluation time, in nanoseconds, or 0 if the circuit was not
+	 *         evaluated
+	 */
+	public long getEvaluationNanos() {
+		long n = selfEvaluationNanos;
+		for (ProfileNode child : children.values()) {
+			n += child.getEvaluationNanos();
+		}
+		return n;
+	}
+
+	public List<ProfileNode> getChildren() {
+		return new ArrayList<ProfileNode>(children.values());
+	}
+
+	void appendText(StringBuilder sb, int depth, int nameWidth) {
+		StringBuilder label = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			label.append("  ");
+		}
+		label.append(name);
+		sb.append(String.format("%-" + nameWidth + "s %8d %12d %12d %12d %10.1f %12s %10.1f%n", label, numCalls,
+				numOfConstraints, numWires, numDeduplicated, nanos / 1e6,
+				allocatedBytes < 0 ? "-" : Long.toString(allocatedBytes / 1024), getEvaluationNanos() / 1e6));
+		for (ProfileNode child : children.values()) {
+			child.appendText(sb, depth + 1, nameWidth);
+		}
+	}
+
+	int getNameWidth(int depth) {
+		int width = 2 * depth + name.length();
+		for (ProfileNode child : children.values()) {
+			width = Math.max(width, child.getNameWidth(depth + 1));
+		}
+		return width;
+	}
+
+	void appendJson(StringBuilder sb) {
+		sb.append("{\"name\":\"");
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append("\",\"calls\":").append(numCalls);
+		sb.append(",\"constraints\":").append(numOfConstraints);
+		sb.append(",\"wires\":").append(numWires);
+		sb.append(",\"deduplicated\":").append(numDeduplicated);
+		sb.append(",\"nanos\":").append(nanos);
+		sb.append(",\"allocatedBytes\":").append(allocatedBytes);
+		sb.append(",\"evaluationNanos\":").append(getEvaluationNanos());
+		sb.append(",\"children\":[");
+		boolean first = true;
+		for (ProfileNode child : children.values()) {
+			if (!first) {
+				sb.append(',');
+			}
+			child.appendJson(sb);
+			first = false;
+		}
+		sb.append("]}");
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.prover;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import circuit.config.CircuitConfig;
+import circuit.prover.ProverJob.Content;
+import circuit.prover.ProverJob.Transport;
+
+/**
+ * Runs prover processes, e.g. the libsnark interface, for ProverJobs. At most
+ * maxProcesses processes run at the same time, and the other jobs wait for a
+ * free slot. submit() does not block: the result of a job is a
+ * CompletableFuture, and cancelling it (or the timeout of the job) destroys
+ * the process.
+ *
+ * The standard output and error of the processes are read while they run, so
+ * that a process never blocks on a full pipe. Each job runs on a virtual
+ * thread, which also writes the content of the job to the process.
+ */
+public class ProverExecutor implements AutoCloseable {
+
+	private final String executable;
+	private final int maxProcesses;
+	private final Semaphore slots;
+	private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+	public ProverExecutor(String executable, int maxProcesses) {
+		if (maxProcesses < 1) {
+			throw new IllegalArgumentException("At least one process must be allowed");
+		}
+		this.executable = executable;
+		this.maxProcesses = maxProcesses;
+		this.slots = new Semaphore(maxProcesses, true);
+	}
+
+	/**
+	 * An executor for the libsnark interface of the configuration.
+	 */
+	public ProverExecutor(CircuitConfig config, int maxProcesses) {
+		this(config.getLibsnarkExec(), maxProcesses);
+	}
+
+	public CompletableFuture<ProverResult> submit(ProverJob job) {
+		CompletableFuture<ProverResult> result = new CompletableFuture<ProverResult>();
+		Future<?> task = threads.submit(() -> run(job, result));
+		result.whenComplete((r, e) -> {
+			if (result.isCancelled()) {
+				task.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	public String getExecutable() {
+		return executable;
+	}
+
+	public int getMaxProcesses() {
+		return maxProcesses;
+	}
+
+	/**
+	 * Waits for the submitted jobs to finish. No jobs can be submitted
+	 * afterwards.
+	 */
+	@Override
+	public void close() {
+		threads.close();
+	}
+
+	/**
+	 * Destroys the running processes and cancels the waiting jobs.
+	 */
+	public void shutdownNow() {
+		threads.shutdownNow();
+	}
+
+	private void run(ProverJob job, CompletableFuture<ProverResult> result) {
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			result.cancel(false);
+			return;
+		}
+		Run run = new Run();
+		try {
+			if (!result.isDone()) {
+				result.complete(run.execute(job));
+			}
+		} catch (InterruptedException e) {
+			result.cancel(false);
+		} catch (Exception e) {
+			result.completeExceptionally(e);
+		} finally {
+			run.cleanUp();
+			slots.release();
+		}
+	}
+
+	/**
+	 * The state of a running job: its process and the files and pipes created
+	 * for it.
+	 */
+	private class Run {
+
+		private Process process;
+		private Path directory;
+		private final List<Path> pipes = new ArrayList<Path>();
+		private final List<Content> pipeContents = new ArrayList<Content>();
+		private final List<Future<?>> feeds = new ArrayList<Future<?>>();
+
+		ProverResult execute(ProverJob job) throws Exception {
+			List<String> command = new ArrayList<String>();
+			command.add(executable);
+			command.addAll(job.getArguments());
+
+			Content stdinContent = null;
+			Path circuitFile = job.getCircuitFile();
+			if (circuitFile == null) {
+				if (job.getTransport() == Transport.STDIN) {
+					circuitFile = Paths.get("/dev/stdin");
+					stdinContent = job.getCircuitContent();
+				} else {
+					circuitFile = prepare("circuit.arith", job.getCircuitContent(), job.getTransport());
+				}
+			}
+			Path inputFile = job.getInputFile();
+			if (inputFile == null) {
+				inputFile = prepare("circuit.in", job.getInputContent(),
+						job.getTransport() == Transport.NAMED_PIPES ? Transport.NAMED_PIPES : Transport.TEMP_FILES);
+			}
+			command.add(circuitFile.toString());
+			command.add(inputFile.toString());
+
+			long startTime = System.nanoTime();
+			process = new ProcessBuilder(command).start();
+			Future<String> output = start(() -> drain(process.getInputStream(), job.getOutputListener()));
+			Future<String> errorOutput = start(() -> drain(process.getErrorStream(), null));
+			if (stdinContent != null) {
+				feed(process.getOutputStream(), stdinContent);
+			} else {
+				process.getOutputStream().close();
+			}
+			for (int k = 0; k < pipes.size(); k++) {
+				feed(pipes.get(k), pipeContents.get(k));
+			}
+
+			if (job.getTimeout() == null) {
+				process.waitFor();
+			} else if (!process.waitFor(job.getTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+				throw new TimeoutException("The prover did not finish within " + job.getTimeout());
+			}
+			long nanos = System.nanoTime() - startTime;
+			releasePipes();
+			for (Future<?> feed : feeds) {
+				checkFeed(feed);
+			}
+			return new ProverResult(process.exitValue(), output.get(), errorOutput.get(), nanos);
+		}
+
+		private Path prepare(String name, Content content, Transport transport) throws IOException,
+				InterruptedException {
+			if (directory == null) {
+				directory = Files.createTempDirectory("prover");
+			}
+			Path path = directory.resolve(name);
+			if (transport == Transport.NAMED_PIPES) {
+				Process mkfifo = new ProcessBuilder("mkfifo", path.toString()).inheritIO().start();
+				if (mkfifo.waitFor() != 0) {
+					throw new IOException("mkfifo failed for " + path);
+				}
+				pipes.add(path);
+				pipeContents.add(content);
+			} else {
+				try (OutputStream out = Files.newOutputStream(path)) {
+					content.writeTo(out);
+				}
+			}
+			return path;
+		}
+
+		private void feed(OutputStream out, Content content) {
+			feeds.add(start(() -> {
+				try (OutputStream o = out) {
+					content.writeTo(o);
+				}
+				return null;
+			}));
+		}
+
+		private void feed(Path pipe, Content content) {
+			feeds.add(start(() -> {
+				// blocks until the process opens the pipe
+				try (OutputStream o = new FileOutputStream(pipe.toFile())) {
+					content.writeTo(o);
+				}
+				return null;
+			}));
+		}
+
+		/**
+		 * The content can fail with an IOException when the process does not
+		 * read all of it, which its exit code reports. Other failures come
+		 * from the content itself, and fail the job.
+		 */
+		private void checkFeed(Future<?> feed) throws InterruptedException {
+			try {
+				feed.get();
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof IOException)) {
+					throw new RuntimeException("The content of the job could not be written", e.getCause());
+				}
+			}
+		}
+
+		/**
+		 * Unblocks the writers of the pipes that the process did not open.
+		 * Opening a pipe for reading and writing does not block, and counts
+		 * as a reader of the pipe.
+		 */
+		private void releasePipes() {
+			for (Path pipe : pipes) {
+				try {
+					FileChannel.open(pipe, StandardOpenOption.READ, StandardOpenOption.WRITE).close();
+				} catch (IOException e) {
+					// the pipe is gone, so nothing waits on it
+				}
+			}
+		}
+
+		void cleanUp() {
+			if (process != null && process.isAlive()) {
+				process.descendants().forEach(ProcessHandle::destroyForcibly);
+				process.destroyForcibly();
+			}
+			releasePipes();
+			for (Future<?> feed : feeds) {
+				feed.cancel(true);
+			}
+			if (directory != null) {
+				try (Stream<Path> files = Files.walk(directory)) {
+					files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// the threads of a job are not run by the executor, which rejects new
+	// tasks once it is closed
+	private static <T> Future<T> start(Callable<T> task) {
+		FutureTask<T> future = new FutureTask<T>(task);
+		Thread.ofVirtual().start(future);
+		return future;
+	}
+
+	private static String drain(InputStream in, Consumer<String> listener) throws IOException {
+		StringBuilder s = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				s.append(line).append("\n");
+				if (listener != null) {
+					listener.accept(line);
+				}
+			}
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.prover;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * A run of the libsnark interface (or of another prover with the same command
+ * line) on a circuit and an input file, to be submitted to a ProverExecutor.
+ * Jobs are immutable, e.g.
+ *
+ * <pre>
+ * ProverJob job = ProverJob.forGenerator(generator).withArguments("gg").withTransport(Transport.NAMED_PIPES)
+ * 		.withTimeout(Duration.ofMinutes(10));
+ * </pre>
+ *
+ * The circuit and the input are either existing files or content that is
+ * written when the process runs. How the content reaches the process is
+ * decided by the transport of the job.
+ */
+public final class ProverJob {
+
+	/**
+	 * The content of a circuit or an input file.
+	 */
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * How the content of a job is passed to the process. Files are always
+	 * passed by their paths.
+	 */
+	public enum Transport {
+		/**
+		 * The content is written to temporary files before the process
+		 * starts, and the files are deleted after it ends.
+		 */
+		TEMP_FILES,
+		/**
+		 * The content is written to named pipes (created with mkfifo) while
+		 * the process reads it, so nothing is stored on the disk.
+		 */
+		NAMED_PIPES,
+		/**
+		 * The content of the circuit is written to the standard input of the
+		 * process, which gets /dev/stdin as the circuit path. The content of
+		 * the input goes through a temporary file.
+		 */
+		STDIN
+	}
+
+	private final Path circuitFile;
+	private final Content circuitContent;
+	private final Path inputFile;
+	private final Content inputContent;
+	private final List<String> arguments;
+	private final Transport transport;
+	private final Duration timeout;
+	private final Consumer<String> outputListener;
+
+	private ProverJob(Path circuitFile, Content circuitContent, Path inputFile, Content inputContent,
+			List<String> arguments, Transport transport, Duration timeout, Consumer<String> outputListener) {
+		this.circuitFile = circuitFile;
+		this.circuitContent = circuitContent;
+		this.inputFile = inputFile;
+		this.inputContent = inputContent;
+		this.arguments = arguments;
+		this.transport = transport;
+		this.timeout = timeout;
+		this.outputListener = outputListener;
+	}
+
+	/**
+	 * A job on the circuit and input files written before, e.g. by
+	 * CircuitGenerator.prepFiles().
+	 */
+	public static ProverJob forFiles(Path circuitFile, Path inputFile) {
+		return new ProverJob(circuitFile, null, inputFile, null, List.of(), Transport.TEMP_FILES, null, null);
+	}
+
+	public static ProverJob forContent(Content circuitContent, Content inputContent) {
+		return new ProverJob(null, circuitContent, null, inputContent, List.of(), Transport.TEMP_FILES, null, null);
+	}
+
+	/**
+	 * A job on the circuit and the input of a generator, which must be
+	 * evaluated. The content is written by the executor, so the generator
+	 * does not need prepFiles().
+	 */
+	public static ProverJob forGenerator(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		if (evaluator == null) {
+			throw new NullPointerException("evalCircuit() must be called before running the prover");
+		}
+		return forContent(generator::writeCircuit, evaluator::writeInput);
+	}
+
+	/**
+	 * @return a job that passes the given arguments before the circuit and
+	 *         the input paths, e.g. "gg" for the r1cs_gg_ppzksnark proof
+	 *         system of the libsnark interface
+	 */
+	public ProverJob withArguments(String... arguments) {
+		return new ProverJob(circuitFile, circuitContent, inputFile, inputContent, List.of(arguments), transport,
+				timeout, outputListener);
+	}
+
+	public ProverJob withTransport(Transport transport) {
+		return new ProverJob(circuitFile, circuitContent, inputFile, inputContent, arguments, transport, timeout,
+				outputListener);
+	}
+
+	/**
+	 * @return a job whose process is destroyed if it runs longer than the
+	 *         timeout. The time spent waiting for a free process slot is not
+	 *         counted.
+	 */
+	public ProverJob withTimeout(Duration timeout) {
+		return new ProverJob(circuitFile, circuitContent, inputFile, inputContent, arguments, transport, timeout,
+				outputListener);
+	}
+
+	/**
+	 * @return a job that also passes each line of the standard output of the
+	 *         process to the listener, as soon as it is read
+	 */
+	public ProverJob withOutputListener(Consumer<String> outputListener) {
+		return new ProverJob(circuitFile, circuitContent, inputFile, inputContent, arguments, transport, timeout,
+				outputListener);
+	}
+
+	Path getCircuitFile() {
+		return circuitFile;
+	}
+
+	Content getCircuitContent() {
+		return circuitContent;
+	}
+
+	Path getInputFile() {
+		return inputFile;
+	}
+
+	Content getInputContent() {
+		return inputContent;
+	}
+
+	public List<String> getArguments() {
+		return arguments;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @return the timeout, or null if the job has none
+	 */
+	public Duration getTimeout() {
+		return timeout;
+	}
+
+	Consumer<String> getOutputListener() {
+		return outputListener;
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.prover;
+
+/**
+ * The outcome of a ProverJob whose process ended by itself.
+ */
+public class ProverResult {
+
+	private final int exitCode;
+	private final String output;
+	private final String errorOutput;
+	private final long nanos;
+
+	ProverResult(int exitCode, String output, String errorOutput, long nanos) {
+		this.exitCode = exitCode;
+		this.output = output;
+		this.errorOutput = errorOutput;
+		this.nanos = nanos;
+	}
+
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public boolean isSuccessful() {
+		return exitCode == 0;
+	}
+
+	/**
+	 * @return the standard output of the process
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the standard error of the process
+	 */
+	public String getErrorOutput() {
+		return errorOutput;
+	}
+
+	/**
+	 * @return the running time of the process, in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * An immutable sparse linear combination of R1CS variables, with the variables
+ * in increasing order and non-zero coefficients reduced modulo the prime.
+ * Variable 0 is the one-wire, so constants are multiples of variable 0.
+ */
+public final class LinearCombination {
+
+	static final LinearCombination ZERO = new LinearCombination(new int[0], new BigInteger[0]);
+	static final LinearCombination ONE = variable(0);
+
+	private final int[] variables;
+	private final BigInteger[] coefficients;
+
+	private LinearCombination(int[] variables, BigInteger[] coefficients) {
+		this.variables = variables;
+		this.coefficients = coefficients;
+	}
+
+	static LinearCombination variable(int variable) {
+		return new LinearCombination(new int[] { variable }, new BigInteger[] { BigInteger.ONE });
+	}
+
+	public int size() {
+		return variables.length;
+	}
+
+	public int getVariable(int k) {
+		return variables[k];
+	}
+
+	public BigInteger getCoefficient(int k) {
+		return coefficients[k];
+	}
+
+	LinearCombination add(LinearCombination other, BigInteger prime) {
+		if (other.size() == 0) {
+			return this;
+		}
+		if (size() == 0) {
+			return other;
+		}
+		int[] vars = new int[size() + other.size()];
+		BigInteger[] coeffs = new BigInteger[vars.length];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while (i < size() || j < other.size()) {
+			if (j == other.size() || (i < size() && variables[i] < other.variables[j])) {
+				vars[n] = variables[i];
+				coeffs[n++] = coefficients[i++];
+			} else if (i == size() || other.variables[j] < variables[i]) {
+				vars[n] = other.variables[j];
+				coeffs[n++] = other.coefficients[j++];
+			} else {
+				BigInteger c = coefficients[i].add(other.coefficients[j]);
+				if (c.compareTo(prime) >= 0) {
+					c = c.subtract(prime);
+				}
+				if (c.signum() != 0) {
+					vars[n] = variables[i];
+					coeffs[n++] = c;
+				}
+				i++;
+				j++;
+			}
+		}
+		return new LinearCombination(n == vars.length ? vars : Arrays.copyOf(vars, n),
+				n == coeffs.length ? coeffs : Arrays.copyOf(coeffs, n));
+	}
+
+	/**
+	 * @param factor
+	 *            a factor in [0, prime)
+	 */
+	LinearCombination scale(BigInteger factor, BigInteger prime) {
+		if (factor.equals(BigInteger.ONE)) {
+			return this;
+		}
+		if (factor.signum() == 0) {
+			return ZERO;
+		}
+		BigInteger[] coeffs = new BigInteger[size()];
+		for (int k = 0; k < coeffs.length; k++) {
+			coeffs[k] = coefficients[k].multiply(factor).mod(prime);
+		}
+		return new LinearCombination(variables, coeffs);
+	}
+
+	/**
+	 * @return the value of the linear combination for the assignment of the
+	 *         variables
+	 */
+	public BigInteger evaluate(BigInteger[] assignment, BigInteger prime) {
+		BigInteger sum = BigInteger.ZERO;
+		for (int k = 0; k < variables.length; k++) {
+			BigInteger value = assignment[variables[k]];
+			sum = sum.add(coefficients[k].equals(BigInteger.ONE) ? value : coefficients[k].multiply(value));
+		}
+		return sum.mod(prime);
+	}
+
+	@Override
+	public String toString() {
+		if (size() == 0) {
+			return "0";
+		}
+		StringBuilder s = new StringBuilder();
+		for (int k = 0; k < variables.length; k++) {
+			if (k > 0) {
+				s.append(" + ");
+			}
+			if (!coefficients[k].equals(BigInteger.ONE)) {
+				s.append(coefficients[k].toString(16)).append('*');
+			}
+			s.append('w').append(variables[k]);
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import circuit.io.BinaryCircuitReader;
+import circuit.io.BinaryFormat;
+import circuit.io.CircuitRecord;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * The rank-1 constraint system of a circuit, lowered from its operations in
+ * the same way as the jsnark interface of libsnark does it. Every wire id is a
+ * variable, and variable 0 (the one-wire) is the constant one. add, const-mul
+ * and pack operations only define linear combinations, and the other
+ * operations add these constraints:
+ *
+ * <pre>
+ * mul    a * b = c
+ * xor    2a * b = a + b - c
+ * or     a * b = a + b - c
+ * assert a * b = c
+ * split  b_i * b_i = b_i for each bit, then 1 * (sum 2^i b_i) = a
+ * zerop  a * (1 - y) = 0 and a * m = y
+ * </pre>
+ *
+ * where the inputs (a, b) and the asserted output (c) are replaced by their
+ * linear combinations. The auxiliary output m of zerop is the inverse of a (or
+ * zero), which the evaluator does not compute; see completeAssignment().
+ */
+public class R1CS {
+
+	private final BigInteger prime;
+	private final int numVariables;
+	private final List<R1CSConstraint> constraints;
+	// the zerop outputs m, and the linear combinations they are the inverses
+	// of
+	private final int[] inverseVariables;
+	private final LinearCombination[] inverseSources;
+
+	private R1CS(Collector collector) {
+		prime = collector.lowering.getPrime();
+		numVariables = collector.lowering.getNumWires();
+		constraints = collector.constraints;
+		inverseVariables = Arrays.copyOf(collector.inverseVariables, collector.numInverses);
+		inverseSources = collector.inverseSources.toArray(new LinearCombination[0]);
+	}
+
+	/**
+	 * Collects the constraints of a lowering.
+	 */
+	private static class Collector implements R1CSLowering.Sink {
+
+		private final R1CSLowering lowering;
+		private final List<R1CSConstraint> constraints = new ArrayList<R1CSConstraint>();
+		private int[] inverseVariables = new int[16];
+		private int numInverses;
+		private final List<LinearCombination> inverseSources = new ArrayList<LinearCombination>();
+
+		Collector(BigInteger prime, int numWires) {
+			lowering = new R1CSLowering(prime, numWires, this);
+		}
+
+		@Override
+		public void addConstraint(LinearCombination a, LinearCombination b, LinearCombination c,
+				CircuitRecord record, int instruction) {
+			constraints.add(new R1CSConstraint(a, b, c, instruction, record.getName(), record.getDesc()));
+		}
+
+		@Override
+		public void addInverse(int wire, int sourceWire, LinearCombination source) {
+			if (numInverses == inverseVariables.length) {
+				inverseVariables = Arrays.copyOf(inverseVariables, 2 * numInverses);
+			}
+			inverseVariables[numInverses++] = wire;
+			inverseSources.add(source);
+		}
+	}
+
+	/**
+	 * Lowers the evaluation queue of a generated circuit.
+	 */
+	public static R1CS lower(CircuitGenerator generator) {
+		InstructionStore store = generator.getEvaluationQueue();
+		Collector collector = new Collector(store.getPrime(), generator.getNumWires());
+		CircuitRecord record = new CircuitRecord();
+		for (int i = 0; i < store.size(); i++) {
+			if (store.doneWithinCircuit(i)) {
+				record.set(store, i);
+				collector.lowering.add(record, i);
+			}
+		}
+		return new R1CS(collector);
+	}
+
+	/**
+	 * Lowers a circuit file, in the text (.arith) or the binary format.
+	 */
+	public static R1CS read(Path circuitFile, BigInteger prime) throws IOException {
+		CircuitRecord record = new CircuitRecord();
+		if (BinaryFormat.getFileType(circuitFile) == BinaryFormat.TYPE_CIRCUIT) {
+			try (BinaryCircuitReader reader = new BinaryCircuitReader(circuitFile)) {
+				Collector collector = new Collector(prime, reader.getTotalWires());
+				for (int i = 0; reader.next(record); i++) {
+					collector.lowering.add(record, i);
+				}
+				return new R1CS(collector);
+			}
+		}
+		try (BufferedReader reader = Files.newBufferedReader(circuitFile, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null || !line.startsWith("total ")) {
+				throw new IOException("Missing total line in " + circuitFile);
+			}
+			Collector collector = new Collector(prime, Integer.parseInt(line.substring("total ".length()).trim()));
+			for (int i = 0; (line = reader.readLine()) != null; i++) {
+				record.parse(line);
+				collector.lowering.add(record, i);
+			}
+			return new R1CS(collector);
+		}
+	}
+
+	public BigInteger getPrime() {
+		return prime;
+	}
+
+	public int getNumVariables() {
+		return numVariables;
+	}
+
+	public int getNumConstraints() {
+		return constraints.size();
+	}
+
+	public R1CSConstraint getConstraint(int k) {
+		return constraints.get(k);
+	}
+
+	/**
+	 * @param assignment
+	 *            the values of the wires, e.g. from
+	 *            CircuitEvaluator.getAssignment()
+	 * @return a copy of the assignment with the auxiliary variables of zerop
+	 *         computed, and the one-wire set to one. Unassigned wires are set
+	 *         to zero.
+	 */
+	public BigInteger[] completeAssignment(BigInteger[] assignment) {
+		if (assignment.length < numVariables) {
+			throw new IllegalArgumentException(
+					"The assignment has " + assignment.length + " values for " + numVariables + " variables");
+		}
+		BigInteger[] z = new BigInteger[numVariables];
+		for (int i = 0; i < numVariables; i++) {
+			z[i] = assignment[i] == null ? BigInteger.ZERO : assignment[i];
+		}
+		z[0] = BigInteger.ONE;
+		for (int k = 0; k < inverseVariables.length; k++) {
+			BigInteger a = inverseSources[k].evaluate(z, prime);
+			z[inverseVariables[k]] = a.signum() == 0 ? BigInteger.ZERO : a.modInverse(prime);
+		}
+		return z;
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+import java.util.OptionalInt;
+import java.util.stream.IntStream;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Checks in-process that an assignment satisfies the constraints of a circuit,
+ * i.e. what the libsnark prover would reject, without running it. The
+ * constraints are checked in parallel, and the first unsatisfied one (in the
+ * order of the circuit) is reported, e.g.
+ *
+ * <pre>
+ * R1CSChecker.Result result = R1CSChecker.check(generator);
+ * if (!result.isSatisfied()) {
+ * 	System.err.println(result);
+ * }
+ * </pre>
+ */
+public class R1CSChecker {
+
+	public static class Result {
+
+		private final int numConstraints;
+		private final int failedIndex;
+		private final R1CSConstraint failedConstraint;
+
+		Result(int numConstraints, int failedIndex, R1CSConstraint failedConstraint) {
+			this.numConstraints = numConstraints;
+			this.failedIndex = failedIndex;
+			this.failedConstraint = failedConstraint;
+		}
+
+		public boolean isSatisfied() {
+			return failedConstraint == null;
+		}
+
+		public int getNumConstraints() {
+			return numConstraints;
+		}
+
+		/**
+		 * @return the index of the first unsatisfied constraint, or -1
+		 */
+		public int getFailedIndex() {
+			return failedIndex;
+		}
+
+		/**
+		 * @return the first unsatisfied constraint, or null
+		 */
+		public R1CSConstraint getFailedConstraint() {
+			return failedConstraint;
+		}
+
+		@Override
+		public String toString() {
+			if (isSatisfied()) {
+				return "All " + numConstraints + " constraints are satisfied";
+			}
+			return "Constraint " + failedIndex + " of " + numConstraints + " is not satisfied: " + failedConstraint;
+		}
+	}
+
+	/**
+	 * Checks the evaluated circuit of a generator against the assignment of
+	 * its evaluator.
+	 */
+	public static Result check(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		if (evaluator == null) {
+			throw new NullPointerException("evalCircuit() must be called before checking the constraints");
+		}
+		return check(R1CS.lower(generator), evaluator.getAssignment());
+	}
+
+	/**
+	 * @param assignment
+	 *            the values of the wires (see R1CS.completeAssignment())
+	 */
+	public static Result check(R1CS r1cs, BigInteger[] assignment) {
+		BigInteger[] z = r1cs.completeAssignment(assignment);
+		BigInteger prime = r1cs.getPrime();
+		OptionalInt failed = IntStream.range(0, r1cs.getNumConstraints()).parallel()
+				.filter(k -> !r1cs.getConstraint(k).isSatisfied(z, prime)).findFirst();
+		if (failed.isPresent()) {
+			return new Result(r1cs.getNumConstraints(), failed.getAsInt(), r1cs.getConstraint(failed.getAsInt()));
+		}
+		return new Result(r1cs.getNumConstraints(), -1, null);
+	}
+}
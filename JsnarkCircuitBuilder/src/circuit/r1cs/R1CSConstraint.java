@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+
+/**
+ * A constraint A * B = C, and the operation of the circuit it comes from.
+ */
+public class R1CSConstraint {
+
+	private final LinearCombination a;
+	private final LinearCombination b;
+	private final LinearCombination c;
+	private final int instruction;
+	private final String opcode;
+	private final String desc;
+
+	R1CSConstraint(LinearCombination a, LinearCombination b, LinearCombination c, int instruction, String opcode,
+			String desc) {
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.instruction = instruction;
+		this.opcode = opcode;
+		this.desc = desc;
+	}
+
+	public LinearCombination getA() {
+		return a;
+	}
+
+	public LinearCombination getB() {
+		return b;
+	}
+
+	public LinearCombination getC() {
+		return c;
+	}
+
+	/**
+	 * @return the index of the operation in the evaluation queue, or its line
+	 *         in the circuit file (not counting the "total" line)
+	 */
+	public int getInstruction() {
+		return instruction;
+	}
+
+	public String getOpcode() {
+		return opcode;
+	}
+
+	public String getDesc() {
+		return desc;
+	}
+
+	public boolean isSatisfied(BigInteger[] assignment, BigInteger prime) {
+		return a.evaluate(assignment, prime).multiply(b.evaluate(assignment, prime)).mod(prime)
+				.equals(c.evaluate(assignment, prime));
+	}
+
+	@Override
+	public String toString() {
+		return "(" + a + ") * (" + b + ") = (" + c + ")  from " + opcode + " #" + instruction
+				+ (desc.length() > 0 ? " [" + desc + "]" : "");
+	}
+}
@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.FieldElementStore;
+import circuit.io.BinaryFormat;
+import circuit.io.CircuitRecord;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+
+/**
+ * Writes the constraint system of a circuit (see R1CS) as sparse matrices in
+ * CSR form, for provers other than libsnark. The file has the header of
+ * BinaryFormat with the type TYPE_R1CS, followed by
+ *
+ * <pre>
+ * prime                         field element
+ * group starts                  5 x int32: public inputs, outputs, private inputs,
+ *                               internal variables, number of variables
+ * number of constraints         int32
+ * number of coefficients        int32
+ * non-zeros of A, B, C          3 x int64
+ * section offsets               5 x int64: A, B, C, coefficients, witness (0 if none)
+ * </pre>
+ *
+ * Variable 0 is the one-wire, and the other variables are the wires that are
+ * not linear combinations, grouped as in the header and in the order of their
+ * ids within a group. A matrix section has the row pointers (int64, one more
+ * than the number of constraints), then the column of every non-zero (int32),
+ * then the index of its coefficient in the coefficient table (int32). The
+ * coefficient table has the distinct coefficients, and the witness has the
+ * value of every variable. Numbers are big-endian, and field elements have
+ * BinaryFormat.FIELD_ELEMENT_SIZE bytes.
+ *
+ * The evaluation queue is lowered in a single pass after a scan that
+ * classifies the wires. The matrices are streamed through buffers of fixed
+ * size into temporary files, which are then copied into the output, so apart
+ * from a few arrays indexed by wire id, the memory does not depend on the
+ * size of the circuit. Linear combinations are dropped after their last use.
+ */
+public class R1CSExporter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int HEADER_SIZE = BinaryFormat.MAGIC.length + 3 + BinaryFormat.FIELD_ELEMENT_SIZE + 5 * 4
+			+ 2 * 4 + 3 * 8 + 5 * 8;
+
+	// the groups of variables, in their order in the file
+	private static final byte GROUP_LINEAR = 0;
+	private static final byte GROUP_ONE = 1;
+	private static final byte GROUP_PUBLIC_INPUT = 2;
+	private static final byte GROUP_OUTPUT = 3;
+	private static final byte GROUP_PRIVATE_INPUT = 4;
+	private static final byte GROUP_INTERNAL = 5;
+
+	/**
+	 * Exports the evaluated circuit of a generator, with its witness.
+	 */
+	public static void export(CircuitGenerator generator, Path path) throws IOException {
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		export(generator.getEvaluationQueue(), generator.getNumWires(), evaluator.getValueStore(), path);
+	}
+
+	/**
+	 * @param values
+	 *            the values of the wires, or null to export the constraints
+	 *            only
+	 */
+	public static void export(InstructionStore store, int numWires, FieldElementStore values, Path path)
+			throws IOException {
+		new R1CSExporter(store, numWires, values).write(path);
+	}
+
+	private final InstructionStore store;
+	private final BigInteger prime;
+	private final FieldElementStore values;
+
+	private final byte[] groups;
+	private final int[] uses;
+	private final int[] columns;
+	private final int[] groupStarts = new int[GROUP_INTERNAL + 2];
+
+	private int numConstraints;
+	private final HashMap<BigInteger, Integer> coefficientIndices = new HashMap<BigInteger, Integer>();
+	private final List<BigInteger> coefficients = new ArrayList<BigInteger>();
+	// the zerop outputs whose values are computed from other wires
+	private final HashMap<Integer, Integer> inverseSources = new HashMap<Integer, Integer>();
+
+	private R1CSExporter(InstructionStore store, int numWires, FieldElementStore values) {
+		this.store = store;
+		this.prime = store.getPrime();
+		this.values = values;
+		groups = new byte[numWires];
+		uses = new int[numWires];
+		columns = new int[numWires];
+	}
+
+	/**
+	 * Finds the variables and their groups, and counts the uses of the wires.
+	 */
+	private void classify() {
+		CircuitRecord r = new CircuitRecord();
+		for (int i = 0; i < store.size(); i++) {
+			if (!store.doneWithinCircuit(i)) {
+				continue;
+			}
+			r.set(store, i);
+			switch (r.getTag()) {
+			case CircuitRecord.TAG_INPUT:
+				groups[r.getWire()] = r.getWire() == 0 ? GROUP_ONE : GROUP_PUBLIC_INPUT;
+				continue;
+			case CircuitRecord.TAG_NIZKINPUT:
+				groups[r.getWire()] = GROUP_PRIVATE_INPUT;
+				continue;
+			case CircuitRecord.TAG_OUTPUT:
+				if (groups[r.getWire()] == GROUP_INTERNAL) {
+					groups[r.getWire()] = GROUP_OUTPUT;
+				}
+				continue;
+			case CircuitRecord.TAG_MUL:
+			case CircuitRecord.TAG_XOR:
+			case CircuitRecord.TAG_OR:
+			case CircuitRecord.TAG_SPLIT:
+			case CircuitRecord.TAG_ZEROP:
+				for (int k = 0; k < r.getNumOutputs(); k++) {
+					groups[r.getOutput(k)] = GROUP_INTERNAL;
+				}
+				break;
+			case CircuitRecord.TAG_ASSERT:
+				uses[r.getOutput(0)]++;
+				break;
+			default:
+				// linear combinations
+			}
+			for (int k = 0; k < r.getNumInputs(); k++) {
+				uses[r.getInput(k)]++;
+			}
+		}
+
+		int[] counts = new int[GROUP_INTERNAL + 1];
+		for (byte group : groups) {
+			counts[group]++;
+		}
+		groupStarts[GROUP_ONE] = 0;
+		for (int g = GROUP_ONE; g <= GROUP_INTERNAL; g++) {
+			groupStarts[g + 1] = groupStarts[g] + counts[g];
+		}
+		int[] next = groupStarts.clone();
+		for (int id = 0; id < groups.length; id++) {
+			columns[id] = groups[id] == GROUP_LINEAR ? -1 : next[groups[id]]++;
+		}
+	}
+
+	private void write(Path path) throws IOException {
+		if (prime.bitLength() > 8 * BinaryFormat.FIELD_ELEMENT_SIZE) {
+			throw new IllegalArgumentException("The field elements do not fit in "
+					+ BinaryFormat.FIELD_ELEMENT_SIZE + " bytes");
+		}
+		classify();
+
+		// row pointers, columns and coefficient indices of A, B and C
+		Section[] sections = new Section[9];
+		Section witness = null;
+		try {
+			for (int k = 0; k < sections.length; k++) {
+				sections[k] = new Section();
+			}
+			long[] nonZeros = new long[3];
+			for (int m = 0; m < 3; m++) {
+				sections[3 * m].putLong(0);
+			}
+			R1CSLowering lowering = new R1CSLowering(prime, groups.length, columns, uses, new R1CSLowering.Sink() {
+				@Override
+				public void addConstraint(LinearCombination a, LinearCombination b, LinearCombination c,
+						CircuitRecord record, int instruction) {
+					try {
+						LinearCombination[] rows = { a, b, c };
+						for (int m = 0; m < 3; m++) {
+							LinearCombination row = rows[m];
+							for (int k = 0; k < row.size(); k++) {
+								sections[3 * m + 1].putInt(row.getVariable(k));
+								sections[3 * m + 2].putInt(getCoefficientIndex(row.getCoefficient(k)));
+							}
+							nonZeros[m] += row.size();
+							sections[3 * m].putLong(nonZeros[m]);
+						}
+						numConstraints++;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+
+				@Override
+				public void addInverse(int wire, int sourceWire, LinearCombination source) {
+					inverseSources.put(wire, sourceWire);
+				}
+			});
+			CircuitRecord record = new CircuitRecord();
+			try {
+				for (int i = 0; i < store.size(); i++) {
+					if (store.doneWithinCircuit(i)) {
+						record.set(store, i);
+						lowering.add(record, i);
+					}
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+
+			if (values != null) {
+				witness = new Section();
+				writeWitness(witness);
+			}
+			assemble(path, sections, witness, nonZeros);
+		} finally {
+			for (Section section : sections) {
+				if (section != null) {
+					section.close();
+				}
+			}
+			if (witness != null) {
+				witness.close();
+			}
+		}
+	}
+
+	private int getCoefficientIndex(BigInteger coefficient) {
+		Integer index = coefficientIndices.get(coefficient);
+		if (index == null) {
+			index = coefficients.size();
+			coefficientIndices.put(coefficient, index);
+			coefficients.add(coefficient);
+		}
+		return index;
+	}
+
+	private void writeWitness(Section witness) throws IOException {
+		int numVariables = groupStarts[GROUP_INTERNAL + 1];
+		int[] wires = new int[numVariables];
+		for (int id = 0; id < columns.length; id++) {
+			if (columns[id] >= 0) {
+				wires[columns[id]] = id;
+			}
+		}
+		witness.putFieldElement(BigInteger.ONE);
+		for (int column = 1; column < numVariables; column++) {
+			Integer source = inverseSources.get(wires[column]);
+			BigInteger value;
+			if (source == null) {
+				value = values.get(wires[column]);
+			} else {
+				BigInteger a = values.get(source);
+				value = a.signum() == 0 ? BigInteger.ZERO : a.modInverse(prime);
+			}
+			witness.putFieldElement(value == null ? BigInteger.ZERO : value);
+		}
+	}
+
+	private void assemble(Path path, Section[] sections, Section witness, long[] nonZeros) throws IOException {
+		long[] offsets = new long[5];
+		long offset = HEADER_SIZE;
+		for (int m = 0; m < 3; m++) {
+			offsets[m] = offset;
+			for (int k = 0; k < 3; k++) {
+				offset += sections[3 * m + k].size();
+			}
+		}
+		offsets[3] = offset;
+		offset += (long) coefficients.size() * BinaryFormat.FIELD_ELEMENT_SIZE;
+		offsets[4] = witness == null ? 0 : offset;
+
+		try (Section out = new Section(path)) {
+			out.putBytes(BinaryFormat.MAGIC);
+			out.putByte(BinaryFormat.VERSION);
+			out.putByte(BinaryFormat.TYPE_R1CS);
+			out.putByte(BinaryFormat.FIELD_ELEMENT_SIZE);
+			out.putFieldElement(prime);
+			for (int g = GROUP_PUBLIC_INPUT; g <= GROUP_INTERNAL + 1; g++) {
+				out.putInt(groupStarts[g]);
+			}
+			out.putInt(numConstraints);
+			out.putInt(coefficients.size());
+			for (long n : nonZeros) {
+				out.putLong(n);
+			}
+			for (long o : offsets) {
+				out.putLong(o);
+			}
+			for (Section section : sections) {
+				out.append(section);
+			}
+			for (BigInteger coefficient : coefficients) {
+				out.putFieldElement(coefficient);
+			}
+			if (witness != null) {
+				out.append(witness);
+			}
+		}
+	}
+
+	/**
+	 * A file written sequentially through a direct buffer. The sections of the
+	 * output are written to temporary files, which are deleted on close().
+	 */
+	private static class Section implements Closeable {
+
+		private final FileChannel channel;
+		private final Path temporaryFile;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private long size;
+
+		Section() throws IOException {
+			temporaryFile = Files.createTempFile("r1cs", ".section");
+			channel = FileChannel.open(temporaryFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		Section(Path path) throws IOException {
+			temporaryFile = null;
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		long size() {
+			return size;
+		}
+
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() < n) {
+				flush();
+			}
+			size += n;
+		}
+
+		void putByte(int b) throws IOException {
+			ensure(1);
+			buffer.put((byte) b);
+		}
+
+		void putBytes(byte[] bytes) throws IOException {
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+
+		void putInt(int v) throws IOException {
+			ensure(4);
+			buffer.putInt(v);
+		}
+
+		void putLong(long v) throws IOException {
+			ensure(8);
+			buffer.putLong(v);
+		}
+
+		void putFieldElement(BigInteger v) throws IOException {
+			ensure(BinaryFormat.FIELD_ELEMENT_SIZE);
+			byte[] bytes = v.toByteArray();
+			int offset = bytes[0] == 0 ? 1 : 0;
+			int length = bytes.length - offset;
+			for (int i = length; i < BinaryFormat.FIELD_ELEMENT_SIZE; i++) {
+				buffer.put((byte) 0);
+			}
+			buffer.put(bytes, offset, length);
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Copies the content of a temporary section to the end of this one.
+		 */
+		void append(Section section) throws IOException {
+			flush();
+			section.flush();
+			long position = 0;
+			while (position < section.size) {
+				position += section.channel.transferTo(position, section.size - position, channel);
+			}
+			size += section.size;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (temporaryFile == null) {
+					flush();
+				}
+				channel.close();
+			} finally {
+				if (temporaryFile != null) {
+					Files.deleteIfExists(temporaryFile);
+				}
+			}
+		}
+	}
+}
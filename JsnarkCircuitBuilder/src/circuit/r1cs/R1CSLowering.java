@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+
+import circuit.io.CircuitRecord;
+
+/**
+ * Lowers the operations of a circuit, in order, to the constraints described
+ * in R1CS. The linear combination of every wire is kept until its last use,
+ * if the number of uses of the wires is given, or until the end otherwise.
+ */
+class R1CSLowering {
+
+	interface Sink {
+
+		void addConstraint(LinearCombination a, LinearCombination b, LinearCombination c, CircuitRecord record,
+				int instruction);
+
+		/**
+		 * Called for the auxiliary output of zerop, which is the inverse of
+		 * its input (or zero).
+		 */
+		void addInverse(int wire, int sourceWire, LinearCombination source);
+	}
+
+	private final BigInteger prime;
+	private final BigInteger minusOne;
+	private final LinearCombination[] wires;
+	// the variable of each wire, or null if the wire ids are the variables
+	private final int[] variables;
+	// the remaining uses of each wire, or null
+	private final int[] uses;
+	private final Sink sink;
+
+	private CircuitRecord record;
+	private int instruction;
+
+	R1CSLowering(BigInteger prime, int numWires, Sink sink) {
+		this(prime, numWires, null, null, sink);
+	}
+
+	/**
+	 * @param variables
+	 *            the variable of each wire that is one
+	 * @param uses
+	 *            the number of operations that use each wire (as an input, or
+	 *            as the asserted output), which is updated during the lowering
+	 */
+	R1CSLowering(BigInteger prime, int numWires, int[] variables, int[] uses, Sink sink) {
+		this.prime = prime;
+		this.minusOne = prime.subtract(BigInteger.ONE);
+		this.wires = new LinearCombination[numWires];
+		this.variables = variables;
+		this.uses = uses;
+		this.sink = sink;
+	}
+
+	int getNumWires() {
+		return wires.length;
+	}
+
+	BigInteger getPrime() {
+		return prime;
+	}
+
+	private LinearCombination in(int k) {
+		int id = record.getInput(k);
+		if (wires[id] == null) {
+			throw new IllegalArgumentException("Wire " + id + " is used before it is defined: " + record);
+		}
+		return wires[id];
+	}
+
+	private LinearCombination defineVariable(int id) {
+		wires[id] = LinearCombination.variable(variables == null ? id : variables[id]);
+		return wires[id];
+	}
+
+	private void addConstraint(LinearCombination a, LinearCombination b, LinearCombination c) {
+		sink.addConstraint(a, b, c, record, instruction);
+	}
+
+	private LinearCombination subtract(LinearCombination a, LinearCombination b) {
+		return a.add(b.scale(minusOne, prime), prime);
+	}
+
+	/**
+	 * Lowers the next operation of the circuit.
+	 *
+	 * @param i
+	 *            the index of the operation, which is passed to the sink
+	 */
+	void add(CircuitRecord r, int i) {
+		record = r;
+		instruction = i;
+		switch (r.getTag()) {
+		case CircuitRecord.TAG_INPUT:
+		case CircuitRecord.TAG_NIZKINPUT:
+			defineVariable(r.getWire());
+			break;
+		case CircuitRecord.TAG_OUTPUT:
+			break;
+		case CircuitRecord.TAG_ADD: {
+			LinearCombination sum = LinearCombination.ZERO;
+			for (int k = 0; k < r.getNumInputs(); k++) {
+				sum = sum.add(in(k), prime);
+			}
+			wires[r.getOutput(0)] = sum;
+			break;
+		}
+		case CircuitRecord.TAG_CONST_MUL:
+			wires[r.getOutput(0)] = in(0).scale(r.getConstant().mod(prime), prime);
+			break;
+		case CircuitRecord.TAG_CONST_MUL_NEG:
+			wires[r.getOutput(0)] = in(0).scale(r.getConstant().negate().mod(prime), prime);
+			break;
+		case CircuitRecord.TAG_MUL:
+			addConstraint(in(0), in(1), defineVariable(r.getOutput(0)));
+			break;
+		case CircuitRecord.TAG_XOR: {
+			LinearCombination a = in(0);
+			LinearCombination b = in(1);
+			LinearCombination c = defineVariable(r.getOutput(0));
+			addConstraint(a.scale(BigInteger.TWO.mod(prime), prime), b, subtract(a.add(b, prime), c));
+			break;
+		}
+		case CircuitRecord.TAG_OR: {
+			LinearCombination a = in(0);
+			LinearCombination b = in(1);
+			LinearCombination c = defineVariable(r.getOutput(0));
+			addConstraint(a, b, subtract(a.add(b, prime), c));
+			break;
+		}
+		case CircuitRecord.TAG_ASSERT: {
+			int id = r.getOutput(0);
+			if (wires[id] == null) {
+				throw new IllegalArgumentException("Wire " + id + " is asserted before it is defined: " + r);
+			}
+			addConstraint(in(0), in(1), wires[id]);
+			break;
+		}
+		case CircuitRecord.TAG_SPLIT: {
+			LinearCombination sum = LinearCombination.ZERO;
+			BigInteger weight = BigInteger.ONE;
+			for (int k = 0; k < r.getNumOutputs(); k++) {
+				LinearCombination bit = defineVariable(r.getOutput(k));
+				addConstraint(bit, bit, bit);
+				sum = sum.add(bit.scale(weight.mod(prime), prime), prime);
+				weight = weight.shiftLeft(1);
+			}
+			addConstraint(LinearCombination.ONE, sum, in(0));
+			break;
+		}
+		case CircuitRecord.TAG_PACK: {
+			LinearCombination sum = LinearCombination.ZERO;
+			BigInteger weight = BigInteger.ONE;
+			for (int k = 0; k < r.getNumInputs(); k++) {
+				sum = sum.add(in(k).scale(weight.mod(prime), prime), prime);
+				weight = weight.shiftLeft(1);
+			}
+			wires[r.getOutput(0)] = sum;
+			break;
+		}
+		case CircuitRecord.TAG_ZEROP: {
+			LinearCombination a = in(0);
+			LinearCombination m = defineVariable(r.getOutput(0));
+			LinearCombination y = defineVariable(r.getOutput(1));
+			addConstraint(a, subtract(LinearCombination.ONE, y), LinearCombination.ZERO);
+			addConstraint(a, m, y);
+			sink.addInverse(r.getOutput(0), r.getInput(0), a);
+			break;
+		}
+		default:
+			throw new IllegalArgumentException("Unknown operation: " + r);
+		}
+		release(r);
+	}
+
+	/**
+	 * Drops the linear combinations that are not used anymore.
+	 */
+	private void release(CircuitRecord r) {
+		if (uses == null || r.isLabel()) {
+			return;
+		}
+		for (int k = 0; k < r.getNumInputs(); k++) {
+			if (--uses[r.getInput(k)] == 0) {
+				wires[r.getInput(k)] = null;
+			}
+		}
+		for (int k = 0; k < r.getNumOutputs(); k++) {
+			int id = r.getOutput(k);
+			if (r.getTag() == CircuitRecord.TAG_ASSERT ? --uses[id] == 0 : uses[id] == 0) {
+				wires[id] = null;
+			}
+		}
+	}
+}
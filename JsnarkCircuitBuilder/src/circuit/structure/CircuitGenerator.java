@@ -4,38 +4,55 @@
  *******************************************************************************/
 package circuit.structure;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import circuit.auxiliary.LongElement;
+import circuit.config.CircuitConfig;
 import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
 import circuit.eval.Instruction;
+import circuit.eval.ParallelCircuitEvaluator;
+import circuit.io.AsyncFileWriter;
+import circuit.io.BinaryCircuitWriter;
+import circuit.io.BinaryFormat;
+import circuit.io.CircuitCache;
+import circuit.io.CircuitSink;
+import circuit.io.MappedFileReader;
+import circuit.io.MappedFileWriter;
 import circuit.operations.WireLabelInstruction;
 import circuit.operations.WireLabelInstruction.LabelType;
 import circuit.operations.primitive.AssertBasicOp;
 import circuit.operations.primitive.BasicOp;
 import circuit.operations.primitive.MulBasicOp;
+import circuit.profiling.CircuitProfiler;
+import circuit.prover.ProverExecutor;
+import circuit.prover.ProverJob;
+import circuit.prover.ProverResult;
 
 public abstract class CircuitGenerator {
 
-	private static ConcurrentHashMap<Long, CircuitGenerator> activeCircuitGenerators = new ConcurrentHashMap<>();
-	private static CircuitGenerator instance;
+	// the generator bound to the current thread by runInContext()
+	private static final ThreadLocal<CircuitGenerator> activeCircuitGenerator = new ThreadLocal<CircuitGenerator>();
+	// the last created generator, see getActiveCircuitGenerator()
+	private static volatile WeakReference<CircuitGenerator> instance;
 
 	protected int currentWireId;
-	protected LinkedHashMap<Instruction, Instruction> evaluationQueue;
+	protected InstructionStore evaluationQueue;
 
 	protected Wire zeroWire;
 	protected Wire oneWire;
@@ -46,67 +63,387 @@ public abstract class CircuitGenerator {
 
 	protected String circuitName;
 
+	private final CircuitConfig config;
+
 	protected HashMap<BigInteger, Wire> knownConstantWires;
 
 	private int numOfConstraints;
 	private CircuitEvaluator circuitEvaluator;
 
+	// streaming mode (see generateCircuit(CircuitSink, int))
+	private CircuitSink circuitSink;
+	private int dedupWindowSize;
+	private boolean streamed;
+
+	// see countConstraints()
+	private boolean costOnly;
+
+	// the prover witness computations given in restoreCircuit()
+	private ArrayList<Instruction> restoredInstructions;
+
+	// see buildFromTemplate(). Failed recordings are kept as null.
+	private HashMap<String, CircuitTemplate> templates;
+	private boolean templatesEnabled = true;
+	private boolean recordingTemplate;
+
+	// see setProfiler()
+	private CircuitProfiler profiler;
+
 	/**
-	 * Gets the current thread ID using a method that works across different Java versions.
-	 * This avoids the deprecated Thread.getId() method in newer Java versions.
-	 * 
-	 * @return the current thread ID
+	 * Creates a generator with the configuration of Config.getCircuitConfig().
 	 */
-	private static long getCurrentThreadId() {
-		Thread currentThread = Thread.currentThread();
-		// For Java 19+, we could use Thread.threadId(), but for compatibility we'll use this approach
-		return currentThread.threadId();
-		// Note: When migrating to Java 19+, replace with: return currentThread.threadId();
+	public CircuitGenerator(String circuitName) {
+		this(circuitName, Config.getCircuitConfig());
 	}
 
-	public CircuitGenerator(String circuitName) {
+	public CircuitGenerator(String circuitName, CircuitConfig config) {
 
 		this.circuitName = circuitName;
+		this.config = config;
 
-		instance = this;
-		inWires = new ArrayList<Wire>();
-		outWires = new ArrayList<Wire>();
-		proverWitnessWires = new ArrayList<Wire>();
-		evaluationQueue = new LinkedHashMap<Instruction, Instruction>();
-		knownConstantWires = new HashMap<BigInteger, Wire>();
-		currentWireId = 0;
-		numOfConstraints = 0;
-
-		if (Config.runningMultiGenerators) {
-			activeCircuitGenerators.put(getCurrentThreadId(), this);
-		}
+		instance = new WeakReference<CircuitGenerator>(this);
+		resetCircuit();
 	}
 
+	/**
+	 * @return the generator that the wires and gadgets created by the current
+	 *         thread belong to: the one bound by runInContext(), or, if there
+	 *         is none and generators are not run in parallel (see
+	 *         Config.runningMultiGenerators), the last created generator
+	 */
 	public static CircuitGenerator getActiveCircuitGenerator() {
-		if (!Config.runningMultiGenerators)
-			return instance;
-		else {
-
-			Long threadId = getCurrentThreadId();
-			CircuitGenerator currentGenerator = activeCircuitGenerators.get(threadId);
-			if (currentGenerator == null) {
-				throw new RuntimeException("The current thread does not have any active circuit generators");
-			} else {
-				return currentGenerator;
+		CircuitGenerator generator = activeCircuitGenerator.get();
+		if (generator != null) {
+			return generator;
+		}
+		if (!Config.runningMultiGenerators) {
+			generator = instance == null ? null : instance.get();
+			if (generator != null) {
+				return generator;
 			}
 		}
+		throw new RuntimeException("The current thread does not have any active circuit generators");
+	}
+
+	/**
+	 * Runs the given code with this generator as the active generator of the
+	 * current thread, and restores the previous one afterwards. The methods
+	 * of the generator and of its evaluators that create wires do this
+	 * already, so this is only needed to use the generator from other code,
+	 * e.g. to create wires on another thread.
+	 * 
+	 * Since the binding belongs to the calling thread and ends with the call,
+	 * many generators can be used concurrently, e.g. one per virtual thread,
+	 * independently of Config.runningMultiGenerators.
+	 */
+	public final void runInContext(Runnable body) {
+		CircuitGenerator previous = enterContext();
+		try {
+			body.run();
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	/**
+	 * Same as runInContext(), for code that returns a value.
+	 */
+	public final <T> T callInContext(Supplier<T> body) {
+		CircuitGenerator previous = enterContext();
+		try {
+			return body.get();
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	/**
+	 * @return the previously active generator, to be passed to exitContext()
+	 */
+	private CircuitGenerator enterContext() {
+		CircuitGenerator previous = activeCircuitGenerator.get();
+		if (previous != this) {
+			activeCircuitGenerator.set(this);
+		}
+		return previous;
+	}
+
+	private void exitContext(CircuitGenerator previous) {
+		if (previous == null) {
+			// do not keep the generator reachable from pooled threads
+			activeCircuitGenerator.remove();
+		} else if (previous != this) {
+			activeCircuitGenerator.set(previous);
+		}
 	}
 
 	protected abstract void buildCircuit();
 
 	public final void generateCircuit() {
-		
+		CircuitGenerator previous = enterContext();
+		try {
+			buildInContext();
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	private void buildInContext() {
+
 		System.out.println("Running Circuit Generator for < " + circuitName + " >");
 
+		if (costOnly || streamed) {
+			// countConstraints() or a streaming build ran before
+			resetCircuit();
+		}
+		if (profiler != null) {
+			profiler.start(this);
+		}
 		initCircuitConstruction();
 		buildCircuit();
 		
 		System.out.println("Circuit Generation Done for < " + circuitName + " >  \n \t Total Number of Constraints :  " + getNumOfConstraints() + "\n");
+		if (profiler != null) {
+			profiler.finish(evaluationQueue.size());
+			System.out.println(profiler);
+		}
+	}
+
+	/**
+	 * Generates the circuit while writing finished instructions to the sink,
+	 * so that the generator does not need to keep the whole circuit in
+	 * memory. Only the last dedupWindowSize to 2*dedupWindowSize instructions
+	 * are kept for caching, which means that an operation that was already
+	 * written out is not detected as a duplicate anymore. The resulting
+	 * circuit is still correct, but could have more constraints than the one
+	 * produced by generateCircuit().
+	 * 
+	 * As the instructions are not retained, the circuit cannot be evaluated
+	 * or written again by this generator afterwards.
+	 */
+	public final void generateCircuit(CircuitSink sink, int dedupWindowSize) {
+		if (dedupWindowSize < 1) {
+			throw new IllegalArgumentException("The dedup window size must be positive");
+		}
+		this.circuitSink = sink;
+		this.dedupWindowSize = dedupWindowSize;
+		CircuitGenerator previous = enterContext();
+		try {
+			buildInContext();
+			flushEvaluationQueue(evaluationQueue.size());
+			sink.finish(currentWireId);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not finish writing the circuit", e);
+		} finally {
+			exitContext(previous);
+			// the instructions that were written are removed even if the
+			// build failed
+			circuitSink = null;
+			streamed = true;
+		}
+	}
+
+	private void flushEvaluationQueue(int n) {
+		try {
+			for (int i = 0; i < n; i++) {
+				if (evaluationQueue.doneWithinCircuit(i)) {
+					circuitSink.write(evaluationQueue, i);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write the circuit", e);
+		}
+		evaluationQueue.removeFirst(n);
+	}
+
+	private void checkRetained() {
+		if (streamed) {
+			throw new IllegalStateException("The circuit was streamed to a sink during generation and is not retained");
+		} else if (costOnly) {
+			throw new IllegalStateException("The circuit was only generated to count its constraints and is not retained");
+		}
+	}
+
+	/**
+	 * Runs buildCircuit() only to count the constraints and the wires of the
+	 * circuit (see getNumWires()), e.g. to compare the costs of different
+	 * parameters. Basic operations are still cached, so the counts are the
+	 * same as for generateCircuit(), but descriptions, prover witness
+	 * computations and the wire objects of the circuit are not kept.
+	 * 
+	 * The circuit cannot be evaluated or written afterwards.
+	 * 
+	 * @return the number of constraints
+	 */
+	public final int countConstraints() {
+		resetCircuit();
+		costOnly = true;
+		evaluationQueue = new InstructionStore(config.getFieldPrime(), true);
+		CircuitGenerator previous = enterContext();
+		try {
+			initCircuitConstruction();
+			buildCircuit();
+		} finally {
+			exitContext(previous);
+		}
+		return numOfConstraints;
+	}
+
+	/**
+	 * Same as generateCircuit(), but loads the circuit from the cache if it was
+	 * generated before by the same generator class with the same parameters,
+	 * in which case restoreCircuit() is called instead of buildCircuit().
+	 * Otherwise, the generated circuit is added to the cache.
+	 * 
+	 * @param parameters
+	 *            the values that identify the circuit, e.g. the arguments of
+	 *            the constructor. See CircuitCache.computeKey().
+	 */
+	public final void generateCircuit(CircuitCache cache, Object... parameters) {
+		if (!supportsRestore()) {
+			// the circuit could not be loaded, so it is not cached either
+			generateCircuit();
+			return;
+		}
+		String key = CircuitCache.computeKey(config, getClass(), parameters);
+		if (cache.contains(key)) {
+			try {
+				cache.load(key, this);
+				System.out.println("Circuit loaded from cache for < " + circuitName + " >  \n \t Total Number of Constraints :  "
+						+ getNumOfConstraints() + "\n");
+				return;
+			} catch (IOException e) {
+				System.err.println("Could not load the circuit from the cache: " + e.getMessage());
+				resetCircuit();
+			}
+		}
+		generateCircuit();
+		try {
+			cache.store(key, this);
+		} catch (IOException e) {
+			System.err.println("Could not add the circuit to the cache: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Called instead of buildCircuit() when the circuit is loaded by
+	 * loadCircuit(). Generators that support loading override this method
+	 * together with supportsRestore() to restore the wires used by
+	 * generateSampleInput(), e.g. from getInWires(), and to specify their
+	 * prover witness computations again, in the same order as in
+	 * buildCircuit().
+	 */
+	protected void restoreCircuit() {
+	}
+
+	/**
+	 * @return true if the circuits of this generator can be loaded, i.e. if
+	 *         it overrides restoreCircuit(). Generators that do not are built
+	 *         by generateCircuit(CircuitCache, ...) without the cache.
+	 */
+	protected boolean supportsRestore() {
+		return false;
+	}
+
+	/**
+	 * Writes the generated circuit to a file that can be loaded later by
+	 * loadCircuit(). The prover witness computations are not written, see
+	 * restoreCircuit().
+	 */
+	public void saveCircuit(Path path) throws IOException {
+		checkRetained();
+		try (MappedFileWriter out = new MappedFileWriter(path)) {
+			BinaryFormat.writeHeader(out, BinaryFormat.TYPE_SNAPSHOT);
+			out.putString(config.getFieldPrime().toString(16));
+			out.putVarint(currentWireId);
+			out.putVarint(numOfConstraints);
+			out.putVarint(zeroWire.getWireId());
+			writeWireIds(out, inWires);
+			writeWireIds(out, outWires);
+			writeWireIds(out, proverWitnessWires);
+			evaluationQueue.writeSnapshot(out);
+		}
+	}
+
+	/**
+	 * Loads a circuit written by saveCircuit(), instead of generating it. The
+	 * generator must support it, see supportsRestore().
+	 */
+	public void loadCircuit(Path path) throws IOException {
+		CircuitGenerator previous = enterContext();
+		try {
+			loadInContext(path);
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	private void loadInContext(Path path) throws IOException {
+		if (!supportsRestore()) {
+			throw new IllegalStateException(getClass().getName() + " does not support loading circuits");
+		}
+		resetCircuit();
+		try (MappedFileReader in = new MappedFileReader(path)) {
+			BinaryFormat.readHeader(in, BinaryFormat.TYPE_SNAPSHOT);
+			if (!in.getString().equals(config.getFieldPrime().toString(16))) {
+				throw new IOException("The circuit was generated for a different field");
+			}
+			currentWireId = in.getVarintAsInt();
+			numOfConstraints = in.getVarintAsInt();
+			oneWire = new ConstantWire(0, BigInteger.ONE);
+			zeroWire = new ConstantWire(in.getVarintAsInt(), BigInteger.ZERO);
+			knownConstantWires.put(BigInteger.ONE, oneWire);
+			knownConstantWires.put(BigInteger.ZERO, zeroWire);
+			readWireIds(in, inWires);
+			readWireIds(in, outWires);
+			readWireIds(in, proverWitnessWires);
+			evaluationQueue = InstructionStore.readSnapshot(in, config.getFieldPrime());
+		}
+
+		restoredInstructions = new ArrayList<Instruction>();
+		try {
+			restoreCircuit();
+			if (restoredInstructions.size() != evaluationQueue.getNumCustomInstructions()) {
+				throw new IOException("The circuit has " + evaluationQueue.getNumCustomInstructions()
+						+ " prover witness computations, but " + restoredInstructions.size()
+						+ " were specified in restoreCircuit()");
+			}
+			for (int k = 0; k < restoredInstructions.size(); k++) {
+				evaluationQueue.setCustomInstruction(k, restoredInstructions.get(k));
+			}
+		} finally {
+			restoredInstructions = null;
+		}
+	}
+
+	private static void writeWireIds(MappedFileWriter out, ArrayList<Wire> wires) throws IOException {
+		out.putVarint(wires.size());
+		for (Wire w : wires) {
+			out.putVarint(w.getWireId());
+		}
+	}
+
+	private void readWireIds(MappedFileReader in, ArrayList<Wire> wires) throws IOException {
+		int n = in.getVarintAsInt();
+		for (int k = 0; k < n; k++) {
+			int id = in.getVarintAsInt();
+			wires.add(id == oneWire.getWireId() ? oneWire : new VariableWire(id));
+		}
+	}
+
+	private void resetCircuit() {
+		inWires = new ArrayList<Wire>();
+		outWires = new ArrayList<Wire>();
+		proverWitnessWires = new ArrayList<Wire>();
+		evaluationQueue = new InstructionStore(config.getFieldPrime(), false);
+		knownConstantWires = new HashMap<BigInteger, Wire>();
+		templates = new HashMap<String, CircuitTemplate>();
+		costOnly = false;
+		streamed = false;
+		currentWireId = 0;
+		numOfConstraints = 0;
+		oneWire = null;
+		zeroWire = null;
 	}
 
 	public String getName() {
@@ -258,26 +595,70 @@ public abstract class CircuitGenerator {
 	}
 
 	public void writeCircuitFile() {
-		try (PrintWriter printWriter = new PrintWriter(
-				Files.newBufferedWriter(Paths.get(getName() + ".arith"), StandardCharsets.UTF_8))) {
-			
-			printWriter.println("total " + currentWireId);
-			for (Instruction e : evaluationQueue.keySet()) {
-				if (e.doneWithinCircuit()) {
-					printWriter.print(e + "\n");
+		checkRetained();
+		try (OutputStream out = Files.newOutputStream(Paths.get(getName() + ".arith"))) {
+			writeCircuit(out);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the content of the circuit file to a stream, e.g. to the
+	 * standard input of a prover process. The stream is flushed but not
+	 * closed.
+	 */
+	public void writeCircuit(OutputStream out) throws IOException {
+		checkRetained();
+		CircuitGenerator previous = enterContext();
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.write("total " + currentWireId);
+			writer.newLine();
+			for (int i = 0; i < evaluationQueue.size(); i++) {
+				if (evaluationQueue.doneWithinCircuit(i)) {
+					writer.write(evaluationQueue.get(i) + "\n");
 				}
 			}
+			writer.flush();
+		} finally {
+			exitContext(previous);
+		}
+	}
+
+	/**
+	 * Writes the circuit in the binary format (see circuit.io.BinaryFormat).
+	 * The file has the same content as the one written by writeCircuitFile(),
+	 * and both can be converted to each other by CircuitFileConverter.
+	 */
+	public void writeBinaryCircuitFile() {
+		checkRetained();
+		try {
+			BinaryCircuitWriter.write(evaluationQueue, currentWireId,
+					Paths.get(getName() + BinaryFormat.CIRCUIT_FILE_EXTENSION));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Writes the circuit file in the background (see AsyncFileWriter), so
+	 * that e.g. the evaluation can run meanwhile. The circuit must not be
+	 * changed until the returned future completes.
+	 */
+	public CompletableFuture<AsyncFileWriter.Result> writeCircuitFileAsync(AsyncFileWriter writer) {
+		checkRetained();
+		return writer.writeCircuitFile(evaluationQueue, currentWireId, Paths.get(getName() + ".arith"));
+	}
+
 	public void printCircuit() {
-		for (Instruction e : evaluationQueue.keySet()) {
-			if (e.doneWithinCircuit()) {
-				System.out.println(e);
+		runInContext(() -> {
+			for (int i = 0; i < evaluationQueue.size(); i++) {
+				if (evaluationQueue.doneWithinCircuit(i)) {
+					System.out.println(evaluationQueue.get(i));
+				}
 			}
-		}
+		});
 	}
 
 	private void initCircuitConstruction() {
@@ -327,7 +708,11 @@ public abstract class CircuitGenerator {
 	 * @param instruction
 	 */
 	public void specifyProverWitnessComputation(Instruction instruction) {
-		addToEvaluationQueue(instruction);
+		if (restoredInstructions != null) {
+			restoredInstructions.add(instruction);
+		} else {
+			addToEvaluationQueue(instruction);
+		}
 	}
 
 	public final Wire getZeroWire() {
@@ -338,7 +723,7 @@ public abstract class CircuitGenerator {
 		return oneWire;
 	}
 
-	public LinkedHashMap<Instruction, Instruction> getEvaluationQueue() {
+	public InstructionStore getEvaluationQueue() {
 		return evaluationQueue;
 	}
 
@@ -347,16 +732,116 @@ public abstract class CircuitGenerator {
 	}
 
 	public Wire[] addToEvaluationQueue(Instruction e) {
-		if (evaluationQueue.containsKey(e)) {
-			if (e instanceof BasicOp) {
-				return ((BasicOp) evaluationQueue.get(e)).getOutputs();
-			}
+		if (profiler != null) {
+			profiler.beforeInstruction(evaluationQueue.size());
 		}
-		if (e instanceof BasicOp) {
+		Wire[] cachedOutputs = evaluationQueue.add(e);
+		if (cachedOutputs == null && e instanceof BasicOp) {
 			numOfConstraints += ((BasicOp) e).getNumMulGates();
+		} else if (cachedOutputs != null) {
+			countDeduplicated();
+		}
+		flushIfNeeded();
+		return cachedOutputs;  // returning null means we have not seen this instruction before
+	}
+
+	private void flushIfNeeded() {
+		// a template is recorded from the instructions in the queue, so they
+		// are kept until the recording is done
+		if (circuitSink != null && !recordingTemplate && evaluationQueue.size() >= 2 * dedupWindowSize) {
+			flushEvaluationQueue(evaluationQueue.size() - dedupWindowSize);
 		}
-		evaluationQueue.put(e, e);
-		return null;  // returning null means we have not seen this instruction before
+	}
+
+	/**
+	 * Builds a part of the circuit that is repeated many times, e.g. the
+	 * compression function of a hash gadget. The first time the body is called
+	 * for a key and a given shape of inputs (the classes of the input wires,
+	 * their cached bits, their constant values and which inputs are the same
+	 * wire), the operations it adds are recorded. Later calls with the same
+	 * key and the same shape of inputs repeat the recorded operations on the
+	 * new inputs, without calling the body.
+	 * 
+	 * The body must only depend on the given inputs and on the key, i.e. all
+	 * other parameters of the gadget have to be part of the key. It may use
+	 * constant wires, but no other wires created outside of it. If the body
+	 * specifies prover witness computations or creates input or output wires,
+	 * it is called every time instead.
+	 */
+	public Wire[] buildFromTemplate(String key, Wire[] inputs, Function<Wire[], Wire[]> body) {
+		CircuitTemplate.Pattern pattern = templatesEnabled ? new CircuitTemplate.Pattern(inputs) : null;
+		if (pattern == null || pattern.getSignature() == null) {
+			return body.apply(inputs);
+		}
+		String templateKey = key + "\n" + pattern.getSignature();
+		CircuitTemplate template = templates.get(templateKey);
+		if (template != null) {
+			return template.instantiate(this, pattern, inputs);
+		} else if (templates.containsKey(templateKey)) {
+			return body.apply(inputs);
+		}
+
+		int firstInstruction = evaluationQueue.size();
+		int firstWireId = currentWireId;
+		boolean wasRecording = recordingTemplate;
+		recordingTemplate = true;
+		Wire[] outputs;
+		try {
+			outputs = body.apply(inputs);
+		} finally {
+			recordingTemplate = wasRecording;
+		}
+		templates.put(templateKey, CircuitTemplate.record(evaluationQueue, pattern, inputs, outputs,
+				firstInstruction, firstWireId, currentWireId));
+		flushIfNeeded();
+		return outputs;
+	}
+
+	/**
+	 * Adds an operation stamped out by a template. The caller has checked that
+	 * no equivalent operation exists.
+	 */
+	void addTemplateOperation(byte opcode, int[] ids, int numInputs, Wire[] outputs, BigInteger constant,
+			boolean negative, String desc) {
+		if (profiler != null) {
+			profiler.beforeInstruction(evaluationQueue.size());
+		}
+		evaluationQueue.append(opcode, ids, 0, numInputs, outputs, constant, negative, desc);
+		numOfConstraints += InstructionStore.getNumMulGates(opcode, outputs.length);
+		flushIfNeeded();
+	}
+
+	/**
+	 * Called when an operation is found in the evaluation queue already.
+	 */
+	void countDeduplicated() {
+		if (profiler != null) {
+			profiler.countDeduplicated();
+		}
+	}
+
+	/**
+	 * Templates are enabled by default. Disabling them makes
+	 * buildFromTemplate() call its body every time, e.g. for comparison.
+	 */
+	public void setTemplatesEnabled(boolean templatesEnabled) {
+		this.templatesEnabled = templatesEnabled;
+	}
+
+	/**
+	 * Profiles the gadgets in the next calls of generateCircuit(), and the
+	 * evaluation of the circuit by a CircuitEvaluator afterwards. See
+	 * CircuitProfiler.
+	 * 
+	 * @param profiler
+	 *            the profiler, or null to stop profiling
+	 */
+	public void setProfiler(CircuitProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	public CircuitProfiler getProfiler() {
+		return profiler;
 	}
 
 	public void printState(String message) {
@@ -389,9 +874,11 @@ public abstract class CircuitGenerator {
 			BigInteger const1 = ((ConstantWire) w1).getConstant();
 			BigInteger const2 = ((ConstantWire) w2).getConstant();
 			BigInteger const3 = ((ConstantWire) w3).getConstant();
-			if (!const3.equals(const1.multiply(const2).mod(Config.FIELD_PRIME))) {
+			if (!const3.equals(const1.multiply(const2).mod(config.getFieldPrime()))) {
 				throw new RuntimeException("Assertion failed on the provided constant wires .. ");
 			}
+		} else if (w3 == zeroWire && (w1 == zeroWire || w2 == zeroWire)) {
+			// always satisfied
 		} else {
 			w1.packIfNeeded();
 			w2.packIfNeeded();
@@ -424,9 +911,25 @@ public abstract class CircuitGenerator {
 	}
 
 	public void evalCircuit() {
+		checkRetained();
 		circuitEvaluator = new CircuitEvaluator(this);
-		generateSampleInput(circuitEvaluator);
-		circuitEvaluator.evaluate();
+		runInContext(() -> {
+			generateSampleInput(circuitEvaluator);
+			circuitEvaluator.evaluate();
+		});
+	}
+
+	/**
+	 * Same as evalCircuit(), but evaluates independent instructions on
+	 * multiple threads. See ParallelCircuitEvaluator.
+	 */
+	public void evalCircuitInParallel() {
+		checkRetained();
+		circuitEvaluator = new ParallelCircuitEvaluator(this);
+		runInContext(() -> {
+			generateSampleInput(circuitEvaluator);
+			circuitEvaluator.evaluate();
+		});
 	}
 
 	public void prepFiles() {
@@ -437,32 +940,54 @@ public abstract class CircuitGenerator {
 		circuitEvaluator.writeInputFile();
 	}
 
+	/**
+	 * Writes the circuit and the input files at the same time, in the
+	 * background. The returned future completes when both files are written.
+	 */
+	public CompletableFuture<Void> prepFilesAsync() {
+		if (circuitEvaluator == null) {
+			throw new NullPointerException("evalCircuit() must be called before prepFilesAsync()");
+		}
+		AsyncFileWriter writer = new AsyncFileWriter();
+		return CompletableFuture.allOf(writeCircuitFileAsync(writer), circuitEvaluator.writeInputFileAsync(writer));
+	}
+
+	public void prepBinaryFiles() {
+		writeBinaryCircuitFile();
+		if (circuitEvaluator == null) {
+			throw new NullPointerException("evalCircuit() must be called before prepBinaryFiles()");
+		}
+		circuitEvaluator.writeBinaryInputFile();
+	}
+
 	public void runLibsnark() {
-		try {
-			ProcessBuilder processBuilder = new ProcessBuilder(
-					Config.LIBSNARK_EXEC, 
-					circuitName + ".arith", 
-					circuitName + ".in");
-			
-			Process p = processBuilder.start();
-			p.waitFor();
-			
+		try (ProverExecutor executor = new ProverExecutor(config, 1)) {
+			ProverResult result = executor
+					.submit(ProverJob.forFiles(Paths.get(circuitName + ".arith"), Paths.get(circuitName + ".in")))
+					.get();
+
 			System.out.println(
 					"\n-----------------------------------RUNNING LIBSNARK -----------------------------------------");
-			
-			try (BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-				StringBuilder buf = new StringBuilder();
-				String line;
-				while ((line = input.readLine()) != null) {
-					buf.append(line).append("\n");
-				}
-				System.out.println(buf.toString());
-			}
+			System.out.println(result.getOutput());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Runs the libsnark interface on the circuit and the input of the
+	 * generator without waiting for it. The content is passed to the process
+	 * directly, so prepFiles() is not needed. See ProverJob for the other
+	 * options of a job.
+	 */
+	public CompletableFuture<ProverResult> runLibsnarkAsync(ProverExecutor executor) {
+		return executor.submit(ProverJob.forGenerator(this));
+	}
+
+	public CircuitConfig getConfig() {
+		return config;
+	}
+
 	public CircuitEvaluator getCircuitEvaluator() {
 		if (circuitEvaluator == null) {
 			throw new NullPointerException("evalCircuit() must be called before getCircuitEvaluator()");
@@ -0,0 +1,459 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The basic operations added by one invocation of a gadget, recorded with
+ * symbolic wire ids, so that later invocations on inputs of the same shape can
+ * be stamped out by remapping the ids instead of running the gadget code again
+ * (see CircuitGenerator.buildFromTemplate()).
+ *
+ * A symbol is either one of the input wires or their cached bits (numbered by
+ * first occurrence), a wire created by the recorded operations, or a constant
+ * wire that existed before the recording. Stamping still looks up every
+ * operation in the instruction index, so the result has the same
+ * constraints as building the gadget again.
+ */
+class CircuitTemplate {
+
+	private static final int NONE = Integer.MIN_VALUE;
+
+	/**
+	 * The shape of the inputs of a gadget invocation: the classes of the input
+	 * wires and their cached bits, the constants, and which of them share the
+	 * same wire id. Invocations with the same signature can share a template.
+	 */
+	static class Pattern {
+
+		private final String signature;
+		private final ArrayList<Wire> symbolWires = new ArrayList<Wire>();
+		private final HashMap<Integer, Integer> symbols = new HashMap<Integer, Integer>();
+		private final int[] inputIdSymbols;
+		private final int[][] inputBitSymbols;
+
+		Pattern(Wire[] inputs) {
+			StringBuilder sb = new StringBuilder();
+			inputIdSymbols = new int[inputs.length];
+			inputBitSymbols = new int[inputs.length][];
+			boolean supported = true;
+			for (int j = 0; j < inputs.length && supported; j++) {
+				Wire w = inputs[j];
+				appendKind(sb, w);
+				inputIdSymbols[j] = w.getWireId() == -1 ? NONE : getSymbol(w);
+				sb.append(':').append(inputIdSymbols[j] == NONE ? "-" : inputIdSymbols[j]);
+				WireArray bits = getCachedBits(w);
+				if (bits != null) {
+					Wire[] bitWires = bits.asArray();
+					inputBitSymbols[j] = new int[bitWires.length];
+					sb.append('[');
+					for (int k = 0; k < bitWires.length; k++) {
+						if (bitWires[k].getWireId() == -1) {
+							supported = false;
+							break;
+						}
+						appendKind(sb, bitWires[k]);
+						inputBitSymbols[j][k] = getSymbol(bitWires[k]);
+						sb.append(':').append(inputBitSymbols[j][k]).append(',');
+					}
+					sb.append(']');
+				} else if (w.getWireId() == -1) {
+					supported = false;
+				}
+				sb.append(';');
+			}
+			signature = supported ? sb.toString() : null;
+		}
+
+		private int getSymbol(Wire w) {
+			Integer s = symbols.get(w.getWireId());
+			if (s == null) {
+				s = symbolWires.size();
+				symbolWires.add(w);
+				symbols.put(w.getWireId(), s);
+			}
+			return s;
+		}
+
+		private static void appendKind(StringBuilder sb, Wire w) {
+			sb.append(InstructionStore.getWireKind(w));
+			if (w instanceof ConstantWire) {
+				sb.append('=').append(((ConstantWire) w).getConstant().toString(16));
+			}
+		}
+
+		/**
+		 * @return the signature of the inputs, or null if they cannot be used
+		 *         with templates, e.g. if a wire has neither an id nor bits.
+		 */
+		String getSignature() {
+			return signature;
+		}
+	}
+
+	private final int numInputSymbols;
+	private final int numInternalSymbols;
+
+	// the recorded operations, in the layout of InstructionStore: the symbols
+	// of operation i are symbols[start[i] .. start[i+1]-1], inputs first
+	private final byte[] opcodes;
+	private final int[] numInputs;
+	private final int[] start;
+	private final int[] symbols;
+	private final BigInteger[] constants;
+	private final boolean[] negative;
+	private final String[] descs;
+	private int maxOperationWidth;
+
+	// the classes of the wires created by the recorded operations, and the
+	// values of the constant wires among them
+	private final byte[] kinds;
+	private final BigInteger[] kindConstants;
+
+	// constant wires that existed before the recording
+	private final ArrayList<Wire> fixedWires = new ArrayList<Wire>();
+	private HashMap<Integer, Integer> fixedSymbols = new HashMap<Integer, Integer>();
+
+	// the ids and bits assigned to the input wires by the gadget, e.g. by
+	// packing a wire that only had bits before
+	private final int[] inputIdEffects;
+	private final boolean[] inputIdEffectOwned;
+	private final int[][] inputBitEffects;
+
+	// the outputs of the gadget: an input wire, or an id symbol and/or bit
+	// symbols
+	private final int[] outputInputs;
+	private final int[] outputIdSymbols;
+	private final int[][] outputBitSymbols;
+	private final byte[] outputKinds;
+
+	// only used while recording
+	private final int firstWireId;
+	private final int lastWireId;
+	private Pattern pattern;
+	private InstructionStore store;
+	private boolean valid = true;
+
+	private CircuitTemplate(InstructionStore store, Pattern pattern, Wire[] inputs, Wire[] outputs,
+			int firstInstruction, int firstWireId, int lastWireId) {
+		this.store = store;
+		this.pattern = pattern;
+		this.firstWireId = firstWireId;
+		this.lastWireId = lastWireId;
+		numInputSymbols = pattern.symbolWires.size();
+		numInternalSymbols = lastWireId - firstWireId;
+		kinds = new byte[numInternalSymbols];
+		kindConstants = new BigInteger[numInternalSymbols];
+
+		int n = store.size() - firstInstruction;
+		opcodes = new byte[n];
+		numInputs = new int[n];
+		start = new int[n + 1];
+		constants = new BigInteger[n];
+		negative = new boolean[n];
+		descs = new String[n];
+		int width = 0;
+		for (int i = firstInstruction; i < store.size(); i++) {
+			width += store.getArenaStart(i + 1) - store.getArenaStart(i);
+		}
+		symbols = new int[width];
+
+		int position = 0;
+		for (int t = 0; t < n && valid; t++) {
+			int i = firstInstruction + t;
+			if (!store.isBasicOp(i)) {
+				// prover computations and labels cannot be stamped out
+				valid = false;
+				break;
+			}
+			byte opcode = store.getOpcode(i);
+			opcodes[t] = opcode;
+			numInputs[t] = store.getNumInputs(i);
+			start[t] = position;
+			if (opcode == InstructionStore.OP_CONST_MUL) {
+				constants[t] = store.getConstant(i);
+				negative[t] = store.isNegativeConstant(i);
+			}
+			String desc = store.getDesc(i);
+			descs[t] = desc.length() == 0 ? null : desc;
+			for (int k = 0; k < numInputs[t]; k++) {
+				symbols[position++] = encode(store.getInputId(i, k));
+			}
+			for (int k = 0; k < store.getNumOutputs(i); k++) {
+				int id = store.getOutputId(i, k);
+				if (opcode == InstructionStore.OP_ASSERT) {
+					symbols[position++] = encode(id);
+				} else if (id >= firstWireId && id < lastWireId) {
+					symbols[position++] = numInputSymbols + id - firstWireId;
+					Wire w = store.getWire(id);
+					kinds[id - firstWireId] = InstructionStore.getWireKind(w);
+					if (w instanceof ConstantWire) {
+						kindConstants[id - firstWireId] = ((ConstantWire) w).getConstant();
+					}
+				} else {
+					valid = false;
+				}
+			}
+			maxOperationWidth = Math.max(maxOperationWidth, position - start[t]);
+		}
+		start[n] = position;
+		for (int k = 0; k < position; k++) {
+			if (symbols[k] == NONE) {
+				valid = false;
+			}
+		}
+
+		inputIdEffects = new int[inputs.length];
+		inputIdEffectOwned = new boolean[inputs.length];
+		inputBitEffects = new int[inputs.length][];
+		for (int j = 0; j < inputs.length && valid; j++) {
+			Wire w = inputs[j];
+			inputIdEffects[j] = NONE;
+			if (pattern.inputIdSymbols[j] == NONE && w.getWireId() != -1) {
+				inputIdEffects[j] = encode(w.getWireId());
+				inputIdEffectOwned[j] = store.getWire(w.getWireId()) == w;
+				valid &= inputIdEffects[j] != NONE;
+			}
+			WireArray bits = getCachedBits(w);
+			if (bits != null) {
+				int[] bitSymbols = encode(bits);
+				if (pattern.inputBitSymbols[j] == null
+						|| !Arrays.equals(bitSymbols, pattern.inputBitSymbols[j])) {
+					inputBitEffects[j] = bitSymbols;
+				}
+			}
+		}
+
+		outputInputs = new int[outputs.length];
+		outputIdSymbols = new int[outputs.length];
+		outputBitSymbols = new int[outputs.length][];
+		outputKinds = new byte[outputs.length];
+		for (int k = 0; k < outputs.length && valid; k++) {
+			Wire w = outputs[k];
+			outputInputs[k] = -1;
+			if (w == null) {
+				valid = false;
+				break;
+			}
+			for (int j = 0; j < inputs.length; j++) {
+				if (inputs[j] == w) {
+					outputInputs[k] = j;
+					break;
+				}
+			}
+			if (outputInputs[k] != -1) {
+				continue;
+			}
+			outputKinds[k] = InstructionStore.getWireKind(w);
+			outputIdSymbols[k] = w.getWireId() == -1 ? NONE : encode(w.getWireId());
+			valid &= w.getWireId() == -1 || outputIdSymbols[k] != NONE;
+			WireArray bits = getCachedBits(w);
+			if (bits != null) {
+				outputBitSymbols[k] = encode(bits);
+			}
+			valid &= outputIdSymbols[k] != NONE || outputBitSymbols[k] != null;
+		}
+	}
+
+	/**
+	 * Creates a template from the operations that were added to the store
+	 * since firstInstruction by a gadget invocation.
+	 *
+	 * @return the template, or null if the operations cannot be stamped out
+	 *         again, e.g. if they include prover computations or refer to
+	 *         wires that are neither inputs nor constants.
+	 */
+	static CircuitTemplate record(InstructionStore store, Pattern pattern, Wire[] inputs, Wire[] outputs,
+			int firstInstruction, int firstWireId, int lastWireId) {
+		CircuitTemplate template = new CircuitTemplate(store, pattern, inputs, outputs, firstInstruction,
+				firstWireId, lastWireId);
+		return template.valid ? template.compact() : null;
+	}
+
+	private CircuitTemplate compact() {
+		fixedSymbols = null;
+		pattern = null;
+		store = null;
+		return this;
+	}
+
+	private int encode(int id) {
+		if (id >= firstWireId && id < lastWireId) {
+			return numInputSymbols + id - firstWireId;
+		}
+		Integer s = pattern.symbols.get(id);
+		if (s != null) {
+			return s;
+		}
+		s = fixedSymbols.get(id);
+		if (s == null) {
+			Wire w = store.getWire(id);
+			if (!(w instanceof ConstantWire)) {
+				return NONE;
+			}
+			fixedWires.add(w);
+			s = -fixedWires.size();
+			fixedSymbols.put(id, s);
+		}
+		return s;
+	}
+
+	private int[] encode(WireArray bits) {
+		Wire[] bitWires = bits.asArray();
+		int[] result = new int[bitWires.length];
+		for (int k = 0; k < bitWires.length; k++) {
+			result[k] = bitWires[k].getWireId() == -1 ? NONE : encode(bitWires[k].getWireId());
+			if (result[k] == NONE) {
+				valid = false;
+			}
+		}
+		return result;
+	}
+
+	int getNumOperations() {
+		return opcodes.length;
+	}
+
+	/**
+	 * Adds the recorded operations for inputs that have the same pattern as
+	 * the recorded ones.
+	 *
+	 * @return the outputs of the gadget
+	 */
+	Wire[] instantiate(CircuitGenerator generator, Pattern inputPattern, Wire[] inputs) {
+		InstructionStore store = generator.evaluationQueue;
+		Wire[] wires = new Wire[numInputSymbols + numInternalSymbols];
+		int[] ids = new int[wires.length];
+		for (int s = 0; s < numInputSymbols; s++) {
+			wires[s] = inputPattern.symbolWires.get(s);
+			ids[s] = wires[s].getWireId();
+		}
+		for (int j = 0; j < inputs.length; j++) {
+			if (inputIdEffectOwned[j] && wires[inputIdEffects[j]] == null) {
+				wires[inputIdEffects[j]] = inputs[j];
+			}
+		}
+
+		int[] opIds = new int[maxOperationWidth];
+		for (int t = 0; t < opcodes.length; t++) {
+			byte opcode = opcodes[t];
+			int from = start[t];
+			int n = numInputs[t];
+			int numOutputs = start[t + 1] - from - n;
+			boolean isAssertion = opcode == InstructionStore.OP_ASSERT;
+			for (int k = 0; k < (isAssertion ? n + 1 : n); k++) {
+				opIds[k] = getId(symbols[from + k], ids);
+			}
+			if (isAssertion) {
+				if (store.find(opcode, opIds, 0, n, numOutputs, null) == -1) {
+					generator.addTemplateOperation(opcode, opIds, n,
+							new Wire[] { getWire(symbols[from + n], wires) }, null, false, descs[t]);
+				}
+				continue;
+			}
+
+			int firstOutput = symbols[from + n];
+			if (opcode == InstructionStore.OP_CONST_MUL
+					&& kinds[firstOutput - numInputSymbols] == InstructionStore.WIRE_KIND_CONSTANT) {
+				// constant wires are shared by value, see ConstantWire.mul()
+				Wire known = generator.knownConstantWires.get(kindConstants[firstOutput - numInputSymbols]
+						.mod(generator.getConfig().getFieldPrime()));
+				if (known != null) {
+					wires[firstOutput] = known;
+					ids[firstOutput] = known.getWireId();
+					continue;
+				}
+			}
+			int found = store.find(opcode, opIds, 0, n, numOutputs, constants[t]);
+			if (found != -1) {
+				generator.countDeduplicated();
+				for (int k = 0; k < numOutputs; k++) {
+					int s = symbols[from + n + k];
+					ids[s] = store.getOutputId(found, k);
+					if (wires[s] != null) {
+						wires[s].wireId = ids[s];
+					} else {
+						wires[s] = store.getWire(ids[s]);
+					}
+				}
+			} else {
+				Wire[] outs = new Wire[numOutputs];
+				for (int k = 0; k < numOutputs; k++) {
+					int s = symbols[from + n + k];
+					ids[s] = generator.currentWireId++;
+					if (wires[s] != null) {
+						wires[s].wireId = ids[s];
+					} else {
+						wires[s] = InstructionStore.createWire(kinds[s - numInputSymbols], ids[s],
+								kindConstants[s - numInputSymbols]);
+					}
+					outs[k] = wires[s];
+				}
+				generator.addTemplateOperation(opcode, opIds, n, outs, constants[t], negative[t], descs[t]);
+				if (outs[0] instanceof ConstantWire) {
+					generator.knownConstantWires.put(
+							((ConstantWire) outs[0]).getConstant().mod(generator.getConfig().getFieldPrime()), outs[0]);
+				}
+			}
+		}
+
+		for (int j = 0; j < inputs.length; j++) {
+			if (inputIdEffects[j] != NONE) {
+				inputs[j].wireId = getId(inputIdEffects[j], ids);
+			}
+			if (inputBitEffects[j] != null) {
+				inputs[j].setBits(getWires(inputBitEffects[j], wires));
+			}
+		}
+
+		Wire[] outputs = new Wire[outputInputs.length];
+		for (int k = 0; k < outputs.length; k++) {
+			if (outputInputs[k] != -1) {
+				outputs[k] = inputs[outputInputs[k]];
+			} else if (outputIdSymbols[k] != NONE) {
+				outputs[k] = getWire(outputIdSymbols[k], wires);
+				if (outputBitSymbols[k] != null && getCachedBits(outputs[k]) == null
+						&& (outputs[k] instanceof VariableWire || outputs[k] instanceof LinearCombinationWire)) {
+					outputs[k].setBits(getWires(outputBitSymbols[k], wires));
+				}
+			} else if (outputKinds[k] == InstructionStore.WIRE_KIND_VARIABLE) {
+				outputs[k] = new VariableWire(getWires(outputBitSymbols[k], wires));
+			} else {
+				outputs[k] = new LinearCombinationWire(getWires(outputBitSymbols[k], wires));
+			}
+		}
+		return outputs;
+	}
+
+	private int getId(int symbol, int[] ids) {
+		return symbol < 0 ? fixedWires.get(-symbol - 1).getWireId() : ids[symbol];
+	}
+
+	private Wire getWire(int symbol, Wire[] wires) {
+		return symbol < 0 ? fixedWires.get(-symbol - 1) : wires[symbol];
+	}
+
+	private WireArray getWires(int[] symbols, Wire[] wires) {
+		Wire[] result = new Wire[symbols.length];
+		for (int k = 0; k < symbols.length; k++) {
+			result[k] = getWire(symbols[k], wires);
+		}
+		return new WireArray(result);
+	}
+
+	/**
+	 * @return the bits cached on a wire by earlier splits, if it can cache
+	 *         bits at all.
+	 */
+	private static WireArray getCachedBits(Wire w) {
+		if (w instanceof VariableWire || w instanceof LinearCombinationWire) {
+			return w.getBitWiresIfExistAlready();
+		}
+		return null;
+	}
+}
@@ -5,7 +5,6 @@ package circuit.structure;
 
 import java.math.BigInteger;
 
-import circuit.config.Config;
 import circuit.eval.Instruction;
 import circuit.operations.primitive.ConstMulBasicOp;
 
@@ -15,7 +14,7 @@ public class ConstantWire extends Wire {
 
 	public ConstantWire(int wireId, BigInteger value) {
 		super(wireId);
-		constant = value.mod(Config.FIELD_PRIME);
+		constant = value.mod(generator.getConfig().getFieldPrime());
 	}
 	
 	public BigInteger getConstant() {
@@ -39,7 +38,8 @@ public class ConstantWire extends Wire {
 	public Wire mul(BigInteger b, String... desc) {
 		Wire out;
 		boolean sign = b.signum() == -1;
-		BigInteger newConstant = constant.multiply(b).mod(Config.FIELD_PRIME);
+		BigInteger prime = generator.getConfig().getFieldPrime();
+		BigInteger newConstant = constant.multiply(b).mod(prime);
 		 	
 		out = generator.knownConstantWires.get(newConstant);
 		if (out == null) {
@@ -47,7 +47,7 @@ public class ConstantWire extends Wire {
 			if(!sign){
 				out = new ConstantWire(generator.currentWireId++, newConstant);
 			} else{
-				out = new ConstantWire(generator.currentWireId++, newConstant.subtract(Config.FIELD_PRIME));
+				out = new ConstantWire(generator.currentWireId++, newConstant.subtract(prime));
 			}			
 			Instruction op = new ConstMulBasicOp(this, out,
 					b, desc);
@@ -67,6 +67,10 @@ public class ConstantWire extends Wire {
 	}
 
 	public Wire checkNonZero(Wire w, String... desc) {
+		return checkNonZero(desc);
+	}
+
+	public Wire checkNonZero(String... desc) {
 		if (constant.equals(BigInteger.ZERO)) {
 			return generator.zeroWire;
 		} else {
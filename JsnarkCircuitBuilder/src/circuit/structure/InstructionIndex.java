@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+
+/**
+ * An open-addressing hash index over the basic operations of an
+ * InstructionStore. It is used to detect operations that were added before,
+ * and follows the same notion of equality as the equals() methods of the
+ * BasicOp subclasses, i.e. the inputs of two-input add, mul, xor, or and
+ * assert operations may appear in any order.
+ *
+ * Only primitive keys are kept: the slots hold instruction indices and their
+ * 64-bit structural hashes (see hash()), and comparisons are done on the
+ * columns of the store. The index also counts its lookups, hits and hash
+ * collisions, see toString().
+ */
+public class InstructionIndex {
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private final InstructionStore store;
+
+	// slot -> instruction index + 1 (0 = empty)
+	private int[] slots;
+	private long[] hashes;
+	private int count;
+	private int mask;
+
+	private long numLookups;
+	private long numHits;
+	private long numProbes;
+	private long numCollisions;
+
+	// the input ids of the operation passed to find(BasicOp)
+	private int[] scratch = new int[16];
+
+	InstructionIndex(InstructionStore store) {
+		this.store = store;
+		slots = new int[INITIAL_CAPACITY];
+		hashes = new long[INITIAL_CAPACITY];
+		mask = INITIAL_CAPACITY - 1;
+	}
+
+	/**
+	 * @return the index of an equivalent operation in the store, or -1.
+	 */
+	int find(BasicOp op) {
+		scratch = getIds(op, scratch);
+		byte opcode = InstructionStore.getOpcode(op);
+		return find(opcode, scratch, 0, op.getInputs().length, op.getOutputs().length, getConstant(op));
+	}
+
+	/**
+	 * @return the input ids of op, followed by the output id in case of an
+	 *         assertion, in ids or a larger array.
+	 */
+	private static int[] getIds(BasicOp op, int[] ids) {
+		Wire[] ins = op.getInputs();
+		int n = op instanceof AssertBasicOp ? ins.length + 1 : ins.length;
+		if (ids.length < n) {
+			ids = new int[Math.max(n, ids.length * 2)];
+		}
+		for (int k = 0; k < ins.length; k++) {
+			ids[k] = ins[k].getWireId();
+		}
+		if (op instanceof AssertBasicOp) {
+			ids[ins.length] = op.getOutputs()[0].getWireId();
+		}
+		return ids;
+	}
+
+	private static BigInteger getConstant(BasicOp op) {
+		return op instanceof ConstMulBasicOp ? ((ConstMulBasicOp) op).getConstInteger() : null;
+	}
+
+	/**
+	 * Same as find(BasicOp), for an operation given by its columns: the input
+	 * ids are ids[offset .. offset+numInputs-1], followed by the output id in
+	 * case of an assertion.
+	 * 
+	 * @param constant
+	 *            the constant of a OP_CONST_MUL operation, in the range [0,
+	 *            prime).
+	 */
+	int find(byte opcode, int[] ids, int offset, int numInputs, int numOutputs, BigInteger constant) {
+		long h = hash(opcode, ids, offset, numInputs, numOutputs, constant);
+		int slot = (int) h & mask;
+		numLookups++;
+		while (slots[slot] != 0) {
+			int i = slots[slot] - 1;
+			if (hashes[slot] == h) {
+				if (matches(i, opcode, ids, offset, numInputs, numOutputs, constant)) {
+					numHits++;
+					return i;
+				}
+				numCollisions++;
+			}
+			numProbes++;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	void insert(int i) {
+		if (2 * (count + 1) > slots.length) {
+			rehash(slots.length * 2);
+		}
+		put(i, hash(i));
+		count++;
+	}
+
+	private void put(int i, long h) {
+		int slot = (int) h & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = i + 1;
+		hashes[slot] = h;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldSlots = slots;
+		long[] oldHashes = hashes;
+		slots = new int[capacity];
+		hashes = new long[capacity];
+		mask = capacity - 1;
+		for (int s = 0; s < oldSlots.length; s++) {
+			if (oldSlots[s] != 0) {
+				put(oldSlots[s] - 1, oldHashes[s]);
+			}
+		}
+	}
+
+	void clear() {
+		Arrays.fill(slots, 0);
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * The number of find() calls so far, i.e. of basic operations that were
+	 * looked up before being added.
+	 */
+	public long getNumLookups() {
+		return numLookups;
+	}
+
+	/**
+	 * The number of lookups that found an equivalent operation, which was
+	 * then reused instead of adding a new one.
+	 */
+	public long getNumHits() {
+		return numHits;
+	}
+
+	/**
+	 * The number of occupied slots that were skipped during lookups, i.e.
+	 * lookups with no probes at all find the right slot or an empty one
+	 * immediately.
+	 */
+	public long getNumProbes() {
+		return numProbes;
+	}
+
+	/**
+	 * The number of times that different operations had the same 64-bit
+	 * hash during a lookup.
+	 */
+	public long getNumCollisions() {
+		return numCollisions;
+	}
+
+	public double getHitRate() {
+		return numLookups == 0 ? 0 : (double) numHits / numLookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d operations, %d lookups, %d hits (%.2f%%), %.3f probes per lookup, %d collisions",
+				count, numLookups, numHits, 100 * getHitRate(),
+				numLookups == 0 ? 0.0 : (double) numProbes / numLookups, numCollisions);
+	}
+
+	/**
+	 * @return a 64-bit hash of a basic operation that is consistent with its
+	 *         equals() method, see hash(byte, int[], int, int, int,
+	 *         BigInteger).
+	 */
+	public static long hash(BasicOp op) {
+		int[] ids = getIds(op, new int[op.getInputs().length + 1]);
+		return hash(InstructionStore.getOpcode(op), ids, 0, op.getInputs().length, op.getOutputs().length,
+				getConstant(op));
+	}
+
+	/**
+	 * Hashes the structure of an operation: its opcode, its inputs in a
+	 * canonical order (sorted for the commutative operations, i.e. two-input
+	 * add, mul, xor, or and assert), the output of an assertion, the number
+	 * of bits of a split and the constant of a const-mul. The ids are
+	 * combined by multiplication with an odd 64-bit constant, and the result
+	 * is finalized as in MurmurHash3, so that all bits of the hash depend on
+	 * all ids, e.g. add <3 5> and add <4 4> do not collide.
+	 */
+	static long hash(byte opcode, int[] ids, int offset, int numInputs, int numOutputs, BigInteger constant) {
+		long h = opcode * MULTIPLIER + numInputs;
+		if (numInputs == 2 && isCommutative(opcode)) {
+			int a = ids[offset];
+			int b = ids[offset + 1];
+			h = (h * MULTIPLIER) + Math.min(a, b);
+			h = (h * MULTIPLIER) + Math.max(a, b);
+		} else {
+			for (int k = 0; k < numInputs; k++) {
+				h = (h * MULTIPLIER) + ids[offset + k];
+			}
+		}
+		switch (opcode) {
+		case InstructionStore.OP_ASSERT:
+			h = (h * MULTIPLIER) + ids[offset + numInputs];
+			break;
+		case InstructionStore.OP_SPLIT:
+			h = (h * MULTIPLIER) + numOutputs;
+			break;
+		case InstructionStore.OP_CONST_MUL:
+			h = (h * MULTIPLIER) + constant.hashCode();
+			h = (h * MULTIPLIER) + constant.longValue();
+			break;
+		}
+		return mix(h);
+	}
+
+	private static boolean isCommutative(byte opcode) {
+		switch (opcode) {
+		case InstructionStore.OP_ADD:
+		case InstructionStore.OP_MUL:
+		case InstructionStore.OP_XOR:
+		case InstructionStore.OP_OR:
+		case InstructionStore.OP_ASSERT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private long hash(int i) {
+		byte opcode = store.getOpcode(i);
+		return hash(opcode, store.getWireIdArena(), store.getArenaStart(i), store.getNumInputs(i),
+				store.getNumOutputs(i), opcode == InstructionStore.OP_CONST_MUL ? store.getConstant(i) : null);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	private boolean matches(int i, byte opcode, int[] ids, int offset, int n, int numOutputs, BigInteger constant) {
+		if (store.getOpcode(i) != opcode || store.getNumInputs(i) != n) {
+			return false;
+		}
+		switch (opcode) {
+		case InstructionStore.OP_CONST_MUL:
+			return store.getInputId(i, 0) == ids[offset] && store.getConstant(i).equals(constant);
+		case InstructionStore.OP_SPLIT:
+			return store.getInputId(i, 0) == ids[offset] && store.getNumOutputs(i) == numOutputs;
+		case InstructionStore.OP_ASSERT:
+			return matchesUnordered(i, ids, offset) && store.getOutputId(i, 0) == ids[offset + n];
+		case InstructionStore.OP_MUL:
+		case InstructionStore.OP_XOR:
+		case InstructionStore.OP_OR:
+			return matchesUnordered(i, ids, offset);
+		case InstructionStore.OP_ADD:
+			return n == 2 ? matchesUnordered(i, ids, offset) : matchesOrdered(i, ids, offset, n);
+		default:
+			return matchesOrdered(i, ids, offset, n);
+		}
+	}
+
+	private boolean matchesOrdered(int i, int[] ids, int offset, int n) {
+		for (int k = 0; k < n; k++) {
+			if (store.getInputId(i, k) != ids[offset + k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matchesUnordered(int i, int[] ids, int offset) {
+		int a = store.getInputId(i, 0);
+		int b = store.getInputId(i, 1);
+		int x = ids[offset];
+		int y = ids[offset + 1];
+		return (a == x && b == y) || (a == y && b == x);
+	}
+}
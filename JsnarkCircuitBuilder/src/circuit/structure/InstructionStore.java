@@ -0,0 +1,766 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import circuit.config.CircuitConfig;
+import circuit.eval.Instruction;
+import circuit.io.MappedFileReader;
+import circuit.io.MappedFileWriter;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.NonZeroCheckBasicOp;
+import circuit.operations.primitive.ORBasicOp;
+import circuit.operations.primitive.PackBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.operations.primitive.XorBasicOp;
+
+/**
+ * An append-only, column-oriented store for the instructions of a circuit.
+ * Instead of keeping one object per instruction, every instruction is
+ * represented by an opcode byte and a range in a flat arena of wire ids
+ * (inputs first, then outputs). Constants of ConstMulBasicOp, descriptions
+ * and custom prover instructions are kept in side tables.
+ *
+ * Instruction objects are only created on demand as views (see get()), e.g.
+ * for evaluation or for writing the circuit file. The lookup needed for
+ * caching in CircuitGenerator.addToEvaluationQueue() is done by a separate
+ * hash index over the columns (see InstructionIndex).
+ */
+public class InstructionStore implements Iterable<Instruction> {
+
+	public static final byte OP_ADD = 0;
+	public static final byte OP_MUL = 1;
+	public static final byte OP_CONST_MUL = 2;
+	public static final byte OP_XOR = 3;
+	public static final byte OP_OR = 4;
+	public static final byte OP_SPLIT = 5;
+	public static final byte OP_PACK = 6;
+	public static final byte OP_ZEROP = 7;
+	public static final byte OP_ASSERT = 8;
+	public static final byte OP_INPUT = 9;
+	public static final byte OP_NIZKINPUT = 10;
+	public static final byte OP_OUTPUT = 11;
+	public static final byte OP_DEBUG = 12;
+	public static final byte OP_CUSTOM = 13;
+
+	// the classes of wires, see getWireKind()
+	static final byte WIRE_KIND_WIRE = 1;
+	static final byte WIRE_KIND_VARIABLE = 2;
+	static final byte WIRE_KIND_LINEAR_COMBINATION = 3;
+	static final byte WIRE_KIND_BIT = 4;
+	static final byte WIRE_KIND_VARIABLE_BIT = 5;
+	static final byte WIRE_KIND_LINEAR_COMBINATION_BIT = 6;
+	static final byte WIRE_KIND_CONSTANT = 7;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int size;
+	private byte[] opcodes;
+	// instruction i uses arena[start[i] .. start[i+1]-1]
+	private int[] start;
+	private int[] numInputs;
+	// constant table index (for OP_CONST_MUL, 2*index + sign bit), or custom
+	// instruction index (for OP_CUSTOM)
+	private int[] aux;
+	private String[] descs;
+
+	private int arenaSize;
+	private int[] arena;
+
+	private ArrayList<BigInteger> constants;
+	private HashMap<BigInteger, Integer> constantIndices;
+	private ArrayList<Instruction> customInstructions;
+
+	// the wire objects, indexed by wire id - wireIdBase. Needed to return the
+	// original outputs for cached instructions, and to build the views.
+	private Wire[] wires;
+	private int wireIdBase;
+	private int maxRegisteredId = -1;
+
+	// in cost-only mode, only the columns needed for caching are kept: no
+	// descriptions, no custom instructions, and the wire objects (except
+	// constants) are replaced by their classes (see getWireKind())
+	private final boolean costOnly;
+	private byte[] wireKinds;
+
+	// the field of the circuit, which is needed e.g. to write negative
+	// constants
+	private final BigInteger prime;
+
+	private InstructionIndex index;
+
+	/**
+	 * Creates a store for circuits over the field of the default configuration
+	 * (see CircuitConfig.getDefault()).
+	 */
+	public InstructionStore() {
+		this(CircuitConfig.getDefault().getFieldPrime(), false);
+	}
+
+	public InstructionStore(BigInteger prime) {
+		this(prime, false);
+	}
+
+	/**
+	 * @param costOnly
+	 *            whether the store is only used for counting (see
+	 *            CircuitGenerator.countConstraints()). Such a store cannot be
+	 *            evaluated or written.
+	 */
+	InstructionStore(BigInteger prime, boolean costOnly) {
+		this.prime = prime;
+		this.costOnly = costOnly;
+		opcodes = new byte[INITIAL_CAPACITY];
+		start = new int[INITIAL_CAPACITY + 1];
+		numInputs = new int[INITIAL_CAPACITY];
+		aux = new int[INITIAL_CAPACITY];
+		descs = new String[INITIAL_CAPACITY];
+		arena = new int[INITIAL_CAPACITY * 3];
+		wires = new Wire[INITIAL_CAPACITY];
+		if (costOnly) {
+			wireKinds = new byte[INITIAL_CAPACITY];
+		}
+		constants = new ArrayList<BigInteger>();
+		constantIndices = new HashMap<BigInteger, Integer>();
+		customInstructions = new ArrayList<Instruction>();
+		index = new InstructionIndex(this);
+	}
+
+	/**
+	 * Appends an instruction, unless it is a basic operation that was added
+	 * before.
+	 *
+	 * @return the outputs of the earlier equivalent operation, or null if the
+	 *         instruction was appended.
+	 */
+	public Wire[] add(Instruction e) {
+		if (e instanceof BasicOp) {
+			BasicOp op = (BasicOp) e;
+			int found = index.find(op);
+			if (found != -1) {
+				return getOutputWires(found);
+			}
+			append(op);
+			index.insert(size - 1);
+		} else if (e instanceof WireLabelInstruction) {
+			append((WireLabelInstruction) e);
+		} else {
+			ensureCapacity(0);
+			opcodes[size] = OP_CUSTOM;
+			if (costOnly) {
+				aux[size] = -1;
+			} else {
+				aux[size] = customInstructions.size();
+				customInstructions.add(e);
+			}
+			start[size + 1] = arenaSize;
+			size++;
+		}
+		return null;
+	}
+
+	private void append(BasicOp op) {
+		Wire[] ins = op.getInputs();
+		Wire[] outs = op.getOutputs();
+		ensureCapacity(ins.length + outs.length);
+		byte opcode = getOpcode(op);
+		opcodes[size] = opcode;
+		numInputs[size] = ins.length;
+		String desc = op.getDesc();
+		descs[size] = desc.length() == 0 || costOnly ? null : desc;
+		if (opcode == OP_CONST_MUL) {
+			ConstMulBasicOp constMulOp = (ConstMulBasicOp) op;
+			aux[size] = 2 * getConstantIndex(constMulOp.getConstInteger()) + (constMulOp.isNegative() ? 1 : 0);
+		}
+		for (Wire w : ins) {
+			arena[arenaSize++] = w.getWireId();
+		}
+		for (Wire w : outs) {
+			arena[arenaSize++] = w.getWireId();
+			registerWire(w);
+		}
+		start[size + 1] = arenaSize;
+		size++;
+	}
+
+	/**
+	 * @return the index of a basic operation equivalent to the one given by
+	 *         its columns, or -1. See InstructionIndex.find().
+	 */
+	int find(byte opcode, int[] ids, int offset, int numInputs, int numOutputs, BigInteger constant) {
+		return index.find(opcode, ids, offset, numInputs, numOutputs, constant);
+	}
+
+	/**
+	 * Appends a basic operation given by its columns, without checking for an
+	 * earlier equivalent operation (see find()). The input ids are
+	 * ids[offset .. offset+numInputs-1], and the output wires are registered.
+	 */
+	void append(byte opcode, int[] ids, int offset, int numInputs, Wire[] outs, BigInteger constant,
+			boolean negative, String desc) {
+		for (int k = 0; k < outs.length; k++) {
+			ids[offset + numInputs + k] = outs[k].getWireId();
+		}
+		addOperation(opcode, ids, offset, numInputs, outs.length, constant, negative, desc);
+		for (Wire w : outs) {
+			registerWire(w);
+		}
+	}
+
+	/**
+	 * Appends a basic operation given by wire ids, e.g. for a circuit that is
+	 * rewritten by an optimization pass. The ids are
+	 * ids[offset .. offset+numInputs+numOutputs-1], inputs first. No wire
+	 * objects are registered for the outputs (see getWire()), and the
+	 * operation is not checked against earlier ones.
+	 * 
+	 * @param constant
+	 *            the constant of a OP_CONST_MUL operation, in the range [0,
+	 *            prime)
+	 * @param negative
+	 *            whether the constant is written as a negative constant
+	 */
+	public void addOperation(byte opcode, int[] ids, int offset, int numInputs, int numOutputs,
+			BigInteger constant, boolean negative, String desc) {
+		if (opcode > OP_ASSERT) {
+			throw new IllegalArgumentException("Not a basic operation: " + opcode);
+		}
+		ensureCapacity(numInputs + numOutputs);
+		opcodes[size] = opcode;
+		this.numInputs[size] = numInputs;
+		descs[size] = costOnly || desc == null || desc.length() == 0 ? null : desc;
+		if (opcode == OP_CONST_MUL) {
+			aux[size] = 2 * getConstantIndex(constant) + (negative ? 1 : 0);
+		}
+		System.arraycopy(ids, offset, arena, arenaSize, numInputs + numOutputs);
+		arenaSize += numInputs + numOutputs;
+		start[size + 1] = arenaSize;
+		size++;
+		index.insert(size - 1);
+	}
+
+	/**
+	 * Appends an input, nizkinput, output or debug label given by a wire id.
+	 * See addOperation().
+	 */
+	public void addLabel(byte opcode, int id, String desc) {
+		if (opcode < OP_INPUT || opcode > OP_DEBUG) {
+			throw new IllegalArgumentException("Not a label: " + opcode);
+		}
+		ensureCapacity(1);
+		opcodes[size] = opcode;
+		numInputs[size] = 1;
+		descs[size] = costOnly || desc == null || desc.length() == 0 ? null : desc;
+		arena[arenaSize++] = id;
+		start[size + 1] = arenaSize;
+		size++;
+	}
+
+	private void append(WireLabelInstruction label) {
+		ensureCapacity(1);
+		switch (label.getType()) {
+		case input:
+			opcodes[size] = OP_INPUT;
+			break;
+		case nizkinput:
+			opcodes[size] = OP_NIZKINPUT;
+			break;
+		case output:
+			opcodes[size] = OP_OUTPUT;
+			break;
+		default:
+			opcodes[size] = OP_DEBUG;
+		}
+		numInputs[size] = 1;
+		String desc = label.getDesc();
+		descs[size] = desc.length() == 0 || costOnly ? null : desc;
+		Wire w = label.getWire();
+		arena[arenaSize++] = w.getWireId();
+		registerWire(w);
+		start[size + 1] = arenaSize;
+		size++;
+	}
+
+	static byte getOpcode(BasicOp op) {
+		if (op instanceof AddBasicOp) {
+			return OP_ADD;
+		} else if (op instanceof MulBasicOp) {
+			return OP_MUL;
+		} else if (op instanceof ConstMulBasicOp) {
+			return OP_CONST_MUL;
+		} else if (op instanceof XorBasicOp) {
+			return OP_XOR;
+		} else if (op instanceof ORBasicOp) {
+			return OP_OR;
+		} else if (op instanceof SplitBasicOp) {
+			return OP_SPLIT;
+		} else if (op instanceof PackBasicOp) {
+			return OP_PACK;
+		} else if (op instanceof NonZeroCheckBasicOp) {
+			return OP_ZEROP;
+		} else if (op instanceof AssertBasicOp) {
+			return OP_ASSERT;
+		} else {
+			throw new IllegalArgumentException("Unsupported basic operation: " + op.getClass().getName());
+		}
+	}
+
+	/**
+	 * @return the number of multiplication gates of a basic operation, see
+	 *         BasicOp.getNumMulGates().
+	 */
+	public static int getNumMulGates(byte opcode, int numOutputs) {
+		switch (opcode) {
+		case OP_MUL:
+		case OP_XOR:
+		case OP_OR:
+		case OP_ASSERT:
+			return 1;
+		case OP_SPLIT:
+			return numOutputs + 1;
+		case OP_ZEROP:
+			return 2;
+		default:
+			return 0;
+		}
+	}
+
+	private int getConstantIndex(BigInteger c) {
+		Integer idx = constantIndices.get(c);
+		if (idx == null) {
+			idx = constants.size();
+			constants.add(c);
+			constantIndices.put(c, idx);
+		}
+		return idx;
+	}
+
+	private void registerWire(Wire w) {
+		int id = w.getWireId() - wireIdBase;
+		if (id < 0) {
+			return;
+		}
+		if (id >= wires.length) {
+			wires = Arrays.copyOf(wires, Math.max(id + 1, wires.length * 2));
+			if (costOnly) {
+				wireKinds = Arrays.copyOf(wireKinds, wires.length);
+			}
+		}
+		if (costOnly && !(w instanceof ConstantWire)) {
+			if (wireKinds[id] == 0) {
+				wireKinds[id] = getWireKind(w);
+				maxRegisteredId = Math.max(maxRegisteredId, w.getWireId());
+			}
+		} else if (wires[id] == null) {
+			wires[id] = w;
+			maxRegisteredId = Math.max(maxRegisteredId, w.getWireId());
+		}
+	}
+
+	static byte getWireKind(Wire w) {
+		if (w instanceof ConstantWire) {
+			return WIRE_KIND_CONSTANT;
+		} else if (w instanceof VariableBitWire) {
+			return WIRE_KIND_VARIABLE_BIT;
+		} else if (w instanceof LinearCombinationBitWire) {
+			return WIRE_KIND_LINEAR_COMBINATION_BIT;
+		} else if (w instanceof BitWire) {
+			return WIRE_KIND_BIT;
+		} else if (w instanceof VariableWire) {
+			return WIRE_KIND_VARIABLE;
+		} else if (w instanceof LinearCombinationWire) {
+			return WIRE_KIND_LINEAR_COMBINATION;
+		} else {
+			return WIRE_KIND_WIRE;
+		}
+	}
+
+	/**
+	 * @param constant
+	 *            the value of a constant wire, otherwise ignored
+	 */
+	static Wire createWire(byte kind, int id, BigInteger constant) {
+		switch (kind) {
+		case WIRE_KIND_CONSTANT:
+			return new ConstantWire(id, constant);
+		case WIRE_KIND_VARIABLE_BIT:
+			return new VariableBitWire(id);
+		case WIRE_KIND_LINEAR_COMBINATION_BIT:
+			return new LinearCombinationBitWire(id);
+		case WIRE_KIND_BIT:
+			return new BitWire(id);
+		case WIRE_KIND_VARIABLE:
+			return new VariableWire(id);
+		case WIRE_KIND_LINEAR_COMBINATION:
+			return new LinearCombinationWire(id);
+		default:
+			return new Wire(id);
+		}
+	}
+
+	private void ensureCapacity(int numWires) {
+		if (size == opcodes.length) {
+			int newCapacity = opcodes.length * 2;
+			opcodes = Arrays.copyOf(opcodes, newCapacity);
+			start = Arrays.copyOf(start, newCapacity + 1);
+			numInputs = Arrays.copyOf(numInputs, newCapacity);
+			aux = Arrays.copyOf(aux, newCapacity);
+			descs = Arrays.copyOf(descs, newCapacity);
+		}
+		if (arenaSize + numWires > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arenaSize + numWires, arena.length * 2));
+		}
+	}
+
+	public BigInteger getPrime() {
+		return prime;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public byte getOpcode(int i) {
+		return opcodes[i];
+	}
+
+	public boolean isBasicOp(int i) {
+		return opcodes[i] <= OP_ASSERT;
+	}
+
+	public boolean isLabel(int i) {
+		return opcodes[i] >= OP_INPUT && opcodes[i] <= OP_DEBUG;
+	}
+
+	/**
+	 * @return true if the instruction appears in the circuit file, i.e. it is
+	 *         not a debug label or a custom prover computation.
+	 */
+	public boolean doneWithinCircuit(int i) {
+		return opcodes[i] < OP_DEBUG;
+	}
+
+	public int getNumInputs(int i) {
+		return numInputs[i];
+	}
+
+	public int getNumOutputs(int i) {
+		return start[i + 1] - start[i] - numInputs[i];
+	}
+
+	public int getInputId(int i, int k) {
+		return arena[start[i] + k];
+	}
+
+	public int getOutputId(int i, int k) {
+		return arena[start[i] + numInputs[i] + k];
+	}
+
+	/**
+	 * The wire ids used by instruction i are stored in
+	 * getWireIdArena()[getArenaStart(i) .. getArenaStart(i+1)-1], inputs first.
+	 * The returned array must not be modified.
+	 */
+	public int[] getWireIdArena() {
+		return arena;
+	}
+
+	public int getArenaStart(int i) {
+		return start[i];
+	}
+
+	/**
+	 * @return the constant of a OP_CONST_MUL instruction, in the range [0,
+	 *         prime).
+	 */
+	public BigInteger getConstant(int i) {
+		return constants.get(aux[i] >>> 1);
+	}
+
+	public boolean isNegativeConstant(int i) {
+		return (aux[i] & 1) == 1;
+	}
+
+	public String getDesc(int i) {
+		return descs[i] == null ? "" : descs[i];
+	}
+
+	public Instruction getCustomInstruction(int i) {
+		return customInstructions.get(aux[i]);
+	}
+
+	public Wire getWire(int id) {
+		boolean registered = id >= wireIdBase && id - wireIdBase < wires.length;
+		Wire w = registered ? wires[id - wireIdBase] : null;
+		if (w == null && registered && costOnly && wireKinds[id - wireIdBase] != 0) {
+			// a new object of the same class, without the cached bits
+			w = createWire(wireKinds[id - wireIdBase], id, null);
+		}
+		if (w == null) {
+			w = new Wire(id);
+		}
+		return w;
+	}
+
+	private Wire[] getOutputWires(int i) {
+		Wire[] outs = new Wire[getNumOutputs(i)];
+		for (int k = 0; k < outs.length; k++) {
+			outs[k] = getWire(getOutputId(i, k));
+		}
+		return outs;
+	}
+
+	private Wire[] getInputWires(int i) {
+		Wire[] ins = new Wire[numInputs[i]];
+		for (int k = 0; k < ins.length; k++) {
+			ins[k] = getWire(getInputId(i, k));
+		}
+		return ins;
+	}
+
+	/**
+	 * Creates an instruction object for instruction i. For basic operations
+	 * and labels, a new object is created on every call.
+	 */
+	public Instruction get(int i) {
+		String desc = getDesc(i);
+		switch (opcodes[i]) {
+		case OP_ADD:
+			return new AddBasicOp(getInputWires(i), getWire(getOutputId(i, 0)), desc);
+		case OP_MUL:
+			return new MulBasicOp(getWire(getInputId(i, 0)), getWire(getInputId(i, 1)),
+					getWire(getOutputId(i, 0)), desc);
+		case OP_CONST_MUL:
+			return new ConstMulBasicOp(getWire(getInputId(i, 0)), getWire(getOutputId(i, 0)), getConstant(i),
+					isNegativeConstant(i), getPrime(), desc);
+		case OP_XOR:
+			return new XorBasicOp(getWire(getInputId(i, 0)), getWire(getInputId(i, 1)),
+					getWire(getOutputId(i, 0)), desc);
+		case OP_OR:
+			return new ORBasicOp(getWire(getInputId(i, 0)), getWire(getInputId(i, 1)),
+					getWire(getOutputId(i, 0)), desc);
+		case OP_SPLIT:
+			return new SplitBasicOp(getWire(getInputId(i, 0)), getOutputWires(i), desc);
+		case OP_PACK:
+			return new PackBasicOp(getInputWires(i), getWire(getOutputId(i, 0)), desc);
+		case OP_ZEROP:
+			return new NonZeroCheckBasicOp(getWire(getInputId(i, 0)), getWire(getOutputId(i, 0)),
+					getWire(getOutputId(i, 1)), desc);
+		case OP_ASSERT:
+			return new AssertBasicOp(getWire(getInputId(i, 0)), getWire(getInputId(i, 1)),
+					getWire(getOutputId(i, 0)), desc);
+		case OP_INPUT:
+			return new WireLabelInstruction(LabelType.input, getWire(getInputId(i, 0)), desc);
+		case OP_NIZKINPUT:
+			return new WireLabelInstruction(LabelType.nizkinput, getWire(getInputId(i, 0)), desc);
+		case OP_OUTPUT:
+			return new WireLabelInstruction(LabelType.output, getWire(getInputId(i, 0)), desc);
+		case OP_DEBUG:
+			return new WireLabelInstruction(LabelType.debug, getWire(getInputId(i, 0)), desc);
+		default:
+			return getCustomInstruction(i);
+		}
+	}
+
+	/**
+	 * Removes the first n instructions, e.g. after they have been written out
+	 * in streaming mode. The remaining instructions are moved to the front,
+	 * and only they are considered for caching afterwards. Wire objects that
+	 * were registered before the remaining instructions are released.
+	 */
+	public void removeFirst(int n) {
+		if (n <= 0) {
+			return;
+		}
+		int remaining = size - n;
+		int arenaOffset = start[n];
+		System.arraycopy(opcodes, n, opcodes, 0, remaining);
+		System.arraycopy(numInputs, n, numInputs, 0, remaining);
+		System.arraycopy(aux, n, aux, 0, remaining);
+		System.arraycopy(descs, n, descs, 0, remaining);
+		Arrays.fill(descs, remaining, size, null);
+		for (int i = 0; i <= remaining; i++) {
+			start[i] = start[i + n] - arenaOffset;
+		}
+		System.arraycopy(arena, arenaOffset, arena, 0, arenaSize - arenaOffset);
+		arenaSize -= arenaOffset;
+		size = remaining;
+
+		// only keep the constants and custom instructions that are still used
+		ArrayList<BigInteger> oldConstants = constants;
+		ArrayList<Instruction> oldCustomInstructions = customInstructions;
+		constants = new ArrayList<BigInteger>();
+		constantIndices = new HashMap<BigInteger, Integer>();
+		customInstructions = new ArrayList<Instruction>();
+		int newWireIdBase = Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			if (opcodes[i] == OP_CONST_MUL) {
+				aux[i] = 2 * getConstantIndex(oldConstants.get(aux[i] >>> 1)) + (aux[i] & 1);
+			} else if (opcodes[i] == OP_CUSTOM) {
+				customInstructions.add(oldCustomInstructions.get(aux[i]));
+				aux[i] = customInstructions.size() - 1;
+			}
+			// the wires created by the remaining instructions
+			if (opcodes[i] == OP_INPUT || opcodes[i] == OP_NIZKINPUT) {
+				newWireIdBase = Math.min(newWireIdBase, getInputId(i, 0));
+			} else if (isBasicOp(i) && opcodes[i] != OP_ASSERT) {
+				newWireIdBase = Math.min(newWireIdBase, getOutputId(i, 0));
+			}
+		}
+		if (newWireIdBase == Integer.MAX_VALUE) {
+			newWireIdBase = maxRegisteredId + 1;
+		}
+		if (newWireIdBase > wireIdBase) {
+			int shift = newWireIdBase - wireIdBase;
+			Wire[] newWires = new Wire[Math.max(INITIAL_CAPACITY, wires.length - shift)];
+			if (shift < wires.length) {
+				System.arraycopy(wires, shift, newWires, 0, wires.length - shift);
+			}
+			wires = newWires;
+			wireIdBase = newWireIdBase;
+		}
+
+		index.clear();
+		for (int i = 0; i < size; i++) {
+			if (isBasicOp(i)) {
+				index.insert(i);
+			}
+		}
+	}
+
+	/**
+	 * Writes the instructions for CircuitGenerator.saveCircuit(). Custom
+	 * instructions cannot be serialized, so only their positions are kept
+	 * (see setCustomInstruction()).
+	 */
+	void writeSnapshot(MappedFileWriter out) throws IOException {
+		out.putVarint(size);
+		out.putVarint(arenaSize);
+		out.putVarint(constants.size());
+		for (BigInteger c : constants) {
+			byte[] bytes = c.toByteArray();
+			out.putVarint(bytes.length);
+			out.putBytes(bytes);
+		}
+		out.putVarint(customInstructions.size());
+		for (int i = 0; i < size; i++) {
+			out.putByte(opcodes[i]);
+			if (opcodes[i] != OP_CUSTOM) {
+				out.putVarint(numInputs[i]);
+				out.putVarint(getNumOutputs(i));
+				out.putString(getDesc(i));
+			}
+			if (opcodes[i] == OP_CONST_MUL) {
+				out.putVarint(aux[i]);
+			}
+		}
+		for (int k = 0; k < arenaSize; k++) {
+			out.putVarint(arena[k]);
+		}
+	}
+
+	/**
+	 * Reads the instructions written by writeSnapshot(). The custom
+	 * instructions are null until they are set by setCustomInstruction().
+	 */
+	static InstructionStore readSnapshot(MappedFileReader in, BigInteger prime) throws IOException {
+		InstructionStore store = new InstructionStore(prime);
+		int n = in.getVarintAsInt();
+		int arenaSize = in.getVarintAsInt();
+		int capacity = Math.max(n, INITIAL_CAPACITY);
+		store.opcodes = new byte[capacity];
+		store.start = new int[capacity + 1];
+		store.numInputs = new int[capacity];
+		store.aux = new int[capacity];
+		store.descs = new String[capacity];
+		store.arena = new int[Math.max(arenaSize, 1)];
+
+		int numConstants = in.getVarintAsInt();
+		for (int k = 0; k < numConstants; k++) {
+			store.getConstantIndex(new BigInteger(in.getBytes(in.getVarintAsInt())));
+		}
+		int numCustomInstructions = in.getVarintAsInt();
+		for (int k = 0; k < numCustomInstructions; k++) {
+			store.customInstructions.add(null);
+		}
+		int customIndex = 0;
+		int position = 0;
+		for (int i = 0; i < n; i++) {
+			byte opcode = (byte) in.getByte();
+			store.opcodes[i] = opcode;
+			store.start[i] = position;
+			if (opcode == OP_CUSTOM) {
+				store.aux[i] = customIndex++;
+			} else {
+				store.numInputs[i] = in.getVarintAsInt();
+				position += store.numInputs[i] + in.getVarintAsInt();
+				String desc = in.getString();
+				store.descs[i] = desc.length() == 0 ? null : desc;
+			}
+			if (opcode == OP_CONST_MUL) {
+				store.aux[i] = in.getVarintAsInt();
+			}
+		}
+		store.start[n] = position;
+		if (position != arenaSize || customIndex != numCustomInstructions) {
+			throw new IOException("Inconsistent circuit snapshot");
+		}
+		for (int k = 0; k < arenaSize; k++) {
+			store.arena[k] = in.getVarintAsInt();
+		}
+		store.size = n;
+		store.arenaSize = arenaSize;
+		for (int i = 0; i < n; i++) {
+			if (store.isBasicOp(i)) {
+				store.index.insert(i);
+			}
+		}
+		return store;
+	}
+
+	int getNumCustomInstructions() {
+		return customInstructions.size();
+	}
+
+	void setCustomInstruction(int k, Instruction e) {
+		customInstructions.set(k, e);
+	}
+
+	@Override
+	public Iterator<Instruction> iterator() {
+		return new Iterator<Instruction>() {
+			int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < size;
+			}
+
+			@Override
+			public Instruction next() {
+				if (i >= size) {
+					throw new NoSuchElementException();
+				}
+				return get(i++);
+			}
+		};
+	}
+
+	public InstructionIndex getIndex() {
+		return index;
+	}
+}
@@ -615,7 +615,13 @@ public class Wire {
 		for (int i = 0; i < resultBits.length; i++) {
 			resultBits[i] = bits[i].invAsBit(desc);
 		}
-		return new LinearCombinationWire(new WireArray(resultBits));
+		WireArray result = new WireArray(resultBits);
+		BigInteger v = result.checkIfConstantBits(desc);
+		if (v == null) {
+			return new LinearCombinationWire(result);
+		} else {
+			return generator.createConstantWire(v);
+		}
 	}
 
 	public Wire trimBits(int currentNumOfBits, int desiredNumofBits, String... desc) {
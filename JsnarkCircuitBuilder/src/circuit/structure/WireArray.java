@@ -62,22 +62,43 @@ public class WireArray {
 	
 	
 	public Wire sumAllElements(String...desc) {
-		boolean allConstant = true;
+		// the constant terms are added at generation time, and only their sum
+		// appears in the add operation (in place of the first constant), if it
+		// is not zero
 		Wire output;
 		BigInteger sum = BigInteger.ZERO;
-		for (Wire w : array) {
-			if (!(w instanceof ConstantWire)) {
-				allConstant = false;
-				break;
-			} else {
-				sum = sum.add(((ConstantWire) w).getConstant());
+		int numConstants = 0;
+		int firstConstant = -1;
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] instanceof ConstantWire) {
+				sum = sum.add(((ConstantWire) array[i]).getConstant());
+				numConstants++;
+				if (firstConstant == -1) {
+					firstConstant = i;
+				}
 			}
 		}
-		if (allConstant) {
+		sum = sum.mod(generator.getConfig().getFieldPrime());
+		if (numConstants == array.length) {
 			output = generator.createConstantWire(sum, desc);
 		} else {
+			Wire[] terms = array;
+			if (numConstants > 1 || (numConstants == 1 && sum.signum() == 0)) {
+				terms = new Wire[array.length - numConstants + (sum.signum() == 0 ? 0 : 1)];
+				int n = 0;
+				for (int i = 0; i < array.length; i++) {
+					if (i == firstConstant && sum.signum() != 0) {
+						terms[n++] = generator.createConstantWire(sum, desc);
+					} else if (!(array[i] instanceof ConstantWire)) {
+						terms[n++] = array[i];
+					}
+				}
+			}
+			if (terms.length == 1) {
+				return terms[0];
+			}
 			output = new LinearCombinationWire(generator.currentWireId++);
-			Instruction op = new AddBasicOp(array, output, desc);
+			Instruction op = new AddBasicOp(terms, output, desc);
 //			generator.addToEvaluationQueue(op);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.io.AsyncFileWriter;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class AsyncFileWriterTest extends TestCase {
+
+	@Test
+	public void testSameContent() throws IOException, InterruptedException, ExecutionException {
+		int numIns = 500;
+		BigInteger[] inVals = Util.randomBigIntegerArray(numIns, Config.FIELD_PRIME);
+		CircuitGenerator generator = new CircuitGenerator("async_writer_test") {
+			Wire[] inputs;
+			Wire[] witnesses;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(numIns, "in");
+				witnesses = createProverWitnessWireArray(numIns);
+				Wire sum = getZeroWire();
+				for (int i = 0; i < numIns; i++) {
+					sum = sum.add(inputs[i].mul(witnesses[i]).mul(i + 2, "product # " + i));
+				}
+				makeOutput(sum, "sum");
+				makeOutput(inputs[0].getBitWires(Config.LOG2_FIELD_PRIME).packAsBits());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs, inVals);
+				for (int i = 0; i < numIns; i++) {
+					evaluator.setWireValue(witnesses[i], BigInteger.valueOf(i));
+				}
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+
+		String name = generator.getName();
+		Path arith = Paths.get(name + ".arith");
+		Path in = Paths.get(name + ".in");
+		Path asyncArith = Files.createTempFile(name, ".arith");
+		Path asyncIn = Files.createTempFile(name, ".in");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			// small chunks, so that many of them are in flight
+			AsyncFileWriter writer = new AsyncFileWriter(executor, 37, 3);
+			AsyncFileWriter.Result circuitResult = writer.writeCircuitFile(generator.getEvaluationQueue(),
+					generator.getNumWires(), asyncArith).get();
+			AsyncFileWriter.Result inputResult = writer.writeInputFile(generator.getEvaluationQueue(),
+					generator.getCircuitEvaluator().getValueStore(), asyncIn).get();
+
+			assertTrue(Arrays.equals(Files.readAllBytes(arith), Files.readAllBytes(asyncArith)));
+			assertTrue(Arrays.equals(Files.readAllBytes(in), Files.readAllBytes(asyncIn)));
+			assertEquals(Files.size(asyncArith), circuitResult.getNumBytes());
+			assertEquals(Files.size(asyncIn), inputResult.getNumBytes());
+			assertEquals(asyncArith, circuitResult.getPath());
+			assertTrue(circuitResult.getMegabytesPerSecond() > 0);
+
+			// the files of the generator
+			Files.delete(arith);
+			Files.delete(in);
+			generator.prepFilesAsync().get();
+			assertTrue(Arrays.equals(Files.readAllBytes(asyncArith), Files.readAllBytes(arith)));
+			assertTrue(Arrays.equals(Files.readAllBytes(asyncIn), Files.readAllBytes(in)));
+		} finally {
+			executor.shutdown();
+			Files.deleteIfExists(arith);
+			Files.deleteIfExists(in);
+			Files.delete(asyncArith);
+			Files.delete(asyncIn);
+		}
+	}
+
+	@Test
+	public void testFailure() throws IOException {
+		CircuitGenerator generator = new CircuitGenerator("async_writer_failure_test") {
+
+			@Override
+			protected void buildCircuit() {
+				Wire[] inputs = createInputWireArray(2);
+				makeOutput(inputs[0].mul(inputs[1]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+		Path directory = Files.createTempDirectory("async_writer_test");
+		try {
+			// the parent directory does not exist
+			new AsyncFileWriter().writeCircuitFile(generator.getEvaluationQueue(), generator.getNumWires(),
+					directory.resolve("missing").resolve("circuit.arith")).get();
+			fail("The writing should fail");
+		} catch (InterruptedException | ExecutionException e) {
+			assertTrue(e.getCause() instanceof UncheckedIOException);
+		} finally {
+			Files.delete(directory);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.BatchCircuitEvaluator;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class BatchEvaluatorTest extends TestCase {
+
+	@Test
+	public void testSameAsSingleEvaluation() throws IOException {
+		int numLanes = 5;
+		BigInteger[][] hashInputs = new BigInteger[numLanes][];
+		BigInteger[][] fieldInputs = new BigInteger[numLanes][];
+		for (int k = 0; k < numLanes; k++) {
+			hashInputs[k] = Util.randomBigIntegerArray(64, 8);
+			fieldInputs[k] = Util.randomBigIntegerArray(2, Config.FIELD_PRIME);
+		}
+
+		// the lane whose inputs generateSampleInput() sets
+		int[] lane = new int[1];
+		CircuitGenerator generator = new CircuitGenerator("batch_eval_test") {
+
+			Wire[] hashInputWires;
+			Wire[] fieldInputWires;
+
+			@Override
+			protected void buildCircuit() {
+				hashInputWires = createInputWireArray(64);
+				makeOutputArray(new SHA256Gadget(hashInputWires, 8, 64, false, true).getOutputWires());
+				fieldInputWires = createInputWireArray(2);
+				makeOutput(new FieldDivisionGadget(fieldInputWires[0], fieldInputWires[1]).getOutputWires()[0]);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(hashInputWires, hashInputs[lane[0]]);
+				evaluator.setWireValue(fieldInputWires, fieldInputs[lane[0]]);
+			}
+		};
+		generator.generateCircuit();
+
+		BatchCircuitEvaluator batch = new BatchCircuitEvaluator(generator, numLanes);
+		for (int k = 0; k < numLanes; k++) {
+			lane[0] = k;
+			generator.generateSampleInput(batch.getLane(k));
+		}
+		batch.evaluate();
+		batch.writeInputFiles();
+
+		Path in = Paths.get(generator.getName() + ".in");
+		try {
+			for (int k = 0; k < numLanes; k++) {
+				lane[0] = k;
+				generator.evalCircuit();
+				generator.getCircuitEvaluator().writeInputFile();
+				assertTrue(Arrays.equals(generator.getCircuitEvaluator().getAssignment(), batch.getLane(k)
+						.getAssignment()));
+				assertEquals(Files.readAllLines(in), Files.readAllLines(Paths.get(batch.getInputFileName(k))));
+			}
+		} finally {
+			Files.deleteIfExists(in);
+			for (int k = 0; k < numLanes; k++) {
+				Files.deleteIfExists(Paths.get(batch.getInputFileName(k)));
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.io.BinaryCircuitReader;
+import circuit.io.BinaryFormat;
+import circuit.io.CircuitFileConverter;
+import circuit.io.CircuitRecord;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class BinaryFormatTest extends TestCase {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+
+		int numIns = 20;
+		BigInteger[] inVals = Util.randomBigIntegerArray(numIns, Config.FIELD_PRIME);
+		for (int i = 3; i < 6; i++) {
+			inVals[i] = Util.nextRandomBigInteger(64);
+		}
+
+		CircuitGenerator generator = new CircuitGenerator("binary_format_test") {
+			Wire[] inputs;
+			Wire[] witnesses;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(numIns, "in");
+				witnesses = createProverWitnessWireArray(2);
+				Wire sum = inputs[0].sub(inputs[1], "difference # with a hash sign");
+				Wire product = sum.mul(inputs[2]).mul(-123456789);
+				Wire x = inputs[3].xorBitwise(inputs[4], 64).orBitwise(inputs[5], 64);
+				Wire eq = inputs[6].isEqualTo(inputs[7]);
+				addBinaryAssertion(witnesses[0]);
+				makeOutput(product, "product");
+				makeOutput(x);
+				makeOutput(eq);
+				makeOutput(witnesses[1].add(inputs[8]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs, inVals);
+				evaluator.setWireValue(witnesses[0], BigInteger.ONE);
+				evaluator.setWireValue(witnesses[1], BigInteger.TEN);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.prepBinaryFiles();
+
+		String name = generator.getName();
+		Path arith = Paths.get(name + ".arith");
+		Path in = Paths.get(name + ".in");
+		Path binArith = Paths.get(name + BinaryFormat.CIRCUIT_FILE_EXTENSION);
+		Path binIn = Paths.get(name + BinaryFormat.WITNESS_FILE_EXTENSION);
+		Path tmp = Files.createTempFile(name, ".tmp");
+		try {
+			// binary -> text gives the text files
+			CircuitFileConverter.convert(binArith, tmp);
+			assertTrue(Arrays.equals(Files.readAllBytes(arith), Files.readAllBytes(tmp)));
+			CircuitFileConverter.convert(binIn, tmp);
+			assertTrue(Arrays.equals(Files.readAllBytes(in), Files.readAllBytes(tmp)));
+
+			// text -> binary gives the binary files
+			CircuitFileConverter.convert(arith, tmp);
+			assertTrue(Arrays.equals(Files.readAllBytes(binArith), Files.readAllBytes(tmp)));
+			CircuitFileConverter.convert(in, tmp);
+			assertTrue(Arrays.equals(Files.readAllBytes(binIn), Files.readAllBytes(tmp)));
+
+			try (BinaryCircuitReader reader = new BinaryCircuitReader(binArith)) {
+				assertEquals(generator.getNumWires(), reader.getTotalWires());
+				CircuitRecord r = new CircuitRecord();
+				int numNegConstMul = 0;
+				while (reader.next(r)) {
+					if (r.getTag() == CircuitRecord.TAG_CONST_MUL_NEG
+							&& r.getConstant().equals(BigInteger.valueOf(123456789))) {
+						numNegConstMul++;
+					}
+				}
+				assertEquals(1, numNegConstMul);
+			}
+		} finally {
+			Files.delete(tmp);
+			Files.delete(arith);
+			Files.delete(in);
+			Files.delete(binArith);
+			Files.delete(binIn);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.io.CircuitCache;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+
+public class CircuitCacheTest extends TestCase {
+
+	// the cache keys depend on the class, so all the generators of
+	// testLoadFromCache() are instances of this class
+	private static class TestGenerator extends CircuitGenerator {
+
+		private final int numInputs;
+		private Wire[] inputWires;
+		private Wire inverse;
+		private int numBuilds;
+		// false to simulate a snapshot that does not match restoreCircuit()
+		private boolean restoreComputations = true;
+
+		public TestGenerator(int numInputs) {
+			super("circuit_cache_test");
+			this.numInputs = numInputs;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			numBuilds++;
+			inputWires = createInputWireArray(numInputs);
+			makeOutputArray(new SHA256Gadget(inputWires, 8, numInputs, false, true).getOutputWires());
+			inverse = createProverWitnessWire("inverse");
+			specifyInverseComputation();
+			addOneAssertion(inverse.mul(inputWires[0]));
+			makeOutput(inverse.mul(-3));
+		}
+
+		private void specifyInverseComputation() {
+			final Wire in = inputWires[0];
+			final Wire out = inverse;
+			specifyProverWitnessComputation(new Instruction() {
+				@Override
+				public void evaluate(CircuitEvaluator evaluator) {
+					evaluator.setWireValue(out, evaluator.getWireValue(in).modInverse(Config.FIELD_PRIME));
+				}
+			});
+		}
+
+		@Override
+		protected boolean supportsRestore() {
+			return true;
+		}
+
+		@Override
+		protected void restoreCircuit() {
+			inputWires = getInWires().subList(1, numInputs + 1).toArray(new Wire[0]);
+			inverse = getProverWitnessWires().get(0);
+			if (restoreComputations) {
+				specifyInverseComputation();
+			}
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			for (int i = 0; i < numInputs; i++) {
+				evaluator.setWireValue(inputWires[i], 'a' + i);
+			}
+		}
+	}
+
+	@Test
+	public void testLoadFromCache() throws IOException {
+		Path directory = Files.createTempDirectory("circuit_cache_test");
+		try {
+			CircuitCache cache = new CircuitCache(directory);
+
+			TestGenerator generator = new TestGenerator(10);
+			generator.generateCircuit(cache, 10);
+			assertEquals(1, generator.numBuilds);
+			generator.evalCircuit();
+			generator.prepFiles();
+			Path arith = Paths.get(generator.getName() + ".arith");
+			Path in = Paths.get(generator.getName() + ".in");
+			byte[] expectedArith = Files.readAllBytes(arith);
+			byte[] expectedIn = Files.readAllBytes(in);
+
+			TestGenerator cached = new TestGenerator(10);
+			cached.generateCircuit(cache, 10);
+			assertEquals(0, cached.numBuilds);
+			assertEquals(generator.getNumWires(), cached.getNumWires());
+			assertEquals(generator.getNumOfConstraints(), cached.getNumOfConstraints());
+			cached.evalCircuit();
+			cached.prepFiles();
+			assertTrue(Arrays.equals(expectedArith, Files.readAllBytes(arith)));
+			assertTrue(Arrays.equals(expectedIn, Files.readAllBytes(in)));
+			Files.delete(arith);
+			Files.delete(in);
+
+			// different parameters are a different circuit
+			TestGenerator other = new TestGenerator(12);
+			other.generateCircuit(cache, 12);
+			assertEquals(1, other.numBuilds);
+			assertTrue(cache.contains(CircuitCache.computeKey(TestGenerator.class, 12)));
+
+			// a snapshot that cannot be restored is rebuilt
+			TestGenerator stale = new TestGenerator(10);
+			stale.restoreComputations = false;
+			stale.generateCircuit(cache, 10);
+			assertEquals(1, stale.numBuilds);
+			assertEquals(generator.getNumOfConstraints(), stale.getNumOfConstraints());
+			stale.evalCircuit();
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void testGeneratorWithoutRestore() throws IOException {
+		Path directory = Files.createTempDirectory("circuit_cache_test");
+		try {
+			CircuitCache cache = new CircuitCache(directory);
+			for (int run = 0; run < 2; run++) {
+				CircuitGenerator generator = new CircuitGenerator("circuit_cache_test") {
+					Wire[] inputs;
+
+					@Override
+					protected void buildCircuit() {
+						inputs = createInputWireArray(2);
+						makeOutput(inputs[0].mul(inputs[1]));
+					}
+
+					@Override
+					public void generateSampleInput(CircuitEvaluator evaluator) {
+						evaluator.setWireValue(inputs[0], 3);
+						evaluator.setWireValue(inputs[1], 5);
+					}
+				};
+				// the circuit is built and not added to the cache
+				generator.generateCircuit(cache, "no restore");
+				assertFalse(cache.contains(CircuitCache.computeKey(generator.getClass(), "no restore")));
+				assertEquals(1, generator.getNumOfConstraints());
+				generator.evalCircuit();
+				assertEquals(BigInteger.valueOf(15),
+						generator.getCircuitEvaluator().getWireValue(generator.getOutWires().get(0)));
+
+				Path snapshot = directory.resolve("snapshot");
+				generator.saveCircuit(snapshot);
+				try {
+					generator.loadCircuit(snapshot);
+					fail("A generator without restoreCircuit() should not load circuits");
+				} catch (IllegalStateException e) {
+					// expected
+				}
+			}
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.CircuitConfig;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.MontgomeryFieldElementStore;
+import circuit.io.BinaryFormat;
+import circuit.io.BinaryWitnessReader;
+import circuit.operations.primitive.BasicOp;
+import circuit.r1cs.R1CS;
+import circuit.r1cs.R1CSChecker;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+import examples.gadgets.blockciphers.sbox.AESSBoxGadgetOptimized1;
+import examples.gadgets.hash.SubsetSumHashGadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class CircuitConfigTest extends TestCase {
+
+	// 2^61 - 1, and a 256-bit prime that is too large for the Montgomery store
+	private static final BigInteger SMALL_PRIME = BigInteger.ONE.shiftLeft(61).subtract(BigInteger.ONE);
+	private static final BigInteger LARGE_PRIME = BigInteger.ONE.shiftLeft(255).nextProbablePrime();
+
+	// checks the outputs of the generators of testGeneratorsWithDifferentFields()
+	private static void checkOutputs(CircuitGenerator generator) {
+		BigInteger prime = generator.getConfig().getFieldPrime();
+		BigInteger x = prime.subtract(BigInteger.TWO);
+		BigInteger y = BigInteger.valueOf(7);
+		BigInteger[] expected = { x.multiply(y).mod(prime), x.multiply(BigInteger.valueOf(-3)).mod(prime),
+				x.multiply(y.modInverse(prime)).mod(prime), BigInteger.valueOf(6) };
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], generator.getCircuitEvaluator().getWireValue(generator.getOutWires().get(i)));
+		}
+	}
+
+	@Test
+	public void testGeneratorsWithDifferentFields() throws Exception {
+		CircuitConfig[] configs = { Config.getCircuitConfig(),
+				CircuitConfig.getDefault().withFieldPrime(SMALL_PRIME).withOutputVerbose(false),
+				CircuitConfig.getDefault().withFieldPrime(LARGE_PRIME).withOutputVerbose(false) };
+		List<Future<CircuitGenerator>> futures = new ArrayList<Future<CircuitGenerator>>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int k = 0; k < 30; k++) {
+				CircuitConfig config = configs[k % configs.length];
+				String name = "config_test_" + k;
+				futures.add(executor.submit(() -> {
+					CircuitGenerator generator = new CircuitGenerator(name, config) {
+						Wire[] inputWires;
+
+						@Override
+						protected void buildCircuit() {
+							inputWires = createInputWireArray(2);
+							makeOutput(inputWires[0].mul(inputWires[1]));
+							makeOutput(inputWires[0].mul(-3));
+							makeOutput(new FieldDivisionGadget(inputWires[0], inputWires[1]).getOutputWires()[0]);
+							makeOutput(createConstantWire(-1).add(inputWires[1]));
+						}
+
+						@Override
+						public void generateSampleInput(CircuitEvaluator evaluator) {
+							BigInteger prime = getConfig().getFieldPrime();
+							evaluator.setWireValue(inputWires[0], prime.subtract(BigInteger.TWO));
+							evaluator.setWireValue(inputWires[1], BigInteger.valueOf(7));
+						}
+					};
+					generator.generateCircuit();
+					generator.evalCircuit();
+					return generator;
+				}));
+			}
+		}
+		for (int k = 0; k < futures.size(); k++) {
+			CircuitGenerator generator = futures.get(k).get();
+			assertSame(configs[k % configs.length], generator.getConfig());
+			assertEquals(configs[k % configs.length].getFieldPrime(), generator.getEvaluationQueue().getPrime());
+			checkOutputs(generator);
+		}
+		assertTrue(futures.get(1).get().getCircuitEvaluator().getValueStore() instanceof MontgomeryFieldElementStore);
+		assertFalse(futures.get(2).get().getCircuitEvaluator().getValueStore() instanceof MontgomeryFieldElementStore);
+	}
+
+	@Test
+	public void testCircuitFile() throws IOException {
+		Path directory = Files.createTempDirectory("config_test");
+		CircuitGenerator generator = new CircuitGenerator(directory.resolve("config_test").toString(),
+				CircuitConfig.getDefault().withFieldPrime(SMALL_PRIME)) {
+
+			@Override
+			protected void buildCircuit() {
+				makeOutput(createInputWire().mul(-3));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+		generator.writeCircuitFile();
+		Path arith = Paths.get(generator.getName() + ".arith");
+		try {
+			// negative constants are written relative to the prime of the
+			// generator
+			String circuit = new String(Files.readAllBytes(arith));
+			assertTrue(circuit.contains("const-mul-neg-3 in 1 <2> out 1 <"));
+			assertFalse(circuit.contains("const-mul-neg-" + SMALL_PRIME.subtract(BigInteger.valueOf(3)).toString(16)));
+		} finally {
+			Files.delete(arith);
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testBinaryFiles() throws IOException {
+		Path directory = Files.createTempDirectory("config_test");
+		try {
+			for (BigInteger prime : new BigInteger[] { SMALL_PRIME, LARGE_PRIME }) {
+				CircuitConfig config = CircuitConfig.getDefault().withFieldPrime(prime).withOutputVerbose(false);
+				CircuitGenerator generator = new CircuitGenerator(directory.resolve("config_test").toString(),
+						config) {
+					Wire[] inputWires;
+
+					@Override
+					protected void buildCircuit() {
+						inputWires = createInputWireArray(2);
+						makeOutput(inputWires[0].mul(inputWires[1]));
+						// constants and values close to the prime
+						makeOutput(inputWires[0].mul(-3));
+						makeOutput(new FieldDivisionGadget(inputWires[0], inputWires[1]).getOutputWires()[0]);
+						makeOutput(createConstantWire(-1).add(inputWires[1]));
+					}
+
+					@Override
+					public void generateSampleInput(CircuitEvaluator evaluator) {
+						evaluator.setWireValue(inputWires[0], prime.subtract(BigInteger.TWO));
+						evaluator.setWireValue(inputWires[1], BigInteger.valueOf(7));
+					}
+				};
+				generator.generateCircuit();
+				generator.evalCircuit();
+				generator.prepBinaryFiles();
+				checkOutputs(generator);
+
+				BigInteger[] assignment = generator.getCircuitEvaluator().getAssignment();
+				Path arith = Paths.get(generator.getName() + BinaryFormat.CIRCUIT_FILE_EXTENSION);
+				Path in = Paths.get(generator.getName() + BinaryFormat.WITNESS_FILE_EXTENSION);
+				R1CS r1cs = R1CS.read(arith, prime);
+				assertEquals(generator.getNumOfConstraints(), r1cs.getNumConstraints());
+				assertTrue(R1CSChecker.check(r1cs, assignment).isSatisfied());
+				int numValues = 0;
+				try (BinaryWitnessReader reader = new BinaryWitnessReader(in)) {
+					while (reader.next()) {
+						assertEquals(assignment[reader.getWireId()], reader.getValue());
+						numValues++;
+					}
+				}
+				assertEquals(generator.getInWires().size() + generator.getProverWitnessWires().size(), numValues);
+				Files.delete(arith);
+				Files.delete(in);
+			}
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("FIELD_PRIME", SMALL_PRIME.toString());
+		properties.setProperty("PRINT_HEX", "1");
+		properties.setProperty("DEBUG_VERBOSE", "0");
+		CircuitConfig config = CircuitConfig.fromProperties(properties);
+		assertEquals(SMALL_PRIME, config.getFieldPrime());
+		assertEquals(61, config.getLog2FieldPrime());
+		assertTrue(config.isHexOutputEnabled());
+		assertFalse(config.isDebugVerbose());
+		assertTrue(config.isOutputVerbose());
+		assertNotNull(config.getLibsnarkExec());
+
+		BigInteger twoTo64 = BigInteger.ONE.shiftLeft(64);
+		assertEquals(BigInteger.ZERO, SMALL_PRIME.multiply(BigInteger.valueOf(config.getMontgomeryInverse()))
+				.add(BigInteger.ONE).mod(twoTo64));
+		assertEquals(BigInteger.ONE.shiftLeft(512).mod(SMALL_PRIME), config.getMontgomeryR2());
+
+		// the defaults of the repository for the missing properties
+		CircuitConfig defaults = CircuitConfig.fromProperties(new Properties());
+		assertEquals(Config.FIELD_PRIME, defaults.getFieldPrime());
+		assertSame(config, config.withHexOutputEnabled(true));
+		assertFalse(config.withHexOutputEnabled(false).isHexOutputEnabled());
+		assertEquals(SMALL_PRIME, config.withHexOutputEnabled(false).getFieldPrime());
+
+		try {
+			config.withFieldPrime(BigInteger.ONE);
+			fail("The prime must be at least 2");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			config.withFieldPrime(BigInteger.ONE.shiftLeft(256).nextProbablePrime());
+			fail("The prime must fit in the field elements of the binary files");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDefaultFieldGadgets() {
+		// the coefficients and tables of these gadgets are computed for the
+		// default prime
+		for (int k = 0; k < 2; k++) {
+			final int fk = k;
+			CircuitGenerator generator = new CircuitGenerator("circuit_config_gadgets_test",
+					CircuitConfig.getDefault().withFieldPrime(SMALL_PRIME).withOutputVerbose(false)) {
+				@Override
+				protected void buildCircuit() {
+					Wire[] inputWires = createInputWireArray(8);
+					if (fk == 0) {
+						makeOutputArray(new SubsetSumHashGadget(inputWires, false).getOutputWires());
+					} else {
+						makeOutputArray(new AESSBoxGadgetOptimized1(inputWires[0]).getOutputWires());
+					}
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+				}
+			};
+			try {
+				generator.generateCircuit();
+				fail("The gadgets should reject a non-default prime");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(SMALL_PRIME.toString()));
+			}
+		}
+	}
+
+	@Test
+	public void testInstructionViews() {
+		CircuitGenerator generator = new CircuitGenerator("circuit_config_views_test",
+				CircuitConfig.getDefault().withFieldPrime(SMALL_PRIME).withOutputVerbose(false)) {
+			@Override
+			protected void buildCircuit() {
+				makeOutput(createInputWire().mul(-3));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+		// the view uses the prime of the store, not of the active generator
+		InstructionStore store = generator.getEvaluationQueue();
+		List<String> opcodes = new ArrayList<String>();
+		for (int i = 0; i < store.size(); i++) {
+			if (store.getOpcode(i) == InstructionStore.OP_CONST_MUL) {
+				opcodes.add(((BasicOp) store.get(i)).getOpcode());
+			}
+		}
+		// the zero-wire, and the output
+		assertEquals(List.of("const-mul-0", "const-mul-neg-3"), opcodes);
+	}
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.hash.SubsetSumHashGadget;
+
+public class CircuitTemplateTest extends TestCase {
+
+	@Test
+	public void testSameCircuit() throws IOException {
+		BigInteger[][] hashInputs = new BigInteger[3][];
+		for (int k = 0; k < 3; k++) {
+			hashInputs[k] = Util.randomBigIntegerArray(64, 8);
+		}
+		BigInteger[] subsetSumInputs = Util.randomBigIntegerArray(2, Config.FIELD_PRIME);
+
+		// the same circuit, without and with templates
+		CircuitGenerator[] generators = new CircuitGenerator[2];
+		for (int i = 0; i < 2; i++) {
+			generators[i] = new CircuitGenerator("circuit_template_test") {
+				Wire[][] hashInputWires;
+				Wire[] subsetSumInputWires;
+
+				@Override
+				protected void buildCircuit() {
+					hashInputWires = new Wire[3][];
+					for (int k = 0; k < 3; k++) {
+						hashInputWires[k] = createInputWireArray(64);
+						Wire[] digest = new SHA256Gadget(hashInputWires[k], 8, 64, false, true).getOutputWires();
+						makeOutputArray(new SHA256Gadget(digest, 32, 32, false, true).getOutputWires());
+					}
+					// the same input again is not added twice
+					makeOutputArray(new SHA256Gadget(hashInputWires[1], 8, 64, false, true).getOutputWires());
+
+					subsetSumInputWires = createInputWireArray(2);
+					Wire[] bits = new WireArray(subsetSumInputWires).getBits(Config.LOG2_FIELD_PRIME).asArray();
+					Wire[] digest = new SubsetSumHashGadget(bits, false).getOutputWires();
+					for (int level = 0; level < 3; level++) {
+						Wire[] next = new WireArray(digest).getBits(Config.LOG2_FIELD_PRIME).asArray();
+						digest = new SubsetSumHashGadget(Util.concat(next, bits), false).getOutputWires();
+					}
+					makeOutputArray(digest);
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					for (int k = 0; k < 3; k++) {
+						evaluator.setWireValue(hashInputWires[k], hashInputs[k]);
+					}
+					evaluator.setWireValue(subsetSumInputWires, subsetSumInputs);
+				}
+			};
+			generators[i].setTemplatesEnabled(i == 1);
+			generators[i].generateCircuit();
+		}
+		CircuitGenerator generator = generators[0];
+		CircuitGenerator templated = generators[1];
+
+		generator.writeCircuitFile();
+		Path arith = Paths.get(generator.getName() + ".arith");
+		byte[] expectedArith = Files.readAllBytes(arith);
+		templated.writeCircuitFile();
+		try {
+			assertEquals(generator.getNumOfConstraints(), templated.getNumOfConstraints());
+			assertEquals(generator.getNumWires(), templated.getNumWires());
+			assertTrue(Arrays.equals(expectedArith, Files.readAllBytes(arith)));
+		} finally {
+			Files.delete(arith);
+		}
+
+		generator.evalCircuit();
+		templated.evalCircuit();
+		assertTrue(Arrays.equals(generator.getCircuitEvaluator().getAssignment(),
+				templated.getCircuitEvaluator().getAssignment()));
+	}
+
+	@Test
+	public void testBodyWithProverComputation() {
+		final int[] numCalls = new int[1];
+		CircuitGenerator generator = new CircuitGenerator("circuit_template_witness_test") {
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(3);
+				for (int k = 0; k < 3; k++) {
+					makeOutputArray(buildFromTemplate("inverse", new Wire[] { inputs[k] }, ins -> {
+						numCalls[0]++;
+						final Wire in = ins[0];
+						final Wire inverse = createProverWitnessWire();
+						specifyProverWitnessComputation(new Instruction() {
+							@Override
+							public void evaluate(CircuitEvaluator evaluator) {
+								evaluator.setWireValue(inverse,
+										evaluator.getWireValue(in).modInverse(Config.FIELD_PRIME));
+							}
+						});
+						addOneAssertion(inverse.mul(in));
+						return new Wire[] { inverse };
+					}));
+				}
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int k = 0; k < 3; k++) {
+					evaluator.setWireValue(inputs[k], k + 2);
+				}
+			}
+		};
+		generator.generateCircuit();
+		// the body cannot be recorded, so it is called for every input
+		assertEquals(3, numCalls[0]);
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		for (int k = 0; k < 3; k++) {
+			assertEquals(BigInteger.valueOf(k + 2).modInverse(Config.FIELD_PRIME),
+					evaluator.getWireValue(generator.getOutWires().get(k)));
+		}
+	}
+}
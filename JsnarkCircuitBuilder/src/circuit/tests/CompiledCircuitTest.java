@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.CompiledCircuit;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class CompiledCircuitTest extends TestCase {
+
+	@Test
+	public void testSameAssignment() {
+		int numRuns = 3;
+		BigInteger[][] hashInputs = new BigInteger[numRuns][];
+		BigInteger[][] fieldInputs = new BigInteger[numRuns][];
+		for (int run = 0; run < numRuns; run++) {
+			hashInputs[run] = Util.randomBigIntegerArray(64, 8);
+			fieldInputs[run] = Util.randomBigIntegerArray(3, Config.FIELD_PRIME);
+		}
+
+		// the run whose inputs generateSampleInput() sets
+		int[] currentRun = new int[1];
+		CircuitGenerator generator = new CircuitGenerator("compiled_circuit_test") {
+
+			Wire[] hashInputWires;
+			Wire[] fieldInputWires;
+
+			@Override
+			protected void buildCircuit() {
+				hashInputWires = createInputWireArray(64);
+				Wire[] digest = new SHA256Gadget(hashInputWires, 8, 64, false, true).getOutputWires();
+				makeOutputArray(new SHA256Gadget(digest, 32, 32, false, true).getOutputWires());
+
+				fieldInputWires = createInputWireArray(3);
+				Wire q = new FieldDivisionGadget(fieldInputWires[0], fieldInputWires[1]).getOutputWires()[0];
+				makeOutput(q.mul(-5).add(fieldInputWires[2]));
+				makeOutput(fieldInputWires[2].checkNonZero());
+				makeOutputArray(fieldInputWires[2].getBitWires(Config.LOG2_FIELD_PRIME).packBitsIntoWords(64));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(hashInputWires, hashInputs[currentRun[0]]);
+				evaluator.setWireValue(fieldInputWires, fieldInputs[currentRun[0]]);
+			}
+		};
+		generator.generateCircuit();
+		CompiledCircuit compiled = CompiledCircuit.compile(generator);
+		// the circuit is too large for a single method
+		assertTrue(compiled.getNumMethods() > 1);
+
+		for (int run = 0; run < numRuns; run++) {
+			currentRun[0] = run;
+			generator.evalCircuit();
+			BigInteger[] expected = generator.getCircuitEvaluator().getAssignment();
+
+			CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+			generator.generateSampleInput(evaluator);
+			compiled.evaluate(evaluator);
+			assertTrue(Arrays.equals(expected, evaluator.getAssignment()));
+		}
+	}
+
+	@Test
+	public void testManyWireIds() {
+		// wire ids that do not fit in a short are constants of the generated
+		// code, so this needs more than one class
+		int n = 100000;
+		CircuitGenerator generator = new CircuitGenerator("compiled_circuit_ids_test") {
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(2 * n);
+				Wire[] products = new Wire[n];
+				for (int i = 0; i < n; i++) {
+					products[i] = inputs[2 * i].mul(inputs[2 * i + 1]);
+				}
+				makeOutput(new WireArray(products).sumAllElements());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int i = 0; i < inputs.length; i++) {
+					evaluator.setWireValue(inputs[i], i);
+				}
+			}
+		};
+		generator.generateCircuit();
+		assertTrue(generator.getNumWires() > 300000);
+		CompiledCircuit compiled = CompiledCircuit.compile(generator);
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		compiled.evaluate(evaluator);
+		generator.evalCircuit();
+		assertTrue(Arrays.equals(generator.getCircuitEvaluator().getAssignment(), evaluator.getAssignment()));
+	}
+
+	@Test
+	public void testFailedAssertion() {
+		CircuitGenerator generator = new CircuitGenerator("compiled_circuit_assertion_test") {
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(3);
+				addAssertion(inputs[0], inputs[1], inputs[2]);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs[0], 2);
+				evaluator.setWireValue(inputs[1], 3);
+				evaluator.setWireValue(inputs[2], 7);
+			}
+		};
+		generator.generateCircuit();
+		CompiledCircuit compiled = CompiledCircuit.compile(generator);
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		try {
+			compiled.evaluate(evaluator);
+			fail("The assertion should fail");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
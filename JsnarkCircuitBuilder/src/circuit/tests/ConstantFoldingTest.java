@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.auxiliary.LongElement;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.ConstantWire;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.blockciphers.AES128CipherGadget;
+import examples.gadgets.blockciphers.Speck128CipherGadget;
+
+public class ConstantFoldingTest extends TestCase {
+
+	/**
+	 * Checks that the instructions added since instruction from only define
+	 * constant wires.
+	 */
+	private static void assertOnlyConstants(CircuitGenerator generator, int from) {
+		InstructionStore store = generator.getEvaluationQueue();
+		for (int i = from; i < store.size(); i++) {
+			assertEquals(InstructionStore.OP_CONST_MUL, store.getOpcode(i));
+			assertTrue(store.getWire(store.getOutputId(i, 0)) instanceof ConstantWire);
+		}
+	}
+
+	private static BigInteger getConstant(Wire w) {
+		assertTrue(w instanceof ConstantWire);
+		return ((ConstantWire) w).getConstant();
+	}
+
+	@Test
+	public void testWireOperations() {
+		CircuitGenerator generator = new CircuitGenerator("constant_folding_test") {
+
+			Wire x;
+
+			@Override
+			protected void buildCircuit() {
+				x = createInputWire();
+				int from = getEvaluationQueue().size();
+				Wire a = createConstantWire(0xb7);
+				Wire b = createConstantWire(0x5c);
+
+				assertEquals(BigInteger.valueOf(0xb7 + 0x5c - 3), getConstant(a.add(b).sub(3)));
+				assertEquals(BigInteger.valueOf(0xb7 * 0x5c), getConstant(a.mul(b)));
+				assertEquals(BigInteger.valueOf(0xb7 ^ 0x5c), getConstant(a.xorBitwise(b, 8)));
+				assertEquals(BigInteger.valueOf(0xb7 & 0x5c), getConstant(a.andBitwise(b, 8)));
+				assertEquals(BigInteger.valueOf(0xb7 | 0x5c), getConstant(a.orBitwise(b, 8)));
+				assertEquals(BigInteger.valueOf(~0xb7 & 0xff), getConstant(a.invBits(8)));
+				assertEquals(BigInteger.valueOf(0xb7 >> 3), getConstant(a.shiftRight(8, 3)));
+				assertEquals(BigInteger.ZERO, getConstant(a.isEqualTo(b)));
+				assertEquals(BigInteger.ONE, getConstant(a.checkNonZero()));
+				assertEquals(BigInteger.ONE, getConstant(b.isLessThan(a, 8)));
+				addEqualityAssertion(a.mul(2), createConstantWire(2 * 0xb7));
+				addZeroAssertion(getZeroWire().mul(x));
+
+				// long integer arithmetic on constants
+				LongElement l1 = new LongElement(new BigInteger[] { BigInteger.valueOf(0xffff), BigInteger.ONE });
+				LongElement l2 = new LongElement(new BigInteger[] { BigInteger.valueOf(3), BigInteger.valueOf(5) });
+				LongElement product = l1.mul(l2).add(l1);
+				assertNotNull(product.getConstant(LongElement.CHUNK_BITWIDTH));
+				for (int i = 0; i < product.getSize(); i++) {
+					assertEquals(getConstant(product.getArray()[i]), product.getCurrentMaxValues()[i]);
+				}
+				assertOnlyConstants(this, from);
+
+				// constant terms of a sum are added up, and dropped if zero
+				from = getEvaluationQueue().size();
+				assertSame(x, new WireArray(new Wire[] { a, x, a.mul(-1) }).sumAllElements());
+				assertSame(x, new WireArray(new Wire[] { getZeroWire(), x }).sumAllElements());
+				Wire sum = new WireArray(new Wire[] { a, x, b, x }).sumAllElements();
+				assertEquals(from + 1, getEvaluationQueue().size());
+				makeOutput(sum);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(x, 10);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		assertEquals(BigInteger.valueOf(0xb7 + 0x5c + 20),
+				generator.getCircuitEvaluator().getWireValue(generator.getOutWires().get(0)));
+	}
+
+	@Test
+	public void testConstantKeys() {
+		CircuitGenerator generator = new CircuitGenerator("constant_key_test") {
+
+			@Override
+			protected void buildCircuit() {
+				int from = getEvaluationQueue().size();
+				Wire[] aesKey = new Wire[16];
+				for (int i = 0; i < aesKey.length; i++) {
+					aesKey[i] = createConstantWire(i);
+				}
+				Wire[] expandedAESKey = AES128CipherGadget.expandKey(aesKey);
+				Wire[] speckKey = createConstantWireArray(new BigInteger[] { BigInteger.valueOf(0x0706050403020100L),
+						BigInteger.valueOf(0x0f0e0d0c0b0a0908L) });
+				Wire[] expandedSpeckKey = Speck128CipherGadget.expandKey(speckKey);
+				assertOnlyConstants(this, from);
+
+				// the last round key of the FIPS-197 example
+				assertEquals(new BigInteger("13111d7fe3944a17f307a78b4d2b30c5", 16), new BigInteger(1,
+						bytes(expandedAESKey, expandedAESKey.length - 16)));
+				long k = 0x0706050403020100L;
+				long l = 0x0f0e0d0c0b0a0908L;
+				for (int i = 0; i < 31; i++) {
+					l = (k + Long.rotateRight(l, 8)) ^ i;
+					k = Long.rotateLeft(k, 3) ^ l;
+					assertEquals(k, getConstant(expandedSpeckKey[i + 1]).longValue());
+				}
+			}
+
+			private byte[] bytes(Wire[] w, int from) {
+				byte[] b = new byte[w.length - from];
+				for (int i = 0; i < b.length; i++) {
+					b[i] = (byte) getConstant(w[from + i]).intValue();
+				}
+				return b;
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+	}
+}
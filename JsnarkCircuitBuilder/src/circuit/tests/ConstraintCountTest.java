@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.util.function.Supplier;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.auxiliary.LongElement;
+import circuit.structure.CircuitGenerator;
+import examples.gadgets.blockciphers.AES128CipherGadget;
+import examples.gadgets.blockciphers.AES128CipherGadget.SBoxOption;
+import examples.generators.blockciphers.AES128CipherCircuitGenerator;
+import examples.generators.hash.MerkleTreeMembershipCircuitGenerator;
+import examples.generators.rsa.RSASigVerCircuitGenerator;
+
+public class ConstraintCountTest extends TestCase {
+
+	// a generator is only active until the next one is created
+	private static void assertSameCounts(Supplier<CircuitGenerator> generators) {
+		CircuitGenerator counted = generators.get();
+		int numOfConstraints = counted.countConstraints();
+		int numWires = counted.getNumWires();
+		assertEquals(counted.getNumOfConstraints(), numOfConstraints);
+		CircuitGenerator generated = generators.get();
+		generated.generateCircuit();
+		assertEquals(generated.getNumOfConstraints(), numOfConstraints);
+		assertEquals(generated.getNumWires(), numWires);
+	}
+
+	@Test
+	public void testMerkleTree() {
+		for (int height : new int[] { 1, 2, 3, 4 }) {
+			assertSameCounts(() -> new MerkleTreeMembershipCircuitGenerator("tree_count_test", height));
+		}
+	}
+
+	@Test
+	public void testAES() {
+		SBoxOption sBoxOption = AES128CipherGadget.sBoxOption;
+		try {
+			for (SBoxOption option : SBoxOption.values()) {
+				AES128CipherGadget.sBoxOption = option;
+				assertSameCounts(() -> new AES128CipherCircuitGenerator("aes_count_test"));
+			}
+		} finally {
+			AES128CipherGadget.sBoxOption = sBoxOption;
+		}
+	}
+
+	@Test
+	public void testRSA() {
+		int chunkBitwidth = LongElement.CHUNK_BITWIDTH;
+		try {
+			for (int bitwidth : new int[] { 16, 32 }) {
+				LongElement.CHUNK_BITWIDTH = bitwidth;
+				assertSameCounts(() -> new RSASigVerCircuitGenerator("rsa_count_test", 1024));
+			}
+		} finally {
+			LongElement.CHUNK_BITWIDTH = chunkBitwidth;
+		}
+	}
+
+	@Test
+	public void testNotRetained() {
+		CircuitGenerator generator = new MerkleTreeMembershipCircuitGenerator("tree_count_test", 2);
+		int numOfConstraints = generator.countConstraints();
+		try {
+			generator.evalCircuit();
+			fail("The circuit should not be retained after counting");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// the circuit can still be generated afterwards
+		generator.generateCircuit();
+		assertEquals(numOfConstraints, generator.getNumOfConstraints());
+	}
+}
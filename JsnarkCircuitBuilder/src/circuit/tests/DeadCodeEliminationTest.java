@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.eval.CircuitEvaluator;
+import circuit.optimization.OptimizedCircuit;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+
+public class DeadCodeEliminationTest extends TestCase {
+
+	@Test
+	public void testElimination() throws IOException {
+		BigInteger[] inputs = Util.randomBigIntegerArray(3, 32);
+		CircuitGenerator generator = new CircuitGenerator("dead_code_test") {
+			Wire[] inputWires;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(3);
+				Wire a = inputWires[0];
+				Wire b = inputWires[1];
+				Wire c = inputWires[2];
+				// unused: two multiplications and a zero check
+				a.mul(b);
+				a.mul(c).add(b).mul(2);
+				b.checkNonZero();
+				// the bits are not used, but the split checks the range of c
+				c.getBitWires(32);
+				Wire isZero = a.checkNonZero();
+				makeOutput(a.add(b).mul(c));
+				makeOutput(isZero.mul(c));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+
+		OptimizedCircuit circuit = new OptimizedCircuit(generator);
+		assertEquals(generator.getNumOfConstraints(), circuit.getNumOfConstraints());
+		circuit.eliminateDeadCode();
+		assertEquals(generator.getNumOfConstraints() - 4, circuit.getNumOfConstraints());
+		// the outputs of the unused operations, and the constant wire 2
+		assertEquals(generator.getNumWires() - 7, circuit.getNumWires());
+
+		InstructionStore instructions = circuit.getInstructions();
+		int numSplits = 0;
+		for (int i = 0; i < instructions.size(); i++) {
+			if (instructions.getOpcode(i) == InstructionStore.OP_SPLIT) {
+				numSplits++;
+			}
+		}
+		assertEquals(1, numSplits);
+
+		Path arith = Paths.get("dead_code_test_optimized.arith");
+		Path in = Paths.get("dead_code_test_optimized.in");
+		Path full = Paths.get("dead_code_test_optimized.in.full.2");
+		try {
+			circuit.writeCircuitFile(arith.toString());
+			circuit.writeInputFile(evaluator, in.toString());
+			CircuitEvaluator.eval(arith.toString(), in.toString());
+			HashMap<Integer, BigInteger> values = new HashMap<Integer, BigInteger>();
+			for (String line : Files.readAllLines(full)) {
+				String[] parts = line.split(" ");
+				values.put(Integer.parseInt(parts[0]), new BigInteger(parts[1], 16));
+			}
+			List<Wire> outWires = generator.getOutWires();
+			for (Wire w : outWires) {
+				assertEquals(evaluator.getWireValue(w), values.get(circuit.getNewWireId(w.getWireId())));
+			}
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		} finally {
+			Files.deleteIfExists(arith);
+			Files.deleteIfExists(in);
+			Files.deleteIfExists(full);
+		}
+	}
+}
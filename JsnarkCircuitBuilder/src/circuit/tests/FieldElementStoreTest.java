@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.BigIntegerFieldElementStore;
+import circuit.eval.BitPackedFieldElementStore;
+import circuit.eval.FieldElementStore;
+import circuit.eval.MontgomeryFieldElementStore;
+
+public class FieldElementStoreTest extends TestCase {
+
+	@Test
+	public void testMontgomeryArithmetic() {
+
+		BigInteger p = Config.FIELD_PRIME;
+		int n = 1000;
+		BigInteger[] vals = Util.randomBigIntegerArray(n, p);
+		// include some edge cases
+		vals[0] = BigInteger.ZERO;
+		vals[1] = BigInteger.ONE;
+		vals[2] = p.subtract(BigInteger.ONE);
+		vals[3] = p.subtract(BigInteger.valueOf(2));
+
+		FieldElementStore store = new MontgomeryFieldElementStore(p, 4 * n + 1);
+		for (int i = 0; i < n; i++) {
+			store.set(i, vals[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			assertEquals(vals[i], store.get(i));
+			int j = (i * 7 + 3) % n;
+			store.add(i, j, n + i);
+			store.mul(i, j, 2 * n + i);
+			store.mulConstant(i, vals[j], 3 * n + i);
+			assertEquals(vals[i].add(vals[j]).mod(p), store.get(n + i));
+			assertEquals(vals[i].multiply(vals[j]).mod(p), store.get(2 * n + i));
+			assertEquals(vals[i].multiply(vals[j]).mod(p), store.get(3 * n + i));
+			assertTrue(store.isProduct(i, j, 2 * n + i));
+			assertEquals(vals[i].bitLength(), store.bitLength(i));
+		}
+		assertTrue(store.isZero(0));
+		assertTrue(store.isBinary(0) && store.isBinary(1) && !store.isBinary(2));
+		assertFalse(store.isAssigned(4 * n));
+		assertNull(store.get(4 * n));
+	}
+
+	@Test
+	public void testSplitAndPack() {
+		BigInteger largePrime = BigInteger.ONE.shiftLeft(300).nextProbablePrime();
+		for (FieldElementStore store : new FieldElementStore[] {
+				new MontgomeryFieldElementStore(Config.FIELD_PRIME, 1000),
+				new BigIntegerFieldElementStore(largePrime, 1000) }) {
+			BigInteger p = store.getPrime();
+			int[] ids = new int[400];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = 10 + i;
+			}
+			for (int length : new int[] { 0, 1, 63, 64, 65, 128, 200, p.bitLength() }) {
+				BigInteger v = Util.nextRandomBigInteger(length).mod(p);
+				store.set(0, v);
+				store.split(0, ids, 0, length);
+				for (int i = 0; i < length; i++) {
+					assertTrue(store.isBinary(ids[i]));
+					assertEquals(v.testBit(i), !store.isZero(ids[i]));
+				}
+				long[] words = new long[1];
+				store.getWords(0, words);
+				assertEquals(v.longValue(), words[0]);
+				store.pack(ids, 0, length, 1);
+				assertEquals(v, store.get(1));
+				assertEquals(v.bitLength(), store.bitLength(1));
+			}
+
+			// a packed value that does not fit in the field is reduced
+			for (int i = 0; i < ids.length; i++) {
+				store.setBit(ids[i], true);
+			}
+			store.pack(ids, 0, ids.length, 1);
+			assertEquals(BigInteger.ONE.shiftLeft(ids.length).subtract(BigInteger.ONE).mod(p), store.get(1));
+			store.pack(ids, 0, 256, 1);
+			assertEquals(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE).mod(p), store.get(1));
+		}
+	}
+
+	@Test
+	public void testBitPackedStore() {
+		BigInteger p = Config.FIELD_PRIME;
+		// wires 10 .. 309 and every third wire from 400 are bit wires
+		BitSet bitWires = new BitSet();
+		bitWires.set(10, 310);
+		for (int id = 400; id < 1200; id += 3) {
+			bitWires.set(id);
+		}
+		for (boolean concurrentWrites : new boolean[] { false, true }) {
+			BitPackedFieldElementStore store = new BitPackedFieldElementStore(p, 1200, bitWires, concurrentWrites);
+			assertTrue(store.isBitWire(10) && !store.isBitWire(0));
+			int[] ids = new int[300];
+			int[] scattered = new int[260];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = 10 + i;
+			}
+			for (int i = 0; i < scattered.length; i++) {
+				scattered[i] = 400 + 3 * i;
+			}
+
+			for (int length : new int[] { 1, 63, 64, 65, 130, p.bitLength() }) {
+				BigInteger v = Util.nextRandomBigInteger(length).mod(p);
+				store.set(0, v);
+				for (int offset : new int[] { 0, 37 }) {
+					store.split(0, ids, offset, length);
+					store.split(0, scattered, 0, length);
+					for (int i = 0; i < length; i++) {
+						assertEquals(v.testBit(i), !store.isZero(ids[offset + i]));
+						assertSame(v.testBit(i) ? BigInteger.ONE : BigInteger.ZERO, store.get(scattered[i]));
+					}
+					store.pack(ids, offset, length, 1);
+					assertEquals(v, store.get(1));
+					store.pack(scattered, 0, length, 2);
+					assertEquals(v, store.get(2));
+				}
+			}
+
+			// operations that mix bit wires and other wires
+			store.setBit(10, true);
+			store.setBit(11, false);
+			store.set(3, BigInteger.valueOf(5));
+			store.add(3, 10, 4);
+			assertEquals(BigInteger.valueOf(6), store.get(4));
+			store.mul(3, 11, 4);
+			assertEquals(BigInteger.ZERO, store.get(4));
+			assertTrue(store.isProduct(3, 10, 3));
+			store.copy(10, 5);
+			assertTrue(store.valueEquals(5, 10) && !store.valueEquals(10, 11));
+			store.mulConstant(10, BigInteger.ONE, 12);
+			assertEquals(BigInteger.ONE, store.get(12));
+			try {
+				store.set(13, BigInteger.TWO);
+				fail();
+			} catch (IllegalArgumentException e) {
+			}
+			assertFalse(store.isAssigned(1198));
+			assertNull(store.get(1198));
+		}
+	}
+
+	@Test
+	public void testStoreSelection() {
+		assertTrue(FieldElementStore.create(Config.FIELD_PRIME, 1) instanceof MontgomeryFieldElementStore);
+
+		// the generic store is used for primes that are larger than 255 bits
+		BigInteger largePrime = BigInteger.ONE.shiftLeft(255).nextProbablePrime();
+		FieldElementStore store = FieldElementStore.create(largePrime, 3);
+		assertTrue(store instanceof BigIntegerFieldElementStore);
+		BigInteger v = largePrime.subtract(BigInteger.ONE);
+		store.set(0, v);
+		store.set(1, v);
+		store.add(0, 1, 2);
+		assertEquals(v.add(v).mod(largePrime), store.get(2));
+	}
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class GeneratorContextTest extends TestCase {
+
+	// the first output of the generators of the tests below, which compute
+	// (sum_i x_i * (i + k)) / x_0 and the bits of x_1 for x_i = k + i + 1
+	private static BigInteger getExpectedQuotient(int k) {
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < 8; i++) {
+			sum = sum.add(BigInteger.valueOf((long) (k + i + 1) * (i + k)));
+		}
+		return sum.multiply(BigInteger.valueOf(k + 1).modInverse(Config.FIELD_PRIME)).mod(Config.FIELD_PRIME);
+	}
+
+	@Test
+	public void testConcurrentGenerators() throws Exception {
+		int n = 200;
+		List<Future<CircuitGenerator>> futures = new ArrayList<Future<CircuitGenerator>>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int k = 0; k < n; k++) {
+				final int fk = k;
+				futures.add(executor.submit(() -> {
+					CircuitGenerator generator = new CircuitGenerator("context_test_" + fk) {
+						Wire[] inputWires;
+
+						@Override
+						protected void buildCircuit() {
+							inputWires = createInputWireArray(8);
+							Wire sum = getZeroWire();
+							for (int i = 0; i < inputWires.length; i++) {
+								sum = sum.add(inputWires[i].mul(i + fk));
+							}
+							makeOutput(new FieldDivisionGadget(sum, inputWires[0]).getOutputWires()[0]);
+							makeOutputArray(inputWires[1].getBitWires(16).asArray());
+						}
+
+						@Override
+						public void generateSampleInput(CircuitEvaluator evaluator) {
+							for (int i = 0; i < inputWires.length; i++) {
+								evaluator.setWireValue(inputWires[i], BigInteger.valueOf(fk + i + 1));
+							}
+						}
+					};
+					generator.generateCircuit();
+					// yield to the other virtual threads between the phases
+					Thread.yield();
+					if (fk % 2 == 0) {
+						generator.evalCircuit();
+					} else {
+						generator.evalCircuitInParallel();
+					}
+					return generator;
+				}));
+			}
+		}
+
+		int numOfConstraints = futures.get(0).get().getNumOfConstraints();
+		for (int k = 0; k < n; k++) {
+			CircuitGenerator generator = futures.get(k).get();
+			assertEquals(numOfConstraints, generator.getNumOfConstraints());
+			CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+			List<Wire> outputs = generator.getOutWires();
+			assertEquals(getExpectedQuotient(k), evaluator.getWireValue(outputs.get(0)));
+			for (int j = 0; j < 16; j++) {
+				assertEquals(BigInteger.valueOf(k + 2).testBit(j) ? BigInteger.ONE : BigInteger.ZERO,
+						evaluator.getWireValue(outputs.get(j + 1)));
+			}
+		}
+	}
+
+	@Test
+	public void testGeneratorsInSequence() {
+		// without a context, the wires belong to the last created generator,
+		// no matter how many generators were created before
+		for (int k = 0; k < 3; k++) {
+			CircuitGenerator generator = new CircuitGenerator("context_test_" + k) {
+				Wire[] inputWires;
+
+				@Override
+				protected void buildCircuit() {
+					inputWires = createInputWireArray(2);
+					makeOutput(inputWires[0].add(inputWires[1]));
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					evaluator.setWireValue(inputWires[0], 1);
+					evaluator.setWireValue(inputWires[1], 2);
+				}
+			};
+			generator.generateCircuit();
+			assertSame(generator, CircuitGenerator.getActiveCircuitGenerator());
+			int numOfConstraints = generator.getNumOfConstraints();
+			generator.getInWires().get(1).mul(generator.getInWires().get(2));
+			assertEquals(numOfConstraints + 1, generator.getNumOfConstraints());
+		}
+	}
+
+	@Test
+	public void testRunInContext() {
+		CircuitGenerator[] generators = new CircuitGenerator[2];
+		for (int k = 1; k <= 2; k++) {
+			final int fk = k;
+			generators[k - 1] = new CircuitGenerator("context_test_" + fk) {
+				Wire[] inputWires;
+
+				@Override
+				protected void buildCircuit() {
+					inputWires = createInputWireArray(8);
+					Wire sum = getZeroWire();
+					for (int i = 0; i < inputWires.length; i++) {
+						sum = sum.add(inputWires[i].mul(i + fk));
+					}
+					makeOutput(new FieldDivisionGadget(sum, inputWires[0]).getOutputWires()[0]);
+					makeOutputArray(inputWires[1].getBitWires(16).asArray());
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					for (int i = 0; i < inputWires.length; i++) {
+						evaluator.setWireValue(inputWires[i], BigInteger.valueOf(fk + i + 1));
+					}
+				}
+			};
+			generators[k - 1].generateCircuit();
+		}
+		CircuitGenerator generator1 = generators[0];
+		CircuitGenerator generator2 = generators[1];
+
+		boolean multiGenerators = Config.runningMultiGenerators;
+		Config.runningMultiGenerators = true;
+		try {
+			try {
+				CircuitGenerator.getActiveCircuitGenerator();
+				fail("A generator should only be active within its context");
+			} catch (RuntimeException e) {
+				// expected
+			}
+			generator1.runInContext(() -> {
+				assertSame(generator1, CircuitGenerator.getActiveCircuitGenerator());
+				int numOfConstraints = generator2.getNumOfConstraints();
+				Wire w = generator2.callInContext(() -> {
+					assertSame(generator2, CircuitGenerator.getActiveCircuitGenerator());
+					// the gadget adds its constraint to the active generator
+					Wire[] inputs = generator2.getInWires().toArray(new Wire[0]);
+					return new FieldDivisionGadget(inputs[1], inputs[2]).getOutputWires()[0];
+				});
+				assertEquals(numOfConstraints + 1, generator2.getNumOfConstraints());
+				assertTrue(w.getWireId() < generator2.getNumWires());
+				assertSame(generator1, CircuitGenerator.getActiveCircuitGenerator());
+			});
+			try {
+				CircuitGenerator.getActiveCircuitGenerator();
+				fail("The context should be removed after runInContext()");
+			} catch (RuntimeException e) {
+				// expected
+			}
+
+			// the same if the code fails
+			try {
+				generator1.runInContext(() -> {
+					throw new IllegalStateException();
+				});
+				fail();
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			try {
+				CircuitGenerator.getActiveCircuitGenerator();
+				fail("The context should be removed after runInContext()");
+			} catch (RuntimeException e) {
+				// expected
+			}
+
+			// the methods of the generator bind it themselves
+			generator2.evalCircuit();
+			assertEquals(getExpectedQuotient(2),
+					generator2.getCircuitEvaluator().getWireValue(generator2.getOutWires().get(0)));
+		} finally {
+			Config.runningMultiGenerators = multiGenerators;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionIndex;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+
+public class InstructionStoreTest extends TestCase {
+
+	@Test
+	public void testCachingAndViews() {
+
+		CircuitGenerator generator = new CircuitGenerator("instruction_store") {
+
+			Wire a, b;
+
+			@Override
+			protected void buildCircuit() {
+				a = createInputWire("a");
+				b = createProverWitnessWire("b");
+
+				Wire m1 = a.mul(b, "a*b");
+				Wire m2 = b.mul(a);
+				assertSame(m1, m2);
+
+				Wire c1 = a.mul(-5);
+				Wire c2 = a.mul(-5);
+				assertSame(c1, c2);
+
+				Wire s1 = a.add(b);
+				Wire s2 = b.add(a);
+				assertSame(s1, s2);
+
+				makeOutput(m1.add(c1), "out");
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(a, BigInteger.valueOf(3));
+				evaluator.setWireValue(b, BigInteger.valueOf(7));
+			}
+		};
+		generator.generateCircuit();
+
+		InstructionStore store = generator.getEvaluationQueue();
+		int numMul = 0;
+		int numConstMul = 0;
+		for (int i = 0; i < store.size(); i++) {
+			Instruction e = store.get(i);
+			if (store.getOpcode(i) == InstructionStore.OP_MUL) {
+				assertTrue(e instanceof MulBasicOp);
+				if (numMul++ == 0)
+					assertEquals("mul in 2 <2 3> out 1 <4> \t\t# a*b", e.toString());
+			} else if (store.getOpcode(i) == InstructionStore.OP_CONST_MUL && store.isNegativeConstant(i)) {
+				numConstMul++;
+				assertTrue(e.toString().startsWith("const-mul-neg-5 in 1 <2>"));
+				assertTrue(e instanceof ConstMulBasicOp);
+			}
+		}
+		// the second one is added by makeOutput()
+		assertEquals(2, numMul);
+		assertEquals(1, numConstMul);
+
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		assertEquals(BigInteger.valueOf(21 - 15), evaluator.getWireValue(generator.getOutWires().get(0)));
+	}
+
+	@Test
+	public void testStructuralHash() {
+		CircuitGenerator generator = new CircuitGenerator("instruction_hash") {
+
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(8);
+				// every pair is added and multiplied twice, in both orders
+				for (int i = 0; i < inputs.length; i++) {
+					for (int j = 0; j < inputs.length; j++) {
+						Wire sum = inputs[i].add(inputs[j]);
+						assertSame(sum, inputs[j].add(inputs[i]));
+						makeOutput(sum.mul(inputs[j]).mul(3));
+					}
+				}
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+
+		// the wires of the instructions below belong to the generator
+		generator.runInContext(() -> {
+			Wire[] w = new Wire[8];
+			for (int i = 0; i < w.length; i++) {
+				w[i] = new Wire(i);
+			}
+			assertFalse(InstructionIndex.hash(new AddBasicOp(new Wire[] { w[3], w[5] }, w[7])) == InstructionIndex
+					.hash(new AddBasicOp(new Wire[] { w[4], w[4] }, w[7])));
+			assertHashEquals(new MulBasicOp(w[1], w[2], w[3]), new MulBasicOp(w[2], w[1], w[4]));
+			assertHashEquals(new AddBasicOp(new Wire[] { w[1], w[2] }, w[3]),
+					new AddBasicOp(new Wire[] { w[2], w[1] }, w[4]));
+			assertFalse(InstructionIndex.hash(new AddBasicOp(new Wire[] { w[1], w[2], w[3] }, w[7])) == InstructionIndex
+					.hash(new AddBasicOp(new Wire[] { w[3], w[2], w[1] }, w[7])));
+			BigInteger prime = generator.getConfig().getFieldPrime();
+			assertFalse(InstructionIndex.hash(new ConstMulBasicOp(w[1], w[2], BigInteger.valueOf(3), false, prime))
+					== InstructionIndex.hash(new ConstMulBasicOp(w[1], w[2], BigInteger.valueOf(5), false, prime)));
+			assertFalse(InstructionIndex.hash(new SplitBasicOp(w[1], new Wire[] { w[2], w[3] })) == InstructionIndex
+					.hash(new SplitBasicOp(w[1], new Wire[] { w[2], w[3], w[4] })));
+		});
+
+		InstructionIndex index = generator.getEvaluationQueue().getIndex();
+		// the add operations that were looked up a second time
+		assertTrue(index.getNumHits() >= 64);
+		assertEquals(0, index.getNumCollisions());
+		assertTrue(index.getNumProbes() < index.getNumLookups());
+	}
+
+	private static void assertHashEquals(BasicOp op1, BasicOp op2) {
+		assertEquals(op1, op2);
+		assertEquals(InstructionIndex.hash(op1), InstructionIndex.hash(op2));
+		assertEquals(op1.hashCode(), op2.hashCode());
+	}
+}
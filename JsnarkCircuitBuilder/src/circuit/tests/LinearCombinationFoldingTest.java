@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.optimization.OptimizedCircuit;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class LinearCombinationFoldingTest extends TestCase {
+
+	@Test
+	public void testFolding() throws IOException {
+		BigInteger[] inputs = Util.randomBigIntegerArray(8, Config.FIELD_PRIME);
+		CircuitGenerator generator = new CircuitGenerator("lc_folding_test") {
+			Wire[] inputWires;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(8);
+				Wire[] terms = new Wire[inputWires.length];
+				for (int i = 0; i < terms.length; i++) {
+					terms[i] = inputWires[i].mul(i + 2);
+				}
+				Wire sum = new WireArray(terms).sumAllElements();
+				Wire lc = sum.sub(inputWires[0].mul(3)).add(5).mul(7);
+				Wire cancelled = inputWires[1].add(inputWires[2]).sub(inputWires[2]);
+				Wire product = lc.mul(cancelled.add(inputWires[3]));
+				makeOutput(lc);
+				makeOutput(product.add(inputWires[4].sub(inputWires[5])));
+				makeOutput(new FieldDivisionGadget(lc.add(inputWires[6]), inputWires[7].mul(2).add(1))
+						.getOutputWires()[0]);
+				Wire[] bits = inputWires[6].sub(inputWires[7]).getBitWires(Config.LOG2_FIELD_PRIME).asArray();
+				makeOutput(new WireArray(bits).packAsBits(Config.LOG2_FIELD_PRIME).add(sum));
+				makeOutput(inputWires[0].sub(inputWires[0]).mul(4));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+
+		OptimizedCircuit circuit = new OptimizedCircuit(generator);
+		int numLines = circuit.getNumLines();
+		circuit.foldLinearCombinations();
+		assertTrue(circuit.getNumLines() < numLines);
+		assertTrue(circuit.getNumWires() < generator.getNumWires());
+
+		Path arith = Paths.get("lc_folding_test_optimized.arith");
+		Path in = Paths.get("lc_folding_test_optimized.in");
+		Path full = Paths.get("lc_folding_test_optimized.in.full.2");
+		try {
+			circuit.writeCircuitFile(arith.toString());
+			circuit.writeInputFile(evaluator, in.toString());
+			CircuitEvaluator.eval(arith.toString(), in.toString());
+			HashMap<Integer, BigInteger> values = new HashMap<Integer, BigInteger>();
+			for (String line : Files.readAllLines(full)) {
+				String[] parts = line.split(" ");
+				values.put(Integer.parseInt(parts[0]), new BigInteger(parts[1], 16));
+			}
+			List<Wire> outWires = generator.getOutWires();
+			assertEquals(5, outWires.size());
+			for (Wire w : outWires) {
+				int id = circuit.getNewWireId(w.getWireId());
+				assertEquals(evaluator.getWireValue(w), values.get(id));
+			}
+			assertEquals(BigInteger.ZERO, evaluator.getWireValue(outWires.get(4)));
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		} finally {
+			Files.deleteIfExists(arith);
+			Files.deleteIfExists(in);
+			Files.deleteIfExists(full);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.auxiliary.LongElement;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.eval.ParallelCircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class ParallelEvaluatorTest extends TestCase {
+
+	@Test
+	public void testSameAssignment() {
+
+		int numHashes = 16;
+		BigInteger[][] hashInputs = new BigInteger[numHashes][];
+		for (int i = 0; i < numHashes; i++) {
+			hashInputs[i] = Util.randomBigIntegerArray(64, 8);
+		}
+		BigInteger[] fieldInputs = Util.randomBigIntegerArray(4, Config.FIELD_PRIME);
+		BigInteger[] longValues = Util.randomBigIntegerArray(2, 1024);
+
+		CircuitGenerator generator = new CircuitGenerator("parallel_eval_test") {
+			Wire[][] hashInputWires;
+			Wire[] fieldInputWires;
+			LongElement[] longElements;
+			Wire[] witnesses;
+
+			@Override
+			protected void buildCircuit() {
+				hashInputWires = new Wire[numHashes][];
+				for (int i = 0; i < numHashes; i++) {
+					hashInputWires[i] = createInputWireArray(64);
+					makeOutputArray(new SHA256Gadget(hashInputWires[i], 8, 64, false, true).getOutputWires());
+				}
+
+				// custom instructions with declared read and written wires
+				fieldInputWires = createInputWireArray(4);
+				Wire q1 = new FieldDivisionGadget(fieldInputWires[0], fieldInputWires[1]).getOutputWires()[0];
+				Wire q2 = new FieldDivisionGadget(fieldInputWires[2], q1).getOutputWires()[0];
+				makeOutput(q2.mul(fieldInputWires[3]));
+
+				longElements = new LongElement[2];
+				int[] bitwidths = new int[1024 / LongElement.CHUNK_BITWIDTH];
+				Arrays.fill(bitwidths, LongElement.CHUNK_BITWIDTH);
+				for (int i = 0; i < 2; i++) {
+					longElements[i] = new LongElement(createProverWitnessWireArray(bitwidths.length), bitwidths);
+				}
+				makeOutputArray(longElements[0].mul(longElements[1]).getArray());
+
+				// a barrier
+				witnesses = createProverWitnessWireArray(2);
+				specifyProverWitnessComputation(new Instruction() {
+					@Override
+					public void evaluate(CircuitEvaluator evaluator) {
+						BigInteger v = evaluator.getWireValue(q2);
+						evaluator.setWireValue(witnesses[0], v);
+						evaluator.setWireValue(witnesses[1], v.add(BigInteger.ONE).mod(Config.FIELD_PRIME));
+					}
+				});
+				addEqualityAssertion(witnesses[0], q2);
+				makeOutput(witnesses[1].sub(witnesses[0]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int i = 0; i < numHashes; i++) {
+					evaluator.setWireValue(hashInputWires[i], hashInputs[i]);
+				}
+				evaluator.setWireValue(fieldInputWires, fieldInputs);
+				for (int i = 0; i < 2; i++) {
+					evaluator.setWireValue(longElements[i], longValues[i], LongElement.CHUNK_BITWIDTH);
+				}
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		BigInteger[] expected = generator.getCircuitEvaluator().getAssignment().clone();
+
+		generator.evalCircuitInParallel();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		assertTrue(evaluator instanceof ParallelCircuitEvaluator);
+		assertTrue(Arrays.equals(expected, evaluator.getAssignment()));
+	}
+}
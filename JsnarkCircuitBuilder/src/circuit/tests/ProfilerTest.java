@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.operations.Gadget;
+import circuit.profiling.CircuitProfiler;
+import circuit.profiling.ProfileNode;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class ProfilerTest extends TestCase {
+
+	// a gadget that contains the same gadget, and adds an operation after it
+	private static class NestedGadget extends Gadget {
+
+		private Wire output;
+
+		public NestedGadget(Wire a, Wire b, int depth) {
+			Wire w = depth > 1 ? new NestedGadget(a, b.add(1), depth - 1).getOutputWires()[0] : a;
+			output = w.mul(b);
+			// the same operation again
+			w.mul(b);
+		}
+
+		@Override
+		public Wire[] getOutputWires() {
+			return new Wire[] { output };
+		}
+	}
+
+	@Test
+	public void testProfile() {
+		CircuitGenerator generator = new CircuitGenerator("profiler_test") {
+			Wire[] inputWires;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(4);
+				Wire[] digest = new SHA256Gadget(inputWires, 8, 4, false, true).getOutputWires();
+				makeOutput(new NestedGadget(digest[0], inputWires[0], 3).getOutputWires()[0]);
+				makeOutput(new FieldDivisionGadget(inputWires[1], inputWires[2]).getOutputWires()[0]);
+				makeOutput(new FieldDivisionGadget(inputWires[2], inputWires[3]).getOutputWires()[0]);
+				makeOutput(inputWires[0].mul(inputWires[3]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int i = 0; i < inputWires.length; i++) {
+					evaluator.setWireValue(inputWires[i], BigInteger.valueOf(i + 1));
+				}
+			}
+		};
+		CircuitProfiler profiler = new CircuitProfiler();
+		generator.setProfiler(profiler);
+		generator.generateCircuit();
+
+		ProfileNode root = profiler.getRoot();
+		assertEquals("profiler_test", root.getName());
+		assertEquals(generator.getNumOfConstraints(), root.getNumOfConstraints());
+		assertEquals(generator.getNumWires(), root.getNumWires());
+		assertTrue(root.getNanos() > 0);
+
+		List<ProfileNode> children = root.getChildren();
+		assertEquals(3, children.size());
+		assertEquals("SHA256Gadget", children.get(0).getName());
+		assertEquals("FieldDivisionGadget", children.get(2).getName());
+		assertEquals(2, children.get(2).getNumCalls());
+		assertEquals(2, children.get(2).getNumOfConstraints());
+
+		// the nested gadgets are in the tree, and each level counts its own
+		// multiplication and the ones of the levels below
+		ProfileNode nested = children.get(1);
+		for (int depth = 3; depth >= 1; depth--) {
+			assertEquals("NestedGadget", nested.getName());
+			assertEquals(1, nested.getNumCalls());
+			assertEquals(depth, nested.getNumOfConstraints());
+			assertEquals(depth, nested.getNumDeduplicated());
+			List<ProfileNode> nestedChildren = nested.getChildren();
+			assertEquals(depth > 1 ? 1 : 0, nestedChildren.size());
+			nested = depth > 1 ? nestedChildren.get(0) : null;
+		}
+		long sum = 0;
+		for (ProfileNode child : children) {
+			sum += child.getNumOfConstraints();
+		}
+		// e.g. the multiplication in buildCircuit()
+		assertTrue(sum < root.getNumOfConstraints());
+
+		assertEquals(0, root.getEvaluationNanos());
+		generator.evalCircuit();
+		assertTrue(root.getEvaluationNanos() > 0);
+		assertTrue(children.get(0).getEvaluationNanos() > 0);
+		assertTrue(root.getEvaluationNanos() >= children.get(0).getEvaluationNanos());
+
+		String json = profiler.toJson();
+		assertTrue(json.startsWith("{\"name\":\"profiler_test\",\"calls\":1,\"constraints\":"
+				+ generator.getNumOfConstraints() + ","));
+		assertTrue(json.contains("{\"name\":\"FieldDivisionGadget\",\"calls\":2,\"constraints\":2,"));
+		assertTrue(profiler.toString().contains("SHA256Gadget"));
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.prover.ProverExecutor;
+import circuit.prover.ProverJob;
+import circuit.prover.ProverJob.Transport;
+import circuit.prover.ProverResult;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class ProverExecutorTest extends TestCase {
+
+	// stands in for run_ppzksnark: prints checksums of the circuit and the
+	// input, after the actions given by the arguments before them
+	private static final String PROVER_SCRIPT = String.join("\n",
+			"#!/bin/sh",
+			"while [ $# -gt 2 ]; do",
+			"	case \"$1\" in",
+			"	sleep) sleep 60 ;;",
+			"	fail) echo \"failure\" >&2; exit 3 ;;",
+			"	verbose) seq 1 100000; seq 1 100000 >&2 ;;",
+			"	count) shift; touch \"$1/$$\"; echo \"running $(ls \"$1\" | wc -l)\"; sleep 0.2; rm \"$1/$$\" ;;",
+			"	*) echo \"argument $1\" ;;",
+			"	esac",
+			"	shift",
+			"done",
+			"echo \"circuit $(cksum < \"$1\")\"",
+			"echo \"input $(cksum < \"$2\")\"",
+			"");
+
+	private Path directory;
+	private Path script;
+	private CircuitGenerator generator;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("prover_test");
+		script = directory.resolve("prover.sh");
+		Files.write(script, PROVER_SCRIPT.getBytes());
+		script.toFile().setExecutable(true);
+
+		generator = new CircuitGenerator(directory.resolve("prover_test").toString()) {
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(100);
+				Wire sum = getZeroWire();
+				for (int i = 0; i < inputs.length; i++) {
+					sum = sum.add(inputs[i].mul(inputs[(i + 1) % inputs.length]));
+				}
+				makeOutput(sum);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int i = 0; i < inputs.length; i++) {
+					evaluator.setWireValue(inputs[i], BigInteger.valueOf(i * 1000003L));
+				}
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	private static boolean isSupported() {
+		// the stand-in and the named pipes need a POSIX system
+		return File.separatorChar == '/';
+	}
+
+	@Test
+	public void testTransports() throws Exception {
+		if (!isSupported()) {
+			return;
+		}
+		generator.prepFiles();
+		Path arith = Paths.get(generator.getName() + ".arith");
+		Path in = Paths.get(generator.getName() + ".in");
+
+		try (ProverExecutor executor = new ProverExecutor(script.toString(), 2)) {
+			ProverResult expected = executor.submit(ProverJob.forFiles(arith, in).withArguments("gg")).get();
+			assertTrue(expected.isSuccessful());
+			assertTrue(expected.getOutput().startsWith("argument gg\ncircuit "));
+
+			List<CompletableFuture<ProverResult>> results = new ArrayList<CompletableFuture<ProverResult>>();
+			for (Transport transport : Transport.values()) {
+				results.add(executor.submit(ProverJob.forGenerator(generator).withArguments("gg")
+						.withTransport(transport)));
+			}
+			CompletableFuture<ProverResult> withoutArguments = generator.runLibsnarkAsync(executor);
+			for (CompletableFuture<ProverResult> result : results) {
+				assertEquals(expected.getOutput(), result.get().getOutput());
+				assertEquals("", result.get().getErrorOutput());
+			}
+			assertEquals(expected.getOutput().substring("argument gg\n".length()), withoutArguments.get().getOutput());
+		}
+	}
+
+	@Test
+	public void testOutput() throws Exception {
+		if (!isSupported()) {
+			return;
+		}
+		AtomicInteger lines = new AtomicInteger();
+		try (ProverExecutor executor = new ProverExecutor(script.toString(), 1)) {
+			// more output than the pipe buffers hold
+			ProverResult result = executor.submit(ProverJob.forGenerator(generator).withArguments("verbose")
+					.withOutputListener(line -> lines.incrementAndGet())).get();
+			assertEquals(100002, result.getOutput().split("\n").length);
+			assertEquals(100000, result.getErrorOutput().split("\n").length);
+			assertEquals(100002, lines.get());
+
+			result = executor.submit(ProverJob.forGenerator(generator).withArguments("fail")).get();
+			assertEquals(3, result.getExitCode());
+			assertFalse(result.isSuccessful());
+			assertEquals("failure\n", result.getErrorOutput());
+		}
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		if (!isSupported()) {
+			return;
+		}
+		Path counter = Files.createDirectory(directory.resolve("running"));
+		List<CompletableFuture<ProverResult>> results = new ArrayList<CompletableFuture<ProverResult>>();
+		try (ProverExecutor executor = new ProverExecutor(script.toString(), 3)) {
+			for (int i = 0; i < 12; i++) {
+				results.add(executor.submit(ProverJob.forGenerator(generator)
+						.withArguments("count", counter.toString()).withTransport(Transport.NAMED_PIPES)));
+			}
+			for (CompletableFuture<ProverResult> result : results) {
+				String running = result.get().getOutput().split("\n")[0];
+				assertTrue(running.startsWith("running "));
+				int n = Integer.parseInt(running.substring("running ".length()).trim());
+				assertTrue(n >= 1 && n <= 3);
+			}
+		}
+	}
+
+	@Test
+	public void testTimeoutAndCancellation() throws Exception {
+		if (!isSupported()) {
+			return;
+		}
+		try (ProverExecutor executor = new ProverExecutor(script.toString(), 1)) {
+			long startTime = System.nanoTime();
+			try {
+				executor.submit(ProverJob.forGenerator(generator).withArguments("sleep")
+						.withTransport(Transport.NAMED_PIPES).withTimeout(Duration.ofMillis(300))).get();
+				fail("The job should time out");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+
+			CompletableFuture<ProverResult> result = executor
+					.submit(ProverJob.forGenerator(generator).withArguments("sleep"));
+			// waits for the slot of the first job
+			CompletableFuture<ProverResult> next = executor.submit(ProverJob.forGenerator(generator));
+			Thread.sleep(300);
+			assertFalse(next.isDone());
+			result.cancel(true);
+			try {
+				result.get();
+				fail("The job should be cancelled");
+			} catch (CancellationException e) {
+				// expected
+			}
+			// the cancelled process releases its slot
+			assertTrue(next.get().isSuccessful());
+			assertTrue(System.nanoTime() - startTime < 30_000_000_000L);
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.io.BinaryFormat;
+import circuit.r1cs.R1CS;
+import circuit.r1cs.R1CSChecker;
+import circuit.r1cs.R1CSConstraint;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class R1CSCheckerTest extends TestCase {
+
+	@Test
+	public void testSatisfied() {
+		BigInteger[] inputs = Util.randomBigIntegerArray(16, 8);
+		CircuitGenerator generator = new CircuitGenerator("r1cs_checker_test") {
+			Wire[] inputWires;
+			Wire witness;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(16);
+				witness = createProverWitnessWire();
+				// xor, or, split and pack
+				makeOutputArray(new SHA256Gadget(inputWires, 8, 16, false, true).getOutputWires());
+				Wire product = inputWires[0].mul(inputWires[1].sub(inputWires[2]), "the product");
+				makeOutput(product.mul(-5).add(witness));
+				// zerop, for a zero and a non-zero difference
+				Wire nonZero = inputWires[3].sub(inputWires[10]).checkNonZero();
+				makeOutput(nonZero.invAsBit());
+				makeOutput(inputWires[4].isEqualTo(inputWires[5]));
+				makeOutput(inputWires[6].isLessThan(inputWires[7], 8));
+				addBinaryAssertion(witness, "the witness is a bit");
+				makeOutput(new FieldDivisionGadget(inputWires[8].add(1), inputWires[9].add(1)).getOutputWires()[0]);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+				evaluator.setWireValue(inputWires[10], inputs[3]);
+				evaluator.setWireValue(inputWires[4], 3);
+				evaluator.setWireValue(inputWires[5], 4);
+				evaluator.setWireValue(witness, 1);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		R1CSChecker.Result result = R1CSChecker.check(generator);
+		assertTrue(result.toString(), result.isSatisfied());
+		assertEquals(generator.getNumOfConstraints(), result.getNumConstraints());
+		assertEquals(-1, result.getFailedIndex());
+	}
+
+	@Test
+	public void testUnsatisfied() {
+		BigInteger[] inputs = Util.randomBigIntegerArray(4, 8);
+		CircuitGenerator generator = new CircuitGenerator("r1cs_checker_test") {
+			Wire[] inputWires;
+			Wire witness;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(4);
+				witness = createProverWitnessWire();
+				// the product and the output of zerop are the first and third
+				// outputs
+				Wire product = inputWires[0].mul(inputWires[1].sub(inputWires[2]), "the product");
+				makeOutput(product);
+				makeOutput(product.mul(-5).add(witness));
+				makeOutput(inputWires[3].sub(inputWires[0]).checkNonZero());
+				addBinaryAssertion(witness, "the witness is a bit");
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+				// a zero difference
+				evaluator.setWireValue(inputWires[3], inputs[0]);
+				evaluator.setWireValue(witness, 1);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		R1CS r1cs = R1CS.lower(generator);
+		BigInteger[] assignment = generator.getCircuitEvaluator().getAssignment();
+
+		BigInteger[] wrongProduct = assignment.clone();
+		int id = generator.getOutWires().get(0).getWireId();
+		wrongProduct[id] = wrongProduct[id].add(BigInteger.ONE);
+		R1CSChecker.Result result = R1CSChecker.check(r1cs, wrongProduct);
+		assertFalse(result.isSatisfied());
+		R1CSConstraint constraint = result.getFailedConstraint();
+		assertEquals("mul", constraint.getOpcode());
+		assertEquals("the product", constraint.getDesc());
+		assertSame(constraint, r1cs.getConstraint(result.getFailedIndex()));
+		assertTrue(result.toString().contains("the product"));
+
+		// a witness that is not a bit
+		BigInteger[] wrongWitness = assignment.clone();
+		wrongWitness[generator.getProverWitnessWires().get(0).getWireId()] = BigInteger.TWO;
+		result = R1CSChecker.check(r1cs, wrongWitness);
+		assertFalse(result.isSatisfied());
+		assertTrue(result.getFailedIndex() < r1cs.getNumConstraints());
+
+		// the output of zerop
+		BigInteger[] wrongNonZero = assignment.clone();
+		wrongNonZero[generator.getOutWires().get(2).getWireId()] = BigInteger.ONE;
+		result = R1CSChecker.check(r1cs, wrongNonZero);
+		assertFalse(result.isSatisfied());
+		assertEquals("zerop", result.getFailedConstraint().getOpcode());
+
+		// the checker computes the auxiliary value of zerop itself
+		assertTrue(R1CSChecker.check(r1cs, assignment).isSatisfied());
+	}
+
+	@Test
+	public void testCircuitFiles() throws IOException {
+		BigInteger[] inputs = Util.randomBigIntegerArray(16, 8);
+		CircuitGenerator generator = new CircuitGenerator("r1cs_checker_test") {
+			Wire[] inputWires;
+			Wire witness;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(16);
+				witness = createProverWitnessWire();
+				// xor, or, split and pack
+				makeOutputArray(new SHA256Gadget(inputWires, 8, 16, false, true).getOutputWires());
+				Wire product = inputWires[0].mul(inputWires[1].sub(inputWires[2]), "the product");
+				makeOutput(product.mul(-5).add(witness));
+				// zerop, for a zero and a non-zero difference
+				Wire nonZero = inputWires[3].sub(inputWires[10]).checkNonZero();
+				makeOutput(nonZero.invAsBit());
+				makeOutput(inputWires[4].isEqualTo(inputWires[5]));
+				makeOutput(inputWires[6].isLessThan(inputWires[7], 8));
+				addBinaryAssertion(witness, "the witness is a bit");
+				makeOutput(new FieldDivisionGadget(inputWires[8].add(1), inputWires[9].add(1)).getOutputWires()[0]);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+				evaluator.setWireValue(inputWires[10], inputs[3]);
+				evaluator.setWireValue(inputWires[4], 3);
+				evaluator.setWireValue(inputWires[5], 4);
+				evaluator.setWireValue(witness, 1);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		generator.prepFiles();
+		generator.prepBinaryFiles();
+		Path arith = Paths.get(generator.getName() + ".arith");
+		Path binArith = Paths.get(generator.getName() + BinaryFormat.CIRCUIT_FILE_EXTENSION);
+		try {
+			BigInteger[] assignment = generator.getCircuitEvaluator().getAssignment();
+			R1CS lowered = R1CS.lower(generator);
+			for (Path path : new Path[] { arith, binArith }) {
+				R1CS r1cs = R1CS.read(path, Config.FIELD_PRIME);
+				assertEquals(lowered.getNumConstraints(), r1cs.getNumConstraints());
+				assertEquals(generator.getNumWires(), r1cs.getNumVariables());
+				assertTrue(R1CSChecker.check(r1cs, assignment).isSatisfied());
+				for (int k = 0; k < r1cs.getNumConstraints(); k += 97) {
+					assertEquals(lowered.getConstraint(k).toString().replaceAll(" #\\d+", ""),
+							r1cs.getConstraint(k).toString().replaceAll(" #\\d+", ""));
+				}
+			}
+		} finally {
+			Files.delete(arith);
+			Files.delete(Paths.get(generator.getName() + ".in"));
+			Files.delete(binArith);
+			Files.delete(Paths.get(generator.getName() + BinaryFormat.WITNESS_FILE_EXTENSION));
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.io.BinaryFormat;
+import circuit.r1cs.R1CS;
+import circuit.r1cs.R1CSExporter;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class R1CSExporterTest extends TestCase {
+
+	// the content of an exported file
+	private static class ExportedR1CS {
+
+		BigInteger prime;
+		int[] groupStarts = new int[5];
+		int numConstraints;
+		long[] nonZeros = new long[3];
+		long[] offsets = new long[5];
+		long[][] rowPointers = new long[3][];
+		int[][] columns = new int[3][];
+		int[][] coefficientIndices = new int[3][];
+		BigInteger[] coefficients;
+		BigInteger[] witness;
+
+		ExportedR1CS(Path path) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+			byte[] magic = new byte[BinaryFormat.MAGIC.length];
+			buffer.get(magic);
+			assertTrue(Arrays.equals(BinaryFormat.MAGIC, magic));
+			assertEquals(BinaryFormat.VERSION, buffer.get());
+			assertEquals(BinaryFormat.TYPE_R1CS, buffer.get());
+			assertEquals(BinaryFormat.FIELD_ELEMENT_SIZE, buffer.get());
+			prime = readFieldElement(buffer);
+			for (int g = 0; g < 5; g++) {
+				groupStarts[g] = buffer.getInt();
+			}
+			numConstraints = buffer.getInt();
+			coefficients = new BigInteger[buffer.getInt()];
+			for (int m = 0; m < 3; m++) {
+				nonZeros[m] = buffer.getLong();
+			}
+			for (int k = 0; k < 5; k++) {
+				offsets[k] = buffer.getLong();
+			}
+			for (int m = 0; m < 3; m++) {
+				assertEquals(offsets[m], buffer.position());
+				rowPointers[m] = new long[numConstraints + 1];
+				for (int k = 0; k <= numConstraints; k++) {
+					rowPointers[m][k] = buffer.getLong();
+				}
+				columns[m] = new int[(int) nonZeros[m]];
+				for (int k = 0; k < nonZeros[m]; k++) {
+					columns[m][k] = buffer.getInt();
+				}
+				coefficientIndices[m] = new int[(int) nonZeros[m]];
+				for (int k = 0; k < nonZeros[m]; k++) {
+					coefficientIndices[m][k] = buffer.getInt();
+				}
+			}
+			assertEquals(offsets[3], buffer.position());
+			for (int k = 0; k < coefficients.length; k++) {
+				coefficients[k] = readFieldElement(buffer);
+			}
+			if (offsets[4] != 0) {
+				assertEquals(offsets[4], buffer.position());
+				witness = new BigInteger[groupStarts[4]];
+				for (int k = 0; k < witness.length; k++) {
+					witness[k] = readFieldElement(buffer);
+				}
+			}
+			assertFalse(buffer.hasRemaining());
+		}
+
+		private static BigInteger readFieldElement(ByteBuffer buffer) {
+			byte[] bytes = new byte[BinaryFormat.FIELD_ELEMENT_SIZE];
+			buffer.get(bytes);
+			return new BigInteger(1, bytes);
+		}
+
+		BigInteger evaluate(int m, int row) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int k = (int) rowPointers[m][row]; k < rowPointers[m][row + 1]; k++) {
+				sum = sum.add(coefficients[coefficientIndices[m][k]].multiply(witness[columns[m][k]]));
+			}
+			return sum.mod(prime);
+		}
+	}
+
+	@Test
+	public void testExport() throws IOException {
+		BigInteger[] inputs = Util.randomBigIntegerArray(16, 8);
+		CircuitGenerator generator = new CircuitGenerator("r1cs_exporter_test") {
+			Wire[] inputWires;
+			Wire[] witnesses;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(16);
+				makeOutputArray(new SHA256Gadget(inputWires, 8, 16, false, true).getOutputWires());
+				witnesses = createProverWitnessWireArray(2);
+				makeOutput(inputWires[0].mul(witnesses[0]).mul(-7).add(witnesses[1]));
+				makeOutput(inputWires[1].isEqualTo(inputWires[2]));
+				makeOutput(inputWires[3].isEqualTo(witnesses[1]));
+				makeOutput(new FieldDivisionGadget(inputWires[4].add(1), witnesses[0]).getOutputWires()[0]);
+				// an input that is created after other wires
+				makeOutput(createInputWire().mul(3).add(inputWires[5]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+				evaluator.setWireValue(witnesses[0], 12345);
+				evaluator.setWireValue(witnesses[1], inputs[3]);
+				evaluator.setWireValue(getInWires().get(getInWires().size() - 1), 99);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		Path path = Files.createTempFile("r1cs_exporter_test", BinaryFormat.R1CS_FILE_EXTENSION);
+		try {
+			R1CSExporter.export(generator, path);
+			ExportedR1CS exported = new ExportedR1CS(path);
+
+			assertEquals(Config.FIELD_PRIME, exported.prime);
+			assertEquals(generator.getNumOfConstraints(), exported.numConstraints);
+			R1CS r1cs = R1CS.lower(generator);
+			long[] nonZeros = new long[3];
+			for (int k = 0; k < r1cs.getNumConstraints(); k++) {
+				nonZeros[0] += r1cs.getConstraint(k).getA().size();
+				nonZeros[1] += r1cs.getConstraint(k).getB().size();
+				nonZeros[2] += r1cs.getConstraint(k).getC().size();
+			}
+			assertTrue(Arrays.equals(nonZeros, exported.nonZeros));
+			assertEquals(exported.coefficients.length,
+					Arrays.stream(exported.coefficients).distinct().count());
+
+			// the one-wire, the 17 inputs, the outputs, then the 2 witnesses and
+			// the one of the division gadget
+			int numInputs = generator.getInWires().size() - 1;
+			int numOutputs = generator.getOutWires().size();
+			assertEquals(1, exported.groupStarts[0]);
+			assertEquals(1 + numInputs, exported.groupStarts[1]);
+			assertEquals(1 + numInputs + numOutputs, exported.groupStarts[2]);
+			assertEquals(4 + numInputs + numOutputs, exported.groupStarts[3]);
+			CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+			assertEquals(BigInteger.ONE, exported.witness[0]);
+			for (int k = 0; k < numInputs; k++) {
+				assertEquals(evaluator.getWireValue(generator.getInWires().get(k + 1)), exported.witness[1 + k]);
+			}
+			for (int k = 0; k < numOutputs; k++) {
+				assertEquals(evaluator.getWireValue(generator.getOutWires().get(k)),
+						exported.witness[exported.groupStarts[1] + k]);
+			}
+			assertEquals(BigInteger.valueOf(12345), exported.witness[exported.groupStarts[2]]);
+
+			for (int row = 0; row < exported.numConstraints; row++) {
+				assertEquals("constraint " + row, exported.evaluate(0, row).multiply(exported.evaluate(1, row))
+						.mod(exported.prime), exported.evaluate(2, row));
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testExportWithoutWitness() throws IOException {
+		CircuitGenerator generator = new CircuitGenerator("r1cs_exporter_test") {
+
+			@Override
+			protected void buildCircuit() {
+				Wire[] inputWires = createInputWireArray(3);
+				makeOutput(inputWires[0].mul(inputWires[1]).mul(-7).add(inputWires[2]));
+				makeOutput(inputWires[1].isEqualTo(inputWires[2]));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+		Path path = Files.createTempFile("r1cs_exporter_test", BinaryFormat.R1CS_FILE_EXTENSION);
+		try {
+			R1CSExporter.export(generator.getEvaluationQueue(), generator.getNumWires(), null, path);
+			ExportedR1CS exported = new ExportedR1CS(path);
+			assertEquals(generator.getNumOfConstraints(), exported.numConstraints);
+			assertEquals(0, exported.offsets[4]);
+			assertNull(exported.witness);
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.io.BinaryCircuitReader;
+import circuit.io.BinaryCircuitWriter;
+import circuit.io.CircuitRecord;
+import circuit.io.TextCircuitWriter;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+
+public class StreamingTest extends TestCase {
+
+	@Test
+	public void testStreamingWithLargeWindow() throws IOException {
+		// a generator that builds the circuit in memory, and one that streams it
+		CircuitGenerator[] generators = new CircuitGenerator[2];
+		for (int i = 0; i < 2; i++) {
+			generators[i] = new CircuitGenerator("streaming_test") {
+				Wire[] inputWires;
+
+				@Override
+				protected void buildCircuit() {
+					inputWires = createInputWireArray(64);
+					Wire[] digest = new SHA256Gadget(inputWires, 8, 64, false, true).getOutputWires();
+					Wire[] digest2 = new SHA256Gadget(digest, 32, 32, false, true).getOutputWires();
+					makeOutputArray(digest2);
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					evaluator.setWireValue(inputWires, new BigInteger[0]);
+				}
+			};
+		}
+		CircuitGenerator generator = generators[0];
+		CircuitGenerator streamingGenerator = generators[1];
+		generator.generateCircuit();
+		generator.writeCircuitFile();
+		Path expected = Paths.get(generator.getName() + ".arith");
+
+		Path streamed = Files.createTempFile("streaming_test", ".arith");
+		streamingGenerator.generateCircuit(new TextCircuitWriter(streamed), 1 << 20);
+		try {
+			List<String> expectedLines = Files.readAllLines(expected);
+			List<String> lines = Files.readAllLines(streamed);
+			assertEquals(expectedLines.size(), lines.size());
+			// the total number of wires is padded with zeros
+			assertEquals(Integer.parseInt(expectedLines.get(0).substring(6)), Integer.parseInt(lines.get(0).substring(6)));
+			assertEquals(expectedLines.subList(1, lines.size()), lines.subList(1, lines.size()));
+			assertEquals(generator.getNumOfConstraints(), streamingGenerator.getNumOfConstraints());
+		} finally {
+			Files.delete(expected);
+			Files.delete(streamed);
+		}
+		try {
+			streamingGenerator.writeCircuitFile();
+			fail("The circuit should not be retained after streaming");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testStreamingWithSmallWindow() throws IOException {
+		// a generator that builds the circuit in memory, and one that streams it
+		CircuitGenerator[] generators = new CircuitGenerator[2];
+		for (int i = 0; i < 2; i++) {
+			generators[i] = new CircuitGenerator("streaming_test") {
+				Wire[] inputWires;
+
+				@Override
+				protected void buildCircuit() {
+					inputWires = createInputWireArray(64);
+					Wire[] digest = new SHA256Gadget(inputWires, 8, 64, false, true).getOutputWires();
+					Wire[] digest2 = new SHA256Gadget(digest, 32, 32, false, true).getOutputWires();
+					makeOutputArray(digest2);
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					evaluator.setWireValue(inputWires, new BigInteger[0]);
+				}
+			};
+		}
+		CircuitGenerator generator = generators[0];
+		CircuitGenerator streamingGenerator = generators[1];
+		generator.generateCircuit();
+
+		Path streamed = Files.createTempFile("streaming_test", ".arith.bin");
+		streamingGenerator.generateCircuit(new BinaryCircuitWriter(streamed), 64);
+		try (BinaryCircuitReader reader = new BinaryCircuitReader(streamed)) {
+			assertEquals(streamingGenerator.getNumWires(), reader.getTotalWires());
+			CircuitRecord r = new CircuitRecord();
+			int numOutputs = 0;
+			while (reader.next(r)) {
+				if (r.getTag() == CircuitRecord.TAG_OUTPUT) {
+					numOutputs++;
+				}
+				for (int k = 0; k < r.getNumOutputs(); k++) {
+					assertTrue(r.getOutput(k) < reader.getTotalWires());
+				}
+			}
+			assertEquals(8, numOutputs);
+		} finally {
+			Files.delete(streamed);
+		}
+		// some duplicates are not detected with a small window
+		assertTrue(streamingGenerator.getNumOfConstraints() >= generator.getNumOfConstraints());
+
+		// the generator can be used normally after streaming
+		streamingGenerator.generateCircuit();
+		assertEquals(generator.getNumOfConstraints(), streamingGenerator.getNumOfConstraints());
+		assertEquals(generator.getNumWires(), streamingGenerator.getNumWires());
+		streamingGenerator.evalCircuit();
+	}
+}
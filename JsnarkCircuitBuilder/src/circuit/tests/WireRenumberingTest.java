@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.eval.CircuitEvaluator;
+import circuit.optimization.OptimizedCircuit;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.InstructionStore;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class WireRenumberingTest extends TestCase {
+
+	@Test
+	public void testRenumbering() throws IOException {
+		BigInteger[] inputs = Util.randomBigIntegerArray(16, 8);
+		BigInteger[] lateInputs = new BigInteger[] { BigInteger.valueOf(7), BigInteger.valueOf(11) };
+		CircuitGenerator generator = new CircuitGenerator("renumbering_test") {
+			Wire[] inputWires;
+			Wire[] lateInputWires;
+			Wire witness;
+
+			@Override
+			protected void buildCircuit() {
+				inputWires = createInputWireArray(16);
+				Wire[] digest = new SHA256Gadget(inputWires, 8, 16, false, true).getOutputWires();
+				makeOutput(digest[0]);
+				// inputs and witnesses that are created in the middle of the circuit
+				lateInputWires = createInputWireArray(2);
+				witness = createProverWitnessWire();
+				makeOutput(new FieldDivisionGadget(lateInputWires[0].add(witness), lateInputWires[1])
+						.getOutputWires()[0]);
+				makeOutputArray(new SHA256Gadget(digest, 32, 32, false, true).getOutputWires());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputWires, inputs);
+				evaluator.setWireValue(lateInputWires, lateInputs);
+				evaluator.setWireValue(witness, 5);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+
+		OptimizedCircuit circuit = new OptimizedCircuit(generator);
+		int numLines = circuit.getNumLines();
+		circuit.renumberWires();
+		assertEquals(numLines, circuit.getNumLines());
+		assertEquals(generator.getNumWires(), circuit.getNumWires());
+
+		// the one-wire and the inputs, the outputs, then the other wires in
+		// the order they are computed
+		InstructionStore store = circuit.getInstructions();
+		int numInputs = generator.getInWires().size();
+		int numOutputs = generator.getOutWires().size();
+		for (int k = 0; k < numInputs; k++) {
+			assertEquals(InstructionStore.OP_INPUT, store.getOpcode(k));
+			assertEquals(k, store.getInputId(k, 0));
+		}
+		for (int k = 0; k < numOutputs; k++) {
+			int i = store.size() - numOutputs + k;
+			assertEquals(InstructionStore.OP_OUTPUT, store.getOpcode(i));
+			assertEquals(numInputs + k, store.getInputId(i, 0));
+		}
+		int lastId = numInputs + numOutputs - 1;
+		int numWitnesses = 0;
+		for (int i = numInputs; i < store.size() - numOutputs; i++) {
+			if (store.getOpcode(i) == InstructionStore.OP_NIZKINPUT) {
+				assertEquals(++lastId, store.getInputId(i, 0));
+				numWitnesses++;
+			} else if (store.getOpcode(i) != InstructionStore.OP_ASSERT) {
+				assertTrue(store.isBasicOp(i));
+				for (int k = 0; k < store.getNumOutputs(i); k++) {
+					int id = store.getOutputId(i, k);
+					if (id >= numInputs + numOutputs) {
+						assertEquals(++lastId, id);
+					}
+				}
+			}
+		}
+		assertEquals(circuit.getNumWires() - 1, lastId);
+		// the witness of the test and the one of the division gadget
+		assertEquals(2, numWitnesses);
+
+		Path arith = Paths.get("renumbering_test_optimized.arith");
+		Path in = Paths.get("renumbering_test_optimized.in");
+		Path full = Paths.get("renumbering_test_optimized.in.full.2");
+		try {
+			circuit.writeCircuitFile(arith.toString());
+			circuit.writeInputFile(evaluator, in.toString());
+			CircuitEvaluator.eval(arith.toString(), in.toString());
+			HashMap<Integer, BigInteger> values = new HashMap<Integer, BigInteger>();
+			for (String line : Files.readAllLines(full)) {
+				String[] parts = line.split(" ");
+				values.put(Integer.parseInt(parts[0]), new BigInteger(parts[1], 16));
+			}
+			for (Wire w : generator.getOutWires()) {
+				assertEquals(evaluator.getWireValue(w), values.get(circuit.getNewWireId(w.getWireId())));
+			}
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		} finally {
+			Files.deleteIfExists(arith);
+			Files.deleteIfExists(in);
+			Files.deleteIfExists(full);
+		}
+	}
+}
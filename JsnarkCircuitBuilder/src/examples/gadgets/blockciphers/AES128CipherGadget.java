@@ -8,6 +8,7 @@ import java.util.Arrays;
 
 import circuit.operations.Gadget;
 import circuit.structure.CircuitGenerator;
+import circuit.structure.ConstantWire;
 import circuit.structure.Wire;
 import circuit.structure.WireArray;
 import examples.gadgets.blockciphers.sbox.AESSBoxComputeGadget;
@@ -268,6 +269,11 @@ public class AES128CipherGadget extends Gadget {
 
 	private static Wire randomAccess(CircuitGenerator generator, Wire wire) {
 
+		// e.g. during the expansion of a constant key
+		if (wire instanceof ConstantWire) {
+			return generator.createConstantWire(SBox[((ConstantWire) wire).getConstant().intValue()]);
+		}
+
 		Gadget g = null;
 		switch (sBoxOption) {
 		case LINEAR_SCAN:
@@ -45,6 +45,7 @@ public class AESSBoxGadgetOptimized1 extends Gadget {
 
 	public AESSBoxGadgetOptimized1(Wire input, String... desc) {
 		super(desc);
+		checkDefaultFieldPrime();
 		this.input = input;
 		buildCircuit();
 	}
@@ -68,6 +68,7 @@ public class AESSBoxGadgetOptimized2 extends Gadget {
 
 	public AESSBoxGadgetOptimized2(Wire input, String... desc) {
 		super(desc);
+		checkDefaultFieldPrime();
 		this.input = input;
 		buildCircuit();
 	}
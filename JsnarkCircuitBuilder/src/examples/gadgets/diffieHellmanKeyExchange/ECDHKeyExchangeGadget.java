@@ -128,6 +128,7 @@
 	 public ECDHKeyExchangeGadget(Wire baseX, Wire hX, Wire[] secretBits,
 			 String... desc) {
 		 super(desc);
+		 checkDefaultFieldPrime();
 		 this.secretBits = secretBits;
 		 this.basePoint = new AffinePoint(baseX);
 		 this.hPoint = new AffinePoint(hX);
@@ -141,6 +142,7 @@
 	 public ECDHKeyExchangeGadget(Wire baseX, Wire baseY, Wire hX, Wire hY,
 			 Wire[] secretBits, String... desc) {
 		 super(desc);
+		 checkDefaultFieldPrime();
  
 		 this.secretBits = secretBits;
 		 this.basePoint = new AffinePoint(baseX, baseY);
@@ -31,6 +31,7 @@ public class MerkleTreePathGadget extends Gadget {
 			int leafWordBitWidth, int treeHeight, String... desc) {
 
 		super(desc);
+		checkDefaultFieldPrime();
 		this.directionSelectorWire = directionSelectorWire;
 		this.treeHeight = treeHeight;
 		this.leafWires = leafWires;
@@ -73,96 +73,11 @@ public class SHA256Gadget extends Gadget {
 		}
 
 		for (int blockNum = 0; blockNum < numBlocks; blockNum++) {
-
-			Wire[][] wsSplitted = new Wire[64][];
-			Wire[] w = new Wire[64];
-
-			for (int i = 0; i < 64; i++) {
-				if (i < 16) {
-					wsSplitted[i] = Util.reverseBytes(Arrays.copyOfRange(preparedInputBits, blockNum * 512 + i * 32,
-							blockNum * 512 + (i + 1) * 32));
-
-					w[i] = new WireArray(wsSplitted[i]).packAsBits(32);
-				} else {
-					Wire t1 = w[i - 15].rotateRight(32, 7);
-					Wire t2 = w[i - 15].rotateRight(32, 18);
-					Wire t3 = w[i - 15].shiftRight(32, 3);
-					Wire s0 = t1.xorBitwise(t2, 32);
-					s0 = s0.xorBitwise(t3, 32);
-
-					Wire t4 = w[i - 2].rotateRight(32, 17);
-					Wire t5 = w[i - 2].rotateRight(32, 19);
-					Wire t6 = w[i - 2].shiftRight(32, 10);
-					Wire s1 = t4.xorBitwise(t5, 32);
-					s1 = s1.xorBitwise(t6, 32);
-
-					w[i] = w[i - 16].add(w[i - 7]);
-					w[i] = w[i].add(s0).add(s1);
-					w[i] = w[i].trimBits(34, 32);
-				}
-			}
-
-			Wire a = hWires[0];
-			Wire b = hWires[1];
-			Wire c = hWires[2];
-			Wire d = hWires[3];
-			Wire e = hWires[4];
-			Wire f = hWires[5];
-			Wire g = hWires[6];
-			Wire h = hWires[7];
-
-			for (int i = 0; i < 64; i++) {
-
-				Wire t1 = e.rotateRight(32, 6);
-				Wire t2 = e.rotateRight(32, 11);
-				Wire t3 = e.rotateRight(32, 25);
-				Wire s1 = t1.xorBitwise(t2, 32);
-				s1 = s1.xorBitwise(t3, 32);
-
-				Wire ch = computeCh(e, f, g, 32);
-
-				Wire t4 = a.rotateRight(32, 2);
-				Wire t5 = a.rotateRight(32, 13);
-				Wire t6 = a.rotateRight(32, 22);
-				Wire s0 = t4.xorBitwise(t5, 32);
-				s0 = s0.xorBitwise(t6, 32);
-
-				Wire maj;
-				// since after each iteration, SHA256 does c = b; and b = a;, we can make use of that to save multiplications in maj computation.
-				// To do this, we make use of the caching feature, by just changing the order of wires sent to maj(). Caching will take care of the rest.
-				if(i % 2 == 1){
-					maj = computeMaj(c, b, a, 32);
-				}
-				else{
-					maj = computeMaj(a, b, c, 32);
-				}
-				
-				Wire temp1 = w[i].add(K[i]).add(s1).add(h).add(ch);
-
-				Wire temp2 = maj.add(s0);
-
-				h = g;
-				g = f;
-				f = e;
-				e = temp1.add(d);
-				e = e.trimBits(35, 32);
-
-				d = c;
-				c = b;
-				b = a;
-				a = temp2.add(temp1);
-				a = a.trimBits(35, 32);
-
-			}
-
-			hWires[0] = hWires[0].add(a).trimBits(33, 32);
-			hWires[1] = hWires[1].add(b).trimBits(33, 32);
-			hWires[2] = hWires[2].add(c).trimBits(33, 32);
-			hWires[3] = hWires[3].add(d).trimBits(33, 32);
-			hWires[4] = hWires[4].add(e).trimBits(33, 32);
-			hWires[5] = hWires[5].add(f).trimBits(33, 32);
-			hWires[6] = hWires[6].add(g).trimBits(33, 32);
-			hWires[7] = hWires[7].add(h).trimBits(33, 32);
+			// the compression function does not depend on the gadget
+			// parameters, so all blocks of all instances share the templates
+			Wire[] blockBits = Arrays.copyOfRange(preparedInputBits, blockNum * 512, (blockNum + 1) * 512);
+			hWires = generator.buildFromTemplate("SHA256Gadget.compress", Util.concat(blockBits, hWires),
+					this::compress);
 		}
 
 		outDigest[0] = hWires[0];
@@ -187,6 +102,105 @@ public class SHA256Gadget extends Gadget {
 		}
 	}
 
+	/**
+	 * @param in
+	 *            the 512 bits of a block, followed by the 8 words of the
+	 *            current hash value
+	 * @return the next hash value
+	 */
+	private Wire[] compress(Wire[] in) {
+		Wire[] hWires = Arrays.copyOfRange(in, 512, 520);
+		Wire[][] wsSplitted = new Wire[64][];
+		Wire[] w = new Wire[64];
+
+		for (int i = 0; i < 64; i++) {
+			if (i < 16) {
+				wsSplitted[i] = Util.reverseBytes(Arrays.copyOfRange(in, i * 32, (i + 1) * 32));
+
+				w[i] = new WireArray(wsSplitted[i]).packAsBits(32);
+			} else {
+				Wire t1 = w[i - 15].rotateRight(32, 7);
+				Wire t2 = w[i - 15].rotateRight(32, 18);
+				Wire t3 = w[i - 15].shiftRight(32, 3);
+				Wire s0 = t1.xorBitwise(t2, 32);
+				s0 = s0.xorBitwise(t3, 32);
+
+				Wire t4 = w[i - 2].rotateRight(32, 17);
+				Wire t5 = w[i - 2].rotateRight(32, 19);
+				Wire t6 = w[i - 2].shiftRight(32, 10);
+				Wire s1 = t4.xorBitwise(t5, 32);
+				s1 = s1.xorBitwise(t6, 32);
+
+				w[i] = w[i - 16].add(w[i - 7]);
+				w[i] = w[i].add(s0).add(s1);
+				w[i] = w[i].trimBits(34, 32);
+			}
+		}
+
+		Wire a = hWires[0];
+		Wire b = hWires[1];
+		Wire c = hWires[2];
+		Wire d = hWires[3];
+		Wire e = hWires[4];
+		Wire f = hWires[5];
+		Wire g = hWires[6];
+		Wire h = hWires[7];
+
+		for (int i = 0; i < 64; i++) {
+
+			Wire t1 = e.rotateRight(32, 6);
+			Wire t2 = e.rotateRight(32, 11);
+			Wire t3 = e.rotateRight(32, 25);
+			Wire s1 = t1.xorBitwise(t2, 32);
+			s1 = s1.xorBitwise(t3, 32);
+
+			Wire ch = computeCh(e, f, g, 32);
+
+			Wire t4 = a.rotateRight(32, 2);
+			Wire t5 = a.rotateRight(32, 13);
+			Wire t6 = a.rotateRight(32, 22);
+			Wire s0 = t4.xorBitwise(t5, 32);
+			s0 = s0.xorBitwise(t6, 32);
+
+			Wire maj;
+			// since after each iteration, SHA256 does c = b; and b = a;, we can make use of that to save multiplications in maj computation.
+			// To do this, we make use of the caching feature, by just changing the order of wires sent to maj(). Caching will take care of the rest.
+			if(i % 2 == 1){
+				maj = computeMaj(c, b, a, 32);
+			}
+			else{
+				maj = computeMaj(a, b, c, 32);
+			}
+			
+			Wire temp1 = w[i].add(K[i]).add(s1).add(h).add(ch);
+
+			Wire temp2 = maj.add(s0);
+
+			h = g;
+			g = f;
+			f = e;
+			e = temp1.add(d);
+			e = e.trimBits(35, 32);
+
+			d = c;
+			c = b;
+			b = a;
+			a = temp2.add(temp1);
+			a = a.trimBits(35, 32);
+
+		}
+
+		hWires[0] = hWires[0].add(a).trimBits(33, 32);
+		hWires[1] = hWires[1].add(b).trimBits(33, 32);
+		hWires[2] = hWires[2].add(c).trimBits(33, 32);
+		hWires[3] = hWires[3].add(d).trimBits(33, 32);
+		hWires[4] = hWires[4].add(e).trimBits(33, 32);
+		hWires[5] = hWires[5].add(f).trimBits(33, 32);
+		hWires[6] = hWires[6].add(g).trimBits(33, 32);
+		hWires[7] = hWires[7].add(h).trimBits(33, 32);
+		return hWires;
+	}
+
 	private Wire computeMaj(Wire a, Wire b, Wire c, int numBits) {
 
 		Wire[] result = new Wire[numBits];
@@ -41,6 +41,7 @@ public class SubsetSumHashGadget extends Gadget {
 	public SubsetSumHashGadget(Wire[] ins, boolean binaryOutput, String... desc) {
 
 		super(desc);
+		checkDefaultFieldPrime();
 		int numBlocks = (int) Math.ceil(ins.length * 1.0 / INPUT_LENGTH);
 
 		if (numBlocks > 1) {
@@ -59,26 +60,33 @@ public class SubsetSumHashGadget extends Gadget {
 	}
 
 	private void buildCircuit() {
+		// the coefficients are fixed, so the hash only depends on the inputs
+		// and on binaryOutput
+		outWires = generator.buildFromTemplate("SubsetSumHashGadget " + binaryOutput, inputWires, this::hash);
+	}
+
+	private Wire[] hash(Wire[] in) {
 
 		Wire[] outDigest = new Wire[DIMENSION];
 		Arrays.fill(outDigest, generator.getZeroWire());
 
 		for (int i = 0; i < DIMENSION; i++) {
 			for (int j = 0; j < INPUT_LENGTH; j++) {
-				Wire t = inputWires[j].mul(COEFFS[i][j]);
+				Wire t = in[j].mul(COEFFS[i][j]);
 				outDigest[i] = outDigest[i].add(t);
 			}
 		}
 		if (!binaryOutput) {
-			outWires = outDigest;
+			return outDigest;
 		} else {
-			outWires = new Wire[DIMENSION * Config.LOG2_FIELD_PRIME];
+			Wire[] outWires = new Wire[DIMENSION * Config.LOG2_FIELD_PRIME];
 			for (int i = 0; i < DIMENSION; i++) {
 				Wire[] bits = outDigest[i].getBitWires(Config.LOG2_FIELD_PRIME).asArray();
 				for (int j = 0; j < bits.length; j++) {
 					outWires[j + i * Config.LOG2_FIELD_PRIME] = bits[j];
 				}
 			}
+			return outWires;
 		}
 	}
 
@@ -5,7 +5,6 @@ package examples.gadgets.math;
 
 import java.math.BigInteger;
 
-import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
 import circuit.eval.Instruction;
 import circuit.operations.Gadget;
@@ -29,9 +28,9 @@ public class FieldDivisionGadget extends Gadget {
 		if (a instanceof ConstantWire && b instanceof ConstantWire) {
 			BigInteger aConst = ((ConstantWire) a).getConstant();
 			BigInteger bInverseConst = ((ConstantWire) b).getConstant().modInverse(
-					Config.FIELD_PRIME);
+					generator.getConfig().getFieldPrime());
 			c = generator.createConstantWire(aConst.multiply(bInverseConst)
-					.mod(Config.FIELD_PRIME));
+					.mod(generator.getConfig().getFieldPrime()));
 		} else {
 			c = generator.createProverWitnessWire(debugStr("division result"));
 			buildCircuit();
@@ -48,12 +47,22 @@ public class FieldDivisionGadget extends Gadget {
 			public void evaluate(CircuitEvaluator evaluator) {
 				BigInteger aValue = evaluator.getWireValue(a);
 				BigInteger bValue = evaluator.getWireValue(b);
+				BigInteger prime = generator.getConfig().getFieldPrime();
 				BigInteger cValue = aValue.multiply(
-						bValue.modInverse(Config.FIELD_PRIME)).mod(
-						Config.FIELD_PRIME);
+						bValue.modInverse(prime)).mod(prime);
 				evaluator.setWireValue(c, cValue);
 			}
 
+			@Override
+			public Wire[] getReadWires() {
+				return new Wire[] { a, b };
+			}
+
+			@Override
+			public Wire[] getWrittenWires() {
+				return new Wire[] { c };
+			}
+
 		});
 		
 		// to handle the case where a or b can be both zero, see below
@@ -4,7 +4,6 @@
 package examples.generators.hash;
 
 import util.Util;
-import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
@@ -64,12 +63,12 @@ public class MerkleTreeMembershipCircuitGenerator extends CircuitGenerator {
 	public void generateSampleInput(CircuitEvaluator circuitEvaluator) {
 		
 		for (int i = 0; i < hashDigestDimension; i++) {
-			circuitEvaluator.setWireValue(publicRootWires[i], Util.nextRandomBigInteger(Config.FIELD_PRIME));
+			circuitEvaluator.setWireValue(publicRootWires[i], Util.nextRandomBigInteger(getConfig().getFieldPrime()));
 		}
 		
 		circuitEvaluator.setWireValue(directionSelector, Util.nextRandomBigInteger(treeHeight));
 		for (int i = 0; i < hashDigestDimension*treeHeight; i++) {
-			circuitEvaluator.setWireValue(intermediateHasheWires[i],  Util.nextRandomBigInteger(Config.FIELD_PRIME));
+			circuitEvaluator.setWireValue(intermediateHasheWires[i],  Util.nextRandomBigInteger(getConfig().getFieldPrime()));
 		}
 		
 		for(int i = 0; i < leafNumOfWords; i++){
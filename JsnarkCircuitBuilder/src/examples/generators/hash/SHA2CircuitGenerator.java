@@ -39,6 +39,17 @@ public class SHA2CircuitGenerator extends CircuitGenerator {
 		
 	}
 
+	@Override
+	protected boolean supportsRestore() {
+		return true;
+	}
+
+	@Override
+	protected void restoreCircuit() {
+		// the first input is the one-wire
+		inputWires = getInWires().subList(1, getInWires().size()).toArray(new Wire[0]);
+	}
+
 	@Override
 	public void generateSampleInput(CircuitEvaluator evaluator) {
 		String inputStr = "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijkl";
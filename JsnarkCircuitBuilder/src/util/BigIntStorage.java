@@ -11,16 +11,13 @@ import java.util.concurrent.ConcurrentMap;
 public class BigIntStorage {
 	
 	private ConcurrentMap<BigInteger, BigInteger> bigIntegerSet;
-	private static BigIntStorage instance;
+	private static final BigIntStorage instance = new BigIntStorage();
 	
 	private BigIntStorage(){
 		bigIntegerSet = new ConcurrentHashMap<BigInteger, BigInteger>();
 	}
 	
 	public static BigIntStorage getInstance(){
-		if(instance == null){
-			instance = new BigIntStorage();
-		}
 		return instance;
 	}
 	